@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files, typically one from the previous Tika
+ * release (the baseline) and one from the current build.
+ * <p>
+ * A benchmark has regressed if it is more than the threshold percentage slower
+ * than in the baseline and the difference is larger than the two runs'
+ * combined error, so that noisy benchmarks don't fail the comparison.
+ */
+public class BaselineComparison {
+
+    private final double thresholdPercent;
+
+    public BaselineComparison(double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    /**
+     * @return the benchmarks that were in both files and have regressed
+     */
+    public List<Delta> compare(Path baseline, Path current, PrintStream out) throws IOException {
+        return compare(load(baseline), load(current), out);
+    }
+
+    List<Delta> compare(Map<String, Score> baseline, Map<String, Score> current,
+                        PrintStream out) {
+        List<Delta> regressions = new ArrayList<>();
+        out.printf(Locale.ROOT, "%-80s %14s %14s %9s%n", "Benchmark", "Baseline", "Current",
+                "Slower");
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score base = baseline.get(e.getKey());
+            if (base == null) {
+                out.printf(Locale.ROOT, "%-80s %14s %14.3f%n", e.getKey(), "(new)",
+                        e.getValue().score);
+                continue;
+            }
+            if (!base.mode.equals(e.getValue().mode) || !base.unit.equals(e.getValue().unit)) {
+                out.printf(Locale.ROOT, "%-80s not comparable: %s %s vs %s %s%n", e.getKey(),
+                        base.mode, base.unit, e.getValue().mode, e.getValue().unit);
+                continue;
+            }
+            Delta delta = new Delta(e.getKey(), base, e.getValue());
+            boolean regressed = delta.isRegression(thresholdPercent);
+            out.printf(Locale.ROOT, "%-80s %14.3f %14.3f %8.1f%%%s%n", e.getKey(), base.score,
+                    e.getValue().score, delta.percentSlower(), regressed ? "  REGRESSION" : "");
+            if (regressed) {
+                regressions.add(delta);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Reads a JMH result file written with <code>-rf json</code>.
+     *
+     * @return scores keyed by benchmark name and parameters
+     */
+    static Map<String, Score> load(Path jmhJson) throws IOException {
+        try (InputStream is = Files.newInputStream(jmhJson)) {
+            return load(is);
+        }
+    }
+
+    static Map<String, Score> load(InputStream jmhJson) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        JsonNode root = new ObjectMapper().readTree(jmhJson);
+        if (root == null || !root.isArray()) {
+            throw new IOException("Expected an array of JMH results");
+        }
+        for (JsonNode result : root) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            JsonNode params = result.path("params");
+            if (params.isObject()) {
+                Map<String, String> sorted = new TreeMap<>();
+                for (Map.Entry<String, JsonNode> p : params.properties()) {
+                    sorted.put(p.getKey(), p.getValue().asText());
+                }
+                key.append(sorted);
+            }
+            JsonNode metric = result.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key.toString(), new Score(result.path("mode").asText(),
+                    metric.path("score").asDouble(), Double.isNaN(error) ? 0 : error,
+                    metric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    static class Score {
+
+        private final String mode;
+
+        private final double score;
+
+        private final double error;
+
+        private final String unit;
+
+        Score(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    public static class Delta {
+
+        private final String benchmark;
+
+        private final Score baseline;
+
+        private final Score current;
+
+        Delta(String benchmark, Score baseline, Score current) {
+            this.benchmark = benchmark;
+            this.baseline = baseline;
+            this.current = current;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        /**
+         * @return how much slower the current run is, in percent; negative if it is faster
+         */
+        public double percentSlower() {
+            if (baseline.score == 0) {
+                return 0;
+            }
+            // throughput: higher is better; all other modes report time
+            double diff = "thrpt".equals(current.mode) ? baseline.score - current.score :
+                    current.score - baseline.score;
+            return 100 * diff / baseline.score;
+        }
+
+        boolean isRegression(double thresholdPercent) {
+            return percentSlower() > thresholdPercent &&
+                    Math.abs(current.score - baseline.score) > baseline.error + current.error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %.1f%% slower", benchmark, percentSlower());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ToXMLContentHandler;
+import org.apache.tika.sax.XHTMLContentHandler;
+
+/**
+ * Writes a synthetic document of {@link #paragraphs} paragraphs through
+ * {@link XHTMLContentHandler} into the usual output handlers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentHandlerBenchmark {
+
+    @Param({"100", "10000"})
+    public int paragraphs;
+
+    private Metadata metadata;
+
+    private char[] text;
+
+    @Setup
+    public void setUp() {
+        metadata = new Metadata();
+        metadata.set(TikaCoreProperties.TITLE, "benchmark");
+        text = ("The quick brown fox jumps over the lazy dog & runs <away> " +
+                "éèê 中文 ").toCharArray();
+    }
+
+    @Benchmark
+    public String toXML() throws SAXException {
+        ToXMLContentHandler handler = new ToXMLContentHandler();
+        write(new XHTMLContentHandler(handler, metadata));
+        return handler.toString();
+    }
+
+    @Benchmark
+    public String body() throws SAXException {
+        BodyContentHandler handler = new BodyContentHandler(-1);
+        write(new XHTMLContentHandler(handler, metadata));
+        return handler.toString();
+    }
+
+    private void write(XHTMLContentHandler xhtml) throws SAXException {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "class", "class", "CDATA", "para");
+        xhtml.startDocument();
+        for (int i = 0; i < paragraphs; i++) {
+            xhtml.startElement("p", attributes);
+            xhtml.characters(text, 0, text.length);
+            xhtml.endElement("p");
+        }
+        xhtml.endDocument();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed set of documents that the benchmarks run over, listed in
+ * <code>corpus.txt</code>.  The files are read from the parser modules' test-documents;
+ * set the system property {@value #CORPUS_DIR_PROPERTY} to point at a different
+ * checkout of <code>tika-parsers-standard-modules</code>.
+ */
+public class Corpus {
+
+    public static final String CORPUS_DIR_PROPERTY = "tika.benchmark.corpus";
+
+    private static final String DEFAULT_CORPUS_DIR =
+            "../tika-parsers/tika-parsers-standard/tika-parsers-standard-modules";
+
+    private static Map<String, byte[]> DOCUMENTS = null;
+
+    /**
+     * @return the documents in corpus order, keyed by file name
+     */
+    public static synchronized Map<String, byte[]> getDocuments() throws IOException {
+        if (DOCUMENTS == null) {
+            DOCUMENTS = Collections.unmodifiableMap(load());
+        }
+        return DOCUMENTS;
+    }
+
+    /**
+     * @param fileName file name of a document in the corpus
+     * @return the document's bytes
+     */
+    public static byte[] get(String fileName) throws IOException {
+        byte[] bytes = getDocuments().get(fileName);
+        if (bytes == null) {
+            throw new IllegalArgumentException("not in the benchmark corpus: " + fileName);
+        }
+        return bytes;
+    }
+
+    private static Map<String, byte[]> load() throws IOException {
+        Path root = Paths.get(System.getProperty(CORPUS_DIR_PROPERTY, DEFAULT_CORPUS_DIR));
+        Map<String, byte[]> documents = new LinkedHashMap<>();
+        for (String relativePath : readCorpusList()) {
+            Path p = root.resolve(relativePath);
+            if (!Files.isRegularFile(p)) {
+                throw new IOException("Can't find benchmark document " + p.toAbsolutePath() +
+                        "; set -D" + CORPUS_DIR_PROPERTY + " to the tika-parsers-standard-modules " +
+                        "directory");
+            }
+            documents.put(p.getFileName().toString(), Files.readAllBytes(p));
+        }
+        return documents;
+    }
+
+    private static List<String> readCorpusList() throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (InputStream is = Corpus.class.getResourceAsStream("corpus.txt");
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    paths.add(line);
+                }
+                line = reader.readLine();
+            }
+        }
+        return paths;
+    }
+}
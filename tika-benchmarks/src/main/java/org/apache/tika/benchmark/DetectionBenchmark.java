@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
+
+/**
+ * Type detection with the mime magic alone and with the full {@link DefaultDetector}
+ * (which adds the container and other service-loaded detectors).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DetectionBenchmark {
+
+    @Param({"testPDF.pdf", "testWORD.doc", "testWORD.docx", "testEXCEL.xlsx", "testPPT.pptx",
+            "testRTF.rtf", "testHTML.html", "testXML.xml", "testJPEG.jpg", "test-documents.zip",
+            "testRFC822", "multi-language.txt", "russian.cp866.txt", "testTXT_win-1252.txt"})
+    public String fileName;
+
+    private byte[] bytes;
+
+    private MimeTypes mimeTypes;
+
+    private Detector defaultDetector;
+
+    @Setup
+    public void setUp() throws IOException {
+        bytes = Corpus.get(fileName);
+        mimeTypes = MimeTypes.getDefaultMimeTypes();
+        defaultDetector = new DefaultDetector();
+    }
+
+    @Benchmark
+    public MediaType mimeTypes() throws IOException {
+        return mimeTypes.detect(newStream(), new Metadata());
+    }
+
+    @Benchmark
+    public MediaType mimeTypesWithName() throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        return mimeTypes.detect(newStream(), metadata);
+    }
+
+    @Benchmark
+    public MediaType defaultDetector() throws IOException {
+        return defaultDetector.detect(newStream(), new Metadata());
+    }
+
+    private UnsynchronizedByteArrayInputStream newStream() throws IOException {
+        return UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get();
+    }
+}
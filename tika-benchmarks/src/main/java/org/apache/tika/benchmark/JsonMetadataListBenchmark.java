@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.serialization.JsonMetadataList;
+
+/**
+ * Round trips a /rmeta style metadata list of {@link #documents} documents,
+ * each with some content and a few dozen fields.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMetadataListBenchmark {
+
+    @Param({"1", "100"})
+    public int documents;
+
+    private List<Metadata> metadataList;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws IOException {
+        metadataList = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Some \"quoted\" text with unicode é中 and a tab\t. ");
+        }
+        for (int i = 0; i < documents; i++) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.TIKA_CONTENT, content.toString());
+            m.set(TikaCoreProperties.EMBEDDED_DEPTH, Integer.toString(i == 0 ? 0 : 1));
+            for (int f = 0; f < 30; f++) {
+                m.add("field-" + f, "value " + f);
+                m.add("field-" + f, "other value " + f);
+            }
+            metadataList.add(m);
+        }
+        json = toJson();
+    }
+
+    @Benchmark
+    public String toJson() throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonMetadataList.toJson(metadataList, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public List<Metadata> fromJson() throws IOException {
+        return JsonMetadataList.fromJson(new StringReader(json));
+    }
+}
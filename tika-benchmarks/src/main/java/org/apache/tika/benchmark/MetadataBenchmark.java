@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Adding and reading back {@link #fields} metadata fields with a few values each,
+ * roughly the shape of the metadata of an office document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetadataBenchmark {
+
+    private static final int VALUES_PER_FIELD = 3;
+
+    @Param({"20", "200"})
+    public int fields;
+
+    private String[] names;
+
+    private Metadata populated;
+
+    @Setup
+    public void setUp() {
+        names = new String[fields];
+        for (int i = 0; i < fields; i++) {
+            names[i] = "custom:field-" + i;
+        }
+        populated = populate();
+    }
+
+    @Benchmark
+    public Metadata add() {
+        return populate();
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(populated.get(name));
+            blackhole.consume(populated.getValues(name));
+        }
+    }
+
+    @Benchmark
+    public String[] names() {
+        return populated.names();
+    }
+
+    private Metadata populate() {
+        Metadata metadata = new Metadata();
+        for (String name : names) {
+            for (int v = 0; v < VALUES_PER_FIELD; v++) {
+                metadata.add(name, "value " + v);
+            }
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and, optionally, compares the results with a baseline run.
+ * <p>
+ * To check for regressions across a Tika upgrade, build this module against the
+ * old version and run it with <code>-result baseline.json</code>, then build it
+ * against the new version and run it with <code>-baseline baseline.json</code>.
+ * The process exits with status 1 if any benchmark regressed.  All other
+ * arguments are passed to JMH, e.g. a regex to select benchmarks.
+ */
+public class TikaBenchmarks {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public static void main(String[] args) throws Exception {
+        Path baseline = null;
+        Path result = Paths.get("jmh-result.json");
+        Path compareOnly = null;
+        double threshold = DEFAULT_THRESHOLD_PERCENT;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "-result":
+                    result = Paths.get(args[++i]);
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "-compare":
+                    // compare two existing result files without running anything
+                    baseline = Paths.get(args[++i]);
+                    compareOnly = Paths.get(args[++i]);
+                    break;
+                case "-help":
+                    usage();
+                    return;
+                default:
+                    jmhArgs.add(args[i]);
+            }
+        }
+        if (compareOnly == null) {
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .parent(new CommandLineOptions(jmhArgs.toArray(new String[0])))
+                    .result(result.toString())
+                    .resultFormat(ResultFormatType.JSON);
+            String corpusDir = System.getProperty(Corpus.CORPUS_DIR_PROPERTY);
+            if (corpusDir != null) {
+                // the benchmarks run in forked jvms
+                builder.jvmArgsAppend("-D" + Corpus.CORPUS_DIR_PROPERTY + "=" + corpusDir);
+            }
+            new Runner(builder.build()).run();
+        }
+        if (baseline != null) {
+            List<BaselineComparison.Delta> regressions = new BaselineComparison(threshold)
+                    .compare(baseline, compareOnly == null ? result : compareOnly, System.out);
+            if (!regressions.isEmpty()) {
+                System.err.println(regressions.size() + " benchmark(s) regressed by more than " +
+                        threshold + "%:");
+                for (BaselineComparison.Delta d : regressions) {
+                    System.err.println("  " + d);
+                }
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("java -jar tika-benchmarks.jar [-result <file>] " +
+                "[-baseline <file> [-threshold <percent>]] [jmh options]");
+        System.out.println("java -jar tika-benchmarks.jar -compare <baseline> <current> " +
+                "[-threshold <percent>]");
+        System.out.println();
+        System.out.println("Results are written as JMH json to -result (default jmh-result.json).");
+        System.out.println("With -baseline, exits with 1 if a benchmark is more than -threshold " +
+                "percent (default " + DEFAULT_THRESHOLD_PERCENT + ") slower than the baseline.");
+        System.out.println("Set -D" + Corpus.CORPUS_DIR_PROPERTY + " to the " +
+                "tika-parsers-standard-modules directory if not run from tika-benchmarks.");
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class BaselineComparisonTest {
+
+    @Test
+    public void testCompare() throws Exception {
+        Map<String, BaselineComparison.Score> baseline = load(
+                result("Detection.mimeTypes", "avgt", "testPDF.pdf", 10, 0.5) + "," +
+                result("Detection.mimeTypes", "avgt", "testWORD.doc", 10, 0.5) + "," +
+                result("Detection.noisy", "avgt", "testPDF.pdf", 10, 5) + "," +
+                result("Metadata.add", "thrpt", "20", 1000, 10));
+        Map<String, BaselineComparison.Score> current = load(
+                result("Detection.mimeTypes", "avgt", "testPDF.pdf", 12, 0.5) + "," +
+                result("Detection.mimeTypes", "avgt", "testWORD.doc", 9, 0.5) + "," +
+                result("Detection.noisy", "avgt", "testPDF.pdf", 12, 5) + "," +
+                result("Metadata.add", "thrpt", "20", 800, 10) + "," +
+                result("Metadata.names", "thrpt", "20", 800, 10));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        List<BaselineComparison.Delta> regressions = new BaselineComparison(10)
+                .compare(baseline, current, new PrintStream(bos, true, UTF_8.name()));
+        assertEquals(2, regressions.size(), regressions.toString());
+        assertEquals("Detection.mimeTypes{fileName=testPDF.pdf}",
+                regressions.get(0).getBenchmark());
+        assertEquals(20.0, regressions.get(0).percentSlower(), 0.001);
+        // lower throughput is slower
+        assertEquals("Metadata.add{fileName=20}", regressions.get(1).getBenchmark());
+        assertEquals(20.0, regressions.get(1).percentSlower(), 0.001);
+        String report = bos.toString(UTF_8.name());
+        assertTrue(report.contains("(new)"), report);
+    }
+
+    private static Map<String, BaselineComparison.Score> load(String results) throws IOException {
+        return BaselineComparison.load(new ByteArrayInputStream(("[" + results + "]")
+                .getBytes(UTF_8)));
+    }
+
+    private static String result(String benchmark, String mode, String param, double score,
+                                 double error) {
+        return "{\"benchmark\":\"" + benchmark + "\",\"mode\":\"" + mode + "\"," +
+                "\"params\":{\"fileName\":\"" + param + "\"}," +
+                "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":" + error + "," +
+                "\"scoreUnit\":\"us/op\"}}";
+    }
+}
@@ -425,6 +425,52 @@ public class MagicDetector implements Detector {
         return this.patternLength;
     }
 
+    /**
+     * @return first offset (inclusive) of the comparison window
+     * @since Apache Tika 4.0.0
+     */
+    public int getOffsetRangeBegin() {
+        return offsetRangeBegin;
+    }
+
+    /**
+     * @return last offset (inclusive) at which the comparison window can start
+     * @since Apache Tika 4.0.0
+     */
+    public int getOffsetRangeEnd() {
+        return offsetRangeEnd;
+    }
+
+    /**
+     * Returns the byte values that the first byte of a comparison window must
+     * have for this detector to match, indexed by unsigned byte value.
+     * This lets callers rule out a detector without running it.
+     *
+     * @return allowed first byte values, or <code>null</code> if this detector can't
+     * be ruled out on its first byte (regular expressions, empty patterns,
+     * or a first byte that is fully masked)
+     * @since Apache Tika 4.0.0
+     */
+    public boolean[] getFirstByteFilter() {
+        if (isRegex || length == 0) {
+            return null;
+        }
+        boolean[] allowed = new boolean[256];
+        int numAllowed = 0;
+        for (int b = 0; b < 256; b++) {
+            // keep this in sync with the comparison in detect()
+            int masked = ((byte) b & mask[0]);
+            if (this.isStringIgnoreCase) {
+                masked = Character.toLowerCase(masked);
+            }
+            if (masked == pattern[0]) {
+                allowed[b] = true;
+                numAllowed++;
+            }
+        }
+        return numAllowed == 256 ? null : allowed;
+    }
+
     /**
      * Returns a string representation of the Detection Rule.
      * Should sort nicely by type and details, as we sometimes
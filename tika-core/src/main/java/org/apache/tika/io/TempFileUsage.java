@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures the peak disk space used by the temporary files that
+ * {@link TemporaryResources} creates on a thread, e.g. while that thread parses a
+ * document.  Start it on the thread with {@link #start()}, and get the peak
+ * with {@link #stop()}.
+ * <p>
+ * The sizes of the files that are still there are added up whenever one of them is
+ * about to be deleted and when this is stopped, so growth between those points is
+ * only seen when a file is deleted.  Files that are created on other threads, e.g.
+ * by parsers that hand work off to their own threads, are not counted.
+ * <p>
+ * Each thread has its own meter, so documents that are parsed at the same time in
+ * one JVM are measured separately.
+ */
+public class TempFileUsage {
+
+    private static final ThreadLocal<TempFileUsage> CURRENT = new ThreadLocal<>();
+
+    //the files that have been created and not yet deleted
+    private final Set<Path> live = new HashSet<>();
+    private long peakBytes = 0;
+
+    private TempFileUsage() {
+    }
+
+    /**
+     * Starts measuring the temporary files that are created on the current thread,
+     * replacing any meter that was running on it.
+     */
+    public static TempFileUsage start() {
+        TempFileUsage usage = new TempFileUsage();
+        CURRENT.set(usage);
+        return usage;
+    }
+
+    /**
+     * Stops measuring, if this is still the current thread's meter.
+     *
+     * @return the largest number of bytes that were in this meter's temporary
+     * files at the same time
+     */
+    public long stop() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        synchronized (this) {
+            sample();
+            return peakBytes;
+        }
+    }
+
+    /**
+     * @return the current thread's meter, or <code>null</code> if none is running
+     */
+    static TempFileUsage current() {
+        return CURRENT.get();
+    }
+
+    synchronized void created(Path path) {
+        live.add(path);
+    }
+
+    /**
+     * Called just before a file is deleted, when it is at its largest.  The file may
+     * be deleted on another thread, e.g. by a stream that is closed late.
+     */
+    synchronized void deleting(Path path) {
+        sample();
+        live.remove(path);
+    }
+
+    private void sample() {
+        long bytes = 0;
+        for (Path path : live) {
+            try {
+                bytes += Files.size(path);
+            } catch (IOException e) {
+                //it's gone
+            }
+        }
+        peakBytes = Math.max(peakBytes, bytes);
+    }
+}
@@ -88,8 +88,16 @@ public class TemporaryResources implements Closeable {
 
         final Path path = tempFileDir == null ? Files.createTempFile("apache-tika-", actualSuffix) :
                 Files.createTempFile(tempFileDir, "apache-tika-", actualSuffix);
+        //counted against the thread that created it, wherever it's deleted
+        TempFileUsage usage = TempFileUsage.current();
+        if (usage != null) {
+            usage.created(path);
+        }
         addResource(() -> {
             try {
+                if (usage != null) {
+                    usage.deleting(path);
+                }
                 Files.delete(path);
             } catch (IOException e) {
                 // delete when exit if current delete fail
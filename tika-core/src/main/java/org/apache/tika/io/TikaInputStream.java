@@ -151,6 +151,14 @@ public class TikaInputStream extends TaggedInputStream {
         this.suffix = FilenameUtils.getSuffixFromPath(path.getFileName().toString());
     }
 
+    private TikaInputStream(InputStream stream, Path path, long length) {
+        super(stream);
+        this.path = path;
+        this.tmp = new TemporaryResources();
+        this.length = length;
+        this.suffix = FilenameUtils.getSuffixFromPath(path.getFileName().toString());
+    }
+
     /**
      * Creates a TikaInputStream instance. This private constructor is used
      * by the static factory methods based on the available information.
@@ -390,6 +398,34 @@ public class TikaInputStream extends TaggedInputStream {
         return new TikaInputStream(path, tmp, length);
     }
 
+    /**
+     * Creates a TikaInputStream that reads the file at the given path through a
+     * memory mapping rather than through a buffered stream, so that the bytes
+     * aren't copied on their way to the parser.  {@link #getPath()} returns the
+     * file itself.  This is meant for files that are already in memory, e.g. on a
+     * tmpfs such as <code>/dev/shm</code>.  Files of 2GB or more are read as in
+     * {@link #get(Path, Metadata)}.
+     * <p>
+     * The mapping is only released when it's garbage collected, so on Windows,
+     * the file can't be deleted right after this stream is closed.
+     *
+     * @param path     input file
+     * @param metadata metadata instance
+     * @return a TikaInputStream instance
+     * @throws IOException if an I/O error occurs
+     */
+    public static TikaInputStream getMapped(Path path, Metadata metadata) throws IOException {
+        long length = Files.size(path);
+        if (length >= Integer.MAX_VALUE) {
+            return get(path, metadata);
+        }
+        if (StringUtils.isBlank(metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY))) {
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, path.getFileName().toString());
+        }
+        metadata.set(Metadata.CONTENT_LENGTH, Long.toString(length));
+        return new TikaInputStream(new MappedFileInputStream(path), path, length);
+    }
+
     /**
      * Creates a TikaInputStream from the given file.
      * <p>
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metadata;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memory-lean backing map for {@link Metadata}.
+ * <p>
+ * Entries are kept in insertion order in parallel key and value arrays, with an
+ * open-addressed table of int slots pointing into them, so there is no entry
+ * object per name.  Names are interned: known {@link Property} names map to the
+ * property's own name, and other names go through a bounded shared table, so
+ * thousands of Metadata objects from the same kind of document share their key
+ * strings.  Values are growable arrays, so {@link #append(String, String)} does not
+ * copy all the values on every add; arrays are trimmed to size when they're read.
+ * <p>
+ * Arrays returned by {@link #get(Object)} are the stored ones, as with a HashMap.
+ * This is not thread safe.
+ */
+class CompactMetadataMap extends AbstractMap<String, String[]> implements Serializable {
+
+    private static final long serialVersionUID = -2426178372498151398L;
+
+    private static final int MAX_INTERNED_NAMES = 16 * 1024;
+
+    private static final Map<String, String> INTERNED_NAMES = new ConcurrentHashMap<>();
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Slot states in {@link #index}; other values are the position in the entry arrays
+     * plus one.
+     */
+    private static final int EMPTY = 0;
+
+    private static final int DELETED = -1;
+
+    private transient String[] keys;
+
+    private transient String[][] values;
+
+    /**
+     * Number of values in use in each values array; the arrays can have spare room.
+     */
+    private transient int[] sizes;
+
+    private transient int[] index;
+
+    /**
+     * Number of entry positions used, including removed ones.
+     */
+    private transient int used;
+
+    private transient int size;
+
+    private transient int modCount;
+
+    CompactMetadataMap() {
+        init(0);
+    }
+
+    private void init(int capacity) {
+        keys = capacity == 0 ? null : new String[capacity];
+        values = capacity == 0 ? null : new String[capacity][];
+        sizes = capacity == 0 ? null : new int[capacity];
+        index = capacity == 0 ? null : new int[tableSize(capacity)];
+        used = 0;
+        size = 0;
+    }
+
+    static String intern(String name) {
+        String interned = INTERNED_NAMES.get(name);
+        if (interned != null) {
+            return interned;
+        }
+        Property property = Property.get(name);
+        if (property != null) {
+            interned = property.getName();
+        } else if (INTERNED_NAMES.size() < MAX_INTERNED_NAMES) {
+            interned = name;
+        } else {
+            return name;
+        }
+        String previous = INTERNED_NAMES.putIfAbsent(interned, interned);
+        return previous == null ? interned : previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) >= 0;
+    }
+
+    @Override
+    public String[] get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int i = find((String) key);
+        return i < 0 ? null : valuesAt(i);
+    }
+
+    @Override
+    public String[] put(String key, String[] value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("metadata names and values can't be null");
+        }
+        int i = find(key);
+        if (i >= 0) {
+            String[] previous = valuesAt(i);
+            values[i] = value;
+            sizes[i] = value.length;
+            return previous;
+        }
+        insert(key, value, value.length);
+        return null;
+    }
+
+    /**
+     * Adds a value to the end of the values for a name, without copying the
+     * existing values unless the array is full.
+     */
+    void append(String key, String value) {
+        int i = find(key);
+        if (i < 0) {
+            insert(key, new String[]{value}, 1);
+            return;
+        }
+        String[] vals = values[i];
+        int n = sizes[i];
+        if (n == vals.length) {
+            //the full array may have been handed out by get(), so grow into a copy
+            vals = Arrays.copyOf(vals, Math.max(4, n * 2));
+            values[i] = vals;
+        }
+        vals[n] = value;
+        sizes[i] = n + 1;
+        modCount++;
+    }
+
+    @Override
+    public String[] remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = findSlot((String) key);
+        if (slot < 0) {
+            return null;
+        }
+        int i = index[slot] - 1;
+        String[] previous = valuesAt(i);
+        index[slot] = DELETED;
+        removeAt(i);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        init(0);
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String[]>> entrySet() {
+        return new EntrySet();
+    }
+
+    private String[] valuesAt(int i) {
+        String[] vals = values[i];
+        if (vals.length != sizes[i]) {
+            vals = Arrays.copyOf(vals, sizes[i]);
+            values[i] = vals;
+        }
+        return vals;
+    }
+
+    private void removeAt(int i) {
+        keys[i] = null;
+        values[i] = null;
+        sizes[i] = 0;
+        size--;
+        modCount++;
+    }
+
+    private int find(String key) {
+        int slot = findSlot(key);
+        return slot < 0 ? -1 : index[slot] - 1;
+    }
+
+    /**
+     * @return the slot in {@link #index} that points to the entry, or -1
+     */
+    private int findSlot(String key) {
+        if (index == null) {
+            return -1;
+        }
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int e = index[slot];
+            if (e == EMPTY) {
+                return -1;
+            }
+            if (e != DELETED) {
+                String k = keys[e - 1];
+                //interned names are usually the same instance
+                if (k == key || k.equals(key)) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void insert(String key, String[] vals, int n) {
+        if (keys == null) {
+            init(INITIAL_CAPACITY);
+        } else if (used == keys.length) {
+            //compact away removed entries, and grow if that doesn't free up enough room
+            rebuild(size + 1 > keys.length * 3 / 4 ? keys.length * 2 : keys.length);
+        }
+        int i = used++;
+        keys[i] = intern(key);
+        values[i] = vals;
+        sizes[i] = n;
+        size++;
+        modCount++;
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (index[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = i + 1;
+    }
+
+    private void rebuild(int capacity) {
+        String[] oldKeys = keys;
+        String[][] oldValues = values;
+        int[] oldSizes = sizes;
+        int oldUsed = used;
+        init(capacity);
+        int mask = index.length - 1;
+        for (int j = 0; j < oldUsed; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+            int i = used++;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            sizes[i] = oldSizes[j];
+            size++;
+            int slot = hash(keys[i]) & mask;
+            while (index[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = i + 1;
+        }
+    }
+
+    private static int tableSize(int capacity) {
+        //keep the table at most half full
+        return Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < used; i++) {
+            if (keys[i] != null) {
+                out.writeObject(keys[i]);
+                out.writeObject(valuesAt(i));
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        init(0);
+        for (int i = 0; i < n; i++) {
+            String key = (String) in.readObject();
+            String[] vals = (String[]) in.readObject();
+            put(key, vals);
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<String, String[]>> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String[]>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public void clear() {
+            CompactMetadataMap.this.clear();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, String[]>> {
+
+        private int next = advance(0);
+
+        private int last = -1;
+
+        private int expectedModCount = modCount;
+
+        private int advance(int i) {
+            while (i < used && keys[i] == null) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < used;
+        }
+
+        @Override
+        public Map.Entry<String, String[]> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= used) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            CompactMetadataMap.this.remove(keys[last]);
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private class Entry implements Map.Entry<String, String[]> {
+
+        private final int i;
+
+        private final String key;
+
+        Entry(int i) {
+            this.i = i;
+            this.key = keys[i];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String[] getValue() {
+            return keys != null && i < used && keys[i] == key ? valuesAt(i) : get(key);
+        }
+
+        @Override
+        public String[] setValue(String[] value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            //same as HashMap's entries: the arrays are compared by reference
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return key.equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + Arrays.toString(getValue());
+        }
+    }
+}
@@ -54,6 +54,12 @@ public class Metadata
 
         @Override
         public void add(String field, String value, Map<String, String[]> data) {
+            if (data instanceof CompactMetadataMap) {
+                if (value != null) {
+                    ((CompactMetadataMap) data).append(field, value);
+                }
+                return;
+            }
             String[] values = data.get(field);
             if (values == null) {
                 set(field, value, data);
@@ -87,6 +93,16 @@ public class Metadata
      * Serial version UID
      */
     private static final long serialVersionUID = 5623926545693153182L;
+    /**
+     * System property that, when <code>true</code>, makes new Metadata objects use a
+     * more compact backing store with interned names.  This is worth setting where
+     * many Metadata objects are held at once, e.g. in the forked PipesServer
+     * with the RecursiveParserWrapper on large archives.
+     *
+     * @since Apache Tika 4.0.0
+     */
+    public static final String COMPACT_STORAGE_PROPERTY = "tika.metadata.compact";
+    private static final boolean COMPACT_STORAGE = Boolean.getBoolean(COMPACT_STORAGE_PROPERTY);
     /**
      * Some parsers will have the date as a ISO-8601 string
      * already, and will set that into the Metadata object.
@@ -103,7 +119,18 @@ public class Metadata
      * Constructs a new, empty metadata.
      */
     public Metadata() {
-        metadata = new HashMap<>();
+        this(COMPACT_STORAGE);
+    }
+
+    /**
+     * Constructs a new, empty metadata.
+     *
+     * @param compact whether to use the compact backing store regardless of
+     *                {@link #COMPACT_STORAGE_PROPERTY}; the public API is the same either way
+     * @since Apache Tika 4.0.0
+     */
+    public Metadata(boolean compact) {
+        metadata = compact ? new CompactMetadataMap() : new HashMap<>();
     }
 
     private static DateFormat createDateFormat(String format, TimeZone timezone) {
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesReporter;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.ResourceUsage;
+
+/**
+ * Records the results from the PipesServers into {@link ParseMetrics#getDefault()},
+ * so that they show up in the same metrics as in-process parses.
+ * <p>
+ * The parser, mime type, input length and parse time come from the
+ * {@link ResourceUsage} that the PipesServer sends with each result, so they
+ * are recorded whether the server or the parent emits the document.  The parse
+ * time doesn't include fetching or emitting.  Results from the parse result
+ * cache aren't recorded, since nothing was parsed.  Characters out are only
+ * counted when the document's metadata comes back, i.e. when the emit happens
+ * in the parent.
+ * <p>
+ * Timeouts and OOMs are counted, and every crash counts as a restart of the
+ * PipesServer.
+ */
+public class MetricsPipesReporter extends PipesReporter {
+
+    private final ParseMetrics metrics;
+
+    public MetricsPipesReporter() {
+        this(ParseMetrics.getDefault());
+    }
+
+    public MetricsPipesReporter(ParseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void report(FetchEmitTuple t, PipesResult result, long elapsed) {
+        switch (result.getStatus()) {
+            case TIMEOUT:
+                metrics.addTimeouts(1);
+                metrics.addRestarts(1);
+                return;
+            case OOM:
+                metrics.addOoms(1);
+                metrics.addRestarts(1);
+                return;
+            case UNSPECIFIED_CRASH:
+                metrics.addRestarts(1);
+                return;
+            default:
+                break;
+        }
+        if (result.isIntermediate() || !isParsed(result.getStatus())) {
+            return;
+        }
+        ResourceUsage usage = result.getResourceUsage();
+        if (usage != null) {
+            if (usage.getParseNanos() < 0) {
+                //e.g. a hit in the parse result cache
+                return;
+            }
+            metrics.recordParse(orUnknown(usage.getParser()), orUnknown(usage.getMimeType()),
+                    usage.getParseNanos(), usage.getBytesIn(), getCharsOut(result));
+            return;
+        }
+        //the server didn't send what it parsed; fall back to the total time
+        long nanos = TimeUnit.MILLISECONDS.toNanos(elapsed);
+        Metadata metadata = getContainerMetadata(result);
+        if (metadata == null) {
+            metrics.recordParse(ParseMetrics.UNKNOWN, ParseMetrics.UNKNOWN, nanos, -1, -1);
+            return;
+        }
+        metrics.recordParse(metadata, nanos, getLength(metadata), getCharsOut(result));
+    }
+
+    private static String orUnknown(String label) {
+        return label == null ? ParseMetrics.UNKNOWN : label;
+    }
+
+    /**
+     * @return characters of content in the metadata that came back, or -1 if
+     * none came back
+     */
+    private static long getCharsOut(PipesResult result) {
+        if (getContainerMetadata(result) == null) {
+            return -1;
+        }
+        long charsOut = 0;
+        for (Metadata m : result
+                .getEmitData()
+                .getMetadataList()) {
+            String content = m.get(TikaCoreProperties.TIKA_CONTENT);
+            if (content != null) {
+                charsOut += content.length();
+            }
+        }
+        return charsOut;
+    }
+
+    private static boolean isParsed(PipesResult.STATUS status) {
+        switch (status) {
+            case PARSE_SUCCESS:
+            case PARSE_SUCCESS_WITH_EXCEPTION:
+            case PARSE_EXCEPTION_EMIT:
+            case EMIT_SUCCESS:
+            case EMIT_SUCCESS_PARSE_EXCEPTION:
+            case EMIT_EXCEPTION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Metadata getContainerMetadata(PipesResult result) {
+        if (result.getEmitData() == null) {
+            return null;
+        }
+        List<Metadata> metadataList = result
+                .getEmitData()
+                .getMetadataList();
+        if (metadataList == null || metadataList.isEmpty()) {
+            return null;
+        }
+        return metadataList.get(0);
+    }
+
+    private static long getLength(Metadata metadata) {
+        try {
+            String length = metadata.get(Metadata.CONTENT_LENGTH);
+            return length == null ? -1 : Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void error(Throwable t) {
+
+    }
+
+    @Override
+    public void error(String msg) {
+
+    }
+}
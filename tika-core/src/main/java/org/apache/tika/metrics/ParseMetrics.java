@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.utils.StringUtils;
+import org.apache.tika.utils.XMLReaderUtils;
+
+/**
+ * Parse latency histograms and counters for a process, written in the Prometheus
+ * text exposition format, which OpenMetrics scrapers also accept.
+ * <p>
+ * Latency is recorded by parser class and by mime type.  Bytes in and characters
+ * out are counted by parser class.  There are also process-wide counts of restarts,
+ * timeouts and OOMs, and the {@link XMLReaderUtils} pool metrics are included when
+ * the metrics are written.
+ * <p>
+ * Recording takes no locks; each series is a set of {@link LongAdder}s.  To bound
+ * memory, at most {@link #MAX_LABEL_VALUES} parsers and mime types get their own
+ * series, and the rest are recorded under {@link #OTHER}.
+ * <p>
+ * tika-server records every parse into {@link #getDefault()}.  For the pipes,
+ * configure a {@link MetricsPipesReporter}.
+ */
+public class ParseMetrics {
+
+    /**
+     * Content type of the output of {@link #write(Writer)}
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    public static final int MAX_LABEL_VALUES = 256;
+
+    public static final String OTHER = "other";
+
+    public static final String UNKNOWN = "unknown";
+
+    //upper bounds, in seconds
+    static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private static final ParseMetrics DEFAULT = new ParseMetrics();
+
+    private final Map<String, Series> byParser = new ConcurrentHashMap<>();
+    private final Map<String, Series> byMimeType = new ConcurrentHashMap<>();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder ooms = new LongAdder();
+
+    /**
+     * @return the metrics for this process
+     */
+    public static ParseMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a parse, taking the parser from the last
+     * {@link TikaCoreProperties#TIKA_PARSED_BY} and the mime type from the
+     * {@link Metadata#CONTENT_TYPE}, without parameters.
+     *
+     * @param bytesIn  length of the input, or -1 if it isn't known
+     * @param charsOut characters written by the parser, or -1 if they weren't counted
+     */
+    public void recordParse(Metadata metadata, long nanos, long bytesIn, long charsOut) {
+        recordParse(getParser(metadata), getMimeType(metadata), nanos, bytesIn, charsOut);
+    }
+
+    /**
+     * @param bytesIn  length of the input, or -1 if it isn't known
+     * @param charsOut characters written by the parser, or -1 if they weren't counted
+     */
+    public void recordParse(String parser, String mimeType, long nanos, long bytesIn, long charsOut) {
+        Series parserSeries = getSeries(byParser, parser);
+        parserSeries.observe(nanos);
+        if (bytesIn > 0) {
+            parserSeries.bytesIn.add(bytesIn);
+        }
+        if (charsOut > 0) {
+            parserSeries.charsOut.add(charsOut);
+        }
+        getSeries(byMimeType, mimeType).observe(nanos);
+    }
+
+    public void addRestarts(long n) {
+        restarts.add(n);
+    }
+
+    public void addTimeouts(long n) {
+        timeouts.add(n);
+    }
+
+    public void addOoms(long n) {
+        ooms.add(n);
+    }
+
+    /**
+     * Writes all of the metrics in the Prometheus text format.  The writer is
+     * neither flushed nor closed.
+     */
+    public void write(Writer writer) throws IOException {
+        writeHistograms(writer, "tika_parser_duration_seconds", "Time to parse a document, by parser class.", "parser", byParser);
+        writeHistograms(writer, "tika_mime_type_duration_seconds", "Time to parse a document, by mime type.", "mime_type", byMimeType);
+
+        writeHeader(writer, "tika_parser_bytes_in_total", "Bytes of input parsed, by parser class.", "counter");
+        for (Map.Entry<String, Series> e : new TreeMap<>(byParser).entrySet()) {
+            writeSample(writer, "tika_parser_bytes_in_total", "parser", e.getKey(), e
+                    .getValue().bytesIn.sum());
+        }
+        writeHeader(writer, "tika_parser_characters_out_total", "Characters of content written, by parser class.", "counter");
+        for (Map.Entry<String, Series> e : new TreeMap<>(byParser).entrySet()) {
+            writeSample(writer, "tika_parser_characters_out_total", "parser", e.getKey(), e
+                    .getValue().charsOut.sum());
+        }
+
+        writeCounter(writer, "tika_restarts_total", "Restarts of the process that parses.", restarts.sum());
+        writeCounter(writer, "tika_timeouts_total", "Parses that timed out.", timeouts.sum());
+        writeCounter(writer, "tika_ooms_total", "Parses that ran out of memory.", ooms.sum());
+
+        writePoolMetrics(writer);
+    }
+
+    /**
+     * @return the class name of the last parser in
+     * {@link TikaCoreProperties#TIKA_PARSED_BY}, or {@link #UNKNOWN}
+     */
+    public static String getParser(Metadata metadata) {
+        String[] parsedBy = metadata.getValues(TikaCoreProperties.TIKA_PARSED_BY);
+        if (parsedBy.length == 0 || StringUtils.isBlank(parsedBy[parsedBy.length - 1])) {
+            return UNKNOWN;
+        }
+        return parsedBy[parsedBy.length - 1];
+    }
+
+    /**
+     * @return the content type without parameters, or {@link #UNKNOWN}
+     */
+    public static String getMimeType(Metadata metadata) {
+        String contentType = metadata.get(Metadata.CONTENT_TYPE);
+        if (StringUtils.isBlank(contentType)) {
+            return UNKNOWN;
+        }
+        int i = contentType.indexOf(';');
+        return (i > -1 ? contentType.substring(0, i) : contentType).trim();
+    }
+
+    private static Series getSeries(Map<String, Series> map, String label) {
+        Series series = map.get(label);
+        if (series != null) {
+            return series;
+        }
+        if (map.size() >= MAX_LABEL_VALUES) {
+            label = OTHER;
+        }
+        return map.computeIfAbsent(label, k -> new Series());
+    }
+
+    private static void writeHistograms(Writer writer, String name, String help, String labelName, Map<String, Series> map) throws IOException {
+        writeHeader(writer, name, help, "histogram");
+        for (Map.Entry<String, Series> e : new TreeMap<>(map).entrySet()) {
+            String label = labelName + "=\"" + escape(e.getKey()) + "\"";
+            Series series = e.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += series.buckets[i].sum();
+                writer.write(name + "_bucket{" + label + ",le=\"" + BUCKETS[i] + "\"} " + cumulative + "\n");
+            }
+            long count = series.count.sum();
+            writer.write(name + "_bucket{" + label + ",le=\"+Inf\"} " + count + "\n");
+            writer.write(name + "_sum{" + label + "} " + series.nanos.sum() / 1e9 + "\n");
+            writer.write(name + "_count{" + label + "} " + count + "\n");
+        }
+    }
+
+    private static void writePoolMetrics(Writer writer) throws IOException {
+        XMLReaderUtils.PoolMetrics sax = XMLReaderUtils.getSAXParserPoolMetrics();
+        XMLReaderUtils.PoolMetrics dom = XMLReaderUtils.getDOMBuilderPoolMetrics();
+        writeHeader(writer, "tika_xml_pool_hits_total", "XMLReaderUtils borrows served from the pool.", "counter");
+        writeSample(writer, "tika_xml_pool_hits_total", "pool", "sax", sax.getHits());
+        writeSample(writer, "tika_xml_pool_hits_total", "pool", "dom", dom.getHits());
+        writeHeader(writer, "tika_xml_pool_misses_total", "XMLReaderUtils borrows that had to build a new parser.", "counter");
+        writeSample(writer, "tika_xml_pool_misses_total", "pool", "sax", sax.getMisses());
+        writeSample(writer, "tika_xml_pool_misses_total", "pool", "dom", dom.getMisses());
+        writeHeader(writer, "tika_xml_pool_wait_seconds_total", "Time spent building parsers on pool misses.", "counter");
+        writeSample(writer, "tika_xml_pool_wait_seconds_total", "pool", "sax", sax.getWaitNanos() / 1e9);
+        writeSample(writer, "tika_xml_pool_wait_seconds_total", "pool", "dom", dom.getWaitNanos() / 1e9);
+        writeHeader(writer, "tika_xml_pool_idle", "Idle parsers in the XMLReaderUtils pool.", "gauge");
+        writeSample(writer, "tika_xml_pool_idle", "pool", "sax", sax.getIdle());
+        writeSample(writer, "tika_xml_pool_idle", "pool", "dom", dom.getIdle());
+        writeHeader(writer, "tika_xml_pool_in_use", "Borrowed parsers from the XMLReaderUtils pool.", "gauge");
+        writeSample(writer, "tika_xml_pool_in_use", "pool", "sax", sax.getInUse());
+        writeSample(writer, "tika_xml_pool_in_use", "pool", "dom", dom.getInUse());
+    }
+
+    /**
+     * Writes a counter without labels, with its HELP and TYPE lines.  Callers can use
+     * this to add their own metrics after {@link #write(Writer)}.
+     */
+    public static void writeCounter(Writer writer, String name, String help, double value) throws IOException {
+        writeHeader(writer, name, help, "counter");
+        writer.write(name + " " + format(value) + "\n");
+    }
+
+    /**
+     * Writes a gauge without labels, with its HELP and TYPE lines.  Callers can use
+     * this to add their own metrics after {@link #write(Writer)}.
+     */
+    public static void writeGauge(Writer writer, String name, String help, double value) throws IOException {
+        writeHeader(writer, name, help, "gauge");
+        writer.write(name + " " + format(value) + "\n");
+    }
+
+    private static void writeHeader(Writer writer, String name, String help, String type) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void writeSample(Writer writer, String name, String labelName, String labelValue, double value) throws IOException {
+        writer.write(name + "{" + labelName + "=\"" + escape(labelValue) + "\"} " + format(value) + "\n");
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static String escape(String labelValue) {
+        return labelValue
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    private static class Series {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder charsOut = new LongAdder();
+
+        Series() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            this.nanos.add(nanos);
+        }
+    }
+}
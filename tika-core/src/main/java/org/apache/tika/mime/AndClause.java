@@ -26,6 +26,10 @@ class AndClause implements Clause {
         this.clauses = clauses;
     }
 
+    Clause[] getClauses() {
+        return clauses;
+    }
+
     public boolean eval(byte[] data) {
         for (Clause clause : clauses) {
             if (!clause.eval(data)) {
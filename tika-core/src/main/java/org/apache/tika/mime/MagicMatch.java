@@ -48,7 +48,7 @@ class MagicMatch implements Clause {
         this.mask = mask;
     }
 
-    private synchronized MagicDetector getDetector() {
+    synchronized MagicDetector getDetector() {
         if (detector == null) {
             detector = MagicDetector.parse(mediaType, type, offset, value, mask);
         }
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tika.detect.MagicDetector;
+
+/**
+ * Precompiled index over a sorted list of {@link Magic}s.
+ * <p>
+ * For each magic, this works out the offsets and leading byte values that
+ * the data must have for the magic to have any chance of matching; e.g. a
+ * <code>string</code> match for "%PDF-" at offset 0 can only match if the
+ * first byte is '%'.  {@link #candidates(byte[])} looks up each indexed offset
+ * of the header once and returns the magics that are worth evaluating.
+ * Magics whose clauses can't be indexed (regular expressions, wide offset
+ * ranges, fully masked bytes) are always candidates.
+ * <p>
+ * The candidates keep the order of the magic list, so callers that walk
+ * them in order see the same priorities as a full scan.
+ */
+class MagicMatcher {
+
+    /**
+     * Offset ranges wider than this are not indexed.
+     */
+    private static final int MAX_INDEXED_RANGE = 64;
+
+    private final Magic[] magics;
+
+    /**
+     * Magics that can't be ruled out by the index.
+     */
+    private final BitSet alwaysCandidates = new BitSet();
+
+    /**
+     * Indexed offsets, in increasing order.
+     */
+    private final int[] offsets;
+
+    /**
+     * For each indexed offset, the magics to consider for each (unsigned) byte value
+     * at that offset; <code>null</code> if no magic has that byte there.
+     */
+    private final int[][][] candidatesByOffset;
+
+    MagicMatcher(List<Magic> sortedMagics) {
+        this.magics = sortedMagics.toArray(new Magic[0]);
+        Map<Integer, List<List<Integer>>> index = new TreeMap<>();
+        for (int i = 0; i < magics.length; i++) {
+            Map<Integer, boolean[]> filter = getFilter(magics[i].getClause());
+            if (filter == null) {
+                alwaysCandidates.set(i);
+                continue;
+            }
+            for (Map.Entry<Integer, boolean[]> e : filter.entrySet()) {
+                List<List<Integer>> byByte = index.computeIfAbsent(e.getKey(), k -> {
+                    List<List<Integer>> l = new ArrayList<>(256);
+                    for (int b = 0; b < 256; b++) {
+                        l.add(null);
+                    }
+                    return l;
+                });
+                boolean[] allowed = e.getValue();
+                for (int b = 0; b < 256; b++) {
+                    if (allowed[b]) {
+                        if (byByte.get(b) == null) {
+                            byByte.set(b, new ArrayList<>());
+                        }
+                        byByte.get(b).add(i);
+                    }
+                }
+            }
+        }
+        offsets = new int[index.size()];
+        candidatesByOffset = new int[index.size()][][];
+        int o = 0;
+        for (Map.Entry<Integer, List<List<Integer>>> e : index.entrySet()) {
+            offsets[o] = e.getKey();
+            int[][] byByte = new int[256][];
+            for (int b = 0; b < 256; b++) {
+                List<Integer> l = e.getValue().get(b);
+                if (l != null) {
+                    byByte[b] = l.stream().mapToInt(Integer::intValue).toArray();
+                }
+            }
+            candidatesByOffset[o++] = byByte;
+        }
+    }
+
+    /**
+     * @param data header of the document
+     * @return indexes into the magic list of the magics that might match
+     */
+    BitSet candidates(byte[] data) {
+        BitSet candidates = (BitSet) alwaysCandidates.clone();
+        for (int o = 0; o < offsets.length; o++) {
+            //MagicDetector zero-fills its window past the end of the data,
+            //so treat missing bytes as 0 rather than ruling the magic out
+            int b = offsets[o] < data.length ? data[offsets[o]] & 0xFF : 0;
+            int[] forByte = candidatesByOffset[o][b];
+            if (forByte != null) {
+                for (int i : forByte) {
+                    candidates.set(i);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    Magic get(int i) {
+        return magics[i];
+    }
+
+    int size() {
+        return magics.length;
+    }
+
+    /**
+     * Returns, for each offset, the byte values that the data must have there;
+     * the clause can only match if at least one of these offsets has one of its bytes.
+     * Returns <code>null</code> if the clause can't be indexed.
+     */
+    private static Map<Integer, boolean[]> getFilter(Clause clause) {
+        if (clause instanceof MagicMatch) {
+            return getFilter((MagicMatch) clause);
+        } else if (clause instanceof AndClause) {
+            //any one of the subclauses must hold; pick the one with the fewest offsets
+            Map<Integer, boolean[]> best = null;
+            for (Clause c : ((AndClause) clause).getClauses()) {
+                Map<Integer, boolean[]> filter = getFilter(c);
+                if (filter != null && (best == null || filter.size() < best.size())) {
+                    best = filter;
+                }
+            }
+            return best;
+        } else if (clause instanceof OrClause) {
+            return union(((OrClause) clause).getClauses());
+        } else if (clause instanceof MinShouldMatchClause) {
+            //at least one of the subclauses has to match
+            return union(((MinShouldMatchClause) clause).getClauses());
+        }
+        return null;
+    }
+
+    private static Map<Integer, boolean[]> union(List<Clause> clauses) {
+        Map<Integer, boolean[]> union = new TreeMap<>();
+        for (Clause c : clauses) {
+            Map<Integer, boolean[]> filter = getFilter(c);
+            if (filter == null) {
+                return null;
+            }
+            for (Map.Entry<Integer, boolean[]> e : filter.entrySet()) {
+                boolean[] allowed = union.computeIfAbsent(e.getKey(), k -> new boolean[256]);
+                for (int b = 0; b < 256; b++) {
+                    allowed[b] |= e.getValue()[b];
+                }
+            }
+        }
+        return union;
+    }
+
+    private static Map<Integer, boolean[]> getFilter(MagicMatch match) {
+        MagicDetector detector;
+        try {
+            detector = match.getDetector();
+        } catch (RuntimeException e) {
+            //let the full evaluation deal with a broken definition
+            return null;
+        }
+        boolean[] allowed = detector.getFirstByteFilter();
+        int begin = detector.getOffsetRangeBegin();
+        int end = detector.getOffsetRangeEnd();
+        if (allowed == null || end - begin > MAX_INDEXED_RANGE) {
+            return null;
+        }
+        Map<Integer, boolean[]> filter = new TreeMap<>();
+        for (int offset = begin; offset <= end; offset++) {
+            filter.put(offset, allowed);
+        }
+        return filter;
+    }
+}
@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -113,6 +114,10 @@ public final class MimeTypes implements Detector, Serializable {
      * Sorted list of all registered rootXML
      */
     private final List<MimeType> xmls = new ArrayList<>();
+    /**
+     * Index over {@link #magics}, (re)built lazily after the magics change
+     */
+    private transient volatile MagicMatcher magicMatcher;
 
     public MimeTypes() {
         rootMimeType = new MimeType(MediaType.OCTET_STREAM);
@@ -232,7 +237,10 @@ public final class MimeTypes implements Detector, Serializable {
         // Then, check for magic bytes
         List<MimeType> result = new ArrayList<>(1);
         int currentPriority = -1;
-        for (Magic magic : magics) {
+        MagicMatcher matcher = getMagicMatcher();
+        BitSet candidates = matcher.candidates(data);
+        for (int m = candidates.nextSetBit(0); m >= 0; m = candidates.nextSetBit(m + 1)) {
+            Magic magic = matcher.get(m);
             if (currentPriority > 0 && currentPriority > magic.getPriority()) {
                 break;
             }
@@ -266,7 +274,9 @@ public final class MimeTypes implements Detector, Serializable {
                         // So, if we got here, we might have a HTML file that's
                         //  invalid XML. So, try our HTML magics explicitly (TIKA-2419)
                         boolean isHTML = false;
-                        for (Magic magic : magics) {
+                        for (int m = candidates.nextSetBit(0); m >= 0;
+                                m = candidates.nextSetBit(m + 1)) {
+                            Magic magic = matcher.get(m);
                             if (!magic.getType().equals(htmlMimeType)) {
                                 continue;
                             }
@@ -480,6 +490,7 @@ public final class MimeTypes implements Detector, Serializable {
         // Update the magics index...
         if (type.hasMagic()) {
             magics.addAll(type.getMagics());
+            magicMatcher = null;
         }
 
         // Update the xml (xmlRoot) index...
@@ -501,6 +512,16 @@ public final class MimeTypes implements Detector, Serializable {
         }
         Collections.sort(magics);
         Collections.sort(xmls);
+        magicMatcher = new MagicMatcher(magics);
+    }
+
+    MagicMatcher getMagicMatcher() {
+        MagicMatcher matcher = magicMatcher;
+        if (matcher == null) {
+            matcher = new MagicMatcher(magics);
+            magicMatcher = matcher;
+        }
+        return matcher;
     }
 
     /**
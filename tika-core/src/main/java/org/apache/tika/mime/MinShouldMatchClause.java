@@ -49,6 +49,10 @@ class MinShouldMatchClause implements Clause {
         this.clauses = clauses;
     }
 
+    List<Clause> getClauses() {
+        return clauses;
+    }
+
     public boolean eval(byte[] data) {
         int matches = 0;
         for (Clause clause : clauses) {
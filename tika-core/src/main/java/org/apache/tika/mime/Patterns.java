@@ -17,11 +17,13 @@
 package org.apache.tika.mime;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 /**
  * Defines a MimeType pattern.
@@ -49,6 +51,15 @@ class Patterns implements Serializable {
      */
     private final SortedMap<String, MimeType> globs =
             new TreeMap<>(new LengthComparator());
+    /**
+     * Literal suffix that a name must end with to match a glob, keyed by the
+     * compiled glob. Java regex globs have no entry.
+     */
+    private final Map<String, String> globSuffixes = new HashMap<>();
+    /**
+     * The globs, compiled once; rebuilt lazily after a glob is added.
+     */
+    private transient volatile GlobMatcher globMatcher;
     private int minExtensionLength = Integer.MAX_VALUE;
     private int maxExtensionLength = 0;
 
@@ -80,7 +91,9 @@ class Patterns implements Serializable {
                 addExtension(extension, type);
                 type.addExtension(extension);
             } else {
-                addGlob(compile(pattern), type);
+                String glob = compile(pattern);
+                addGlob(glob, type);
+                globSuffixes.put(glob, literalSuffix(pattern));
             }
         }
     }
@@ -116,6 +129,7 @@ class Patterns implements Serializable {
         MimeType previous = globs.get(glob);
         if (previous == null || registry.isSpecializationOf(previous.getType(), type.getType())) {
             globs.put(glob, type);
+            globMatcher = null;
         } else if (previous == type ||
                 registry.isSpecializationOf(type.getType(), previous.getType())) {
             // do nothing
@@ -158,13 +172,30 @@ class Patterns implements Serializable {
         }
 
         // And finally, try complex regexp matching
-        for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
-            if (name.matches(entry.getKey())) {
-                return entry.getValue();
-            }
+        if (globs.isEmpty()) {
+            return null;
         }
+        return getGlobMatcher().matches(name);
+    }
 
-        return null;
+    private GlobMatcher getGlobMatcher() {
+        GlobMatcher matcher = globMatcher;
+        if (matcher == null) {
+            matcher = new GlobMatcher(globs, globSuffixes);
+            globMatcher = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * @return the literal characters at the end of the glob, after its last wildcard
+     */
+    private static String literalSuffix(String glob) {
+        int i = glob.length();
+        while (i > 0 && "*?[]".indexOf(glob.charAt(i - 1)) == -1) {
+            i--;
+        }
+        return glob.substring(i);
     }
 
     private String compile(String glob) {
@@ -187,6 +218,72 @@ class Patterns implements Serializable {
         return pattern.toString();
     }
 
+    /**
+     * The globs in priority order, compiled once, plus a trie of their literal
+     * suffixes keyed by reversed name characters, so that a name is only matched
+     * against the globs whose fixed ending it has.
+     */
+    private static final class GlobMatcher {
+
+        private final Pattern[] patterns;
+
+        private final MimeType[] types;
+
+        /**
+         * Globs without a literal suffix; these are always tried.
+         */
+        private final BitSet unindexed = new BitSet();
+
+        private final SuffixNode root = new SuffixNode();
+
+        GlobMatcher(SortedMap<String, MimeType> globs, Map<String, String> globSuffixes) {
+            patterns = new Pattern[globs.size()];
+            types = new MimeType[globs.size()];
+            int i = 0;
+            for (Map.Entry<String, MimeType> entry : globs.entrySet()) {
+                patterns[i] = Pattern.compile(entry.getKey());
+                types[i] = entry.getValue();
+                String suffix = globSuffixes.get(entry.getKey());
+                if (suffix == null || suffix.isEmpty()) {
+                    unindexed.set(i);
+                } else {
+                    SuffixNode node = root;
+                    for (int c = suffix.length() - 1; c >= 0; c--) {
+                        node = node.children.computeIfAbsent(suffix.charAt(c),
+                                k -> new SuffixNode());
+                    }
+                    node.globs.set(i);
+                }
+                i++;
+            }
+        }
+
+        MimeType matches(String name) {
+            BitSet candidates = (BitSet) unindexed.clone();
+            SuffixNode node = root;
+            for (int c = name.length() - 1; c >= 0 && node != null; c--) {
+                node = node.children.get(name.charAt(c));
+                if (node != null) {
+                    candidates.or(node.globs);
+                }
+            }
+            // candidates are visited in the order of the globs map, longest first
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (patterns[i].matcher(name).matches()) {
+                    return types[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class SuffixNode {
+
+        private final Map<Character, SuffixNode> children = new HashMap<>();
+
+        private final BitSet globs = new BitSet();
+    }
+
     private static final class LengthComparator implements Comparator<String>, Serializable {
 
         /**
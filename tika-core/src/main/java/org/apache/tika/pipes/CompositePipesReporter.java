@@ -47,6 +47,13 @@ public class CompositePipesReporter extends PipesReporter implements Initializab
         }
     }
 
+    @Override
+    public void reportQueueSizes(Map<String, Integer> queueSizes) {
+        for (PipesReporter reporter : pipesReporters) {
+            reporter.reportQueueSizes(queueSizes);
+        }
+    }
+
     @Override
     public boolean supportsTotalCount() {
         for (PipesReporter reporter : pipesReporters) {
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Property;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.Emitter;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
+import org.apache.tika.sax.ContentHandlerFactory;
+
+/**
+ * Recursive handler that sends each embedded document's metadata to an {@link Emitter}
+ * as soon as that embedded document has been parsed, rather than collecting
+ * the metadata for the whole container in memory as the
+ * {@link org.apache.tika.sax.RecursiveParserWrapperHandler} does.
+ * <p>
+ * Each embedded document is emitted as a single-element metadata list under
+ * <code>containerEmitKey-embeddedId</code>.  Only the container's metadata is
+ * held on to; it is available from {@link #getContainerMetadata()} after the parse
+ * and records how many embedded documents were emitted in {@link #EMITTED_EMBEDDED_COUNT}.
+ * <p>
+ * Because embedded documents are emitted before the parse completes, their
+ * {@link TikaCoreProperties#FINAL_EMBEDDED_RESOURCE_PATH} is not calculated, and a
+ * failure in the container can't prevent them from being emitted.
+ * <p>
+ * <b>NOTE: This handler must only be used with the {@link
+ * org.apache.tika.parser.RecursiveParserWrapper}</b>
+ */
+public class EmittingRecursiveParserWrapperHandler extends AbstractRecursiveParserWrapperHandler {
+
+    public final static Property EMITTED_EMBEDDED_COUNT = Property.internalInteger(
+            TikaCoreProperties.TIKA_META_PREFIX + "emitted_embedded_count");
+
+    private final MetadataFilter metadataFilter;
+    private final Emitter emitter;
+    private final String containerEmitKey;
+    private final ParseContext parseContext;
+
+    private int emitted = 0;
+    private Metadata containerMetadata;
+    private Exception emitException;
+
+    /**
+     * @param contentHandlerFactory factory for the content handlers
+     * @param maxEmbeddedResources  number of embedded resources that will be parsed
+     * @param metadataFilter        filter to apply to each embedded document's metadata
+     *                              before it is emitted
+     * @param emitter               emitter to send the embedded documents' metadata to
+     * @param containerEmitKey      emit key of the container document
+     * @param parseContext          parse context to pass to the emitter
+     */
+    public EmittingRecursiveParserWrapperHandler(ContentHandlerFactory contentHandlerFactory,
+                                                 int maxEmbeddedResources,
+                                                 MetadataFilter metadataFilter, Emitter emitter,
+                                                 String containerEmitKey,
+                                                 ParseContext parseContext) {
+        super(contentHandlerFactory, maxEmbeddedResources);
+        this.metadataFilter = metadataFilter;
+        this.emitter = emitter;
+        this.containerEmitKey = containerEmitKey;
+        this.parseContext = parseContext;
+    }
+
+    @Override
+    public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        super.endEmbeddedDocument(contentHandler, metadata);
+        if (emitException != null) {
+            //don't try to emit anything else once the emitter has failed
+            return;
+        }
+        addContent(contentHandler, metadata);
+        try {
+            metadataFilter.filter(metadata);
+        } catch (TikaException e) {
+            throw new SAXException(e);
+        }
+        if (metadata.size() == 0) {
+            return;
+        }
+        try {
+            emitter.emit(getEmitKey(metadata), Collections.singletonList(metadata), parseContext);
+            emitted++;
+        } catch (IOException | TikaEmitterException e) {
+            emitException = e;
+            //try to stop the parse; some parsers may swallow this
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        super.endDocument(contentHandler, metadata);
+        addContent(contentHandler, metadata);
+        metadata.set(EMITTED_EMBEDDED_COUNT, emitted);
+        containerMetadata = metadata;
+    }
+
+    /**
+     * @return the container document's metadata, or <code>null</code> if the parse
+     * hasn't completed
+     */
+    public Metadata getContainerMetadata() {
+        return containerMetadata;
+    }
+
+    /**
+     * @return the number of embedded documents that were emitted
+     */
+    public int getEmittedCount() {
+        return emitted;
+    }
+
+    /**
+     * @return the exception thrown by the emitter, or <code>null</code> if
+     * all embedded documents were emitted successfully
+     */
+    public Exception getEmitException() {
+        return emitException;
+    }
+
+    private String getEmitKey(Metadata metadata) {
+        String id = metadata.get(TikaCoreProperties.EMBEDDED_ID);
+        return containerEmitKey + "-" + (id == null ? Integer.toString(emitted + 1) : id);
+    }
+
+    private static void addContent(ContentHandler handler, Metadata metadata) {
+        //see RecursiveParserWrapperHandler: DefaultHandler's toString() is not content
+        if (handler.getClass().equals(DefaultHandler.class)) {
+            return;
+        }
+        String content = handler.toString();
+        if (content != null && !content.isBlank()) {
+            metadata.add(TikaCoreProperties.TIKA_CONTENT, content);
+            metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER,
+                    handler.getClass().getSimpleName());
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.tika.pipes;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Objects;
 
@@ -29,6 +31,10 @@ public class FetchEmitTuple implements Serializable {
 
     public static final ON_PARSE_EXCEPTION DEFAULT_ON_PARSE_EXCEPTION = ON_PARSE_EXCEPTION.EMIT;
 
+    public static final int DEFAULT_PRIORITY = 0;
+
+    public static final long UNKNOWN_SIZE = -1;
+
     public enum ON_PARSE_EXCEPTION {
         SKIP, EMIT
     }
@@ -42,6 +48,10 @@ public class FetchEmitTuple implements Serializable {
 
     private EmbeddedDocumentBytesConfig embeddedDocumentBytesConfig;
 
+    //these are only used to schedule the tuple, so they aren't sent to the forked server
+    private transient int priority = DEFAULT_PRIORITY;
+    private transient long size = UNKNOWN_SIZE;
+
     public FetchEmitTuple(String id, FetchKey fetchKey, EmitKey emitKey) {
         this(id, fetchKey, emitKey, new Metadata());
     }
@@ -89,6 +99,46 @@ public class FetchEmitTuple implements Serializable {
         return onParseException;
     }
 
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * The {@link org.apache.tika.pipes.async.AsyncProcessor} hands out tuples with
+     * a higher priority before those with a lower priority, e.g. so that interactive
+     * requests don't wait behind a bulk backfill.  This is only used for scheduling
+     * and is not sent to the forked server.
+     *
+     * @param priority higher is sooner; the default is {@link #DEFAULT_PRIORITY}
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * The length of the document, if the pipes iterator knows it before the
+     * document is fetched.  The {@link org.apache.tika.pipes.async.AsyncProcessor}
+     * uses this to send large documents to their own clients; see
+     * {@link org.apache.tika.pipes.async.AsyncConfig#setLargeDocumentThresholdBytes(long)}.
+     * Like the priority, this is only used for scheduling and is not sent to the
+     * forked server.
+     *
+     * @param size in bytes; the default is {@link #UNKNOWN_SIZE}
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        priority = DEFAULT_PRIORITY;
+        size = UNKNOWN_SIZE;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -102,7 +152,8 @@ public class FetchEmitTuple implements Serializable {
         return Objects.equals(id, that.id) && Objects.equals(fetchKey, that.fetchKey) && Objects.equals(emitKey, that.emitKey)
                 && Objects.equals(metadata, that.metadata) &&
                 Objects.equals(parseContext, that.parseContext) && onParseException == that.onParseException &&
-                Objects.equals(embeddedDocumentBytesConfig, that.embeddedDocumentBytesConfig);
+                Objects.equals(embeddedDocumentBytesConfig, that.embeddedDocumentBytesConfig) &&
+                priority == that.priority && size == that.size;
     }
 
     @Override
@@ -114,6 +165,8 @@ public class FetchEmitTuple implements Serializable {
         result = 31 * result + Objects.hashCode(parseContext);
         result = 31 * result + Objects.hashCode(onParseException);
         result = 31 * result + Objects.hashCode(embeddedDocumentBytesConfig);
+        result = 31 * result + priority;
+        result = 31 * result + Long.hashCode(size);
         return result;
     }
 
@@ -121,6 +174,7 @@ public class FetchEmitTuple implements Serializable {
     public String toString() {
         return "FetchEmitTuple{" + "id='" + id + '\'' + ", fetchKey=" + fetchKey + ", emitKey=" + emitKey +
                 ", metadata=" + metadata + ", parseContext=" + parseContext +
-                ", onParseException=" + onParseException + ", embeddedDocumentBytesConfig=" + embeddedDocumentBytesConfig + '}';
+                ", onParseException=" + onParseException + ", embeddedDocumentBytesConfig=" + embeddedDocumentBytesConfig +
+                ", priority=" + priority + ", size=" + size + '}';
     }
 }
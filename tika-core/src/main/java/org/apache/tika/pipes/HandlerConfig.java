@@ -44,10 +44,18 @@ public class HandlerConfig implements Serializable {
      * contents of embedded files and returns a single metadata object for the file no
      * matter how many embedded objects there are; this option throws away metadata from
      * embedded objects and silently skips exceptions in embedded objects.
+     *
+     * {@link PARSE_MODE#RMETA_STREAMING} is the same as {@link PARSE_MODE#RMETA} except
+     * that, in the pipes server, each embedded file is emitted as soon as it has been
+     * parsed instead of being held in memory until the whole container has been parsed.
+     * The container file is emitted last.  See {@link EmittingRecursiveParserWrapperHandler}.
+     * If the pipes server is not allowed to emit (<code>maxForEmitBatchBytes &lt; 0</code>),
+     * this behaves like {@link PARSE_MODE#RMETA}.
      */
     public enum PARSE_MODE {
         RMETA,
-        CONCATENATE;
+        CONCATENATE,
+        RMETA_STREAMING;
 
         public static PARSE_MODE parseMode(String modeString) {
             for (PARSE_MODE m : PARSE_MODE.values()) {
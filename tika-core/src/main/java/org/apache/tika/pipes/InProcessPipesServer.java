@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.config.TikaTaskTimeout;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.pipes.fetcher.Fetcher;
+
+/**
+ * PipesServer that runs on a thread inside the PipesClient's JVM instead of in a
+ * forked process; see {@link PipesConfigBase#setInProcess(boolean)}.
+ * <p>
+ * This is loaded in its own classloader by {@link InProcessPipesServerProcess} and
+ * only shares JDK types with the client: the protocol is the same as with
+ * the forked server, over in-memory pipes.  Instead of exiting the JVM, this reports
+ * its exit code to the client and unwinds its threads.
+ * <p>
+ * A thread can't be killed safely, so a parse that has timed out or gone over
+ * its allocation budget is interrupted and then abandoned.  A parser that ignores the
+ * interrupt keeps its thread, and its classloader, until it finishes.
+ */
+public class InProcessPipesServer extends PipesServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InProcessPipesServer.class);
+
+    private final long serverParseTimeoutMillis;
+    private final long allocationBudgetBytes;
+    private final IntConsumer onExit;
+    //false if there's no budget or the JVM can't measure it
+    private final boolean measureAllocations;
+    private volatile long parsingThreadId = -1;
+    //allocated bytes of the parsing thread when the current parse started, -1 if not parsing
+    private volatile long allocatedAtStart = -1;
+
+    /**
+     * @param allocationBudgetBytes maximum number of bytes that the parsing thread may
+     *                              allocate while parsing a single document, or
+     *                              <code>-1</code> for no limit
+     * @param onExit                called with the exit code when the server stops
+     */
+    public InProcessPipesServer(Path tikaConfigPath, InputStream in, OutputStream out,
+                                long maxForEmitBatchBytes, long serverParseTimeoutMillis,
+                                long serverWaitTimeoutMillis, int requestedSerializationVersion,
+                                long allocationBudgetBytes, IntConsumer onExit)
+            throws IOException, TikaException, SAXException {
+        super(tikaConfigPath, in, new PrintStream(out, false, StandardCharsets.UTF_8),
+                maxForEmitBatchBytes, serverParseTimeoutMillis, serverWaitTimeoutMillis,
+                requestedSerializationVersion);
+        this.serverParseTimeoutMillis = serverParseTimeoutMillis;
+        this.allocationBudgetBytes = allocationBudgetBytes;
+        this.onExit = onExit;
+        this.measureAllocations = canMeasureAllocations(allocationBudgetBytes);
+    }
+
+    /**
+     * Processes requests on the current thread until the server exits.
+     */
+    public void serve() {
+        Thread watchdog = new Thread(this, "Tika Watchdog " + Thread.currentThread().getName());
+        watchdog.setDaemon(true);
+        watchdog.start();
+        try {
+            processRequests();
+        } catch (ServerExit e) {
+            //this is how the server stops
+        } finally {
+            watchdog.interrupt();
+            //no-op if the server has already exited
+            onExit.accept(0);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } catch (ServerExit e) {
+            //the watchdog stopped the server
+        }
+    }
+
+    @Override
+    protected MetadataListAndEmbeddedBytes parseFromTuple(FetchEmitTuple t, Fetcher fetcher) {
+        //let parsers that run external processes know how long they have
+        if (t.getParseContext().get(TikaTaskTimeout.class) == null) {
+            t.getParseContext().set(TikaTaskTimeout.class,
+                    new TikaTaskTimeout(serverParseTimeoutMillis));
+        }
+        if (measureAllocations) {
+            parsingThreadId = Thread.currentThread().getId();
+            allocatedAtStart = ThreadAllocations.getAllocatedBytes(parsingThreadId);
+        }
+        try {
+            return super.parseFromTuple(t, fetcher);
+        } finally {
+            allocatedAtStart = -1;
+        }
+    }
+
+    @Override
+    protected boolean exceedsResourceLimits() {
+        long start = allocatedAtStart;
+        if (!measureAllocations || start < 0) {
+            return false;
+        }
+        long allocated = ThreadAllocations.getAllocatedBytes(parsingThreadId) - start;
+        if (allocated > allocationBudgetBytes) {
+            LOG.warn("parse allocated {} bytes; allocation budget is {}", allocated,
+                    allocationBudgetBytes);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void exit(int exitCode) {
+        if (exitCode != 0) {
+            LOG.error("exiting: {}", exitCode);
+        } else {
+            LOG.info("exiting: {}", exitCode);
+        }
+        onExit.accept(exitCode);
+        throw new ServerExit();
+    }
+
+    private static boolean canMeasureAllocations(long allocationBudgetBytes) {
+        if (allocationBudgetBytes < 0) {
+            return false;
+        }
+        if (ThreadAllocations.isSupported()) {
+            return true;
+        }
+        LOG.warn("This JVM can't measure allocated memory per thread; " +
+                "the in-process allocation budget will not be enforced");
+        return false;
+    }
+}
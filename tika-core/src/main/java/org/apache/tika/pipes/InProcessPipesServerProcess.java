@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stands in for the forked process when the PipesClient runs its server
+ * in-process; see {@link PipesConfigBase#setInProcess(boolean)}.
+ * <p>
+ * The {@link InProcessPipesServer} runs on its own thread and talks to the
+ * client over in-memory pipes.  It is loaded in a child-first classloader over
+ * the JVM's classpath so that parser state is not shared with the client and can be
+ * dropped by dropping the classloader.  Servers share a classloader until
+ * it has been handed out <code>numClients</code> times; after that, restarted
+ * servers (e.g. after <code>maxFilesProcessedPerProcess</code>) get a new one, and
+ * the old one is closed when its last server exits.
+ */
+class InProcessPipesServerProcess extends Process {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InProcessPipesServerProcess.class);
+
+    private static final String SERVER_CLASS = "org.apache.tika.pipes.InProcessPipesServer";
+
+    //same as a forked process that has been killed
+    private static final int DESTROYED_EXIT_CODE = 137;
+
+    private static final int PIPE_BUFFER_SIZE = 65536;
+
+    private static ParserClassLoader CURRENT_CLASS_LOADER = null;
+
+    private final BytePipe toServer = new BytePipe();
+    private final BytePipe fromServer = new BytePipe();
+    private final CountDownLatch exited = new CountDownLatch(1);
+    private final Thread serverThread;
+    private volatile int exitValue;
+
+    private InProcessPipesServerProcess(PipesConfigBase pipesConfig, int pipesClientId) {
+        ParserClassLoader classLoader = acquireClassLoader(pipesConfig.getNumClients());
+        serverThread = new Thread(() -> serve(pipesConfig, classLoader),
+                "in-process-pipes-server-" + pipesClientId);
+        serverThread.setDaemon(true);
+        serverThread.setContextClassLoader(classLoader);
+    }
+
+    static InProcessPipesServerProcess start(PipesConfigBase pipesConfig, int pipesClientId) {
+        InProcessPipesServerProcess process =
+                new InProcessPipesServerProcess(pipesConfig, pipesClientId);
+        process.serverThread.start();
+        return process;
+    }
+
+    private void serve(PipesConfigBase pipesConfig, ParserClassLoader classLoader) {
+        try {
+            Class<?> serverClass = classLoader.loadClass(SERVER_CLASS);
+            Object server = serverClass.getConstructor(Path.class, InputStream.class,
+                    OutputStream.class, long.class, long.class, long.class, int.class,
+                    long.class, IntConsumer.class).newInstance(
+                    pipesConfig.getTikaConfig().toAbsolutePath(), toServer.getInputStream(),
+                    fromServer.getOutputStream(), pipesConfig.getMaxForEmitBatchBytes(),
+                    pipesConfig.getTimeoutMillis(), pipesConfig.getShutdownClientAfterMillis(),
+                    pipesConfig.getPipesSerializationVersion(),
+                    pipesConfig.getInProcessAllocationBudgetBytes(), (IntConsumer) this::onExit);
+            serverClass.getMethod("serve").invoke(server);
+        } catch (InvocationTargetException e) {
+            LOG.error("in-process server failed", e.getCause());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.error("couldn't start in-process server", e);
+        } finally {
+            //no-op if the server has already exited
+            onExit(1);
+            releaseClassLoader(classLoader);
+        }
+    }
+
+    private void onExit(int exitCode) {
+        synchronized (exited) {
+            if (exited.getCount() == 0) {
+                return;
+            }
+            exitValue = exitCode;
+            exited.countDown();
+        }
+        toServer.close();
+        fromServer.close();
+        if (Thread.currentThread() != serverThread) {
+            //e.g. the server's watchdog or the client: stop the parse if we can
+            serverThread.interrupt();
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return toServer.getOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return fromServer.getInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        exited.await();
+        return exitValue;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return exited.await(timeout, unit);
+    }
+
+    @Override
+    public int exitValue() {
+        if (exited.getCount() > 0) {
+            throw new IllegalThreadStateException("in-process server has not exited");
+        }
+        return exitValue;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return exited.getCount() > 0;
+    }
+
+    @Override
+    public void destroy() {
+        onExit(DESTROYED_EXIT_CODE);
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        destroy();
+        return this;
+    }
+
+    private static synchronized ParserClassLoader acquireClassLoader(int maxServers) {
+        if (CURRENT_CLASS_LOADER == null || CURRENT_CLASS_LOADER.servers >= maxServers) {
+            if (CURRENT_CLASS_LOADER != null) {
+                retire(CURRENT_CLASS_LOADER);
+            }
+            CURRENT_CLASS_LOADER = new ParserClassLoader(getClassPath(),
+                    InProcessPipesServerProcess.class.getClassLoader());
+            LOG.debug("created new parser classloader");
+        }
+        CURRENT_CLASS_LOADER.servers++;
+        CURRENT_CLASS_LOADER.active++;
+        return CURRENT_CLASS_LOADER;
+    }
+
+    private static synchronized void releaseClassLoader(ParserClassLoader classLoader) {
+        classLoader.active--;
+        if (classLoader != CURRENT_CLASS_LOADER) {
+            retire(classLoader);
+        }
+    }
+
+    private static void retire(ParserClassLoader classLoader) {
+        if (classLoader.active > 0) {
+            return;
+        }
+        try {
+            classLoader.close();
+            LOG.debug("closed parser classloader");
+        } catch (IOException e) {
+            LOG.warn("couldn't close parser classloader", e);
+        }
+    }
+
+    private static URL[] getClassPath() {
+        List<URL> urls = new ArrayList<>();
+        for (String element : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (element.isEmpty()) {
+                continue;
+            }
+            try {
+                urls.add(Paths.get(element).toAbsolutePath().toUri().toURL());
+            } catch (IOException e) {
+                LOG.warn("skipping classpath element: " + element, e);
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Loads classes from its own urls before asking its parent, except for
+     * the JDK's APIs and logging, which are shared with the client.
+     */
+    private static class ParserClassLoader extends URLClassLoader {
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        private static final String[] SHARED_PREFIXES = new String[]{"java.", "javax.", "jdk.",
+                "sun.", "com.sun.", "org.w3c.", "org.xml.sax.", "org.slf4j.",
+                "org.apache.logging.", "org.apache.log4j."};
+
+        //servers that this classloader has been handed out to, and those still running
+        private int servers = 0;
+        private int active = 0;
+
+        ParserClassLoader(URL[] urls, ClassLoader parent) {
+            super("tika-in-process-parsers", urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (String prefix : SHARED_PREFIXES) {
+                if (name.startsWith(prefix)) {
+                    return super.loadClass(name, resolve);
+                }
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Blocking in-memory pipe.  Unlike {@link java.io.PipedInputStream}, this doesn't
+     * tie either end to a thread, which matters because the client reads and
+     * writes from pooled threads.  Once it is closed, reads drain what is left in
+     * the buffer and then return <code>-1</code>, and writes fail.
+     */
+    private static class BytePipe {
+
+        private final byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+        private int readPos = 0;
+        private int count = 0;
+        private boolean closed = false;
+
+        private final InputStream inputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return BytePipe.this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return BytePipe.this.read(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                BytePipe.this.close();
+            }
+        };
+
+        private final OutputStream outputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                BytePipe.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                BytePipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                BytePipe.this.close();
+            }
+        };
+
+        InputStream getInputStream() {
+            return inputStream;
+        }
+
+        OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (count == 0 && !closed) {
+                await();
+            }
+            if (count == 0) {
+                return -1;
+            }
+            int n = Math.min(len, Math.min(count, buffer.length - readPos));
+            System.arraycopy(buffer, readPos, b, off, n);
+            readPos = (readPos + n) % buffer.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                while (count == buffer.length && !closed) {
+                    await();
+                }
+                if (closed) {
+                    throw new IOException("pipe closed");
+                }
+                int writePos = (readPos + count) % buffer.length;
+                int n = Math.min(len,
+                        Math.min(buffer.length - count, buffer.length - writePos));
+                System.arraycopy(b, off, buffer, writePos, n);
+                count += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting on pipe");
+            }
+        }
+    }
+}
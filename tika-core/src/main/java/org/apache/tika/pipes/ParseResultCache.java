@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.Tika;
+import org.apache.tika.config.ConfigBase;
+import org.apache.tika.config.TikaTaskTimeout;
+import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.metadata.listfilter.MetadataListFilter;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.extractor.EmbeddedDocumentBytesConfig;
+
+/**
+ * Local, disk-backed cache of parse results for the {@link PipesServer}, keyed by
+ * the digests of the bytes that were parsed.  When a byte-identical document
+ * comes through again, e.g. another copy of the same email, the server returns
+ * the metadata list that it extracted the first time instead of parsing the
+ * document again.
+ * <p>
+ * Only whole documents that were fetched are cached, with everything that was
+ * extracted from their attachments.  The attachments themselves, and the
+ * entries of zips and other containers, are not looked up on their own: a
+ * duplicate attachment in two different emails is parsed in each of them.
+ * <p>
+ * This only works if a digester is configured in the
+ * <code>autoDetectParserConfig</code>, because the digests are the key.  The key
+ * also includes the Tika version, the bytes of the tika-config file and the
+ * {@link HandlerConfig} of the request, so a change to any of those misses the
+ * entries that were made before it.  Requests with anything else in their
+ * {@link ParseContext} that could change the output are not cached at all; see
+ * {@link #isCacheable(ParseContext)}.
+ * <p>
+ * For the container document, an entry only holds what the parse added to its
+ * metadata.  On a hit, that is applied on top of what was fetched, digested and
+ * detected for the copy at hand, so nothing that is specific to the first copy,
+ * e.g. its path, carries over.
+ * <p>
+ * Entries are files in the cache directory, which may be shared by the forked
+ * servers and kept across runs.  When the directory grows over
+ * <code>maxBytes</code>, the entries that were least recently used are deleted.
+ * <p>
+ * Configure this in the tika-config file:
+ * <pre>
+ * &lt;parseResultCache&gt;
+ *   &lt;params&gt;
+ *     &lt;directory&gt;/data/tika-cache&lt;/directory&gt;
+ *     &lt;maxBytes&gt;10000000000&lt;/maxBytes&gt;
+ *   &lt;/params&gt;
+ * &lt;/parseResultCache&gt;
+ * </pre>
+ */
+public class ParseResultCache extends ConfigBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParseResultCache.class);
+
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024L * 1024L;
+
+    static final String ENTRY_SUFFIX = ".entry";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String DIGEST_PREFIX =
+            TikaCoreProperties.TIKA_META_PREFIX + "digest" +
+                    TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER;
+
+    //entries of version 1 held the whole container metadata
+    private static final int FORMAT_VERSION = 2;
+
+    //these don't change what the parser extracts, or they're part of the key
+    private static final Set<String> NEUTRAL_CONTEXT_KEYS = Set.of(
+            HandlerConfig.class.getName(),
+            EmbeddedDocumentBytesConfig.class.getName(),
+            MetadataFilter.class.getName(),
+            MetadataListFilter.class.getName(),
+            TikaTaskTimeout.class.getName());
+
+    //after an eviction, the cache is this fraction of maxBytes
+    private static final double LOW_WATER_MARK = 0.9;
+
+    //temp files that are older than this were left by a process that died
+    private static final long STALE_TMP_MILLIS = 3600_000;
+
+    private Path directory;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private String configFingerprint = "";
+    //an estimate because other servers may share the directory; -1 until it's been measured
+    private long estimatedBytes = -1;
+
+    /**
+     * @return the cache that is configured in <code>tikaConfig</code> or
+     * <code>null</code> if there isn't one
+     */
+    public static ParseResultCache load(Path tikaConfig) throws IOException, TikaConfigException {
+        ParseResultCache cache = new ParseResultCache();
+        try (InputStream is = Files.newInputStream(tikaConfig)) {
+            cache.configure("parseResultCache", is);
+        }
+        if (cache.directory == null) {
+            return null;
+        }
+        cache.setConfigFingerprint(Files.readAllBytes(tikaConfig));
+        return cache;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        setDirectory(Paths.get(directory));
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes how large the cache directory can get before the least
+     *                 recently used entries are deleted
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Entries that were made with other configuration bytes are not returned.
+     */
+    void setConfigFingerprint(byte[] tikaConfigBytes) {
+        this.configFingerprint = Tika.getString() + "\n" +
+                sha256(new String(tikaConfigBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the digests in the metadata as a single string, or <code>null</code>
+     * if the document hasn't been digested
+     */
+    static String getDigestKey(Metadata metadata) {
+        String[] names = Arrays.stream(metadata.names())
+                .filter(n -> n.startsWith(DIGEST_PREFIX)).sorted().toArray(String[]::new);
+        if (names.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String n : names) {
+            sb.append(n).append('=').append(metadata.get(n)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * There's no stable way to fingerprint the objects that a request can put in
+     * its {@link ParseContext}, e.g. a per-request parser config, so the
+     * results of requests with anything in their context other than the
+     * {@link HandlerConfig}, the metadata filters (which are applied after
+     * the cache) and a task timeout aren't cached.  Nor are those that extract
+     * the embedded bytes, because those are a side effect of the parse.
+     *
+     * @param parseContext the request's context, before the server adds to it
+     */
+    static boolean isCacheable(ParseContext parseContext) {
+        for (String key : parseContext.keySet()) {
+            if (!NEUTRAL_CONTEXT_KEYS.contains(key)) {
+                return false;
+            }
+        }
+        EmbeddedDocumentBytesConfig embeddedDocumentBytesConfig =
+                parseContext.get(EmbeddedDocumentBytesConfig.class);
+        return embeddedDocumentBytesConfig == null ||
+                !embeddedDocumentBytesConfig.isExtractEmbeddedDocumentBytes();
+    }
+
+    /**
+     * @return the metadata that the parse added to or changed in the container,
+     * i.e. the names whose values in <code>parsed</code> differ from those in
+     * <code>preParse</code>
+     */
+    static Metadata getParseOutput(Metadata preParse, Metadata parsed) {
+        Metadata output = new Metadata();
+        for (String n : parsed.names()) {
+            String[] values = parsed.getValues(n);
+            if (!Arrays.equals(values, preParse.getValues(n))) {
+                for (String v : values) {
+                    output.add(n, v);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * @return the metadata list that was cached for the digests and handler config,
+     * or <code>null</code> if there isn't one
+     */
+    List<Metadata> get(String digestKey, HandlerConfig handlerConfig) {
+        String key = getKey(digestKey, handlerConfig);
+        Path entry = getPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (ObjectInputStream is = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(entry)))) {
+            int version = is.readInt();
+            if (version != FORMAT_VERSION || !key.equals(is.readUTF())) {
+                LOG.debug("skipping cache entry from another version: {}", entry);
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            List<Metadata> metadataList = (List<Metadata>) is.readObject();
+            touch(entry);
+            return metadataList;
+        } catch (NoSuchFileException e) {
+            //evicted by another server
+            return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOG.warn("deleting unreadable cache entry: {}", entry, e);
+            deleteQuietly(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the metadata list to the cache, with only the parse output for the
+     * container; see {@link #getParseOutput(Metadata, Metadata)}.  This doesn't
+     * throw; the worst case is that the document is parsed again next time.
+     *
+     * @param preParse the container's metadata from before the parse
+     */
+    void put(String digestKey, HandlerConfig handlerConfig, List<Metadata> metadataList,
+             Metadata preParse) {
+        List<Metadata> entry = new ArrayList<>(metadataList);
+        entry.set(0, getParseOutput(preParse, metadataList.get(0)));
+        put(digestKey, handlerConfig, entry);
+    }
+
+    /**
+     * Writes the metadata list to the cache as it is.
+     */
+    void put(String digestKey, HandlerConfig handlerConfig, List<Metadata> metadataList) {
+        String key = getKey(digestKey, handlerConfig);
+        Path entry = getPath(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(),
+                    TMP_SUFFIX);
+            try (ObjectOutputStream os = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                os.writeInt(FORMAT_VERSION);
+                os.writeUTF(key);
+                os.writeObject(new ArrayList<>(metadataList));
+            }
+            long size = Files.size(tmp);
+            //readers only ever see complete entries
+            Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+            addBytes(size);
+        } catch (IOException e) {
+            LOG.warn("couldn't write cache entry: {}", entry, e);
+        } finally {
+            if (tmp != null) {
+                deleteQuietly(tmp);
+            }
+        }
+    }
+
+    private void addBytes(long size) throws IOException {
+        if (estimatedBytes < 0) {
+            estimatedBytes = evict(Long.MAX_VALUE);
+        } else {
+            estimatedBytes += size;
+        }
+        if (estimatedBytes > maxBytes) {
+            estimatedBytes = evict((long) (maxBytes * LOW_WATER_MARK));
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is no bigger than
+     * <code>targetBytes</code>.
+     *
+     * @return the size of the cache afterwards
+     */
+    long evict(long targetBytes) throws IOException {
+        List<CacheFile> entries = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Path p : paths.collect(Collectors.toList())) {
+                String name = p.getFileName().toString();
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(new CacheFile(p, attrs.size(),
+                            attrs.lastModifiedTime().toMillis()));
+                } else if (name.endsWith(TMP_SUFFIX) &&
+                        now - attrs.lastModifiedTime().toMillis() > STALE_TMP_MILLIS) {
+                    deleteQuietly(p);
+                }
+            }
+        }
+        long total = 0;
+        for (CacheFile f : entries) {
+            total += f.size;
+        }
+        if (total <= targetBytes) {
+            return total;
+        }
+        entries.sort(Comparator.comparingLong(f -> f.lastUsed));
+        int deleted = 0;
+        for (CacheFile f : entries) {
+            if (total <= targetBytes) {
+                break;
+            }
+            deleteQuietly(f.path);
+            total -= f.size;
+            deleted++;
+        }
+        LOG.debug("evicted {} entries from {}; {} bytes left", deleted, directory, total);
+        return total;
+    }
+
+    private String getKey(String digestKey, HandlerConfig handlerConfig) {
+        return configFingerprint + "\n" + handlerConfig + "\n" + digestKey;
+    }
+
+    private Path getPath(String key) {
+        String hash = sha256(key);
+        //spread the entries over subdirectories so that no directory gets too large
+        return directory.resolve(hash.substring(0, 2)).resolve(hash + ENTRY_SUFFIX);
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.debug("couldn't update last used time: {}", entry, e);
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            LOG.warn("couldn't delete {}", p, e);
+        }
+    }
+
+    private static String sha256(String s) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(s.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class CacheFile {
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        private CacheFile(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
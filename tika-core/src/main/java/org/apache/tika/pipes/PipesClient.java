@@ -16,6 +16,7 @@
  */
 package org.apache.tika.pipes;
 
+import static org.apache.tika.pipes.PipesServer.RESOURCE_LIMIT_EXIT_CODE;
 import static org.apache.tika.pipes.PipesServer.STATUS.CALL;
 import static org.apache.tika.pipes.PipesServer.STATUS.PING;
 import static org.apache.tika.pipes.PipesServer.STATUS.READY;
@@ -26,22 +27,24 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +54,8 @@ import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.utils.ClassDataSharingUtils;
+import org.apache.tika.utils.ConcurrentUtils;
 import org.apache.tika.utils.ProcessUtils;
 import org.apache.tika.utils.StringUtils;
 
@@ -59,6 +64,9 @@ import org.apache.tika.utils.StringUtils;
  * a single thread for {@link #process(FetchEmitTuple)} processing.
  * See {@link org.apache.tika.pipes.async.AsyncProcessor} for handling
  * multiple PipesClients.
+ * <p>
+ * {@link #process(List)} can pipeline several tuples to the forked process;
+ * see {@link PipesConfigBase#setMaxInFlightPerClient(int)}.
  */
 public class PipesClient implements Closeable {
 
@@ -71,17 +79,47 @@ public class PipesClient implements Closeable {
     //single threaded
     private final Object[] executorServiceLock = new Object[0];
     private final PipesConfigBase pipesConfig;
+    private final List<String> forkedJvmArgs;
     private final int pipesClientId;
     private volatile boolean closed = false;
-    private ExecutorService executorService = Executors.newFixedThreadPool(1);
+    private ExecutorService executorService;
+    //only used to write tuples ahead of the one being parsed in pipelined mode
+    private ExecutorService writerService;
     private Process process;
+    //the spare server, if warm standby is on; these are guarded by executorServiceLock
+    //because close() can be called from another thread than restart()
+    private Future<ServerProcess> standby;
+    private Future<?> standbyKeepAlive;
+    private ExecutorService standbyService;
+    private ScheduledExecutorService standbyPinger;
     private DataOutputStream output;
     private DataInputStream input;
+    private PipesMessageCodec codec;
     private int filesProcessed = 0;
+    private int requestCounter = 0;
 
     public PipesClient(PipesConfigBase pipesConfig) {
+        this(pipesConfig, pipesConfig.getForkedJvmArgs());
+    }
+
+    /**
+     * @param forkedJvmArgs the jvm args for this client's forked process, which
+     *                      replace {@link PipesConfigBase#getForkedJvmArgs()}
+     */
+    public PipesClient(PipesConfigBase pipesConfig, List<String> forkedJvmArgs) {
         this.pipesConfig = pipesConfig;
+        this.forkedJvmArgs = new ArrayList<>(forkedJvmArgs);
         this.pipesClientId = CLIENT_COUNTER.getAndIncrement();
+        this.executorService = newSingleThreadExecutor();
+    }
+
+    private ExecutorService newSingleThreadExecutor() {
+        if (pipesConfig.isUseVirtualThreads()) {
+            //still one thread at a time: the tasks share the streams to the server
+            return Executors.newSingleThreadExecutor(ConcurrentUtils.newIOThreadFactory(
+                    "pipes-client-" + pipesClientId + "-", true));
+        }
+        return Executors.newFixedThreadPool(1);
     }
 
     public int getFilesProcessed() {
@@ -89,6 +127,11 @@ public class PipesClient implements Closeable {
     }
 
     private boolean ping() {
+        return ping(process, input, output);
+    }
+
+    private static boolean ping(Process process, DataInputStream input,
+                                DataOutputStream output) {
         if (process == null || !process.isAlive()) {
             return false;
         }
@@ -107,6 +150,11 @@ public class PipesClient implements Closeable {
 
     @Override
     public void close() throws IOException {
+        synchronized (executorServiceLock) {
+            //so that a restart on another thread doesn't start a new spare after this
+            closed = true;
+        }
+        discardStandby();
         if (process != null) {
             try {
                 destroyForcibly();
@@ -118,11 +166,149 @@ public class PipesClient implements Closeable {
             if (executorService != null) {
                 executorService.shutdownNow();
             }
-            closed = true;
+            if (writerService != null) {
+                writerService.shutdownNow();
+            }
+            if (standbyService != null) {
+                standbyService.shutdownNow();
+            }
+            if (standbyPinger != null) {
+                standbyPinger.shutdownNow();
+            }
         }
     }
 
     public PipesResult process(FetchEmitTuple t) throws IOException, InterruptedException {
+        restartIfNecessary();
+        return actuallyProcess(t);
+    }
+
+    /**
+     * Processes the tuples in order and returns one result per tuple.
+     * <p>
+     * If {@link PipesConfigBase#getMaxInFlightPerClient()} is greater than 1, up to that
+     * many tuples are written to the forked process, tagged with request ids, so that the
+     * server can start on the next document as soon as it has written the result for the
+     * current one.  The timeout is still applied to each document separately.  If the
+     * server times out, runs out of memory or crashes on a document, only that document
+     * gets the failed result; the tuples queued behind it were never started, and they
+     * are resent to the restarted server.
+     *
+     * @param tuples tuples to process
+     * @return the results in the same order as the tuples
+     */
+    public List<PipesResult> process(List<FetchEmitTuple> tuples)
+            throws IOException, InterruptedException {
+        return process(tuples, null);
+    }
+
+    /**
+     * Same as {@link #process(List)}, but the listener is also called with each
+     * result as soon as it has been read, along with the time that the server spent
+     * on that document alone.  A tuple that was written ahead is timed from when the
+     * server could start on it, i.e. when the result for the tuple before it was read,
+     * not from when it was written.
+     *
+     * @param listener may be <code>null</code>
+     */
+    public List<PipesResult> process(List<FetchEmitTuple> tuples, ResultListener listener)
+            throws IOException, InterruptedException {
+        List<PipesResult> results = new ArrayList<>(tuples.size());
+        int maxInFlight = pipesConfig.getMaxInFlightPerClient();
+        if (maxInFlight <= 1) {
+            for (FetchEmitTuple t : tuples) {
+                long start = System.currentTimeMillis();
+                PipesResult result = process(t);
+                results.add(result);
+                if (listener != null) {
+                    listener.onResult(t, result, System.currentTimeMillis() - start);
+                }
+            }
+            return results;
+        }
+        Deque<InFlightRequest> inFlight = new ArrayDeque<>();
+        int next = 0;
+        long lastResult = System.currentTimeMillis();
+        while (results.size() < tuples.size()) {
+            if (inFlight.isEmpty()) {
+                restartIfNecessary();
+            }
+            while (next < tuples.size() && inFlight.size() < maxInFlight &&
+                    !hitMaxFilesProcessed(filesProcessed + inFlight.size())) {
+                InFlightRequest request = new InFlightRequest(tuples.get(next++),
+                        requestCounter++, System.currentTimeMillis());
+                writeAhead(request);
+                inFlight.add(request);
+            }
+            InFlightRequest request = inFlight.poll();
+            PipesResult result = actuallyProcess(request.tuple, request.requestId, false);
+            long now = System.currentTimeMillis();
+            results.add(result);
+            if (listener != null) {
+                listener.onResult(request.tuple, result,
+                        now - Math.max(request.written, lastResult));
+            }
+            lastResult = now;
+            if (isFatal(result) && !inFlight.isEmpty()) {
+                LOG.debug("pipesClientId={}: resending {} tuples after {}", pipesClientId,
+                        inFlight.size(), result.getStatus());
+                next = results.size();
+                inFlight.clear();
+            }
+        }
+        return results;
+    }
+
+    private boolean hitMaxFilesProcessed(int files) {
+        return pipesConfig.getMaxFilesProcessedPerProcess() > 0 &&
+                files >= pipesConfig.getMaxFilesProcessedPerProcess();
+    }
+
+    private boolean isFatal(PipesResult result) {
+        switch (result.getStatus()) {
+            case OOM:
+            case TIMEOUT:
+            case UNSPECIFIED_CRASH:
+                return true;
+            default:
+                return process == null || !process.isAlive();
+        }
+    }
+
+    private void writeAhead(InFlightRequest request) {
+        synchronized (executorServiceLock) {
+            if (closed) {
+                throw new IllegalArgumentException("pipesClientId=" + pipesClientId +
+                        ": PipesClient closed");
+            }
+            if (writerService == null) {
+                writerService = newSingleThreadExecutor();
+            }
+        }
+        //grab the current stream so that a stale write can never reach a restarted server
+        final DataOutputStream out = output;
+        writerService.execute(() -> {
+            try {
+                writeTuple(out, request.tuple, request.requestId);
+            } catch (IOException e) {
+                //if the server is gone, the reader will find out
+                LOG.debug("pipesClientId={}: couldn't write tuple {}", pipesClientId,
+                        request.tuple.getId(), e);
+            }
+        });
+    }
+
+    private void writeTuple(DataOutputStream out, FetchEmitTuple t, int requestId)
+            throws IOException {
+        byte[] bytes = codec.serialize(t);
+        out.write(CALL.getByte());
+        out.writeInt(requestId);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    private void restartIfNecessary() throws IOException, InterruptedException {
         boolean restart = false;
         if (!ping()) {
             restart = true;
@@ -145,37 +331,38 @@ public class PipesClient implements Closeable {
                 }
             }
         }
-        return actuallyProcess(t);
     }
 
     private PipesResult actuallyProcess(FetchEmitTuple t) throws InterruptedException {
+        return actuallyProcess(t, requestCounter++, true);
+    }
+
+    /**
+     * @param writeTuple if <code>false</code>, the tuple has already been written
+     *                   to the server, and this only waits for the result
+     */
+    private PipesResult actuallyProcess(FetchEmitTuple t, int requestId, boolean writeTuple)
+            throws InterruptedException {
         long start = System.currentTimeMillis();
+        filesProcessed++;
         final PipesResult[] intermediateResult = new PipesResult[1];
         FutureTask<PipesResult> futureTask = new FutureTask<>(() -> {
-
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(t);
-            }
-
-            byte[] bytes = bos.toByteArray();
-            output.write(CALL.getByte());
-            output.writeInt(bytes.length);
-            output.write(bytes);
-            output.flush();
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("pipesClientId={}: timer -- write tuple: {} ms",
-                        pipesClientId,
-                        System.currentTimeMillis() - start);
+            if (writeTuple) {
+                writeTuple(output, t, requestId);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("pipesClientId={}: timer -- write tuple: {} ms",
+                            pipesClientId,
+                            System.currentTimeMillis() - start);
+                }
             }
             long readStart = System.currentTimeMillis();
             if (Thread.currentThread().isInterrupted()) {
                 throw new InterruptedException("thread interrupt");
             }
-            PipesResult result = readResults(t, start);
+            PipesResult result = readResults(t, requestId, start);
             while (result.getStatus().equals(PipesResult.STATUS.INTERMEDIATE_RESULT)) {
                 intermediateResult[0] = result;
-                result = readResults(t, start);
+                result = readResults(t, requestId, start);
             }
             if (LOG.isDebugEnabled()) {
                 long elapsed = System.currentTimeMillis() - readStart;
@@ -212,6 +399,11 @@ public class PipesClient implements Closeable {
                         elapsed);
                 return buildFatalResult(PipesResult.TIMEOUT, intermediateResult);
             }
+            if (!process.isAlive() && RESOURCE_LIMIT_EXIT_CODE == process.exitValue()) {
+                LOG.warn("pipesClientId={} server resource limit: {} in {} ms", pipesClientId,
+                        t.getId(), elapsed);
+                return buildFatalResult(PipesResult.OOM, intermediateResult);
+            }
             process.waitFor(500, TimeUnit.MILLISECONDS);
             if (process.isAlive()) {
                 LOG.warn("pipesClientId={} crash: {} in {} ms with no exit code available",
@@ -259,6 +451,11 @@ public class PipesClient implements Closeable {
     }
 
     private void destroyForcibly() throws InterruptedException {
+        destroyForcibly(process, input, output);
+    }
+
+    private static void destroyForcibly(Process process, DataInputStream input,
+                                        DataOutputStream output) throws InterruptedException {
         process.destroyForcibly();
         process.waitFor(WAIT_ON_DESTROY_MS, TimeUnit.MILLISECONDS);
         //important to close streams so that threads running in this
@@ -280,7 +477,8 @@ public class PipesClient implements Closeable {
         }
     }
 
-    private PipesResult readResults(FetchEmitTuple t, long start) throws IOException {
+    private PipesResult readResults(FetchEmitTuple t, int requestId, long start)
+            throws IOException {
 
         int statusByte = input.read();
         long millis = System.currentTimeMillis() - start;
@@ -294,6 +492,13 @@ public class PipesClient implements Closeable {
             }
             throw new IOException("problem reading response from server: " + byteString, e);
         }
+        if (status.hasRequestId()) {
+            int responseId = input.readInt();
+            if (responseId != requestId) {
+                throw new IOException("expected response for request " + requestId +
+                        " but got " + responseId + " for " + t.getId());
+            }
+        }
 
         switch (status) {
             case OOM:
@@ -342,6 +547,10 @@ public class PipesClient implements Closeable {
                 return readMessage(PipesResult.STATUS.EMIT_SUCCESS_PARSE_EXCEPTION);
             case EMPTY_OUTPUT:
                 return PipesResult.EMPTY_OUTPUT;
+            case RESOURCE_USAGE:
+                //this comes just before the result for the document
+                ResourceUsage usage = readResourceUsage();
+                return readResults(t, requestId, start).withResourceUsage(usage);
             //fall through
             case READY:
             case CALL:
@@ -363,24 +572,24 @@ public class PipesClient implements Closeable {
         return new PipesResult(status, msg);
     }
 
+    private ResourceUsage readResourceUsage() throws IOException {
+        int length = input.readInt();
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return codec.deserializeResourceUsage(bytes);
+    }
+
     private PipesResult deserializeEmitData() throws IOException {
         int length = input.readInt();
         byte[] bytes = new byte[length];
         input.readFully(bytes);
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-            EmitData emitData = (EmitData) objectInputStream.readObject();
+        EmitData emitData = codec.deserializeEmitData(bytes);
 
-            String stack = emitData.getContainerStackTrace();
-            if (StringUtils.isBlank(stack)) {
-                return new PipesResult(emitData);
-            } else {
-                return new PipesResult(emitData, stack);
-            }
-        } catch (ClassNotFoundException e) {
-            LOG.error("class not found exception deserializing data", e);
-            //this should be catastrophic
-            throw new RuntimeException(e);
+        String stack = emitData.getContainerStackTrace();
+        if (StringUtils.isBlank(stack)) {
+            return new PipesResult(emitData);
+        } else {
+            return new PipesResult(emitData, stack);
         }
     }
 
@@ -389,25 +598,24 @@ public class PipesClient implements Closeable {
         int length = input.readInt();
         byte[] bytes = new byte[length];
         input.readFully(bytes);
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-            Metadata metadata = (Metadata) objectInputStream.readObject();
-            EmitData emitData = new EmitData(emitKey, Collections.singletonList(metadata));
-            return new PipesResult(PipesResult.STATUS.INTERMEDIATE_RESULT, emitData, true);
-        } catch (ClassNotFoundException e) {
-            LOG.error("class not found exception deserializing data", e);
-            //this should be catastrophic
-            throw new RuntimeException(e);
-        }
+        Metadata metadata = codec.deserializeMetadata(bytes);
+        EmitData emitData = new EmitData(emitKey, Collections.singletonList(metadata));
+        return new PipesResult(PipesResult.STATUS.INTERMEDIATE_RESULT, emitData, true);
     }
 
     private void restart() throws IOException, InterruptedException, TimeoutException {
+        ServerProcess spare = takeStandby();
         if (process != null) {
-            LOG.debug("process still alive; trying to destroy it");
-            destroyForcibly();
-            boolean processEnded = process.waitFor(30, TimeUnit.SECONDS);
-            if (! processEnded) {
-                LOG.warn("pipesClientId={}: process has not yet ended", pipesClientId);
+            if (spare != null) {
+                //don't wait for the old server to end
+                reapInBackground(process, input, output);
+            } else {
+                LOG.debug("process still alive; trying to destroy it");
+                destroyForcibly();
+                boolean processEnded = process.waitFor(30, TimeUnit.SECONDS);
+                if (! processEnded) {
+                    LOG.warn("pipesClientId={}: process has not yet ended", pipesClientId);
+                }
             }
             executorService.shutdownNow();
             boolean shutdown = executorService.awaitTermination(30, TimeUnit.SECONDS);
@@ -419,28 +627,53 @@ public class PipesClient implements Closeable {
                     throw new IllegalArgumentException("pipesClientId=" + pipesClientId +
                             ": PipesClient closed");
                 }
-                executorService = Executors.newFixedThreadPool(1);
+                executorService = newSingleThreadExecutor();
+                if (writerService != null) {
+                    writerService.shutdownNow();
+                    writerService = null;
+                }
             }
-            LOG.info("pipesClientId={}: restarting process", pipesClientId);
+            LOG.info("pipesClientId={}: restarting process{}", pipesClientId,
+                    spare != null ? " with warm standby" : "");
         } else {
             LOG.info("pipesClientId={}: starting process", pipesClientId);
         }
-        ProcessBuilder pb = new ProcessBuilder(getCommandline());
-        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        ServerProcess server = spare != null ? spare : startServer(executorService);
+        process = server.process;
+        input = server.input;
+        output = server.output;
+        codec = server.codec;
+        filesProcessed = 0;
+        startStandby();
+    }
 
+    /**
+     * Starts a server and waits for it to be ready.
+     *
+     * @param readExecutor runs the read of the server's ready signal
+     */
+    private ServerProcess startServer(ExecutorService readExecutor)
+            throws InterruptedException, TimeoutException {
+        Process process;
         try {
-            process = pb.start();
+            if (pipesConfig.isInProcess()) {
+                process = InProcessPipesServerProcess.start(pipesConfig, pipesClientId);
+            } else {
+                ProcessBuilder pb = new ProcessBuilder(getCommandline());
+                pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+                process = pb.start();
+            }
         } catch (Exception e) {
             //Do we ever want this to be not fatal?!
             LOG.error("failed to start client", e);
             throw new FailedToStartClientException(e);
         }
-        input = new DataInputStream(process.getInputStream());
-        output = new DataOutputStream(process.getOutputStream());
+        DataInputStream input = new DataInputStream(process.getInputStream());
+        DataOutputStream output = new DataOutputStream(process.getOutputStream());
 
         //wait for ready signal
         final UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-        FutureTask<Integer> futureTask = new FutureTask<>(() -> {
+        FutureTask<PipesMessageCodec> futureTask = new FutureTask<>(() -> {
             int b = input.read();
             int read = 1;
             while (read < MAX_BYTES_BEFORE_READY && b != READY.getByte()) {
@@ -464,18 +697,28 @@ public class PipesClient implements Closeable {
                 LOG.warn("pipesClientId={}: From forked process before start byte: {}",
                         pipesClientId, bos.toString(StandardCharsets.UTF_8));
             }
-            return 1;
+            //the server reports the serialization version that it will use
+            int version = input.read();
+            if (version < 0) {
+                throw new RuntimeException("pipesClientId=" + pipesClientId + ": " +
+                        "Couldn't start server -- read EOF before serialization version.");
+            }
+            LOG.debug("pipesClientId={}: using pipes serialization version {}",
+                    pipesClientId, version);
+            return new PipesMessageCodec((byte) version);
         });
         long start = System.currentTimeMillis();
-        executorService.submit(futureTask);
+        readExecutor.submit(futureTask);
         try {
-            futureTask.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            PipesMessageCodec codec =
+                    futureTask.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
+            return new ServerProcess(process, input, output, codec);
         } catch (InterruptedException e) {
-            destroyForcibly();
+            destroyForcibly(process, input, output);
             throw e;
         } catch (ExecutionException e) {
             LOG.error("pipesClientId=" + pipesClientId + ": couldn't start server", e);
-            destroyForcibly();
+            destroyForcibly(process, input, output);
             throw new RuntimeException(e);
         } catch (TimeoutException e) {
             long elapsed = System.currentTimeMillis() - start;
@@ -483,13 +726,207 @@ public class PipesClient implements Closeable {
                             "StartupTimeoutMillis {}; ms elapsed {}; did read >{}<",
                     pipesClientId, pipesConfig.getStartupTimeoutMillis(),
                     elapsed, bos.toString(StandardCharsets.UTF_8));
-            destroyForcibly();
+            destroyForcibly(process, input, output);
             throw e;
         } finally {
             futureTask.cancel(true);
         }
     }
 
+    /**
+     * Starts a spare server in the background if warm standby is on.  The spare is
+     * pinged every half {@link PipesConfigBase#getShutdownClientAfterMillis()} so
+     * that it doesn't shut itself down while it waits.
+     */
+    private void startStandby() {
+        if (!pipesConfig.isWarmStandby()) {
+            return;
+        }
+        synchronized (executorServiceLock) {
+            if (closed) {
+                return;
+            }
+            if (standbyService == null) {
+                //one thread starts the server and another reads its ready signal
+                standbyService = Executors.newCachedThreadPool(ConcurrentUtils.newIOThreadFactory(
+                        "pipes-client-" + pipesClientId + "-standby-",
+                        pipesConfig.isUseVirtualThreads()));
+                standbyPinger = Executors.newSingleThreadScheduledExecutor(
+                        ConcurrentUtils.newIOThreadFactory(
+                                "pipes-client-" + pipesClientId + "-standby-ping-",
+                                pipesConfig.isUseVirtualThreads()));
+            }
+            Future<ServerProcess> future = standbyService.submit(() -> startServer(standbyService));
+            standby = future;
+            long interval = pipesConfig.getShutdownClientAfterMillis() / 2;
+            if (interval > 0) {
+                standbyKeepAlive = standbyPinger.scheduleWithFixedDelay(() -> keepAlive(future),
+                        interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void keepAlive(Future<ServerProcess> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return;
+        }
+        ServerProcess spare;
+        try {
+            spare = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            //takeStandby() reports this
+            return;
+        }
+        //don't write to the spare's streams once it's been taken
+        synchronized (spare) {
+            if (!spare.taken && !ping(spare.process, spare.input, spare.output)) {
+                LOG.debug("pipesClientId={}: warm standby didn't answer a ping", pipesClientId);
+            }
+        }
+    }
+
+    /**
+     * @return the spare server's future and stops pinging it, or <code>null</code> if
+     * there's no spare
+     */
+    private Future<ServerProcess> removeStandby() {
+        synchronized (executorServiceLock) {
+            Future<ServerProcess> future = standby;
+            standby = null;
+            if (standbyKeepAlive != null) {
+                //don't interrupt a ping that's reading from the spare
+                standbyKeepAlive.cancel(false);
+                standbyKeepAlive = null;
+            }
+            return future;
+        }
+    }
+
+    /**
+     * @return the spare server if it's ready and still alive, otherwise <code>null</code>
+     */
+    private ServerProcess takeStandby() throws InterruptedException {
+        Future<ServerProcess> future = removeStandby();
+        if (future == null) {
+            return null;
+        }
+        ServerProcess spare;
+        try {
+            //it's had a head start, so this is usually immediate
+            spare = future.get(pipesConfig.getStartupTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            LOG.warn("pipesClientId={}: warm standby failed to start", pipesClientId,
+                    e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            LOG.warn("pipesClientId={}: warm standby didn't start within {} ms", pipesClientId,
+                    pipesConfig.getStartupTimeoutMillis());
+            future.cancel(true);
+            return null;
+        }
+        synchronized (spare) {
+            spare.taken = true;
+            //the ping also resets the spare's inactivity timer
+            if (!ping(spare.process, spare.input, spare.output)) {
+                LOG.debug("pipesClientId={}: warm standby has shut down", pipesClientId);
+                reapInBackground(spare.process, spare.input, spare.output);
+                return null;
+            }
+        }
+        return spare;
+    }
+
+    private void discardStandby() {
+        Future<ServerProcess> future = removeStandby();
+        if (future == null) {
+            return;
+        }
+        if (!future.cancel(true)) {
+            try {
+                ServerProcess spare = future.get();
+                destroyForcibly(spare.process, spare.input, spare.output);
+            } catch (ExecutionException | CancellationException e) {
+                //nothing to clean up
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return whether there's a spare server that is up, without waiting for one
+     */
+    boolean hasLiveStandby() {
+        Future<ServerProcess> future;
+        synchronized (executorServiceLock) {
+            future = standby;
+        }
+        if (future == null || !future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            return future.get().process.isAlive();
+        } catch (ExecutionException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void reapInBackground(Process oldProcess, DataInputStream oldInput,
+                                  DataOutputStream oldOutput) {
+        //kill it now so that the threads that are reading from it stop soon
+        oldProcess.destroyForcibly();
+        Thread reaper = new Thread(() -> {
+            try {
+                destroyForcibly(oldProcess, oldInput, oldOutput);
+            } catch (InterruptedException e) {
+                //swallow
+            }
+        }, "pipes-client-" + pipesClientId + "-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private static class ServerProcess {
+        private final Process process;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        private final PipesMessageCodec codec;
+        //set once the client has switched to this spare
+        private boolean taken = false;
+
+        ServerProcess(Process process, DataInputStream input, DataOutputStream output,
+                      PipesMessageCodec codec) {
+            this.process = process;
+            this.input = input;
+            this.output = output;
+            this.codec = codec;
+        }
+    }
+
+    private static class InFlightRequest {
+        private final FetchEmitTuple tuple;
+        private final int requestId;
+        private final long written;
+
+        InFlightRequest(FetchEmitTuple tuple, int requestId, long written) {
+            this.tuple = tuple;
+            this.requestId = requestId;
+            this.written = written;
+        }
+    }
+
+    /**
+     * Called by {@link #process(List, ResultListener)} with each result as it is read.
+     */
+    public interface ResultListener {
+
+        /**
+         * @param elapsedMillis time the server spent on this tuple
+         */
+        void onResult(FetchEmitTuple t, PipesResult result, long elapsedMillis)
+                throws InterruptedException;
+    }
+
     private static String getMsg(String msg, UnsynchronizedByteArrayOutputStream bos) {
         String readSoFar = bos.toString(StandardCharsets.UTF_8);
         if (StringUtils.isBlank(readSoFar)) {
@@ -500,7 +937,8 @@ public class PipesClient implements Closeable {
     }
 
     private String[] getCommandline() {
-        List<String> configArgs = pipesConfig.getForkedJvmArgs();
+        //defensive copy
+        List<String> configArgs = new ArrayList<>(forkedJvmArgs);
         boolean hasClassPath = false;
         boolean hasHeadless = false;
         boolean hasExitOnOOM = false;
@@ -553,6 +991,8 @@ public class PipesClient implements Closeable {
                     "-Dlog4j.configurationFile=classpath:pipes-fork-server-default-log4j2.xml");
         }
         commandLine.add("-DpipesClientId=" + pipesClientId);
+        commandLine.addAll(ClassDataSharingUtils.getJvmArgs(
+                pipesConfig.getClassDataSharingArchive(), configArgs));
         commandLine.addAll(configArgs);
         commandLine.add("org.apache.tika.pipes.PipesServer");
         commandLine.add(ProcessUtils.escapeCommandLine(
@@ -561,6 +1001,7 @@ public class PipesClient implements Closeable {
         commandLine.add(Long.toString(pipesConfig.getMaxForEmitBatchBytes()));
         commandLine.add(Long.toString(pipesConfig.getTimeoutMillis()));
         commandLine.add(Long.toString(pipesConfig.getShutdownClientAfterMillis()));
+        commandLine.add(Integer.toString(pipesConfig.getPipesSerializationVersion()));
         LOG.debug("pipesClientId={}: commandline: {}", pipesClientId, commandLine);
         return commandLine.toArray(new String[0]);
     }
@@ -43,6 +43,10 @@ public class PipesConfigBase extends ConfigBase {
 
     public static final int DEFAULT_MAX_FILES_PROCESSED_PER_PROCESS = 10000;
 
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_CLIENT = 1;
+
+    public static final int DEFAULT_PIPES_SERIALIZATION_VERSION = PipesMessageCodec.BINARY_V1;
+
     //if an extract is larger than this, the forked PipesServer should
     //emit the extract directly and not send the contents back to the PipesClient
     private long maxForEmitBatchBytes = DEFAULT_MAX_FOR_EMIT_BATCH;
@@ -58,6 +62,13 @@ public class PipesConfigBase extends ConfigBase {
     private int staleFetcherTimeoutSeconds = DEFAULT_STALE_FETCHER_TIMEOUT_SECONDS;
     public static final int DEFAULT_STALE_FETCHER_DELAY_SECONDS = 60;
     private int staleFetcherDelaySeconds = DEFAULT_STALE_FETCHER_DELAY_SECONDS;
+    private int pipesSerializationVersion = DEFAULT_PIPES_SERIALIZATION_VERSION;
+    private int maxInFlightPerClient = DEFAULT_MAX_IN_FLIGHT_PER_CLIENT;
+    private boolean inProcess = false;
+    private long inProcessAllocationBudgetBytes = -1;
+    private boolean useVirtualThreads = false;
+    private boolean warmStandby = false;
+    private Path classDataSharingArchive;
     private List<String> forkedJvmArgs = new ArrayList<>();
     private Path tikaConfig;
     private String javaPath = "java";
@@ -189,4 +200,144 @@ public class PipesConfigBase extends ConfigBase {
     public void setStaleFetcherDelaySeconds(int staleFetcherDelaySeconds) {
         this.staleFetcherDelaySeconds = staleFetcherDelaySeconds;
     }
+
+    public int getPipesSerializationVersion() {
+        return pipesSerializationVersion;
+    }
+
+    /**
+     * Version of the wire format that the PipesClient requests from the forked
+     * PipesServer. <code>1</code> (the default) is the compact binary format;
+     * <code>0</code> falls back to Java serialization for every message.
+     * The server may answer with a lower version if it doesn't support the requested one.
+     *
+     * @param pipesSerializationVersion
+     */
+    public void setPipesSerializationVersion(int pipesSerializationVersion) {
+        this.pipesSerializationVersion = pipesSerializationVersion;
+    }
+
+    public int getMaxInFlightPerClient() {
+        return maxInFlightPerClient;
+    }
+
+    /**
+     * Maximum number of tuples that a PipesClient may write to its forked PipesServer
+     * before the result for the oldest one has come back.  With a value greater than
+     * <code>1</code>, the server can start on the next document without waiting for a
+     * round trip to the client, which helps with many small files.
+     * The default is <code>1</code>, which sends one tuple at a time.
+     *
+     * @param maxInFlightPerClient
+     */
+    public void setMaxInFlightPerClient(int maxInFlightPerClient) {
+        this.maxInFlightPerClient = maxInFlightPerClient;
+    }
+
+    public boolean isInProcess() {
+        return inProcess;
+    }
+
+    /**
+     * If <code>true</code>, each PipesClient runs its PipesServer on a thread in this
+     * JVM, in an isolated classloader, instead of forking a new JVM.  This saves the
+     * startup time and the memory of a JVM per client, but a parser that runs out
+     * of memory or crashes takes down this JVM, and a parser that doesn't respond
+     * to interrupts keeps its thread after it has timed out.  Only use this for
+     * trusted documents.  The default is <code>false</code>.
+     * <p>
+     * {@link #getForkedJvmArgs()} and {@link #getJavaPath()} are ignored in this mode.
+     *
+     * @param inProcess
+     */
+    public void setInProcess(boolean inProcess) {
+        this.inProcess = inProcess;
+    }
+
+    public long getInProcessAllocationBudgetBytes() {
+        return inProcessAllocationBudgetBytes;
+    }
+
+    /**
+     * Maximum number of bytes that the parsing thread may allocate while parsing a
+     * single document when running {@link #setInProcess(boolean) in-process}.  A parse
+     * over this budget is stopped and reported as an OOM.
+     * <p>
+     * This is cumulative allocation, not retained heap: a parser that churns through
+     * short-lived objects uses it up as fast as one that holds on to them, so set this
+     * well above the expected heap use of a document.  Allocations on threads that the
+     * parser starts itself aren't counted.  The default, <code>-1</code>, is no limit.
+     *
+     * @param inProcessAllocationBudgetBytes
+     */
+    public void setInProcessAllocationBudgetBytes(long inProcessAllocationBudgetBytes) {
+        this.inProcessAllocationBudgetBytes = inProcessAllocationBudgetBytes;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * If <code>true</code>, the threads that wait on the PipesServers and, in
+     * the AsyncProcessor, the workers and emitters run on virtual threads.  These
+     * threads spend nearly all of their time blocked on I/O, and virtual threads
+     * let the number of clients and emitters grow without a platform thread
+     * (and its stack) for each.  This requires Java 21 or later; on older JVMs,
+     * this falls back to platform threads.  The default is <code>false</code>.
+     *
+     * @param useVirtualThreads
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public boolean isWarmStandby() {
+        return warmStandby;
+    }
+
+    /**
+     * If <code>true</code>, each PipesClient starts a spare PipesServer in the
+     * background as soon as its current server is up.  When the current server
+     * has to be restarted, e.g. after a timeout, an OOM or
+     * {@link #getMaxFilesProcessedPerProcess()}, the client switches to the spare,
+     * which has already initialized its parsers, fetchers and emitters, instead of
+     * waiting for a new server to start.  The old server is stopped in the
+     * background, and a new spare is started.
+     * <p>
+     * This doubles the number of servers, and so the memory, per client.
+     * The client pings its spare every half {@link #getShutdownClientAfterMillis()}
+     * so that the spare doesn't shut itself down for being idle.  If the spare dies
+     * anyway, the next restart starts a server the usual way.
+     * The default is <code>false</code>.
+     *
+     * @param warmStandby
+     */
+    public void setWarmStandby(boolean warmStandby) {
+        this.warmStandby = warmStandby;
+    }
+
+    public Path getClassDataSharingArchive() {
+        return classDataSharingArchive;
+    }
+
+    /**
+     * Start the forked PipesServers with this Application Class Data Sharing
+     * archive so that they don't have to load and link the parser classes from
+     * scratch on every start and restart.  See
+     * {@link org.apache.tika.utils.ClassDataSharingUtils} for how to create it.
+     * If the archive is missing or doesn't match the JVM and class path, the
+     * servers start without it.  This is ignored if {@link #getForkedJvmArgs()}
+     * already set <code>-Xshare</code> or <code>-XX:SharedArchiveFile</code>.
+     * The default is <code>null</code>, no archive.
+     *
+     * @param classDataSharingArchive
+     */
+    public void setClassDataSharingArchive(Path classDataSharingArchive) {
+        this.classDataSharingArchive = classDataSharingArchive;
+    }
+
+    public void setClassDataSharingArchive(String classDataSharingArchive) {
+        setClassDataSharingArchive(Paths.get(classDataSharingArchive));
+    }
 }
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+/**
+ * Encodes and decodes the objects that are sent between the {@link PipesClient}
+ * and the {@link PipesServer}.
+ * <p>
+ * {@link #BINARY_V1} writes {@link FetchEmitTuple}, {@link EmitData} and
+ * {@link Metadata} field by field with length-prefixed UTF-8 strings.  Metadata keys are
+ * written once per message and then referred to by index, which keeps large
+ * metadata lists small.  A non-empty {@link ParseContext} can hold arbitrary
+ * objects, so it is still written with Java serialization.
+ * <p>
+ * {@link #JAVA_SERIALIZATION} is the legacy format, where every message is a
+ * single serialized object.
+ * <p>
+ * The client and the server agree on the version at startup; see
+ * {@link PipesConfigBase#setPipesSerializationVersion(int)}.
+ */
+class PipesMessageCodec {
+
+    static final byte JAVA_SERIALIZATION = 0;
+
+    static final byte BINARY_V1 = 1;
+
+    static final byte MAX_SUPPORTED_VERSION = BINARY_V1;
+
+    private static final int NULL_LENGTH = -1;
+
+    private final byte version;
+
+    PipesMessageCodec(byte version) {
+        if (version < JAVA_SERIALIZATION || version > MAX_SUPPORTED_VERSION) {
+            throw new IllegalArgumentException("unsupported pipes serialization version: " +
+                    version);
+        }
+        this.version = version;
+    }
+
+    /**
+     * @param requested the version requested by the client
+     * @return the highest version that this codec supports that is not greater than
+     * the requested version
+     */
+    static byte negotiate(int requested) {
+        if (requested < JAVA_SERIALIZATION) {
+            return JAVA_SERIALIZATION;
+        }
+        return (byte) Math.min(requested, MAX_SUPPORTED_VERSION);
+    }
+
+    byte getVersion() {
+        return version;
+    }
+
+    byte[] serialize(FetchEmitTuple t) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaSerialize(t);
+        }
+        UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            writeString(t.getId(), out);
+            FetchKey fetchKey = t.getFetchKey();
+            writeString(fetchKey.getFetcherName(), out);
+            writeString(fetchKey.getFetchKey(), out);
+            out.writeLong(fetchKey.getRangeStart());
+            out.writeLong(fetchKey.getRangeEnd());
+            writeEmitKey(t.getEmitKey(), out);
+            out.writeByte(t.getOnParseException().ordinal());
+            writeMetadata(t.getMetadata(), out, new HashMap<>());
+            writeParseContext(t.getParseContext(), out);
+        }
+        return bos.toByteArray();
+    }
+
+    FetchEmitTuple deserializeFetchEmitTuple(byte[] bytes) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaDeserialize(bytes, FetchEmitTuple.class);
+        }
+        try (DataInputStream in = newDataInputStream(bytes)) {
+            String id = readString(in);
+            String fetcherName = readString(in);
+            String fetchKey = readString(in);
+            long rangeStart = in.readLong();
+            long rangeEnd = in.readLong();
+            EmitKey emitKey = readEmitKey(in);
+            FetchEmitTuple.ON_PARSE_EXCEPTION onParseException =
+                    FetchEmitTuple.ON_PARSE_EXCEPTION.values()[in.readByte()];
+            Metadata metadata = readMetadata(in, new ArrayList<>());
+            ParseContext parseContext = readParseContext(in);
+            return new FetchEmitTuple(id,
+                    new FetchKey(fetcherName, fetchKey, rangeStart, rangeEnd), emitKey,
+                    metadata, parseContext, onParseException);
+        }
+    }
+
+    byte[] serialize(EmitData emitData) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaSerialize(emitData);
+        }
+        UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            writeEmitKey(emitData.getEmitKey(), out);
+            writeString(emitData.getContainerStackTrace(), out);
+            List<Metadata> metadataList = emitData.getMetadataList();
+            out.writeInt(metadataList.size());
+            Map<String, Integer> keys = new HashMap<>();
+            for (Metadata m : metadataList) {
+                writeMetadata(m, out, keys);
+            }
+            writeParseContext(emitData.getParseContext(), out);
+        }
+        return bos.toByteArray();
+    }
+
+    EmitData deserializeEmitData(byte[] bytes) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaDeserialize(bytes, EmitData.class);
+        }
+        try (DataInputStream in = newDataInputStream(bytes)) {
+            EmitKey emitKey = readEmitKey(in);
+            String stack = readString(in);
+            int size = in.readInt();
+            List<Metadata> metadataList = new ArrayList<>(size);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                metadataList.add(readMetadata(in, keys));
+            }
+            ParseContext parseContext = readParseContext(in);
+            return new EmitData(emitKey, metadataList, stack, parseContext);
+        }
+    }
+
+    byte[] serialize(Metadata metadata) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaSerialize(metadata);
+        }
+        UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            writeMetadata(metadata, out, new HashMap<>());
+        }
+        return bos.toByteArray();
+    }
+
+    Metadata deserializeMetadata(byte[] bytes) throws IOException {
+        if (version == JAVA_SERIALIZATION) {
+            return javaDeserialize(bytes, Metadata.class);
+        }
+        try (DataInputStream in = newDataInputStream(bytes)) {
+            return readMetadata(in, new ArrayList<>());
+        }
+    }
+
+    /**
+     * {@link ResourceUsage} is always written field by field; it's only a few numbers.
+     */
+    byte[] serialize(ResourceUsage usage) throws IOException {
+        UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeLong(usage.getCpuTimeNanos());
+            out.writeLong(usage.getAllocatedBytes());
+            out.writeLong(usage.getTempFileBytes());
+            out.writeInt(usage.getEmbeddedCount());
+            writeString(usage.getParser(), out);
+            writeString(usage.getMimeType(), out);
+            out.writeLong(usage.getBytesIn());
+            out.writeLong(usage.getParseNanos());
+        }
+        return bos.toByteArray();
+    }
+
+    ResourceUsage deserializeResourceUsage(byte[] bytes) throws IOException {
+        try (DataInputStream in = newDataInputStream(bytes)) {
+            return new ResourceUsage(in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+                    readString(in), readString(in), in.readLong(), in.readLong());
+        }
+    }
+
+    private static void writeEmitKey(EmitKey emitKey, DataOutputStream out) throws IOException {
+        writeString(emitKey.getEmitterName(), out);
+        writeString(emitKey.getEmitKey(), out);
+    }
+
+    private static EmitKey readEmitKey(DataInputStream in) throws IOException {
+        String emitterName = readString(in);
+        String emitKey = readString(in);
+        return new EmitKey(emitterName, emitKey);
+    }
+
+    /**
+     * Writes the metadata.  The first time a key is written in a message, it is
+     * written in full; after that, only its index in <code>keys</code> is written.
+     */
+    private static void writeMetadata(Metadata metadata, DataOutputStream out,
+                                      Map<String, Integer> keys) throws IOException {
+        String[] names = metadata.names();
+        out.writeInt(names.length);
+        for (String n : names) {
+            Integer index = keys.get(n);
+            if (index == null) {
+                out.writeInt(NULL_LENGTH);
+                writeString(n, out);
+                keys.put(n, keys.size());
+            } else {
+                out.writeInt(index);
+            }
+            String[] values = metadata.getValues(n);
+            out.writeInt(values.length);
+            for (String v : values) {
+                writeString(v, out);
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in, List<String> keys)
+            throws IOException {
+        Metadata metadata = new Metadata();
+        int numNames = in.readInt();
+        for (int i = 0; i < numNames; i++) {
+            int index = in.readInt();
+            String name;
+            if (index == NULL_LENGTH) {
+                name = readString(in);
+                keys.add(name);
+            } else if (index >= 0 && index < keys.size()) {
+                name = keys.get(index);
+            } else {
+                throw new IOException("bad metadata key index: " + index);
+            }
+            int numValues = in.readInt();
+            for (int j = 0; j < numValues; j++) {
+                metadata.add(name, readString(in));
+            }
+        }
+        return metadata;
+    }
+
+    private static void writeParseContext(ParseContext parseContext, DataOutputStream out)
+            throws IOException {
+        if (parseContext == null || parseContext.isEmpty()) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = javaSerialize(parseContext);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static ParseContext readParseContext(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return new ParseContext();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return javaDeserialize(bytes, ParseContext.class);
+    }
+
+    private static void writeString(String s, DataOutputStream out) throws IOException {
+        if (s == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static DataInputStream newDataInputStream(byte[] bytes) throws IOException {
+        return new DataInputStream(
+                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get());
+    }
+
+    private static byte[] javaSerialize(Serializable object) throws IOException {
+        UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
+            objectOutputStream.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+
+    private static <T> T javaDeserialize(byte[] bytes, Class<T> clazz) throws IOException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
+            return clazz.cast(objectInputStream.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("can't find class?!", e);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.tika.pipes;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Map;
 
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 
@@ -53,6 +54,7 @@ public abstract class PipesReporter implements Closeable {
 
     //Implementers are responsible for preventing reporting after
     //crashes if that is the desired behavior.
+    //The resources used for the document are in PipesResult#getResourceUsage().
     public abstract void report(FetchEmitTuple t, PipesResult result, long elapsed);
 
 
@@ -73,6 +75,16 @@ public abstract class PipesReporter implements Closeable {
     public boolean supportsTotalCount() {
         return false;
     }
+
+    /**
+     * No-op implementation.  Override for custom behavior.
+     * This is called periodically with the number of tuples waiting in each
+     * lane of the AsyncProcessor's queue.
+     * @param queueSizes number of waiting tuples by lane name
+     */
+    public void reportQueueSizes(Map<String, Integer> queueSizes) {
+
+    }
     /**
      * No-op implementation.  Override for custom behavior
      * @throws IOException
@@ -50,12 +50,19 @@ public class PipesResult {
     private final STATUS status;
     private final EmitData emitData;
     private final String message;
+    private final ResourceUsage resourceUsage;
 
     private PipesResult(STATUS status, EmitData emitData, String message, boolean intermediate) {
+        this(status, emitData, message, intermediate, null);
+    }
+
+    private PipesResult(STATUS status, EmitData emitData, String message, boolean intermediate,
+                        ResourceUsage resourceUsage) {
         this.status = status;
         this.emitData = emitData;
         this.message = message;
         this.intermediate = intermediate;
+        this.resourceUsage = resourceUsage;
     }
 
     public PipesResult(STATUS status) {
@@ -106,9 +113,25 @@ public class PipesResult {
         return intermediate;
     }
 
+    /**
+     * @return the resources that the server used for the document, or <code>null</code>
+     * if they weren't measured, e.g. because the server crashed or timed out
+     */
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * @return a copy of this result with the resource usage
+     */
+    public PipesResult withResourceUsage(ResourceUsage resourceUsage) {
+        return new PipesResult(status, emitData, message, intermediate, resourceUsage);
+    }
+
     @Override
     public String toString() {
         return "PipesResult{" + "intermediate=" + intermediate + ", status=" + status +
-                ", emitData=" + emitData + ", message='" + message + '\'' + '}';
+                ", emitData=" + emitData + ", message='" + message + '\'' +
+                ", resourceUsage=" + resourceUsage + '}';
     }
 }
@@ -21,20 +21,18 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
-import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
@@ -80,6 +78,7 @@ import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.ContentHandlerFactory;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
 import org.apache.tika.utils.ExceptionUtils;
+import org.apache.tika.utils.ParserUtils;
 import org.apache.tika.utils.StringUtils;
 
 /**
@@ -97,7 +96,15 @@ public class PipesServer implements Runnable {
     //this has to be some number not close to 0-3
     //it looks like the server crashes with exit value 3 on OOM, for example
     public static final int TIMEOUT_EXIT_CODE = 17;
+
+    /**
+     * Exit code used when the document being parsed has gone over a resource
+     * limit that is enforced by the server itself; see {@link #exceedsResourceLimits()}.
+     */
+    public static final int RESOURCE_LIMIT_EXIT_CODE = 18;
     private DigestingParser.Digester digester;
+    //null if there's no cache or no digester
+    private ParseResultCache parseResultCache;
 
     private Detector detector;
 
@@ -105,12 +112,20 @@ public class PipesServer implements Runnable {
         READY, CALL, PING, FAILED_TO_START, FETCHER_NOT_FOUND, EMITTER_NOT_FOUND,
         FETCHER_INITIALIZATION_EXCEPTION, FETCH_EXCEPTION, PARSE_SUCCESS, PARSE_EXCEPTION_NO_EMIT,
         EMIT_SUCCESS, EMIT_SUCCESS_PARSE_EXCEPTION, EMIT_EXCEPTION, OOM, TIMEOUT, EMPTY_OUTPUT,
-        INTERMEDIATE_RESULT;
+        INTERMEDIATE_RESULT, RESOURCE_USAGE;
 
         byte getByte() {
             return (byte) (ordinal() + 1);
         }
 
+        /**
+         * @return whether this status is a response to a specific request and is
+         * followed by the id of that request on the wire
+         */
+        boolean hasRequestId() {
+            return this != READY && this != CALL && this != PING && this != FAILED_TO_START;
+        }
+
         public static STATUS lookup(int val) {
             int i = val - 1;
             if (i < 0) {
@@ -137,6 +152,7 @@ public class PipesServer implements Runnable {
     private final long maxForEmitBatchBytes;
     private final long serverParseTimeoutMillis;
     private final long serverWaitTimeoutMillis;
+    private final PipesMessageCodec codec;
     private Parser autoDetectParser;
     private Parser rMetaParser;
     private TikaConfig tikaConfig;
@@ -144,18 +160,38 @@ public class PipesServer implements Runnable {
     private EmitterManager emitterManager;
     private volatile boolean parsing;
     private volatile long since;
+    //sent to the client just before the result for each document
+    private final ResourceUsageMeter resourceUsageMeter = new ResourceUsageMeter();
+    //id of the request that is currently being processed; echoed back with every response
+    private int currentRequestId = -1;
 
 
     public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
                        long maxForEmitBatchBytes, long serverParseTimeoutMillis,
                        long serverWaitTimeoutMillis)
             throws IOException, TikaException, SAXException {
+        this(tikaConfigPath, in, out, maxForEmitBatchBytes, serverParseTimeoutMillis,
+                serverWaitTimeoutMillis, PipesMessageCodec.JAVA_SERIALIZATION);
+    }
+
+    /**
+     * @param requestedSerializationVersion the wire format version requested by the
+     *                                      client. The server uses the highest version it
+     *                                      supports up to this version and reports it back
+     *                                      to the client after the ready byte.
+     */
+    public PipesServer(Path tikaConfigPath, InputStream in, PrintStream out,
+                       long maxForEmitBatchBytes, long serverParseTimeoutMillis,
+                       long serverWaitTimeoutMillis, int requestedSerializationVersion)
+            throws IOException, TikaException, SAXException {
         this.tikaConfigPath = tikaConfigPath;
         this.input = new DataInputStream(in);
         this.output = new DataOutputStream(out);
         this.maxForEmitBatchBytes = maxForEmitBatchBytes;
         this.serverParseTimeoutMillis = serverParseTimeoutMillis;
         this.serverWaitTimeoutMillis = serverWaitTimeoutMillis;
+        this.codec = new PipesMessageCodec(
+                PipesMessageCodec.negotiate(requestedSerializationVersion));
         this.parsing = false;
         this.since = System.currentTimeMillis();
     }
@@ -167,10 +203,14 @@ public class PipesServer implements Runnable {
             long maxForEmitBatchBytes = Long.parseLong(args[1]);
             long serverParseTimeoutMillis = Long.parseLong(args[2]);
             long serverWaitTimeoutMillis = Long.parseLong(args[3]);
+            //older clients don't send a serialization version
+            int requestedSerializationVersion = args.length > 4 ? Integer.parseInt(args[4]) :
+                    PipesMessageCodec.JAVA_SERIALIZATION;
 
             PipesServer server =
                     new PipesServer(tikaConfig, System.in, System.out, maxForEmitBatchBytes,
-                            serverParseTimeoutMillis, serverWaitTimeoutMillis);
+                            serverParseTimeoutMillis, serverWaitTimeoutMillis,
+                            requestedSerializationVersion);
             System.setIn(UnsynchronizedByteArrayInputStream.builder().setByteArray(new byte[0]).get());
             System.setOut(System.err);
             Thread watchdog = new Thread(server, "Tika Watchdog");
@@ -193,6 +233,9 @@ public class PipesServer implements Runnable {
                         LOG.warn("timeout server; elapsed {}  with {}", elapsed,
                                 serverParseTimeoutMillis);
                         exit(TIMEOUT_EXIT_CODE);
+                    } else if (parsing && exceedsResourceLimits()) {
+                        LOG.warn("resource limits exceeded; elapsed {}", elapsed);
+                        exit(RESOURCE_LIMIT_EXIT_CODE);
                     } else if (!parsing && serverWaitTimeoutMillis > 0 &&
                             elapsed > serverWaitTimeoutMillis) {
                         LOG.info("closing down from inactivity");
@@ -230,6 +273,13 @@ public class PipesServer implements Runnable {
         //main loop
         try {
             write(STATUS.READY);
+            output.writeByte(codec.getVersion());
+            output.flush();
+            //startup doesn't count as inactivity; a warm standby may take longer
+            //to start than the client waits between pings
+            synchronized (lock) {
+                since = System.currentTimeMillis();
+            }
             long start = System.currentTimeMillis();
             while (true) {
                 int request = input.read();
@@ -241,6 +291,11 @@ public class PipesServer implements Runnable {
                         LOG.trace("timer -- ping: {} ms", System.currentTimeMillis() - start);
                     }
                     write(STATUS.PING);
+                    //a ping counts as activity, so a warm standby that is pinged as it's
+                    //swapped in doesn't shut down from inactivity right away
+                    synchronized (lock) {
+                        since = System.currentTimeMillis();
+                    }
                     start = System.currentTimeMillis();
                 } else if (request == STATUS.CALL.getByte()) {
                     parseOne();
@@ -253,6 +308,8 @@ public class PipesServer implements Runnable {
                 }
                 output.flush();
             }
+        } catch (ServerExit e) {
+            throw e;
         } catch (Throwable t) {
             LOG.error("main loop error (did the forking process shut down?)", t);
             exit(1);
@@ -332,6 +389,7 @@ public class PipesServer implements Runnable {
             parsing = true;
             since = System.currentTimeMillis();
         }
+        resourceUsageMeter.start();
         FetchEmitTuple t = null;
         try {
             long start = System.currentTimeMillis();
@@ -348,6 +406,8 @@ public class PipesServer implements Runnable {
         } catch (OutOfMemoryError e) {
             handleOOM(t.getId(), e);
         } finally {
+            //in case nothing was written for this document
+            resourceUsageMeter.stop();
             synchronized (lock) {
                 parsing = false;
                 since = System.currentTimeMillis();
@@ -369,6 +429,11 @@ public class PipesServer implements Runnable {
             LOG.trace("timer -- got fetcher: {}ms", elapsed);
         }
 
+        if (isStreaming(t) && getStreamingEmitter(t) == null) {
+            //rely on proper logging/exception handling in getStreamingEmitter
+            return;
+        }
+
         start = System.currentTimeMillis();
         MetadataListAndEmbeddedBytes parseData = null;
 
@@ -380,6 +445,13 @@ public class PipesServer implements Runnable {
                 LOG.trace("timer -- to parse: {} ms", System.currentTimeMillis() - start);
             }
 
+            if (parseData != null && parseData.getEmitException() != null) {
+                LOG.warn("emit exception", parseData.getEmitException());
+                write(STATUS.EMIT_EXCEPTION,
+                        ExceptionUtils.getStackTrace(parseData.getEmitException()));
+                return;
+            }
+
             if (parseData == null || metadataIsEmpty(parseData.getMetadataList())) {
                 write(STATUS.EMPTY_OUTPUT);
                 return;
@@ -538,15 +610,20 @@ public class PipesServer implements Runnable {
             throws TikaConfigException {
 
         List<Metadata> metadataList;
+        //check this before the server adds its own objects to the context
+        boolean cacheable = parseResultCache != null &&
+                ParseResultCache.isCacheable(fetchEmitTuple.getParseContext());
         //this adds the EmbeddedDocumentByteStore to the parsecontext
         ParseContext parseContext = setupParseContext(fetchEmitTuple);
         HandlerConfig handlerConfig = parseContext.get(HandlerConfig.class);
-        if (handlerConfig.getParseMode() == HandlerConfig.PARSE_MODE.RMETA) {
-            metadataList =
-                    parseRecursive(fetchEmitTuple, handlerConfig, stream, metadata, parseContext);
+        if (isStreaming(fetchEmitTuple)) {
+            return parseStreaming(fetchEmitTuple, handlerConfig, stream, metadata, parseContext);
+        } else if (handlerConfig.getParseMode() != HandlerConfig.PARSE_MODE.CONCATENATE) {
+            metadataList = parseRecursive(fetchEmitTuple, handlerConfig, stream, metadata,
+                    parseContext, cacheable);
         } else {
             metadataList = parseConcatenated(fetchEmitTuple, handlerConfig, stream, metadata,
-                    parseContext);
+                    parseContext, cacheable);
         }
 
         return new MetadataListAndEmbeddedBytes(metadataList,
@@ -592,7 +669,8 @@ public class PipesServer implements Runnable {
 
     private List<Metadata> parseConcatenated(FetchEmitTuple fetchEmitTuple,
                                              HandlerConfig handlerConfig, InputStream stream,
-                                             Metadata metadata, ParseContext parseContext) {
+                                             Metadata metadata, ParseContext parseContext,
+                                             boolean cacheable) {
 
         ContentHandlerFactory contentHandlerFactory =
                 new BasicContentHandlerFactory(handlerConfig.getType(),
@@ -600,22 +678,31 @@ public class PipesServer implements Runnable {
                         parseContext);
 
         ContentHandler handler = contentHandlerFactory.getNewContentHandler();
+        resourceUsageMeter.setEmbeddedCount(0);
         parseContext.set(DocumentSelector.class, new DocumentSelector() {
             final int maxEmbedded = handlerConfig.maxEmbeddedResources;
             int embedded = 0;
 
             @Override
             public boolean select(Metadata metadata) {
-                if (maxEmbedded < 0) {
-                    return true;
+                if (maxEmbedded >= 0 && embedded >= maxEmbedded) {
+                    return false;
                 }
-                return embedded++ < maxEmbedded;
+                resourceUsageMeter.setEmbeddedCount(++embedded);
+                return true;
             }
         });
 
         String containerException = null;
         long start = System.currentTimeMillis();
         preParse(fetchEmitTuple, stream, metadata, parseContext);
+        String cacheKey = cacheable ? ParseResultCache.getDigestKey(metadata) : null;
+        List<Metadata> cached = getCached(fetchEmitTuple, cacheKey, handlerConfig, metadata);
+        if (cached != null) {
+            return cached;
+        }
+        Metadata preParse = cacheKey == null ? null : ParserUtils.cloneMetadata(metadata);
+        long parseStart = System.nanoTime();
         try {
             autoDetectParser.parse(stream, handler, metadata, parseContext);
         } catch (SAXException e) {
@@ -631,6 +718,7 @@ public class PipesServer implements Runnable {
             containerException = ExceptionUtils.getStackTrace(e);
             LOG.warn("parse exception: " + fetchEmitTuple.getId(), e);
         } finally {
+            resourceUsageMeter.setParse(metadata, System.nanoTime() - parseStart);
             metadata.add(TikaCoreProperties.TIKA_CONTENT, handler.toString());
             if (containerException != null) {
                 metadata.add(TikaCoreProperties.CONTAINER_EXCEPTION, containerException);
@@ -639,12 +727,15 @@ public class PipesServer implements Runnable {
                 LOG.trace("timer -- parse only time: {} ms", System.currentTimeMillis() - start);
             }
         }
-        return Collections.singletonList(metadata);
+        List<Metadata> metadataList = Collections.singletonList(metadata);
+        putCached(cacheKey, handlerConfig, metadataList, preParse);
+        return metadataList;
     }
 
     private List<Metadata> parseRecursive(FetchEmitTuple fetchEmitTuple,
                                           HandlerConfig handlerConfig, InputStream stream,
-                                          Metadata metadata, ParseContext parseContext) {
+                                          Metadata metadata, ParseContext parseContext,
+                                          boolean cacheable) {
         //Intentionally do not add the metadata filter here!
         //We need to let stacktraces percolate
         RecursiveParserWrapperHandler handler = new RecursiveParserWrapperHandler(
@@ -655,6 +746,13 @@ public class PipesServer implements Runnable {
         long start = System.currentTimeMillis();
 
         preParse(fetchEmitTuple, stream, metadata, parseContext);
+        String cacheKey = cacheable ? ParseResultCache.getDigestKey(metadata) : null;
+        List<Metadata> cached = getCached(fetchEmitTuple, cacheKey, handlerConfig, metadata);
+        if (cached != null) {
+            return cached;
+        }
+        Metadata preParse = cacheKey == null ? null : ParserUtils.cloneMetadata(metadata);
+        long parseStart = System.nanoTime();
         try {
             rMetaParser.parse(stream, handler, metadata, parseContext);
         } catch (SAXException e) {
@@ -667,13 +765,104 @@ public class PipesServer implements Runnable {
         } catch (Exception e) {
             LOG.warn("parse exception: " + fetchEmitTuple.getId(), e);
         } finally {
+            resourceUsageMeter.setParse(metadata, System.nanoTime() - parseStart);
             if (LOG.isTraceEnabled()) {
                 LOG.trace("timer -- parse only time: {} ms", System.currentTimeMillis() - start);
             }
         }
+        resourceUsageMeter.setEmbeddedCount(Math.max(0, handler.getMetadataList().size() - 1));
+        putCached(cacheKey, handlerConfig, handler.getMetadataList(), preParse);
         return handler.getMetadataList();
     }
 
+    /**
+     * Parses like {@link #parseRecursive(FetchEmitTuple, HandlerConfig, InputStream, Metadata,
+     * ParseContext)} but emits each embedded document as soon as it has been parsed.
+     * Only the container document's metadata is returned, and that is then handled
+     * like any other parse result, so memory is bounded by the largest embedded
+     * document rather than by the whole container.
+     */
+    private MetadataListAndEmbeddedBytes parseStreaming(FetchEmitTuple fetchEmitTuple,
+                                                        HandlerConfig handlerConfig,
+                                                        InputStream stream, Metadata metadata,
+                                                        ParseContext parseContext) {
+        //the container's metadata is filtered in emitParseData so that
+        //its stacktrace can percolate, but the embedded documents never get there
+        MetadataFilter filter = parseContext.get(MetadataFilter.class);
+        if (filter == null) {
+            filter = tikaConfig.getMetadataFilter();
+        }
+        EmittingRecursiveParserWrapperHandler handler = new EmittingRecursiveParserWrapperHandler(
+                new BasicContentHandlerFactory(handlerConfig.getType(),
+                        handlerConfig.getWriteLimit(), handlerConfig.isThrowOnWriteLimitReached(),
+                        parseContext), handlerConfig.getMaxEmbeddedResources(), filter,
+                getStreamingEmitter(fetchEmitTuple), fetchEmitTuple.getEmitKey().getEmitKey(),
+                parseContext);
+
+        long start = System.currentTimeMillis();
+
+        preParse(fetchEmitTuple, stream, metadata, parseContext);
+        long parseStart = System.nanoTime();
+        try {
+            rMetaParser.parse(stream, handler, metadata, parseContext);
+        } catch (SAXException e) {
+            LOG.warn("sax problem:" + fetchEmitTuple.getId(), e);
+        } catch (EncryptedDocumentException e) {
+            LOG.warn("encrypted document:" + fetchEmitTuple.getId(), e);
+        } catch (SecurityException e) {
+            LOG.warn("security exception:" + fetchEmitTuple.getId(), e);
+            throw e;
+        } catch (Exception e) {
+            LOG.warn("parse exception: " + fetchEmitTuple.getId(), e);
+        } finally {
+            resourceUsageMeter.setParse(metadata, System.nanoTime() - parseStart);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("timer -- parse and emit embedded time: {} ms; emitted {}",
+                        System.currentTimeMillis() - start, handler.getEmittedCount());
+            }
+        }
+        resourceUsageMeter.setEmbeddedCount(handler.getEmittedCount());
+        List<Metadata> metadataList = new ArrayList<>();
+        if (handler.getContainerMetadata() != null) {
+            metadataList.add(handler.getContainerMetadata());
+        }
+        MetadataListAndEmbeddedBytes parseData = new MetadataListAndEmbeddedBytes(metadataList,
+                parseContext.get(EmbeddedDocumentBytesHandler.class));
+        parseData.emitException = handler.getEmitException();
+        return parseData;
+    }
+
+    /**
+     * If emitting from the server is turned off, the emitters aren't loaded,
+     * and streaming falls back to a regular recursive parse.
+     */
+    private boolean isStreaming(FetchEmitTuple t) {
+        HandlerConfig handlerConfig = t.getParseContext().get(HandlerConfig.class);
+        return emitterManager != null && handlerConfig != null &&
+                handlerConfig.getParseMode() == HandlerConfig.PARSE_MODE.RMETA_STREAMING;
+    }
+
+    /**
+     * Embedded documents are emitted by the server in streaming mode, so
+     * this makes sure that there's an emit key and that its emitter exists.
+     *
+     * @return the emitter or <code>null</code> if it couldn't be found
+     */
+    private Emitter getStreamingEmitter(FetchEmitTuple t) {
+        EmitKey emitKey = t.getEmitKey();
+        if (StringUtils.isBlank(emitKey.getEmitKey())) {
+            t.setEmitKey(new EmitKey(emitKey.getEmitterName(), t.getFetchKey().getFetchKey()));
+        }
+        try {
+            return emitterManager.getEmitter(emitKey.getEmitterName());
+        } catch (IllegalArgumentException e) {
+            String noEmitterMsg = getNoEmitterMsg(emitKey.getEmitterName());
+            LOG.warn(noEmitterMsg);
+            write(STATUS.EMITTER_NOT_FOUND, noEmitterMsg);
+            return null;
+        }
+    }
+
     private void preParse(FetchEmitTuple t, InputStream stream, Metadata metadata,
                           ParseContext parseContext) {
         TemporaryResources tmp = null;
@@ -699,6 +888,12 @@ public class PipesServer implements Runnable {
                 LOG.warn("problem digesting: " + t.getId(), e);
             }
         }
+        try {
+            //after digesting, which may have spooled the stream to a file
+            resourceUsageMeter.setBytesIn(tis.hasLength() ? tis.getLength() : -1);
+        } catch (IOException e) {
+            LOG.debug("couldn't get length: " + t.getId(), e);
+        }
         try {
             MediaType mt = detector.detect(tis, metadata);
             metadata.set(Metadata.CONTENT_TYPE, mt.toString());
@@ -718,6 +913,42 @@ public class PipesServer implements Runnable {
         }
     }
 
+    /**
+     * @param cacheKey the digests or <code>null</code> if this document's parse
+     *                 result isn't cached
+     * @param metadata what was fetched, digested and detected for this copy of the
+     *                 document; on a hit, this becomes the container's metadata
+     */
+    private List<Metadata> getCached(FetchEmitTuple t, String cacheKey,
+                                     HandlerConfig handlerConfig, Metadata metadata) {
+        if (cacheKey == null) {
+            return null;
+        }
+        List<Metadata> cached = parseResultCache.get(cacheKey, handlerConfig);
+        if (metadataIsEmpty(cached)) {
+            return null;
+        }
+        LOG.debug("parse result cache hit: {}", t.getId());
+        resourceUsageMeter.setEmbeddedCount(cached.size() - 1);
+        //the entry only has the parse output for the container
+        Metadata parseOutput = cached.get(0);
+        for (String n : parseOutput.names()) {
+            metadata.remove(n);
+            for (String val : parseOutput.getValues(n)) {
+                metadata.add(n, val);
+            }
+        }
+        cached.set(0, metadata);
+        return cached;
+    }
+
+    private void putCached(String cacheKey, HandlerConfig handlerConfig,
+                           List<Metadata> metadataList, Metadata preParse) {
+        if (cacheKey != null && !metadataIsEmpty(metadataList)) {
+            parseResultCache.put(cacheKey, handlerConfig, metadataList, preParse);
+        }
+    }
+
     private void injectUserMetadata(Metadata userMetadata, List<Metadata> metadataList) {
         for (String n : userMetadata.names()) {
             //overwrite whatever was there
@@ -728,7 +959,17 @@ public class PipesServer implements Runnable {
         }
     }
 
-    private void exit(int exitCode) {
+    /**
+     * Checked by the watchdog while a document is being parsed.  The forked
+     * server relies on the JVM's own limits, so this always returns <code>false</code>.
+     *
+     * @return whether the document currently being parsed should be abandoned
+     */
+    protected boolean exceedsResourceLimits() {
+        return false;
+    }
+
+    protected void exit(int exitCode) {
         if (exitCode != 0) {
             LOG.error("exiting: {}", exitCode);
         } else {
@@ -740,19 +981,14 @@ public class PipesServer implements Runnable {
 
     private FetchEmitTuple readFetchEmitTuple() {
         try {
+            currentRequestId = input.readInt();
             int length = input.readInt();
             byte[] bytes = new byte[length];
             input.readFully(bytes);
-            try (ObjectInputStream objectInputStream = new ObjectInputStream(
-                    UnsynchronizedByteArrayInputStream.builder().setByteArray(bytes).get())) {
-                return (FetchEmitTuple) objectInputStream.readObject();
-            }
+            return codec.deserializeFetchEmitTuple(bytes);
         } catch (IOException e) {
             LOG.error("problem reading tuple", e);
             exit(1);
-        } catch (ClassNotFoundException e) {
-            LOG.error("can't find class?!", e);
-            exit(1);
         }
         //unreachable, no?!
         return null;
@@ -787,6 +1023,12 @@ public class PipesServer implements Runnable {
                                 new RUnpackExtractorFactory());
             }
         }
+        this.parseResultCache = ParseResultCache.load(tikaConfigPath);
+        if (this.parseResultCache != null && this.digester == null) {
+            LOG.warn("The parseResultCache is keyed by the digests of the documents; " +
+                    "configure a digesterFactory in the autoDetectParserConfig to use it");
+            this.parseResultCache = null;
+        }
         this.detector = ((AutoDetectParser) this.autoDetectParser).getDetector();
         this.rMetaParser = new RecursiveParserWrapper(autoDetectParser);
     }
@@ -794,11 +1036,7 @@ public class PipesServer implements Runnable {
 
     private void writeIntermediate(EmitKey emitKey, Metadata metadata) {
         try {
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(metadata);
-            }
-            write(STATUS.INTERMEDIATE_RESULT, bos.toByteArray());
+            write(STATUS.INTERMEDIATE_RESULT, codec.serialize(metadata));
         } catch (IOException e) {
             LOG.error("problem writing intermediate data (forking process shutdown?)", e);
             exit(1);
@@ -807,11 +1045,7 @@ public class PipesServer implements Runnable {
 
     private void write(EmitData emitData) {
         try {
-            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bos)) {
-                objectOutputStream.writeObject(emitData);
-            }
-            write(STATUS.PARSE_SUCCESS, bos.toByteArray());
+            write(STATUS.PARSE_SUCCESS, codec.serialize(emitData));
         } catch (IOException e) {
             LOG.error("problem writing emit data (forking process shutdown?)", e);
             exit(1);
@@ -826,7 +1060,11 @@ public class PipesServer implements Runnable {
     private void write(STATUS status, byte[] bytes) {
         try {
             int len = bytes.length;
+            writeResourceUsage(status);
             output.write(status.getByte());
+            if (status.hasRequestId()) {
+                output.writeInt(currentRequestId);
+            }
             output.writeInt(len);
             output.write(bytes);
             output.flush();
@@ -838,7 +1076,11 @@ public class PipesServer implements Runnable {
 
     private void write(STATUS status) {
         try {
+            writeResourceUsage(status);
             output.write(status.getByte());
+            if (status.hasRequestId()) {
+                output.writeInt(currentRequestId);
+            }
             output.flush();
         } catch (IOException e) {
             LOG.error("problem writing data (forking process shutdown?)", e);
@@ -846,10 +1088,42 @@ public class PipesServer implements Runnable {
         }
     }
 
+    /**
+     * Writes the resources used for the current document ahead of its result.
+     * Nothing is measured after an OOM, and nothing is written before intermediate
+     * results, which aren't the end of the document.
+     */
+    private void writeResourceUsage(STATUS status) throws IOException {
+        if (!status.hasRequestId() || status == STATUS.INTERMEDIATE_RESULT ||
+                status == STATUS.RESOURCE_USAGE || status == STATUS.OOM ||
+                !resourceUsageMeter.isRunning()) {
+            return;
+        }
+        byte[] bytes = codec.serialize(resourceUsageMeter.stop());
+        output.write(STATUS.RESOURCE_USAGE.getByte());
+        output.writeInt(currentRequestId);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Thrown from {@link #exit(int)} by servers that can't exit the JVM to unwind
+     * the thread that called it.
+     */
+    static class ServerExit extends Error {
+        private static final long serialVersionUID = -2094129016382539153L;
+
+        ServerExit() {
+            super(null, null, false, false);
+        }
+    }
+
     static class MetadataListAndEmbeddedBytes {
 
         List<Metadata> metadataList;
         final Optional<EmbeddedDocumentBytesHandler> embeddedDocumentBytesHandler;
+        //set if the embedded documents were emitted during the parse and that failed
+        Exception emitException;
 
         public MetadataListAndEmbeddedBytes(List<Metadata> metadataList,
                                             EmbeddedDocumentBytesHandler embeddedDocumentBytesHandler) {
@@ -865,6 +1139,10 @@ public class PipesServer implements Runnable {
             metadataList = filter.filter(metadataList);
         }
 
+        public Exception getEmitException() {
+            return emitException;
+        }
+
         public EmbeddedDocumentBytesHandler getEmbeddedDocumentBytesHandler() {
             return embeddedDocumentBytesHandler.get();
         }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+/**
+ * Resources that the {@link PipesServer} used to fetch, parse and, if it emitted
+ * the document itself, emit a single document.  These are measured on the thread
+ * that handled the document, so work that the parsers hand off to other threads
+ * or to external processes is not included.
+ * <p>
+ * This also describes the parse itself: which parser handled the container
+ * document, its mime type and length, and how long the parse alone took.  These
+ * are sent even when the document is emitted by the server, so that the client
+ * can record parse metrics without the document's metadata.
+ * <p>
+ * Each number is <code>-1</code> and each string is <code>null</code> if it
+ * couldn't be measured, e.g. because the JVM doesn't support per-thread
+ * measurements or because the result came from the parse result cache.
+ */
+public class ResourceUsage {
+
+    private final long cpuTimeNanos;
+    private final long allocatedBytes;
+    private final long tempFileBytes;
+    private final int embeddedCount;
+    private final String parser;
+    private final String mimeType;
+    private final long bytesIn;
+    private final long parseNanos;
+
+    public ResourceUsage(long cpuTimeNanos, long allocatedBytes, long tempFileBytes,
+                         int embeddedCount) {
+        this(cpuTimeNanos, allocatedBytes, tempFileBytes, embeddedCount, null, null, -1, -1);
+    }
+
+    public ResourceUsage(long cpuTimeNanos, long allocatedBytes, long tempFileBytes,
+                         int embeddedCount, String parser, String mimeType, long bytesIn,
+                         long parseNanos) {
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.tempFileBytes = tempFileBytes;
+        this.embeddedCount = embeddedCount;
+        this.parser = parser;
+        this.mimeType = mimeType;
+        this.bytesIn = bytesIn;
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * @return CPU time of the thread that handled the document, in nanoseconds
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return bytes allocated on the heap by the thread that handled the document
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return peak bytes in the temporary files that were created through
+     * {@link org.apache.tika.io.TemporaryResources} on the thread that handled the
+     * document; see {@link org.apache.tika.io.TempFileUsage}
+     */
+    public long getTempFileBytes() {
+        return tempFileBytes;
+    }
+
+    /**
+     * @return number of embedded documents that were parsed
+     */
+    public int getEmbeddedCount() {
+        return embeddedCount;
+    }
+
+    /**
+     * @return class name of the last parser in the container document's
+     * {@link org.apache.tika.metadata.TikaCoreProperties#TIKA_PARSED_BY}
+     */
+    public String getParser() {
+        return parser;
+    }
+
+    /**
+     * @return the container document's content type, without parameters
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return length of the container document, in bytes
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return time spent in the parser, in nanoseconds.  Unlike the elapsed time
+     * that the client measures, this doesn't include fetching, digesting, detecting
+     * or emitting the container document.  In streaming mode, it does include
+     * emitting the embedded documents, which happens while the container is parsed.
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceUsage{" + "cpuTimeNanos=" + cpuTimeNanos + ", allocatedBytes=" +
+                allocatedBytes + ", tempFileBytes=" + tempFileBytes + ", embeddedCount=" +
+                embeddedCount + ", parser='" + parser + '\'' + ", mimeType='" + mimeType + '\'' +
+                ", bytesIn=" + bytesIn + ", parseNanos=" + parseNanos + '}';
+    }
+}
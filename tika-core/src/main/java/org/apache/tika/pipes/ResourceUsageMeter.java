@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.tika.io.TempFileUsage;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * Measures the {@link ResourceUsage} of the current thread between
+ * {@link #start()} and {@link #stop()}.  This is not thread safe; it's meant to
+ * be used by the thread that handles the document.
+ */
+class ResourceUsageMeter {
+
+    private final ThreadMXBean threadMXBean;
+    private boolean running = false;
+    private long cpuAtStart;
+    private long allocatedAtStart;
+    private TempFileUsage tempFileUsage;
+    private int embeddedCount;
+    private String parser;
+    private String mimeType;
+    private long bytesIn;
+    private long parseNanos;
+
+    ResourceUsageMeter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = bean.isCurrentThreadCpuTimeSupported() ? bean : null;
+        if (threadMXBean != null && !threadMXBean.isThreadCpuTimeEnabled()) {
+            threadMXBean.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    void start() {
+        running = true;
+        cpuAtStart = threadMXBean == null ? -1 : threadMXBean.getCurrentThreadCpuTime();
+        allocatedAtStart = ThreadAllocations.getAllocatedBytes(Thread.currentThread().getId());
+        tempFileUsage = TempFileUsage.start();
+        embeddedCount = -1;
+        parser = null;
+        mimeType = null;
+        bytesIn = -1;
+        parseNanos = -1;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    void setEmbeddedCount(int embeddedCount) {
+        this.embeddedCount = embeddedCount;
+    }
+
+    /**
+     * @param bytesIn length of the input, or -1 if it isn't known before the parse
+     */
+    void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    /**
+     * Records what was parsed, from the container document's metadata after the parse.
+     */
+    void setParse(Metadata metadata, long parseNanos) {
+        this.parseNanos = parseNanos;
+        String[] parsedBy = metadata.getValues(TikaCoreProperties.TIKA_PARSED_BY);
+        if (parsedBy.length > 0 && !StringUtils.isBlank(parsedBy[parsedBy.length - 1])) {
+            parser = parsedBy[parsedBy.length - 1];
+        }
+        String contentType = metadata.get(Metadata.CONTENT_TYPE);
+        if (!StringUtils.isBlank(contentType)) {
+            int i = contentType.indexOf(';');
+            mimeType = (i > -1 ? contentType.substring(0, i) : contentType).trim();
+        }
+        if (bytesIn < 0) {
+            try {
+                String length = metadata.get(Metadata.CONTENT_LENGTH);
+                bytesIn = length == null ? -1 : Long.parseLong(length);
+            } catch (NumberFormatException e) {
+                //leave it unknown
+            }
+        }
+    }
+
+    /**
+     * @return the usage since {@link #start()}, or <code>null</code> if the meter
+     * isn't running
+     */
+    ResourceUsage stop() {
+        if (!running) {
+            return null;
+        }
+        running = false;
+        long cpu = cpuAtStart < 0 ? -1 : threadMXBean.getCurrentThreadCpuTime() - cpuAtStart;
+        long allocated = allocatedAtStart < 0 ? -1 :
+                ThreadAllocations.getAllocatedBytes(Thread.currentThread().getId()) -
+                        allocatedAtStart;
+        long tempFileBytes = tempFileUsage.stop();
+        tempFileUsage = null;
+        return new ResourceUsage(cpu, allocated, tempFileBytes, embeddedCount, parser, mimeType,
+                bytesIn, parseNanos);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bytes allocated on the heap per thread, from <code>com.sun.management.ThreadMXBean</code>.
+ * Not every JVM or OSGi container provides that interface, so it is looked up
+ * reflectively the first time this class is used, and the counts are
+ * <code>-1</code> where it isn't available.
+ */
+final class ThreadAllocations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadAllocations.class);
+
+    //bound to the ThreadMXBean: (long threadId)long; null if unavailable
+    private static final MethodHandle GET_THREAD_ALLOCATED_BYTES = lookup();
+
+    private ThreadAllocations() {
+    }
+
+    static boolean isSupported() {
+        return GET_THREAD_ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * @return the bytes that the thread has allocated since it started, or
+     * <code>-1</code> if this JVM can't measure them
+     */
+    static long getAllocatedBytes(long threadId) {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (long) GET_THREAD_ALLOCATED_BYTES.invokeExact(threadId);
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+
+    private static MethodHandle lookup() {
+        try {
+            Class<?> sunBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!sunBeanClass.isInstance(bean)) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            boolean supported = (boolean) lookup.findVirtual(sunBeanClass,
+                    "isThreadAllocatedMemorySupported", MethodType.methodType(boolean.class))
+                    .invoke(bean);
+            if (!supported) {
+                return null;
+            }
+            lookup.findVirtual(sunBeanClass, "setThreadAllocatedMemoryEnabled",
+                    MethodType.methodType(void.class, boolean.class)).invoke(bean, true);
+            return lookup.findVirtual(sunBeanClass, "getThreadAllocatedBytes",
+                    MethodType.methodType(long.class, long.class)).bindTo(bean);
+        } catch (Throwable t) {
+            LOG.debug("can't measure allocated bytes per thread", t);
+            return null;
+        }
+    }
+}
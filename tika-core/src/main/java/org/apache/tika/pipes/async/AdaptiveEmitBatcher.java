@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.pipes.emitter.TikaEmitterRejectedException;
+
+/**
+ * Sits between the {@link AsyncEmitter}s and the emitters, and is shared by all
+ * of the emitter threads.  It records the size and latency of every request to
+ * each emitter; see {@link EmitBatchStatistics}.
+ * <p>
+ * If a target latency is set ({@link AsyncConfig#setEmitTargetLatencyMillis(long)}),
+ * this also sizes the requests.  For each emitter, it keeps a target number of
+ * estimated bytes per request, splits the batches that it is given into requests
+ * of about that size, and lets the emitter threads' caches grow to it.  After
+ * each full-sized request, the target moves toward what the emitter could have
+ * handled in the target latency at the throughput it just showed.  When the emitter
+ * turns a request down as overloaded ({@link TikaEmitterRejectedException}),
+ * the target is halved and the request is retried after a backoff.
+ */
+class AdaptiveEmitBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveEmitBatcher.class);
+
+    //smallest target; a single document larger than this is still sent on its own
+    static final long MIN_TARGET_BYTES = 1024;
+
+    //a rejected request is retried this many times before the failure is passed on
+    static final int MAX_REJECTED_RETRIES = 8;
+
+    //how far a single request can move the target toward its estimate
+    private static final double SMOOTHING = 0.5;
+
+    /**
+     * Sends one request to the emitter.
+     */
+    @FunctionalInterface
+    interface RequestSender {
+        void send(List<EmitData> request) throws IOException, TikaEmitterException;
+    }
+
+    private final long targetLatencyMillis;
+    private final long initialTargetBytes;
+    private final long maxTargetBytes;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, Controller> controllers = new ConcurrentHashMap<>();
+
+    AdaptiveEmitBatcher(AsyncConfig asyncConfig) {
+        this(asyncConfig.getEmitTargetLatencyMillis(), asyncConfig.getEmitMaxEstimatedBytes(),
+                asyncConfig.getEmitMaxBatchBytes(), asyncConfig.getEmitRetryInitialBackoffMillis(),
+                asyncConfig.getEmitRetryMaxBackoffMillis());
+    }
+
+    AdaptiveEmitBatcher(long targetLatencyMillis, long initialTargetBytes, long maxTargetBytes,
+                        long initialBackoffMillis, long maxBackoffMillis) {
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.maxTargetBytes = Math.max(MIN_TARGET_BYTES, maxTargetBytes);
+        this.initialTargetBytes = Math.min(this.maxTargetBytes,
+                Math.max(MIN_TARGET_BYTES, initialTargetBytes));
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    boolean isAdaptive() {
+        return targetLatencyMillis > 0;
+    }
+
+    /**
+     * @return how many estimated bytes an emitter thread should cache before it emits;
+     * the largest of the emitters' targets
+     */
+    long getMaxCacheBytes(long defaultMaxBytes) {
+        if (!isAdaptive()) {
+            return defaultMaxBytes;
+        }
+        long max = initialTargetBytes;
+        for (Controller c : controllers.values()) {
+            max = Math.max(max, c.getTargetBytes());
+        }
+        return max;
+    }
+
+    /**
+     * Sends the batch to the emitter, in as many requests as the emitter's
+     * target calls for.  If a request fails, the requests that were sent before it
+     * are not rolled back.
+     */
+    void emit(String emitterName, List<EmitData> batch, RequestSender sender)
+            throws IOException, TikaEmitterException {
+        Controller controller = controllers.computeIfAbsent(emitterName, Controller::new);
+        if (!isAdaptive()) {
+            send(controller, batch, estimateBytes(batch), sender);
+            return;
+        }
+        int start = 0;
+        while (start < batch.size()) {
+            long target = controller.getTargetBytes();
+            int end = start;
+            long bytes = 0;
+            //take at least one document
+            while (end < batch.size() &&
+                    (end == start || bytes + batch.get(end).getEstimatedSizeBytes() <= target)) {
+                bytes += batch.get(end).getEstimatedSizeBytes();
+                end++;
+            }
+            List<EmitData> request = batch.subList(start, end);
+            try {
+                send(controller, request, bytes, sender);
+                start = end;
+            } catch (TikaEmitterRejectedException e) {
+                if (controller.getConsecutiveRejections() > MAX_REJECTED_RETRIES) {
+                    throw e;
+                }
+                long backoff = controller.getBackoffMillis();
+                LOG.warn("emitter {} rejected a request of {} bytes; retrying in {} ms",
+                        emitterName, bytes, backoff);
+                sleep(backoff);
+            }
+        }
+    }
+
+    private void send(Controller controller, List<EmitData> request, long bytes,
+                      RequestSender sender) throws IOException, TikaEmitterException {
+        long start = System.currentTimeMillis();
+        try {
+            sender.send(request);
+        } catch (TikaEmitterRejectedException e) {
+            controller.onRejected(request.size(), bytes, System.currentTimeMillis() - start);
+            throw e;
+        } catch (IOException | TikaEmitterException | RuntimeException e) {
+            controller.onFailure(request.size(), bytes, System.currentTimeMillis() - start);
+            throw e;
+        }
+        controller.onSuccess(request.size(), bytes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return statistics by emitter name
+     */
+    Map<String, EmitBatchStatistics> getStatistics() {
+        Map<String, EmitBatchStatistics> stats = new TreeMap<>();
+        for (Controller c : controllers.values()) {
+            stats.put(c.emitterName, c.getStatistics());
+        }
+        return stats;
+    }
+
+    private static long estimateBytes(List<EmitData> batch) {
+        long bytes = 0;
+        for (EmitData d : batch) {
+            bytes += d.getEstimatedSizeBytes();
+        }
+        return bytes;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while backing off");
+        }
+    }
+
+    private class Controller {
+        private final String emitterName;
+        private final long[] documentsHistogram = new long[EmitBatchStatistics.NUM_BUCKETS];
+        private final long[] bytesHistogram = new long[EmitBatchStatistics.NUM_BUCKETS];
+        private final long[] latencyHistogram = new long[EmitBatchStatistics.NUM_BUCKETS];
+        private long requests = 0;
+        private long failures = 0;
+        private long rejections = 0;
+        private double targetBytes = initialTargetBytes;
+        private int consecutiveRejections = 0;
+
+        Controller(String emitterName) {
+            this.emitterName = emitterName;
+        }
+
+        synchronized long getTargetBytes() {
+            return (long) targetBytes;
+        }
+
+        synchronized int getConsecutiveRejections() {
+            return consecutiveRejections;
+        }
+
+        synchronized long getBackoffMillis() {
+            long backoff = initialBackoffMillis;
+            for (int i = 1; i < consecutiveRejections && backoff < maxBackoffMillis; i++) {
+                backoff *= 2;
+            }
+            return Math.min(backoff, maxBackoffMillis);
+        }
+
+        synchronized void onSuccess(int documents, long bytes, long latencyMillis) {
+            record(documents, bytes, latencyMillis);
+            consecutiveRejections = 0;
+            if (!isAdaptive()) {
+                return;
+            }
+            double estimate;
+            if (latencyMillis > targetLatencyMillis) {
+                //too slow, whatever the size
+                estimate = (double) bytes * targetLatencyMillis / latencyMillis;
+            } else if (bytes >= targetBytes / 2) {
+                //small requests are dominated by per-request overhead, so don't learn
+                //from them; and don't more than double the target in one step
+                estimate = Math.min(2 * targetBytes,
+                        (double) bytes * targetLatencyMillis / Math.max(1, latencyMillis));
+            } else {
+                return;
+            }
+            updateTarget(targetBytes + SMOOTHING * (estimate - targetBytes));
+        }
+
+        synchronized void onFailure(int documents, long bytes, long latencyMillis) {
+            record(documents, bytes, latencyMillis);
+            failures++;
+        }
+
+        synchronized void onRejected(int documents, long bytes, long latencyMillis) {
+            onFailure(documents, bytes, latencyMillis);
+            rejections++;
+            consecutiveRejections++;
+            if (isAdaptive()) {
+                updateTarget(Math.min(targetBytes, bytes) / 2);
+            }
+        }
+
+        private void updateTarget(double newTarget) {
+            double old = targetBytes;
+            targetBytes = Math.max(MIN_TARGET_BYTES, Math.min(maxTargetBytes, newTarget));
+            if (LOG.isDebugEnabled() && (long) old != (long) targetBytes) {
+                LOG.debug("emitter {}: target batch bytes {} -> {}", emitterName, (long) old,
+                        (long) targetBytes);
+            }
+        }
+
+        private void record(int documents, long bytes, long latencyMillis) {
+            requests++;
+            documentsHistogram[EmitBatchStatistics.bucket(documents)]++;
+            bytesHistogram[EmitBatchStatistics.bucket(bytes)]++;
+            latencyHistogram[EmitBatchStatistics.bucket(latencyMillis)]++;
+        }
+
+        synchronized EmitBatchStatistics getStatistics() {
+            return new EmitBatchStatistics(emitterName, requests, failures, rejections,
+                    isAdaptive() ? (long) targetBytes : -1, documentsHistogram, bytesHistogram,
+                    latencyHistogram);
+        }
+    }
+}
@@ -20,6 +20,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.tika.exception.TikaConfigException;
 import org.apache.tika.pipes.PipesConfigBase;
@@ -32,6 +36,17 @@ public class AsyncConfig extends PipesConfigBase {
 
     private int queueSize = 10000;
     private int numEmitters = 1;
+    private int maxConcurrentEmits = -1;
+    private int maxConcurrentFetches = -1;
+    private long maxFetchAheadBytes = 100 * 1024 * 1024;
+    private Path emitSpoolDirectory = null;
+    private long emitRetryInitialBackoffMillis = 1000;
+    private long emitRetryMaxBackoffMillis = 300000;
+    private long emitTargetLatencyMillis = -1;
+    private long emitMaxBatchBytes = 10 * 1024 * 1024;
+    private long largeDocumentThresholdBytes = -1;
+    private int numLargeDocumentClients = 0;
+    private List<String> largeDocumentForkedJvmArgs = new ArrayList<>();
 
     private boolean emitIntermediateResults = false;
 
@@ -45,6 +60,12 @@ public class AsyncConfig extends PipesConfigBase {
         if (asyncConfig.getTikaConfig() == null) {
             asyncConfig.setTikaConfig(p);
         }
+        if (asyncConfig.getNumLargeDocumentClients() > 0 &&
+                asyncConfig.getNumLargeDocumentClients() >= asyncConfig.getNumClients()) {
+            throw new TikaConfigException("numLargeDocumentClients (" +
+                    asyncConfig.getNumLargeDocumentClients() + ") must be less than numClients (" +
+                    asyncConfig.getNumClients() + ")");
+        }
         return asyncConfig;
     }
 
@@ -102,6 +123,205 @@ public class AsyncConfig extends PipesConfigBase {
         return numEmitters;
     }
 
+    public int getMaxConcurrentEmits() {
+        return maxConcurrentEmits;
+    }
+
+    /**
+     * Maximum number of emitters that may be emitting at the same time,
+     * across all of the emitter threads.  This bounds the load on the
+     * emitters' backends independently of {@link #getNumEmitters()}, which is useful
+     * with {@link #setUseVirtualThreads(boolean) virtual threads}, where
+     * emitter threads are cheap.  The default, <code>-1</code>, is no limit.
+     *
+     * @param maxConcurrentEmits
+     */
+    public void setMaxConcurrentEmits(int maxConcurrentEmits) {
+        this.maxConcurrentEmits = maxConcurrentEmits;
+    }
+
+    public int getMaxConcurrentFetches() {
+        return maxConcurrentFetches;
+    }
+
+    /**
+     * If greater than 0, the AsyncProcessor fetches the documents itself, ahead of
+     * the PipesClients, with up to this many fetches at a time, and hands the bytes
+     * to the forked servers in shared memory.  This is for high-latency sources, e.g.
+     * object stores, where the number of concurrent fetches bounds the throughput:
+     * the fetches no longer wait for a free PipesClient, and, with
+     * {@link #setUseVirtualThreads(boolean) virtual threads}, thousands of them don't
+     * need thousands of platform threads.
+     * <p>
+     * The limit counts the documents that are being fetched and the ones that have
+     * been fetched and are waiting for, or in, a PipesClient.  It should be well above
+     * the number of clients.  It counts documents, not bytes; see
+     * {@link #setMaxFetchAheadBytes(long)} for the bound on the shared memory in use.
+     * Each fetch has {@link #getTimeoutMillis()} to finish.
+     * <p>
+     * This requires the {@link org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher}
+     * in the fetchers, and the fetchers have to be thread-safe.  Metadata that the
+     * fetcher sets is passed to the forked server as user metadata.  A document that
+     * can't be fetched ahead is fetched by the forked server as usual.  The default,
+     * <code>-1</code>, leaves the fetching to the forked servers.
+     *
+     * @param maxConcurrentFetches
+     */
+    public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+        this.maxConcurrentFetches = maxConcurrentFetches;
+    }
+
+    public long getMaxFetchAheadBytes() {
+        return maxFetchAheadBytes;
+    }
+
+    /**
+     * Documents larger than this aren't fetched ahead, so the shared memory in use
+     * stays under this times {@link #getMaxConcurrentFetches()}.  A tuple whose size
+     * hint, {@link org.apache.tika.pipes.FetchEmitTuple#getSize()}, is over it is
+     * passed straight to the forked server, which fetches it.  A document without a
+     * size hint is copied until it goes over, and then it's dropped and the forked
+     * server fetches it again.  The default is 100MB; <code>-1</code> is no limit.
+     *
+     * @param maxFetchAheadBytes
+     */
+    public void setMaxFetchAheadBytes(long maxFetchAheadBytes) {
+        this.maxFetchAheadBytes = maxFetchAheadBytes;
+    }
+
+    public Path getEmitSpoolDirectory() {
+        return emitSpoolDirectory;
+    }
+
+    /**
+     * If set, the emitters write each batch to a spool in this directory before
+     * they emit it.  A batch that fails to emit is kept in the spool and retried
+     * with exponential backoff instead of being dropped, and batches that are
+     * left in the spool when the AsyncProcessor stops are emitted when it next
+     * starts.  Each AsyncProcessor needs its own directory.  The default,
+     * <code>null</code>, is no spool: a batch that fails to emit is logged and dropped.
+     *
+     * @param emitSpoolDirectory
+     */
+    public void setEmitSpoolDirectory(Path emitSpoolDirectory) {
+        this.emitSpoolDirectory = emitSpoolDirectory;
+    }
+
+    public void setEmitSpoolDirectory(String emitSpoolDirectory) {
+        setEmitSpoolDirectory(Paths.get(emitSpoolDirectory));
+    }
+
+    public long getEmitRetryInitialBackoffMillis() {
+        return emitRetryInitialBackoffMillis;
+    }
+
+    /**
+     * How long to wait before retrying a spooled batch that failed to emit for
+     * the first time.  The wait doubles with each failure, up to
+     * {@link #getEmitRetryMaxBackoffMillis()}.
+     *
+     * @param emitRetryInitialBackoffMillis
+     */
+    public void setEmitRetryInitialBackoffMillis(long emitRetryInitialBackoffMillis) {
+        this.emitRetryInitialBackoffMillis = emitRetryInitialBackoffMillis;
+    }
+
+    public long getEmitRetryMaxBackoffMillis() {
+        return emitRetryMaxBackoffMillis;
+    }
+
+    /**
+     * Maximum time to wait between retries of a spooled batch.
+     *
+     * @param emitRetryMaxBackoffMillis
+     */
+    public void setEmitRetryMaxBackoffMillis(long emitRetryMaxBackoffMillis) {
+        this.emitRetryMaxBackoffMillis = emitRetryMaxBackoffMillis;
+    }
+
+    public long getEmitTargetLatencyMillis() {
+        return emitTargetLatencyMillis;
+    }
+
+    /**
+     * If this is <code>&gt; 0</code>, the size of each request to an emitter is adjusted
+     * toward what that emitter handles in this many milliseconds, starting from
+     * {@link #getEmitMaxEstimatedBytes()} and never over {@link #getEmitMaxBatchBytes()}.
+     * Batches are split or allowed to grow to match.  A request that the emitter
+     * rejects as overloaded halves the size and is retried after the
+     * {@link #setEmitRetryInitialBackoffMillis(long) retry backoff}.  The default,
+     * <code>-1</code>, sends each batch as a single request.
+     *
+     * @param emitTargetLatencyMillis
+     */
+    public void setEmitTargetLatencyMillis(long emitTargetLatencyMillis) {
+        this.emitTargetLatencyMillis = emitTargetLatencyMillis;
+    }
+
+    public long getEmitMaxBatchBytes() {
+        return emitMaxBatchBytes;
+    }
+
+    /**
+     * Upper bound on the estimated bytes per request when
+     * {@link #setEmitTargetLatencyMillis(long) adaptive batching} is on.
+     *
+     * @param emitMaxBatchBytes
+     */
+    public void setEmitMaxBatchBytes(long emitMaxBatchBytes) {
+        this.emitMaxBatchBytes = emitMaxBatchBytes;
+    }
+
+    public long getLargeDocumentThresholdBytes() {
+        return largeDocumentThresholdBytes;
+    }
+
+    /**
+     * Tuples whose size hint, {@link org.apache.tika.pipes.FetchEmitTuple#getSize()},
+     * is at least this many bytes are only sent to the
+     * {@link #setNumLargeDocumentClients(int) clients for large documents}.
+     * The other clients stay free for smaller documents.
+     * The default, <code>-1</code>, treats every tuple the same.
+     *
+     * @param largeDocumentThresholdBytes
+     */
+    public void setLargeDocumentThresholdBytes(long largeDocumentThresholdBytes) {
+        this.largeDocumentThresholdBytes = largeDocumentThresholdBytes;
+    }
+
+    public int getNumLargeDocumentClients() {
+        return numLargeDocumentClients;
+    }
+
+    /**
+     * How many of the {@link #getNumClients() clients} handle large documents.
+     * They take the large documents first and smaller documents when there
+     * are no large ones waiting.  This must be less than the number of clients,
+     * and it has no effect unless {@link #setLargeDocumentThresholdBytes(long)}
+     * is set.
+     *
+     * @param numLargeDocumentClients
+     */
+    public void setNumLargeDocumentClients(int numLargeDocumentClients) {
+        this.numLargeDocumentClients = numLargeDocumentClients;
+    }
+
+    public List<String> getLargeDocumentForkedJvmArgs() {
+        //defensive copy
+        return new ArrayList<>(largeDocumentForkedJvmArgs);
+    }
+
+    /**
+     * The jvm args for the forked processes of the clients for large documents,
+     * e.g. a larger -Xmx.  If this is empty, those clients use
+     * {@link #getForkedJvmArgs()}.
+     *
+     * @param largeDocumentForkedJvmArgs
+     */
+    public void setLargeDocumentForkedJvmArgs(List<String> largeDocumentForkedJvmArgs) {
+        this.largeDocumentForkedJvmArgs = Collections.unmodifiableList(largeDocumentForkedJvmArgs);
+    }
+
     public PipesReporter getPipesReporter() {
         return pipesReporter;
     }
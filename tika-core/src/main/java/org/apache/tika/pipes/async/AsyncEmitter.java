@@ -25,15 +25,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.tika.pipes.PipesResult;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.Emitter;
 import org.apache.tika.pipes.emitter.EmitterManager;
 import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.pipes.pipesiterator.CrawlState;
 import org.apache.tika.utils.ExceptionUtils;
 
 /**
@@ -50,14 +53,52 @@ public class AsyncEmitter implements Callable<Integer> {
     private final AsyncConfig asyncConfig;
     private final EmitterManager emitterManager;
     private final ArrayBlockingQueue<EmitData> emitDataQueue;
+    //shared by the emitters to bound concurrent emits; null if unbounded
+    private final Semaphore emitPermits;
+    //shared by the emitters; null if batches aren't spooled
+    private final EmitSpool spool;
+    //shared by the emitters
+    private final AdaptiveEmitBatcher batcher;
+    //the pipes iterator's crawl state; null if there isn't one
+    private final CrawlState crawlState;
 
     Instant lastEmitted = Instant.now();
 
     public AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
                         EmitterManager emitterManager) {
+        this(asyncConfig, emitData, emitterManager, null, null, null);
+    }
+
+    /**
+     * @param emitPermits permits shared with the other emitters; each emit
+     *                    holds one while it runs.  May be <code>null</code>.
+     */
+    public AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
+                        EmitterManager emitterManager, Semaphore emitPermits) {
+        this(asyncConfig, emitData, emitterManager, emitPermits, null, null);
+    }
+
+    AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
+                 EmitterManager emitterManager, Semaphore emitPermits, EmitSpool spool,
+                 AdaptiveEmitBatcher batcher) {
+        this(asyncConfig, emitData, emitterManager, emitPermits, spool, batcher, null);
+    }
+
+    /**
+     * @param crawlState if not <code>null</code>, each document that is emitted is
+     *                   recorded in this under the id of its
+     *                   {@link org.apache.tika.pipes.FetchEmitTuple}
+     */
+    AsyncEmitter(AsyncConfig asyncConfig, ArrayBlockingQueue<EmitData> emitData,
+                 EmitterManager emitterManager, Semaphore emitPermits, EmitSpool spool,
+                 AdaptiveEmitBatcher batcher, CrawlState crawlState) {
         this.asyncConfig = asyncConfig;
         this.emitDataQueue = emitData;
         this.emitterManager = emitterManager;
+        this.emitPermits = emitPermits;
+        this.spool = spool;
+        this.batcher = batcher == null ? new AdaptiveEmitBatcher(asyncConfig) : batcher;
+        this.crawlState = crawlState;
     }
 
     @Override
@@ -68,6 +109,7 @@ public class AsyncEmitter implements Callable<Integer> {
             EmitData emitData = emitDataQueue.poll(500, TimeUnit.MILLISECONDS);
             if (emitData == EMIT_DATA_STOP_SEMAPHORE) {
                 cache.emitAll();
+                retrySpooled(true);
                 return EMITTER_FUTURE_CODE;
             }
             if (emitData != null) {
@@ -84,18 +126,100 @@ public class AsyncEmitter implements Callable<Integer> {
                 //this can block
                 cache.emitAll();
             }
+            retrySpooled(false);
+        }
+    }
+
+    /**
+     * Retries the spooled batches that are due.  On shutdown, this makes one last attempt
+     * at every batch in the spool; those that fail again are left for the next run.
+     */
+    private void retrySpooled(boolean lastAttempt) {
+        if (spool == null) {
+            return;
+        }
+        //a failed batch goes back into the spool, so don't loop on it
+        int maxBatches = spool.getPendingCount();
+        for (int i = 0; i < maxBatches; i++) {
+            //claim() skips over the batches that it quarantines
+            EmitSpool.Batch batch = spool.claim(lastAttempt);
+            if (batch == null) {
+                return;
+            }
+            LOG.debug("retrying spooled batch for emitter {}, attempt {}",
+                    batch.getEmitterName(), batch.getAttempts() + 1);
+            emitSpooled(batch);
+        }
+        if (lastAttempt && spool.getPendingCount() > 0) {
+            LOG.warn("{} batches could not be emitted; they will be retried from {} " +
+                    "the next time the AsyncProcessor starts", spool.getPendingCount(),
+                    spool.getDirectory());
+        }
+    }
+
+    private void emitSpooled(EmitSpool.Batch batch) {
+        try {
+            emit(batch.getEmitterName(), batch.getEmitData());
+        } catch (IllegalArgumentException e) {
+            //e.g. no emitter by this name; retrying won't help
+            LOG.error("can't emit spooled batch for emitter {}", batch.getEmitterName(), e);
+            spool.quarantine(batch);
+            return;
+        } catch (IOException | TikaEmitterException e) {
+            LOG.warn("failed to emit spooled batch for emitter {}: {}", batch.getEmitterName(),
+                    ExceptionUtils.getStackTrace(e));
+            spool.failed(batch);
+            return;
+        }
+        spool.succeeded(batch);
+    }
+
+    private void emit(String emitterName, List<EmitData> emitData)
+            throws IOException, TikaEmitterException {
+        Emitter emitter = emitterManager.getEmitter(emitterName);
+        batcher.emit(emitterName, emitData, request -> {
+            if (emitPermits != null) {
+                emitPermits.acquireUninterruptibly();
+            }
+            try {
+                emitter.emit(request);
+            } finally {
+                if (emitPermits != null) {
+                    emitPermits.release();
+                }
+            }
+            recordEmitted(request);
+        });
+    }
+
+    private void recordEmitted(List<EmitData> request) {
+        if (crawlState == null) {
+            return;
+        }
+        for (EmitData emitData : request) {
+            String id = emitData.getFetchEmitTupleId();
+            if (id == null) {
+                //e.g. spooled by an older version; it will be processed again next time
+                continue;
+            }
+            try {
+                crawlState.report(id, PipesResult.STATUS.EMIT_SUCCESS);
+            } catch (IOException e) {
+                //the worst case is that the document is processed again next time
+                LOG.warn("couldn't record crawl state for {}", id, e);
+            }
         }
     }
 
     private class EmitDataCache {
-        private final long maxBytes;
+        private final long defaultMaxBytes;
 
         long estimatedSize = 0;
         int size = 0;
         Map<String, List<EmitData>> map = new HashMap<>();
 
         public EmitDataCache(long maxBytes) {
-            this.maxBytes = maxBytes;
+            this.defaultMaxBytes = maxBytes;
         }
 
         void updateEstimatedSize(long newBytes) {
@@ -105,6 +229,8 @@ public class AsyncEmitter implements Callable<Integer> {
         void add(EmitData data) {
             size++;
             long sz = data.getEstimatedSizeBytes();
+            //with adaptive batching, this follows what the emitters can take
+            long maxBytes = batcher.getMaxCacheBytes(defaultMaxBytes);
             if (estimatedSize + sz > maxBytes) {
                 LOG.debug("estimated size ({}) > maxBytes({}), going to emitAll",
                         (estimatedSize + sz), maxBytes);
@@ -119,8 +245,11 @@ public class AsyncEmitter implements Callable<Integer> {
             int emitted = 0;
             LOG.debug("about to emit {} files, {} estimated bytes", size, estimatedSize);
             for (Map.Entry<String, List<EmitData>> e : map.entrySet()) {
-                Emitter emitter = emitterManager.getEmitter(e.getKey());
-                tryToEmit(emitter, e.getValue());
+                if (spool != null) {
+                    spoolAndEmit(e.getKey(), e.getValue());
+                } else {
+                    tryToEmit(e.getKey(), e.getValue());
+                }
                 emitted += e.getValue().size();
             }
 
@@ -131,14 +260,24 @@ public class AsyncEmitter implements Callable<Integer> {
             lastEmitted = Instant.now();
         }
 
-        private void tryToEmit(Emitter emitter, List<EmitData> cachedEmitData) {
-
+        private void tryToEmit(String emitterName, List<EmitData> cachedEmitData) {
             try {
-                emitter.emit(cachedEmitData);
+                emit(emitterName, cachedEmitData);
             } catch (IOException | TikaEmitterException e) {
-                LOG.warn("emitter class ({}): {}", emitter.getClass(),
-                        ExceptionUtils.getStackTrace(e));
+                LOG.warn("emitter ({}): {}", emitterName, ExceptionUtils.getStackTrace(e));
+            }
+        }
+
+        private void spoolAndEmit(String emitterName, List<EmitData> cachedEmitData) {
+            EmitSpool.Batch batch;
+            try {
+                batch = spool.write(emitterName, cachedEmitData);
+            } catch (IOException e) {
+                LOG.error("couldn't write batch to the emit spool; emitting without it", e);
+                tryToEmit(emitterName, cachedEmitData);
+                return;
             }
+            emitSpooled(batch);
         }
     }
 }
@@ -19,14 +19,18 @@ package org.apache.tika.pipes.async;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,9 +45,12 @@ import org.apache.tika.pipes.PipesReporter;
 import org.apache.tika.pipes.PipesResult;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitterManager;
+import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.pipes.pipesiterator.CrawlState;
 import org.apache.tika.pipes.pipesiterator.PipesIterator;
 import org.apache.tika.pipes.pipesiterator.TotalCountResult;
 import org.apache.tika.pipes.pipesiterator.TotalCounter;
+import org.apache.tika.utils.ConcurrentUtils;
 
 /**
  * This is the main class for handling async requests. This manages
@@ -54,18 +61,31 @@ public class AsyncProcessor implements Closeable {
 
     static final int PARSER_FUTURE_CODE = 1;
     static final int WATCHER_FUTURE_CODE = 3;
+    static final int FETCH_AHEAD_FUTURE_CODE = 4;
+
+    //how often the queue sizes and the total count are reported
+    private static final long REPORT_INTERVAL_MS = 500;
 
     private static final Logger LOG = LoggerFactory.getLogger(AsyncProcessor.class);
 
-    private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
+    private final FetchEmitTupleScheduler fetchEmitTuples;
     private final ArrayBlockingQueue<EmitData> emitData;
     private final ExecutorCompletionService<Integer> executorCompletionService;
     private final ExecutorService executorService;
     private final AsyncConfig asyncConfig;
+    private final AdaptiveEmitBatcher emitBatcher;
+    private final CrawlState crawlState;
+    //null unless the fetches are done here
+    private final FetchAhead fetchAhead;
+    private final TotalCounter totalCounter;
     private final AtomicLong totalProcessed = new AtomicLong(0);
+    //counted down by the watcher when everything has finished or something has failed
+    private final CountDownLatch done = new CountDownLatch(1);
     private static long MAX_OFFER_WAIT_MS = 120000;
+    //these are only changed by the watcher
     private volatile int numParserThreadsFinished = 0;
     private volatile int numEmitterThreadsFinished = 0;
+    private volatile Exception failure = null;
     private boolean addedEmitterSemaphores = false;
     boolean isShuttingDown = false;
 
@@ -75,11 +95,27 @@ public class AsyncProcessor implements Closeable {
 
     public AsyncProcessor(Path tikaConfigPath, PipesIterator pipesIterator) throws TikaException, IOException {
         this.asyncConfig = AsyncConfig.load(tikaConfigPath);
-        this.fetchEmitTuples = new ArrayBlockingQueue<>(asyncConfig.getQueueSize());
+        this.fetchEmitTuples = new FetchEmitTupleScheduler(asyncConfig.getQueueSize(),
+                asyncConfig.getNumLargeDocumentClients() > 0 ?
+                        asyncConfig.getLargeDocumentThresholdBytes() : -1);
         this.emitData = new ArrayBlockingQueue<>(100);
-        //+1 is the watcher thread
-        this.executorService = Executors.newFixedThreadPool(
-                asyncConfig.getNumClients() + asyncConfig.getNumEmitters() + 1);
+        this.emitBatcher = new AdaptiveEmitBatcher(asyncConfig);
+        this.crawlState = pipesIterator == null ? null : pipesIterator.getCrawlState();
+        this.totalCounter = pipesIterator instanceof TotalCounter ?
+                (TotalCounter) pipesIterator : null;
+        this.fetchAhead = asyncConfig.getMaxConcurrentFetches() > 0 ?
+                new FetchAhead(asyncConfig, fetchEmitTuples,
+                        FetcherManager.load(asyncConfig.getTikaConfig())) : null;
+        if (asyncConfig.isUseVirtualThreads()) {
+            //the workers and emitters are bounded by how many are submitted
+            this.executorService = Executors.newCachedThreadPool(
+                    ConcurrentUtils.newIOThreadFactory("tika-async-", true));
+        } else {
+            //+1 is the watcher thread, and +1 the fetch-ahead's feeder
+            this.executorService = Executors.newFixedThreadPool(
+                    asyncConfig.getNumClients() + asyncConfig.getNumEmitters() + 1 +
+                            (fetchAhead != null ? 1 : 0));
+        }
         this.executorCompletionService =
                 new ExecutorCompletionService<>(executorService);
         try {
@@ -89,60 +125,140 @@ public class AsyncProcessor implements Closeable {
                                 " please ignore this warning.", tikaConfigPath.toAbsolutePath(),
                         asyncConfig.getTikaConfig().toAbsolutePath());
             }
-            this.executorCompletionService.submit(() -> {
-                while (true) {
-                    try {
-                        Thread.sleep(500);
-                        checkActive();
-                    } catch (InterruptedException e) {
-                        return WATCHER_FUTURE_CODE;
-                    }
-                }
-            });
+            //the watcher takes the finished futures off the completion service
+            executorService.submit(this::watch);
             //this is run in a daemon thread
-            if (pipesIterator != null && (pipesIterator instanceof TotalCounter)) {
+            if (totalCounter != null) {
                 LOG.debug("going to total counts");
-                startCounter((TotalCounter) pipesIterator);
+                startCounter(totalCounter);
             }
 
+            FetchEmitTupleScheduler clientTuples = fetchEmitTuples;
+            if (fetchAhead != null) {
+                executorCompletionService.submit(() -> {
+                    fetchAhead.feed();
+                    return FETCH_AHEAD_FUTURE_CODE;
+                });
+                clientTuples = fetchAhead.getFetched();
+            }
             for (int i = 0; i < asyncConfig.getNumClients(); i++) {
+                boolean largeLane = i < asyncConfig.getNumLargeDocumentClients() &&
+                        asyncConfig.getLargeDocumentThresholdBytes() > -1;
                 executorCompletionService.submit(
-                        new FetchEmitWorker(asyncConfig, fetchEmitTuples, emitData));
+                        new FetchEmitWorker(asyncConfig, clientTuples, emitData, largeLane));
             }
 
             EmitterManager emitterManager = EmitterManager.load(asyncConfig.getTikaConfig());
+            Semaphore emitPermits = asyncConfig.getMaxConcurrentEmits() > 0 ?
+                    new Semaphore(asyncConfig.getMaxConcurrentEmits()) : null;
+            EmitSpool spool = asyncConfig.getEmitSpoolDirectory() == null ? null :
+                    new EmitSpool(asyncConfig.getEmitSpoolDirectory(),
+                            asyncConfig.getEmitRetryInitialBackoffMillis(),
+                            asyncConfig.getEmitRetryMaxBackoffMillis());
             for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
-                executorCompletionService.submit(
-                        new AsyncEmitter(asyncConfig, emitData, emitterManager));
+                executorCompletionService.submit(new AsyncEmitter(asyncConfig, emitData,
+                        emitterManager, emitPermits, spool, emitBatcher, crawlState));
             }
         } catch (Exception e) {
             LOG.error("problem initializing AsyncProcessor", e);
             executorService.shutdownNow();
+            if (fetchAhead != null) {
+                fetchAhead.close();
+            }
             asyncConfig.getPipesReporter().error(e);
             throw e;
         }
     }
 
+    //the watcher reports the count as it goes
     private void startCounter(TotalCounter totalCounter) {
-        Thread counterThread = new Thread(() -> {
-            totalCounter.startTotalCount();
-            PipesReporter pipesReporter = asyncConfig.getPipesReporter();
-            TotalCountResult.STATUS status = totalCounter.getTotalCount().getStatus();
-            while (status == TotalCountResult.STATUS.NOT_COMPLETED) {
-                try {
-                    Thread.sleep(500);
-                    TotalCountResult result = totalCounter.getTotalCount();
-                    LOG.trace("counter total  {} {} ", result.getStatus(), result.getTotalCount());
-                    pipesReporter.report(result);
-                    status = result.getStatus();
-                } catch (InterruptedException e) {
+        Thread counterThread = new Thread(totalCounter::startTotalCount);
+        counterThread.setDaemon(true);
+        counterThread.start();
+    }
+
+    /**
+     * Waits on the completion service for the workers, emitters and fetch-ahead to
+     * finish, and reports the queue sizes and the total count every
+     * {@link #REPORT_INTERVAL_MS} in between.
+     */
+    private Integer watch() {
+        PipesReporter pipesReporter = asyncConfig.getPipesReporter();
+        boolean countFinished = totalCounter == null;
+        long nextReport = System.currentTimeMillis();
+        try {
+            while (true) {
+                long wait = nextReport - System.currentTimeMillis();
+                Future<Integer> future = wait > 0 ?
+                        executorCompletionService.poll(wait, TimeUnit.MILLISECONDS) :
+                        executorCompletionService.poll();
+                if (future != null) {
+                    finished(future);
+                    if (failure != null || !isActive()) {
+                        done.countDown();
+                        return WATCHER_FUTURE_CODE;
+                    }
+                }
+                if (System.currentTimeMillis() >= nextReport) {
+                    pipesReporter.reportQueueSizes(getQueueSizes());
+                    if (!countFinished) {
+                        TotalCountResult result = totalCounter.getTotalCount();
+                        LOG.trace("counter total  {} {} ", result.getStatus(),
+                                result.getTotalCount());
+                        pipesReporter.report(result);
+                        countFinished =
+                                result.getStatus() != TotalCountResult.STATUS.NOT_COMPLETED;
+                    }
+                    nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MS;
+                }
+            }
+        } catch (InterruptedException e) {
+            return WATCHER_FUTURE_CODE;
+        }
+    }
+
+    private void finished(Future<Integer> future) throws InterruptedException {
+        try {
+            Integer i = future.get();
+            switch (i) {
+                case PARSER_FUTURE_CODE :
+                    numParserThreadsFinished++;
+                    LOG.debug("fetchEmitWorker finished, total {}", numParserThreadsFinished);
+                    break;
+                case AsyncEmitter.EMITTER_FUTURE_CODE :
+                    numEmitterThreadsFinished++;
+                    LOG.debug("emitter thread finished, total {}", numEmitterThreadsFinished);
+                    break;
+                case FETCH_AHEAD_FUTURE_CODE :
+                    LOG.debug("fetch-ahead finished");
+                    break;
+                default :
+                    throw new IllegalArgumentException("Don't recognize this future code: " + i);
+            }
+        } catch (ExecutionException | RuntimeException e) {
+            LOG.error("execution exception", e);
+            asyncConfig.getPipesReporter().error(e);
+            failure = e;
+            return;
+        }
+        if (numParserThreadsFinished == asyncConfig.getNumClients() && ! addedEmitterSemaphores) {
+            for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
+                boolean offered = emitData.offer(AsyncEmitter.EMIT_DATA_STOP_SEMAPHORE,
+                        MAX_OFFER_WAIT_MS,
+                        TimeUnit.MILLISECONDS);
+                if (! offered) {
+                    failure = new RuntimeException("Couldn't offer emit data stop semaphore " +
+                            "within " + MAX_OFFER_WAIT_MS + " ms");
                     return;
                 }
             }
+            addedEmitterSemaphores = true;
+        }
+    }
 
-        });
-        counterThread.setDaemon(true);
-        counterThread.start();
+    private boolean isActive() {
+        return !(numParserThreadsFinished == asyncConfig.getNumClients() &&
+                numEmitterThreadsFinished == asyncConfig.getNumEmitters());
     }
 
     public synchronized boolean offer(List<FetchEmitTuple> newFetchEmitTuples, long offerMs)
@@ -155,23 +271,8 @@ public class AsyncProcessor implements Closeable {
             throw new OfferLargerThanQueueSize(newFetchEmitTuples.size(),
                     asyncConfig.getQueueSize());
         }
-        long start = System.currentTimeMillis();
-        long elapsed = System.currentTimeMillis() - start;
-        while (elapsed < offerMs) {
-            if (fetchEmitTuples.remainingCapacity() > newFetchEmitTuples.size()) {
-                try {
-                    fetchEmitTuples.addAll(newFetchEmitTuples);
-                    return true;
-                } catch (IllegalStateException e) {
-                    //this means that the add all failed because the queue couldn't
-                    //take the full list
-                    LOG.debug("couldn't add full list", e);
-                }
-            }
-            Thread.sleep(100);
-            elapsed = System.currentTimeMillis() - start;
-        }
-        return false;
+        checkActive();
+        return fetchEmitTuples.offerAll(newFetchEmitTuples, offerMs, TimeUnit.MILLISECONDS);
     }
 
     public int getCapacity() {
@@ -191,66 +292,60 @@ public class AsyncProcessor implements Closeable {
     }
 
     public void finished() throws InterruptedException {
-        for (int i = 0; i < asyncConfig.getNumClients(); i++) {
-            boolean offered = fetchEmitTuples.offer(PipesIterator.COMPLETED_SEMAPHORE,
-                    MAX_OFFER_WAIT_MS, TimeUnit.MILLISECONDS);
-            if (! offered) {
-                throw new RuntimeException("Couldn't offer completed semaphore within " +
-                        MAX_OFFER_WAIT_MS + " ms");
-            }
-        }
+        fetchEmitTuples.finish();
     }
 
-    public synchronized boolean checkActive() throws InterruptedException {
-
-        Future<Integer> future = executorCompletionService.poll();
-        if (future != null) {
-            try {
-                Integer i = future.get();
-                switch (i) {
-                    case PARSER_FUTURE_CODE :
-                        numParserThreadsFinished++;
-                        LOG.debug("fetchEmitWorker finished, total {}", numParserThreadsFinished);
-                        break;
-                    case AsyncEmitter.EMITTER_FUTURE_CODE :
-                        numEmitterThreadsFinished++;
-                        LOG.debug("emitter thread finished, total {}", numEmitterThreadsFinished);
-                        break;
-                    case WATCHER_FUTURE_CODE :
-                        LOG.debug("watcher thread finished");
-                        break;
-                    default :
-                        throw new IllegalArgumentException("Don't recognize this future code: " + i);
-                }
-            } catch (ExecutionException e) {
-                LOG.error("execution exception", e);
-                asyncConfig.getPipesReporter().error(e);
-                throw new RuntimeException(e);
-            }
-        }
-        if (numParserThreadsFinished == asyncConfig.getNumClients() && ! addedEmitterSemaphores) {
-            for (int i = 0; i < asyncConfig.getNumEmitters(); i++) {
-                try {
-                    boolean offered = emitData.offer(AsyncEmitter.EMIT_DATA_STOP_SEMAPHORE,
-                            MAX_OFFER_WAIT_MS,
-                            TimeUnit.MILLISECONDS);
-                    if (! offered) {
-                        throw new RuntimeException("Couldn't offer emit data stop semaphore " +
-                                "within " + MAX_OFFER_WAIT_MS + " ms");
-                    }
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            addedEmitterSemaphores = true;
+    /**
+     * @return the number of tuples waiting to be processed in each lane, by lane name
+     */
+    public Map<String, Integer> getQueueSizes() {
+        return fetchEmitTuples.getQueueSizes();
+    }
+
+    /**
+     * @return <code>true</code> while the workers or the emitters are still running
+     * @throws RuntimeException if one of them failed
+     */
+    public boolean checkActive() throws InterruptedException {
+        Exception e = failure;
+        if (e != null) {
+            throw new RuntimeException(e);
         }
-        return !(numParserThreadsFinished == asyncConfig.getNumClients() &&
-                numEmitterThreadsFinished == asyncConfig.getNumEmitters());
+        return isActive();
+    }
+
+    /**
+     * Waits for the workers and the emitters to finish, which they do once
+     * {@link #finished()} has been called and everything that was offered has
+     * been processed and emitted.
+     *
+     * @return <code>false</code> if they are still running after the timeout
+     * @throws RuntimeException if one of them failed
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        done.await(timeout, unit);
+        return !checkActive();
+    }
+
+    /**
+     * @return statistics on the requests sent to each emitter, by emitter name
+     */
+    public Map<String, EmitBatchStatistics> getEmitStatistics() {
+        return emitBatcher.getStatistics();
     }
 
     @Override
     public void close() throws IOException {
+        for (EmitBatchStatistics stats : emitBatcher.getStatistics().values()) {
+            LOG.info("{}", stats);
+        }
         executorService.shutdownNow();
+        if (fetchAhead != null) {
+            fetchAhead.close();
+        }
+        if (crawlState != null) {
+            crawlState.close();
+        }
         asyncConfig.getPipesReporter().close();
     }
 
@@ -261,23 +356,35 @@ public class AsyncProcessor implements Closeable {
     private class FetchEmitWorker implements Callable<Integer> {
 
         private final AsyncConfig asyncConfig;
-        private final ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples;
+        private final FetchEmitTupleScheduler fetchEmitTuples;
         private final ArrayBlockingQueue<EmitData> emitDataQueue;
+        private final boolean largeLane;
 
         private FetchEmitWorker(AsyncConfig asyncConfig,
-                                ArrayBlockingQueue<FetchEmitTuple> fetchEmitTuples,
-                                ArrayBlockingQueue<EmitData> emitDataQueue) {
+                                FetchEmitTupleScheduler fetchEmitTuples,
+                                ArrayBlockingQueue<EmitData> emitDataQueue, boolean largeLane) {
             this.asyncConfig = asyncConfig;
             this.fetchEmitTuples = fetchEmitTuples;
             this.emitDataQueue = emitDataQueue;
+            this.largeLane = largeLane;
+        }
+
+        private PipesClient newPipesClient() {
+            if (largeLane && !asyncConfig.getLargeDocumentForkedJvmArgs().isEmpty()) {
+                return new PipesClient(asyncConfig, asyncConfig.getLargeDocumentForkedJvmArgs());
+            }
+            return new PipesClient(asyncConfig);
         }
 
         @Override
         public Integer call() throws Exception {
 
-            try (PipesClient pipesClient = new PipesClient(asyncConfig)) {
+            if (asyncConfig.getMaxInFlightPerClient() > 1) {
+                return pipelined();
+            }
+            try (PipesClient pipesClient = newPipesClient()) {
                 while (true) {
-                    FetchEmitTuple t = fetchEmitTuples.poll(1, TimeUnit.SECONDS);
+                    FetchEmitTuple t = fetchEmitTuples.poll(largeLane, 1, TimeUnit.SECONDS);
                     if (t == null) {
                         //skip
                         if (LOG.isTraceEnabled()) {
@@ -301,30 +408,105 @@ public class AsyncProcessor implements Closeable {
                             LOG.trace("timer -- pipes client process: {} ms",
                                     System.currentTimeMillis() - start);
                         }
-                        long offerStart = System.currentTimeMillis();
-
-                        if (shouldEmit(result)) {
-                            LOG.trace("adding result to emitter queue: " + result.getEmitData());
-                            boolean offered = emitDataQueue.offer(result.getEmitData(),
-                                    MAX_OFFER_WAIT_MS,
-                                    TimeUnit.MILLISECONDS);
-                            if (! offered) {
-                                throw new RuntimeException("Couldn't offer emit data to queue " +
-                                        "within " + MAX_OFFER_WAIT_MS + " ms");
+                        handleResult(t, result, System.currentTimeMillis() - start);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes up to maxInFlightPerClient tuples off the queue at a time and
+         * lets the PipesClient pipeline them.
+         */
+        private Integer pipelined() throws Exception {
+            int maxInFlight = asyncConfig.getMaxInFlightPerClient();
+            try (PipesClient pipesClient = newPipesClient()) {
+                while (true) {
+                    FetchEmitTuple t = fetchEmitTuples.poll(largeLane, 1, TimeUnit.SECONDS);
+                    if (t == null) {
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("null fetch emit tuple");
+                        }
+                        continue;
+                    }
+                    List<FetchEmitTuple> batch = new ArrayList<>(maxInFlight);
+                    boolean completed = false;
+                    while (t != null) {
+                        if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                            completed = true;
+                            break;
+                        }
+                        batch.add(t);
+                        if (batch.size() >= maxInFlight) {
+                            break;
+                        }
+                        t = fetchEmitTuples.poll(largeLane, 0, TimeUnit.MILLISECONDS);
+                    }
+                    if (!batch.isEmpty()) {
+                        //each result is handled as soon as it is read, with its own time
+                        int[] handled = new int[1];
+                        long[] lastResult = {System.currentTimeMillis()};
+                        try {
+                            pipesClient.process(batch, (tuple, result, elapsed) -> {
+                                handled[0]++;
+                                lastResult[0] = System.currentTimeMillis();
+                                handleResult(tuple, result, elapsed);
+                            });
+                        } catch (IOException e) {
+                            LOG.warn("pipesClient crash", e);
+                            long elapsed = System.currentTimeMillis() - lastResult[0];
+                            for (int i = handled[0]; i < batch.size(); i++) {
+                                handleResult(batch.get(i), PipesResult.UNSPECIFIED_CRASH,
+                                        elapsed);
                             }
                         }
+                    }
+                    if (completed) {
                         if (LOG.isTraceEnabled()) {
-                            LOG.trace("timer -- offered: {} ms",
-                                    System.currentTimeMillis() - offerStart);
+                            LOG.trace("hit completed semaphore");
                         }
-                        long elapsed = System.currentTimeMillis() - start;
-                        asyncConfig.getPipesReporter().report(t, result, elapsed);
-                        totalProcessed.incrementAndGet();
+                        return PARSER_FUTURE_CODE;
                     }
                 }
             }
         }
 
+        private void handleResult(FetchEmitTuple t, PipesResult result, long elapsed)
+                throws InterruptedException {
+            if (fetchAhead != null) {
+                t = fetchAhead.release(t);
+            }
+            long offerStart = System.currentTimeMillis();
+
+            if (shouldEmit(result)) {
+                LOG.trace("adding result to emitter queue: " + result.getEmitData());
+                //the crawl state is keyed by the tuple's id, not the emit key
+                result.getEmitData().setFetchEmitTupleId(t.getId());
+                boolean offered = emitDataQueue.offer(result.getEmitData(),
+                        MAX_OFFER_WAIT_MS,
+                        TimeUnit.MILLISECONDS);
+                if (! offered) {
+                    throw new RuntimeException("Couldn't offer emit data to queue " +
+                            "within " + MAX_OFFER_WAIT_MS + " ms");
+                }
+            }
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("timer -- offered: {} ms",
+                        System.currentTimeMillis() - offerStart);
+            }
+            asyncConfig.getPipesReporter().report(t, result, elapsed);
+            //documents that go to the emitters are recorded once they've been emitted
+            if (crawlState != null && !shouldEmit(result)) {
+                try {
+                    crawlState.report(t.getId(), result.getStatus());
+                } catch (IOException e) {
+                    //the worst case is that the document is processed again next time
+                    LOG.warn("couldn't record crawl state for {}", t.getId(), e);
+                }
+            }
+            totalProcessed.incrementAndGet();
+        }
+
         private boolean shouldEmit(PipesResult result) {
 
             if (result.getStatus() == PipesResult.STATUS.PARSE_SUCCESS ||
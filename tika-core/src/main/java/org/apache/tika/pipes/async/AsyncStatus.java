@@ -37,6 +37,7 @@ public class AsyncStatus {
     private TotalCountResult totalCountResult = new TotalCountResult(0, TotalCountResult.STATUS.NOT_COMPLETED);
     private Map<PipesResult.STATUS, Long> statusCounts = new HashMap<>();
     private ASYNC_STATUS asyncStatus = ASYNC_STATUS.STARTED;
+    private Map<String, Integer> queueSizes = new HashMap<>();
 
     private String crashMessage = StringUtils.EMPTY;
 
@@ -53,6 +54,10 @@ public class AsyncStatus {
         this.asyncStatus = status;
     }
 
+    public synchronized void updateQueueSizes(Map<String, Integer> queueSizes) {
+        this.queueSizes = queueSizes;
+    }
+
     public void updateCrash(String msg) {
         this.crashMessage = msg;
     }
@@ -77,6 +82,14 @@ public class AsyncStatus {
         return asyncStatus;
     }
 
+    /**
+     * @return the number of tuples waiting to be processed in each lane of
+     * the queue, by lane name
+     */
+    public Map<String, Integer> getQueueSizes() {
+        return queueSizes;
+    }
+
     public String getCrashMessage() {
         return crashMessage;
     }
@@ -85,6 +98,7 @@ public class AsyncStatus {
     public String toString() {
         return "AsyncStatus{" + "started=" + started + ", lastUpdate=" + lastUpdate +
                 ", totalCountResult=" + totalCountResult + ", statusCounts=" + statusCounts +
-                ", asyncStatus=" + asyncStatus + ", crashMessage='" + crashMessage + '\'' + '}';
+                ", asyncStatus=" + asyncStatus + ", queueSizes=" + queueSizes +
+                ", crashMessage='" + crashMessage + '\'' + '}';
     }
 }
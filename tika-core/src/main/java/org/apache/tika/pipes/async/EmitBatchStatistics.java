@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the requests that the async emitters have sent to one emitter:
+ * histograms of the number of documents, the estimated bytes and the latency
+ * of each request, and the current batch size target.
+ * <p>
+ * The histograms have power-of-two buckets: bucket <code>i</code> counts the values
+ * <code>v</code> with <code>2<sup>i-1</sup> &lt;= v &lt; 2<sup>i</sup></code>, and bucket
+ * <code>0</code> counts zeros.
+ */
+public class EmitBatchStatistics {
+
+    static final int NUM_BUCKETS = 64;
+
+    private final String emitterName;
+    private final long requests;
+    private final long failures;
+    private final long rejections;
+    private final long targetBatchBytes;
+    private final long[] documentsHistogram;
+    private final long[] bytesHistogram;
+    private final long[] latencyMillisHistogram;
+
+    EmitBatchStatistics(String emitterName, long requests, long failures, long rejections,
+                        long targetBatchBytes, long[] documentsHistogram, long[] bytesHistogram,
+                        long[] latencyMillisHistogram) {
+        this.emitterName = emitterName;
+        this.requests = requests;
+        this.failures = failures;
+        this.rejections = rejections;
+        this.targetBatchBytes = targetBatchBytes;
+        this.documentsHistogram = documentsHistogram.clone();
+        this.bytesHistogram = bytesHistogram.clone();
+        this.latencyMillisHistogram = latencyMillisHistogram.clone();
+    }
+
+    static int bucket(long value) {
+        return value <= 0 ? 0 : Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    public String getEmitterName() {
+        return emitterName;
+    }
+
+    /**
+     * @return number of requests sent, including those that failed
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return number of requests that failed, including rejections
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return number of requests that the emitter turned down because it was overloaded
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return the estimated bytes per request that adaptive batching is aiming for,
+     * or <code>-1</code> if adaptive batching is off
+     */
+    public long getTargetBatchBytes() {
+        return targetBatchBytes;
+    }
+
+    public long[] getDocumentsHistogram() {
+        return documentsHistogram.clone();
+    }
+
+    public long[] getBytesHistogram() {
+        return bytesHistogram.clone();
+    }
+
+    public long[] getLatencyMillisHistogram() {
+        return latencyMillisHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "EmitBatchStatistics{" + "emitterName='" + emitterName + '\'' + ", requests=" +
+                requests + ", failures=" + failures + ", rejections=" + rejections +
+                ", targetBatchBytes=" + targetBatchBytes + ", documentsHistogram=" +
+                toString(documentsHistogram) + ", bytesHistogram=" + toString(bytesHistogram) +
+                ", latencyMillisHistogram=" + toString(latencyMillisHistogram) + '}';
+    }
+
+    //leave off the empty buckets at the end
+    private static String toString(long[] histogram) {
+        int last = histogram.length - 1;
+        while (last > 0 && histogram[last] == 0) {
+            last--;
+        }
+        return Arrays.toString(Arrays.copyOf(histogram, last + 1));
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.emitter.EmitData;
+
+/**
+ * Write-ahead spool for the batches that the {@link AsyncEmitter}s send to the
+ * emitters; see {@link AsyncConfig#setEmitSpoolDirectory(Path)}.
+ * <p>
+ * Each batch is written and synced to its own segment file before it is emitted,
+ * and the file is deleted once the emit succeeds.  A batch whose emit failed
+ * stays in the spool and is retried with exponential backoff.  Segment files
+ * that are left over when the spool is opened, e.g. after a crash or a
+ * shutdown while an emitter was down, are retried right away.  A batch that
+ * can't be read back, or that can never be emitted, e.g. because there is no
+ * emitter by its name, is quarantined: the segment file is renamed with a
+ * <code>.failed</code> suffix for inspection and isn't retried.
+ * <p>
+ * The emit data of a batch that is waiting to be retried is not kept in memory;
+ * it is read back from the segment file when the batch is claimed.
+ * <p>
+ * This is shared by all of the emitter threads; a batch is only handed to one
+ * of them at a time.
+ */
+class EmitSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmitSpool.class);
+
+    static final String SEGMENT_SUFFIX = ".batch";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final String FAILED_SUFFIX = ".failed";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final AtomicLong sequence;
+    //milliseconds; replaceable for testing
+    private final LongSupplier clock;
+
+    //batches waiting to be retried, by sequence number
+    private final TreeMap<Long, Batch> pending = new TreeMap<>();
+
+    EmitSpool(Path directory, long initialBackoffMillis, long maxBackoffMillis)
+            throws IOException {
+        this(directory, initialBackoffMillis, maxBackoffMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds, used to schedule the retries
+     */
+    EmitSpool(Path directory, long initialBackoffMillis, long maxBackoffMillis,
+              LongSupplier clock) throws IOException {
+        this.directory = directory;
+        this.clock = clock;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        Files.createDirectories(directory);
+        long maxSequence = -1;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    //never made it into the spool, so it was never emitted either
+                    Files.delete(p);
+                    continue;
+                }
+                if (!name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                long seq;
+                try {
+                    seq = Long.parseLong(
+                            name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    LOG.warn("skipping unrecognized file in emit spool: {}", p);
+                    continue;
+                }
+                pending.put(seq, new Batch(seq, p, null, null));
+                maxSequence = Math.max(maxSequence, seq);
+            }
+        }
+        this.sequence = new AtomicLong(maxSequence + 1);
+        if (!pending.isEmpty()) {
+            LOG.info("found {} batches to emit in spool {}", pending.size(), directory);
+        }
+    }
+
+    /**
+     * Writes the batch to a segment file and syncs it to disk.
+     */
+    Batch write(String emitterName, List<EmitData> emitData) throws IOException {
+        long seq = sequence.getAndIncrement();
+        Path segment = directory.resolve(segmentName(seq));
+        Path tmp = directory.resolve(segmentName(seq) + TMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            //don't close the object stream; that would close the channel before the sync
+            OutputStream os = Channels.newOutputStream(channel);
+            ObjectOutputStream oos = new ObjectOutputStream(os);
+            oos.writeInt(FORMAT_VERSION);
+            oos.writeUTF(emitterName);
+            oos.writeObject(new ArrayList<>(emitData));
+            oos.flush();
+            channel.force(true);
+        }
+        //the rename makes a segment visible only once it is complete
+        Files.move(tmp, segment, StandardCopyOption.ATOMIC_MOVE);
+        return new Batch(seq, segment, emitterName, emitData);
+    }
+
+    /**
+     * Removes a batch that has been emitted from the spool.
+     */
+    void succeeded(Batch batch) {
+        try {
+            Files.deleteIfExists(batch.path);
+        } catch (IOException e) {
+            //it will be emitted again the next time the spool is opened
+            LOG.warn("couldn't delete emitted batch from spool: " + batch.path, e);
+        }
+    }
+
+    /**
+     * Schedules a batch whose emit failed to be retried after a backoff.  The
+     * batch's emit data is dropped until then.
+     */
+    synchronized void failed(Batch batch) {
+        batch.attempts++;
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < batch.attempts && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+        batch.nextAttemptMillis = clock.getAsLong() + backoff;
+        batch.emitData = null;
+        pending.put(batch.sequence, batch);
+        LOG.debug("batch {} failed {} times; retrying in {} ms", batch.sequence,
+                batch.attempts, backoff);
+    }
+
+    /**
+     * Hands out a pending batch that is due for a retry, or, if <code>ignoreBackoff</code>
+     * is <code>true</code>, any pending batch.  The caller must report the outcome
+     * with {@link #succeeded(Batch)} or {@link #failed(Batch)}.
+     *
+     * Batches that can't be read are quarantined and skipped.
+     *
+     * @return the batch or <code>null</code> if none is due
+     */
+    Batch claim(boolean ignoreBackoff) {
+        while (true) {
+            Batch batch = take(ignoreBackoff);
+            if (batch == null || batch.emitData != null) {
+                return batch;
+            }
+            try {
+                read(batch);
+                return batch;
+            } catch (IOException e) {
+                LOG.error("can't read spooled batch {}", batch.path, e);
+                quarantine(batch);
+            }
+        }
+    }
+
+    /**
+     * Stops retrying a claimed batch that can never be emitted, and keeps its
+     * segment file for inspection.
+     */
+    void quarantine(Batch batch) {
+        Path failed = batch.path.resolveSibling(batch.path.getFileName() + FAILED_SUFFIX);
+        LOG.error("quarantining spooled batch {} as {}", batch.path, failed);
+        try {
+            Files.move(batch.path, failed, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("couldn't quarantine batch " + batch.path, e);
+        }
+    }
+
+    private synchronized Batch take(boolean ignoreBackoff) {
+        long now = clock.getAsLong();
+        Iterator<Batch> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Batch b = it.next();
+            if (ignoreBackoff || b.nextAttemptMillis <= now) {
+                it.remove();
+                return b;
+            }
+        }
+        return null;
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void read(Batch batch) throws IOException {
+        try (InputStream is = Files.newInputStream(batch.path);
+                ObjectInputStream ois = new ObjectInputStream(is)) {
+            int version = ois.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported spool format version " + version + ": " +
+                        batch.path);
+            }
+            batch.emitterName = ois.readUTF();
+            batch.emitData = (List<EmitData>) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("can't read spooled batch: " + batch.path, e);
+        }
+    }
+
+    private static String segmentName(long seq) {
+        return String.format(Locale.ROOT, "%020d", seq) + SEGMENT_SUFFIX;
+    }
+
+    static class Batch {
+        private final long sequence;
+        private final Path path;
+        private String emitterName;
+        private List<EmitData> emitData;
+        private int attempts = 0;
+        private long nextAttemptMillis = 0;
+
+        private Batch(long sequence, Path path, String emitterName, List<EmitData> emitData) {
+            this.sequence = sequence;
+            this.path = path;
+            this.emitterName = emitterName;
+            this.emitData = emitData;
+        }
+
+        String getEmitterName() {
+            return emitterName;
+        }
+
+        List<EmitData> getEmitData() {
+            return emitData;
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.BoundedInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.Fetcher;
+import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher;
+import org.apache.tika.pipes.fetcher.shm.SharedMemoryRegion;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+import org.apache.tika.utils.ConcurrentUtils;
+import org.apache.tika.utils.StringUtils;
+
+/**
+ * Fetches documents in the AsyncProcessor, ahead of the PipesClients; see
+ * {@link AsyncConfig#setMaxConcurrentFetches(int)}.
+ * <p>
+ * A feeder takes tuples off the scheduler and starts a fetch for each on its own
+ * thread, which is virtual if {@link AsyncConfig#isUseVirtualThreads()}.  The
+ * fetched bytes go into a {@link SharedMemoryRegion}, and a copy of the tuple that
+ * points at the region goes into {@link #getFetched()}, which the PipesClients take
+ * from.  A semaphore bounds the number of tuples that are being fetched or that have
+ * been fetched and are waiting for, or in, a PipesClient.  That is a count of
+ * documents, not of bytes, so each region is also capped at
+ * {@link AsyncConfig#getMaxFetchAheadBytes()}: the shared memory in use is at most
+ * that times {@link AsyncConfig#getMaxConcurrentFetches()}.  A tuple's permit and
+ * region are given back by {@link #release(FetchEmitTuple)}, which also returns the
+ * tuple that was offered, for reporting.
+ * <p>
+ * Each fetch has {@link AsyncConfig#getTimeoutMillis()} to finish, as it would in
+ * the PipesServer, so that a fetcher that hangs doesn't keep its permit forever.
+ * <p>
+ * A tuple that can't be fetched here, that is larger than the cap or whose fetch
+ * times out is passed on as it is, so that the PipesServer fetches it and reports
+ * any failure as it would without the fetch-ahead.
+ */
+class FetchAhead implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FetchAhead.class);
+
+    private final FetchEmitTupleScheduler tuples;
+    private final FetchEmitTupleScheduler fetched;
+    private final FetcherManager fetcherManager;
+    private final Semaphore permits;
+    private final long maxFetchAheadBytes;
+    private final long timeoutMillis;
+    private final ExecutorService executorService;
+    //tuples that hold a permit, by the tuple that was handed out
+    private final Map<FetchEmitTuple, Fetched> handedOut = new IdentityHashMap<>();
+    private final AtomicInteger fetching = new AtomicInteger();
+    private volatile boolean tuplesFinished = false;
+
+    /**
+     * @param tuples the scheduler that the tuples are added to
+     */
+    FetchAhead(AsyncConfig asyncConfig, FetchEmitTupleScheduler tuples,
+               FetcherManager fetcherManager) throws TikaConfigException {
+        if (!fetcherManager.getSupported().contains(SharedMemoryFetcher.NAME)) {
+            throw new TikaConfigException("maxConcurrentFetches requires the " +
+                    SharedMemoryFetcher.class.getName() + " in the fetchers");
+        }
+        int maxConcurrentFetches = asyncConfig.getMaxConcurrentFetches();
+        this.tuples = tuples;
+        //the permits keep this from ever being full
+        this.fetched = new FetchEmitTupleScheduler(maxConcurrentFetches,
+                asyncConfig.getNumLargeDocumentClients() > 0 ?
+                        asyncConfig.getLargeDocumentThresholdBytes() : -1);
+        this.fetcherManager = fetcherManager;
+        this.permits = new Semaphore(maxConcurrentFetches);
+        this.maxFetchAheadBytes = asyncConfig.getMaxFetchAheadBytes();
+        this.timeoutMillis = asyncConfig.getTimeoutMillis();
+        this.executorService = Executors.newCachedThreadPool(ConcurrentUtils.newIOThreadFactory(
+                "tika-async-fetch-", asyncConfig.isUseVirtualThreads()));
+    }
+
+    /**
+     * @return the fetched tuples, for the PipesClients
+     */
+    FetchEmitTupleScheduler getFetched() {
+        return fetched;
+    }
+
+    /**
+     * Takes the tuples off the scheduler and starts their fetches until the scheduler
+     * is finished.  This is run by the AsyncProcessor on one of its threads.
+     */
+    void feed() throws InterruptedException {
+        while (true) {
+            permits.acquire();
+            FetchEmitTuple t = tuples.pollAny(1, TimeUnit.SECONDS);
+            if (t == null) {
+                permits.release();
+                continue;
+            }
+            if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                permits.release();
+                tuplesFinished = true;
+                if (fetching.get() == 0) {
+                    fetched.finish();
+                }
+                return;
+            }
+            fetching.incrementAndGet();
+            executorService.execute(() -> {
+                try {
+                    hand(fetch(t));
+                } finally {
+                    if (fetching.decrementAndGet() == 0 && tuplesFinished) {
+                        fetched.finish();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gives back the permit and deletes the region, if any, of a tuple that was taken
+     * from {@link #getFetched()}.  This may be called more than once for a tuple.
+     *
+     * @return the tuple as it was offered
+     */
+    FetchEmitTuple release(FetchEmitTuple t) {
+        Fetched f;
+        synchronized (handedOut) {
+            f = handedOut.remove(t);
+        }
+        if (f == null) {
+            return t;
+        }
+        permits.release();
+        close(f.region);
+        return f.original;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executorService.shutdownNow();
+        List<Fetched> remaining;
+        synchronized (handedOut) {
+            remaining = new ArrayList<>(handedOut.values());
+            handedOut.clear();
+        }
+        for (Fetched f : remaining) {
+            close(f.region);
+        }
+    }
+
+    private void hand(Fetched f) {
+        synchronized (handedOut) {
+            handedOut.put(f.tuple, f);
+        }
+        if (!fetched.offerAll(List.of(f.tuple))) {
+            //can't happen: there are only as many tuples as permits
+            LOG.error("no room for fetched tuple {}", f.tuple.getId());
+            release(f.tuple);
+        }
+    }
+
+    private Fetched fetch(FetchEmitTuple t) {
+        String fetcherName = t.getFetchKey().getFetcherName();
+        if (SharedMemoryFetcher.NAME.equals(fetcherName)) {
+            return new Fetched(t, t, null);
+        }
+        Fetcher fetcher;
+        try {
+            fetcher = fetcherManager.getFetcher(fetcherName);
+        } catch (IllegalArgumentException | IOException | TikaException e) {
+            //the PipesServer will report it
+            return new Fetched(t, t, null);
+        }
+        if (maxFetchAheadBytes >= 0 && t.getSize() > maxFetchAheadBytes) {
+            LOG.debug("not fetching {} ahead; its size {} is over maxFetchAheadBytes", t.getId(),
+                    t.getSize());
+            return new Fetched(t, t, null);
+        }
+        Metadata fetchMetadata = new Metadata();
+        FetchTask task = new FetchTask();
+        Future<?> future = executorService.submit(() -> {
+            task.fetch(fetcher, t, fetchMetadata);
+            return null;
+        });
+        try {
+            if (timeoutMillis > 0) {
+                future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                future.get();
+            }
+        } catch (TimeoutException e) {
+            SharedMemoryRegion region = task.abandon();
+            if (region != null) {
+                //it finished just in time
+                return new Fetched(t, toRegion(t, region, fetchMetadata), region);
+            }
+            LOG.warn("fetching {} ahead took longer than {} ms; the PipesServer will fetch it",
+                    t.getId(), timeoutMillis);
+            future.cancel(true);
+            IOUtils.closeQuietly(task.getStream());
+            return new Fetched(t, t, null);
+        } catch (ExecutionException e) {
+            //this was fetched for nothing if it failed part way, e.g. with ENOSPC
+            LOG.warn("couldn't fetch {} ahead; the PipesServer will fetch it", t.getId(),
+                    e.getCause());
+            return new Fetched(t, t, null);
+        } catch (InterruptedException e) {
+            //we're closing
+            task.abandon();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return new Fetched(t, t, null);
+        }
+        SharedMemoryRegion region = task.getRegion();
+        if (region == null) {
+            LOG.info("{} is larger than maxFetchAheadBytes ({}); the PipesServer will fetch it",
+                    t.getId(), maxFetchAheadBytes);
+            return new Fetched(t, t, null);
+        }
+        return new Fetched(t, toRegion(t, region, fetchMetadata), region);
+    }
+
+    /**
+     * @return a copy of the tuple that is fetched from the region
+     */
+    private static FetchEmitTuple toRegion(FetchEmitTuple t, SharedMemoryRegion region,
+                                           Metadata fetchMetadata) {
+        //without an emit key, the PipesServer would emit under the region's fetch key
+        EmitKey emitKey = t.getEmitKey();
+        if (StringUtils.isBlank(emitKey.getEmitKey())) {
+            emitKey = new EmitKey(emitKey.getEmitterName(), t.getFetchKey().getFetchKey());
+        }
+        //the PipesServer only sees the region, so the fetcher's metadata goes along as
+        //user metadata; the region sets the length itself
+        Metadata metadata = new Metadata();
+        for (String n : fetchMetadata.names()) {
+            if (!Metadata.CONTENT_LENGTH.equals(n)) {
+                for (String v : fetchMetadata.getValues(n)) {
+                    metadata.add(n, v);
+                }
+            }
+        }
+        if (t.getMetadata() != null) {
+            for (String n : t.getMetadata().names()) {
+                metadata.remove(n);
+                for (String v : t.getMetadata().getValues(n)) {
+                    metadata.add(n, v);
+                }
+            }
+        }
+        FetchEmitTuple copy = new FetchEmitTuple(t.getId(), region.getFetchKey(), emitKey,
+                metadata, t.getParseContext(), t.getOnParseException());
+        copy.setPriority(t.getPriority());
+        copy.setSize(t.getSize());
+        return copy;
+    }
+
+    private static void close(SharedMemoryRegion region) {
+        if (region == null) {
+            return;
+        }
+        try {
+            region.close();
+        } catch (IOException e) {
+            LOG.warn("couldn't delete {}", region.getPath(), e);
+        }
+    }
+
+    /**
+     * Copies a document into a region on its own thread.  If the fetch is abandoned
+     * after a timeout, a region that it still writes is deleted.
+     */
+    private class FetchTask {
+        private InputStream stream;
+        private SharedMemoryRegion region;
+        private boolean abandoned = false;
+
+        void fetch(Fetcher fetcher, FetchEmitTuple t, Metadata fetchMetadata)
+                throws IOException, TikaException {
+            try (InputStream is = fetcher.fetch(t.getFetchKey().getFetchKey(), fetchMetadata,
+                    t.getParseContext())) {
+                synchronized (this) {
+                    stream = is;
+                }
+                //one more byte than the cap to find out if the document is over it
+                BoundedInputStream bounded = new BoundedInputStream(
+                        maxFetchAheadBytes < 0 ? -1 : maxFetchAheadBytes + 1, is);
+                SharedMemoryRegion created = SharedMemoryRegion.create(bounded);
+                if (maxFetchAheadBytes >= 0 && bounded.hasHitBound()) {
+                    FetchAhead.close(created);
+                    return;
+                }
+                synchronized (this) {
+                    if (abandoned) {
+                        FetchAhead.close(created);
+                    } else {
+                        region = created;
+                    }
+                }
+            }
+        }
+
+        synchronized InputStream getStream() {
+            return stream;
+        }
+
+        synchronized SharedMemoryRegion getRegion() {
+            return region;
+        }
+
+        /**
+         * @return the region if the fetch finished after all, otherwise <code>null</code>
+         */
+        synchronized SharedMemoryRegion abandon() {
+            abandoned = true;
+            return region;
+        }
+    }
+
+    private static class Fetched {
+        private final FetchEmitTuple original;
+        //what the PipesClients get
+        private final FetchEmitTuple tuple;
+        //null if it wasn't fetched here
+        private final SharedMemoryRegion region;
+
+        private Fetched(FetchEmitTuple original, FetchEmitTuple tuple,
+                        SharedMemoryRegion region) {
+            this.original = original;
+            this.tuple = tuple;
+            this.region = region;
+        }
+    }
+}
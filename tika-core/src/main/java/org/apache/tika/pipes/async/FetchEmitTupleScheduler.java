@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+/**
+ * Queue of the tuples that are waiting for a {@link org.apache.tika.pipes.PipesClient},
+ * split into lanes.  Tuples whose size hint ({@link FetchEmitTuple#getSize()})
+ * is at least the large document threshold go into the large lane, and everything
+ * else goes into the default lane.  Only the clients that are set aside for large
+ * documents take from the large lane; they take from the default lane when the
+ * large lane is empty.  This keeps a run of large documents from tying up every
+ * client at once.
+ * <p>
+ * Within a lane, tuples with a higher {@link FetchEmitTuple#getPriority()} are
+ * handed out first, and tuples with the same priority are handed out in the order
+ * they were added.
+ * <p>
+ * The capacity is shared by the lanes.
+ */
+class FetchEmitTupleScheduler {
+
+    static final String DEFAULT_LANE = "default";
+
+    static final String LARGE_LANE = "large";
+
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparingInt((Entry e) -> -e.tuple.getPriority())
+                    .thenComparingLong(e -> e.sequence);
+
+    private final int capacity;
+    private final long largeDocumentThresholdBytes;
+    private final PriorityQueue<Entry> defaultLane = new PriorityQueue<>(ORDER);
+    private final PriorityQueue<Entry> largeLane = new PriorityQueue<>(ORDER);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private long sequence = 0;
+    private boolean finished = false;
+
+    /**
+     * @param largeDocumentThresholdBytes size hint at which a tuple goes into the
+     *                                    large lane; <code>-1</code> to use only the
+     *                                    default lane
+     */
+    FetchEmitTupleScheduler(int capacity, long largeDocumentThresholdBytes) {
+        this.capacity = capacity;
+        this.largeDocumentThresholdBytes = largeDocumentThresholdBytes;
+    }
+
+    /**
+     * Adds the tuple, waiting up to the timeout for room.
+     * {@link PipesIterator#COMPLETED_SEMAPHORE} is the same as {@link #finish()}.
+     *
+     * @return <code>false</code> if there was no room within the timeout
+     */
+    boolean offer(FetchEmitTuple t, long timeout, TimeUnit unit) throws InterruptedException {
+        if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+            finish();
+            return true;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            add(t);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds all of the tuples if there's room for all of them, without waiting.
+     *
+     * @return <code>false</code> if there wasn't room, in which case none were added
+     */
+    boolean offerAll(List<FetchEmitTuple> tuples) {
+        try {
+            return offerAll(tuples, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            //can't happen without waiting
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Adds all of the tuples, waiting up to the timeout for there to be room for
+     * all of them.
+     *
+     * @return <code>false</code> if there wasn't room within the timeout, in which
+     * case none were added
+     */
+    boolean offerAll(List<FetchEmitTuple> tuples, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (capacity - size() < tuples.size()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            for (FetchEmitTuple t : tuples) {
+                if (t == PipesIterator.COMPLETED_SEMAPHORE) {
+                    finished = true;
+                } else {
+                    add(t);
+                }
+            }
+            notEmpty.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * No more tuples will be added.  Once their lanes are empty, the clients get
+     * {@link PipesIterator#COMPLETED_SEMAPHORE} from {@link #poll(boolean, long, TimeUnit)}.
+     */
+    void finish() {
+        lock.lock();
+        try {
+            finished = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param large whether the caller is a client for large documents
+     * @return the next tuple for the caller, {@link PipesIterator#COMPLETED_SEMAPHORE} if
+     * there won't be any more for it, or <code>null</code> if there was nothing
+     * within the timeout
+     */
+    FetchEmitTuple poll(boolean large, long timeout, TimeUnit unit) throws InterruptedException {
+        return poll(large, false, timeout, unit);
+    }
+
+    /**
+     * Like {@link #poll(boolean, long, TimeUnit)}, but for a caller that takes from
+     * both lanes, e.g. the fetch-ahead: this returns whichever tuple at the head of
+     * the two lanes should be handed out first.
+     */
+    FetchEmitTuple pollAny(long timeout, TimeUnit unit) throws InterruptedException {
+        return poll(true, true, timeout, unit);
+    }
+
+    private FetchEmitTuple poll(boolean large, boolean any, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Entry e;
+                if (any) {
+                    Entry head = largeLane.peek();
+                    e = head != null && (defaultLane.isEmpty() ||
+                            ORDER.compare(head, defaultLane.peek()) < 0) ?
+                            largeLane.poll() : defaultLane.poll();
+                } else {
+                    e = large && !largeLane.isEmpty() ? largeLane.poll() : defaultLane.poll();
+                }
+                if (e != null) {
+                    //offerAll may be waiting for more room than one tuple
+                    notFull.signalAll();
+                    return e.tuple;
+                }
+                //large documents can still be added to the large lane after the
+                //default lane has run dry, but not once the queue is finished
+                if (finished && (!large || largeLane.isEmpty())) {
+                    return PipesIterator.COMPLETED_SEMAPHORE;
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tuples waiting in each lane, by lane name
+     */
+    Map<String, Integer> getQueueSizes() {
+        lock.lock();
+        try {
+            Map<String, Integer> sizes = new LinkedHashMap<>();
+            sizes.put(DEFAULT_LANE, defaultLane.size());
+            if (largeDocumentThresholdBytes > -1) {
+                sizes.put(LARGE_LANE, largeLane.size());
+            }
+            return sizes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(FetchEmitTuple t) {
+        Entry e = new Entry(t, sequence++);
+        if (isLarge(t)) {
+            largeLane.add(e);
+        } else {
+            defaultLane.add(e);
+        }
+        //the waiting client may not take from this tuple's lane
+        notEmpty.signalAll();
+    }
+
+    private boolean isLarge(FetchEmitTuple t) {
+        return largeDocumentThresholdBytes >= 0 && t.getSize() != FetchEmitTuple.UNKNOWN_SIZE &&
+                t.getSize() >= largeDocumentThresholdBytes;
+    }
+
+    private int size() {
+        return defaultLane.size() + largeLane.size();
+    }
+
+    private static class Entry {
+        private final FetchEmitTuple tuple;
+        private final long sequence;
+
+        private Entry(FetchEmitTuple tuple, long sequence) {
+            this.tuple = tuple;
+            this.sequence = sequence;
+        }
+    }
+}
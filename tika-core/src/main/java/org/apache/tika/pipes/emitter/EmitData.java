@@ -33,6 +33,7 @@ public class EmitData implements Serializable {
     private final List<Metadata> metadataList;
     private final String containerStackTrace;
     private ParseContext parseContext = null;
+    private String fetchEmitTupleId = null;
 
     public EmitData(EmitKey emitKey, List<Metadata> metadataList) {
         this(emitKey, metadataList, StringUtils.EMPTY);
@@ -74,6 +75,22 @@ public class EmitData implements Serializable {
         return parseContext;
     }
 
+    /**
+     * @param fetchEmitTupleId id of the {@link org.apache.tika.pipes.FetchEmitTuple}
+     *                         that this was parsed from
+     */
+    public void setFetchEmitTupleId(String fetchEmitTupleId) {
+        this.fetchEmitTupleId = fetchEmitTupleId;
+    }
+
+    /**
+     * @return id of the {@link org.apache.tika.pipes.FetchEmitTuple} that this was
+     * parsed from, or <code>null</code> if it wasn't set
+     */
+    public String getFetchEmitTupleId() {
+        return fetchEmitTupleId;
+    }
+
     private static long estimateSizeInBytes(String id, List<Metadata> metadataList,
                                             String containerStackTrace) {
         long sz = 36 + id.length() * 2;
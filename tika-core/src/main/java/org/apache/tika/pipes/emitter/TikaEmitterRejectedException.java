@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.emitter;
+
+/**
+ * Thrown by an emitter when its backend turned down a request because it is
+ * overloaded, e.g. with an HTTP 429, rather than because the request is bad.
+ * The same request may succeed if it is sent again later, or in smaller pieces.
+ */
+public class TikaEmitterRejectedException extends TikaEmitterException {
+
+    public TikaEmitterRejectedException(String msg) {
+        super(msg);
+    }
+
+    public TikaEmitterRejectedException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
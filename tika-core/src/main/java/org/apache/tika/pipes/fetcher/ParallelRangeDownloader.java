@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads an object in parts of a fixed size, several at a time, straight
+ * into a local file.  Each part is written at its own offset in the file, so the
+ * parts can arrive in any order.  A part that fails is retried on its own,
+ * without throwing away the parts that have already been written.
+ * <p>
+ * This is meant for fetchers that can read byte ranges of an object, e.g.
+ * a {@link RangeFetcher}, and that spool large objects to a temp file before
+ * they are parsed.
+ */
+public class ParallelRangeDownloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelRangeDownloader.class);
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Opens a stream over a byte range of the object being downloaded.
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+        /**
+         * @param start first byte of the range
+         * @param end   last byte of the range, inclusive
+         */
+        InputStream open(long start, long end) throws IOException;
+    }
+
+    private final ExecutorService executorService;
+    private final long partSizeBytes;
+    private final long[] retrySleepMillis;
+    private final Predicate<IOException> retryable;
+
+    /**
+     * @param executorService  runs the part downloads; its size bounds how many parts
+     *                         are downloaded at a time
+     * @param partSizeBytes    size of each part; the last part may be smaller
+     * @param retrySleepMillis how long to sleep before each retry of a failed part;
+     *                         its length is the number of retries
+     * @param retryable        whether a failure is worth retrying
+     */
+    public ParallelRangeDownloader(ExecutorService executorService, long partSizeBytes,
+                                   long[] retrySleepMillis, Predicate<IOException> retryable) {
+        if (partSizeBytes < 1) {
+            throw new IllegalArgumentException("partSizeBytes must be > 0: " + partSizeBytes);
+        }
+        this.executorService = executorService;
+        this.partSizeBytes = partSizeBytes;
+        this.retrySleepMillis = retrySleepMillis == null ? new long[0] : retrySleepMillis;
+        this.retryable = retryable;
+    }
+
+    /**
+     * Downloads <code>length</code> bytes into <code>target</code>, which must exist.
+     * This blocks until all parts have been written, or until one part has
+     * failed after its retries, in which case the other parts are cancelled.
+     */
+    public void download(RangeOpener opener, long length, Path target) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Future<Void>> futures = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            for (long partStart = 0; partStart < length; partStart += partSizeBytes) {
+                long s = partStart;
+                long e = Math.min(partStart + partSizeBytes, length) - 1;
+                futures.add(executorService.submit(() -> {
+                    downloadPart(opener, s, e, channel);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    cancel(futures);
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                } catch (InterruptedException e) {
+                    cancel(futures);
+                    throw new InterruptedIOException("interrupted while downloading parts");
+                }
+            }
+        }
+        LOG.debug("downloaded {} bytes in {} parts in {} ms", length, futures.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void downloadPart(RangeOpener opener, long start, long end, FileChannel channel)
+            throws IOException {
+        int tries = 0;
+        while (true) {
+            try {
+                copy(opener, start, end, channel);
+                return;
+            } catch (InterruptedIOException | ClosedByInterruptException e) {
+                throw e;
+            } catch (IOException e) {
+                if (tries >= retrySleepMillis.length || !retryable.test(e)) {
+                    throw e;
+                }
+                LOG.warn("failed to download bytes {}-{}; retry={}", start, end, tries, e);
+            }
+            try {
+                Thread.sleep(retrySleepMillis[tries++]);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted before retry");
+            }
+        }
+    }
+
+    private static void copy(RangeOpener opener, long start, long end, FileChannel channel)
+            throws IOException {
+        long position = start;
+        byte[] bytes = new byte[BUFFER_SIZE];
+        try (InputStream is = opener.open(start, end)) {
+            int read = is.read(bytes);
+            while (read > -1 && position <= end) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0,
+                        (int) Math.min(read, end - position + 1));
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                read = is.read(bytes);
+            }
+        }
+        if (position != end + 1) {
+            throw new IOException("expected " + (end - start + 1) + " bytes for range " +
+                    start + "-" + end + " but got " + (position - start));
+        }
+    }
+
+    private static void cancel(List<Future<Void>> futures) {
+        for (Future<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.shm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.fetcher.Fetcher;
+
+/**
+ * Reads a {@link SharedMemoryRegion} through a memory mapping.
+ * <p>
+ * The fetch key is the path of the region.  This only reads regions, i.e. files
+ * in {@link SharedMemoryRegion#getDirectory()} that were created by
+ * {@link SharedMemoryRegion}, so it can't be used to read other files.  It can,
+ * though, read any live region of any caller, so it is only available when it is
+ * configured, and it should only be configured when the tuples come from trusted
+ * code, e.g. the AsyncProcessor's fetch-ahead, and not from requests to tika-server:
+ * <pre>
+ * &lt;fetchers&gt;
+ *   &lt;fetcher class="org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher"/&gt;
+ * &lt;/fetchers&gt;
+ * </pre>
+ * Its name is always {@link #NAME}.
+ */
+public class SharedMemoryFetcher implements Fetcher {
+
+    public static final String NAME = "sharedMemory";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext)
+            throws TikaException, IOException {
+        Path path = Paths.get(fetchKey).toAbsolutePath().normalize();
+        Path directory = SharedMemoryRegion.getDirectory().toAbsolutePath().normalize();
+        if (!directory.equals(path.getParent()) ||
+                !path.getFileName().toString().startsWith(SharedMemoryRegion.PREFIX)) {
+            throw new TikaException("Not a shared memory region: " + fetchKey);
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(fetchKey);
+        }
+        //the region's name means nothing to the parsers; keep only the length
+        Metadata regionMetadata = new Metadata();
+        TikaInputStream tis = TikaInputStream.getMapped(path, regionMetadata);
+        metadata.set(Metadata.CONTENT_LENGTH, regionMetadata.get(Metadata.CONTENT_LENGTH));
+        return tis;
+    }
+}
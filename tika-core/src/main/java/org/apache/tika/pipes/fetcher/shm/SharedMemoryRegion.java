@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher.shm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+/**
+ * Bytes that the parent process already has, e.g. an upload, handed to a forked
+ * PipesServer through shared memory.  The parent writes the bytes into a file in
+ * the shared memory directory, <code>/dev/shm</code> where there is one, and
+ * passes only {@link #getFetchKey()} in the FetchEmitTuple.  The PipesServer's
+ * {@link SharedMemoryFetcher}, which has to be configured, maps the same file, so
+ * the bytes are neither written to disk nor fetched again.  Only the owner can
+ * read or write a region.
+ * <p>
+ * The parent owns the region; close it after the PipesServer has returned its
+ * result to delete the file.
+ * <pre>
+ * try (SharedMemoryRegion region = SharedMemoryRegion.create(bytes)) {
+ *     PipesResult result = pipesClient.process(new FetchEmitTuple(id,
+ *             region.getFetchKey(), emitKey, metadata, parseContext, onParseException));
+ * }
+ * </pre>
+ */
+public class SharedMemoryRegion implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryRegion.class);
+
+    static final String PREFIX = "tika-shm-";
+
+    private static final Path DIRECTORY = findDirectory();
+
+    private static final Set<PosixFilePermission> OWNER_ONLY =
+            PosixFilePermissions.fromString("rw-------");
+
+    private final Path path;
+
+    private SharedMemoryRegion(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Copies the bytes into a new region.
+     */
+    public static SharedMemoryRegion create(byte[] bytes) throws IOException {
+        Path path = createFile();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (bytes.length > 0) {
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes.length).put(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SharedMemoryRegion(path);
+    }
+
+    /**
+     * Copies the stream into a new region.  The stream is not closed.
+     */
+    public static SharedMemoryRegion create(InputStream is) throws IOException {
+        Path path = createFile();
+        try {
+            Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SharedMemoryRegion(path);
+    }
+
+    /**
+     * @return the directory that holds the regions, <code>/dev/shm</code> if it is
+     * available and the temp directory if not.
+     */
+    public static Path getDirectory() {
+        return DIRECTORY;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the fetch key for the PipesServer's {@link SharedMemoryFetcher}
+     */
+    public FetchKey getFetchKey() {
+        return new FetchKey(SharedMemoryFetcher.NAME, path.toAbsolutePath().toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * The directory is shared with every other user on the host, so only the
+     * owner, i.e. this process and its forked servers, can read a region.
+     */
+    private static Path createFile() throws IOException {
+        if (DIRECTORY.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(DIRECTORY, PREFIX, "",
+                    PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        }
+        return Files.createTempFile(DIRECTORY, PREFIX, "");
+    }
+
+    private static Path findDirectory() {
+        Path shm = Paths.get("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) {
+            return shm;
+        }
+        LOG.debug("/dev/shm isn't available; shared memory regions go in the temp directory");
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+}
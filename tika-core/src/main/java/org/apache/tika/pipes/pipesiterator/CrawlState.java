@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.pipesiterator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.tika.pipes.PipesResult;
+
+/**
+ * Records what a {@link PipesIterator} has sent for processing across runs, so
+ * that the next run can skip the documents that have not changed since they were
+ * last processed.
+ * <p>
+ * For each document id, this stores the version that was last enqueued, e.g.
+ * an ETag or a modified time and length, and the status of the last
+ * {@link PipesResult} for it.  A document is enqueued again if it is new, if its
+ * version has changed, or if it has no final status for its current version.
+ * The last case covers both documents that failed in a way that is worth
+ * retrying and documents that were still in flight when a run crashed, so a
+ * crashed run can be restarted and will pick up where it left off.
+ * <p>
+ * Implementations must be thread safe: the iterator checks documents from its
+ * own thread while the results are recorded by the workers.
+ */
+public abstract class CrawlState implements Closeable {
+
+    //failures that may well go away on another try; everything else is final
+    private static final Set<PipesResult.STATUS> RETRY_STATUSES = EnumSet.of(
+            PipesResult.STATUS.CLIENT_UNAVAILABLE_WITHIN_MS,
+            PipesResult.STATUS.FETCHER_INITIALIZATION_EXCEPTION,
+            PipesResult.STATUS.FETCH_EXCEPTION,
+            PipesResult.STATUS.UNSPECIFIED_CRASH,
+            PipesResult.STATUS.NO_EMITTER_FOUND,
+            PipesResult.STATUS.EMIT_EXCEPTION,
+            PipesResult.STATUS.INTERRUPTED_EXCEPTION,
+            PipesResult.STATUS.NO_FETCHER_FOUND,
+            PipesResult.STATUS.INTERMEDIATE_RESULT);
+
+    /**
+     * Checks whether the document should be enqueued and, if so, records
+     * <code>version</code> as its current version, with no status yet.
+     *
+     * @param id      the id of the document, as in the {@link org.apache.tika.pipes.FetchEmitTuple}
+     * @param version anything that changes when the document changes
+     * @return <code>true</code> if the document should be enqueued
+     */
+    public abstract boolean shouldProcess(String id, String version) throws IOException;
+
+    /**
+     * Records the status of the last result for a document.
+     */
+    public abstract void report(String id, PipesResult.STATUS status) throws IOException;
+
+    /**
+     * @return whether a document with this status is done for its current version
+     */
+    public static boolean isFinal(PipesResult.STATUS status) {
+        return status != null && !RETRY_STATUSES.contains(status);
+    }
+}
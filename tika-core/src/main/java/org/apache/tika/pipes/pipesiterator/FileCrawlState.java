@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.pipesiterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.utils.ConcurrentUtils;
+
+/**
+ * {@link CrawlState} that keeps the state in memory and appends every change to a
+ * log file in a local directory.  The log is replayed when the state is opened,
+ * and it is compacted then if most of its records have been superseded.
+ * A record that was only partly written when the process died is dropped,
+ * so at worst the document it was about is processed again.
+ * <p>
+ * Records are buffered, and a background thread writes them out every
+ * {@link #FLUSH_INTERVAL_MILLIS} while there are changes, as does {@link #close()}.
+ * If the process dies, the changes of up to that last interval are lost, and those
+ * documents are processed again on the next run.
+ * <p>
+ * Ids and versions are written as length-prefixed UTF-8, so there is no limit on
+ * their length.
+ * <p>
+ * The size of a crawl that this can track is bounded by the heap: the whole state
+ * is held in memory, which takes roughly 100 bytes plus twice the length of the
+ * id and version per document, so tens of GB for a few hundred million documents.
+ * For crawls of that size, plug in a {@link CrawlState} backed by an on-disk
+ * key-value store with {@link PipesIterator#setCrawlState(CrawlState)}.
+ */
+public class FileCrawlState extends CrawlState {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileCrawlState.class);
+
+    static final String LOG_FILE_NAME = "crawl-state.log";
+
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final byte VERSION_RECORD = 1;
+
+    private static final byte STATUS_RECORD = 2;
+
+    private final Path logFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private DataOutputStream log;
+    private long records = 0;
+    //records written since the last flush
+    private boolean dirty = false;
+    private final ScheduledExecutorService flusher;
+
+    public FileCrawlState(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.logFile = directory.resolve(LOG_FILE_NAME);
+        Files.deleteIfExists(directory.resolve(LOG_FILE_NAME + TMP_SUFFIX));
+        if (Files.isRegularFile(logFile)) {
+            load();
+        }
+        if (records > 2L * entries.size() + 1000) {
+            compact();
+        }
+        log = openLog();
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                ConcurrentUtils.newIOThreadFactory("tika-crawl-state-flush-", false));
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS,
+                FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        LOG.info("loaded crawl state for {} documents from {}", entries.size(), logFile);
+    }
+
+    @Override
+    public synchronized boolean shouldProcess(String id, String version) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry != null && entry.version.equals(version)) {
+            //if the status isn't final, the version is already recorded
+            return !isFinal(entry.status);
+        }
+        entries.put(id, new Entry(version));
+        write(VERSION_RECORD, id, version);
+        return true;
+    }
+
+    @Override
+    public synchronized void report(String id, PipesResult.STATUS status) throws IOException {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.status == status) {
+            //not enqueued with a version, or nothing new to record
+            return;
+        }
+        entry.status = status;
+        write(STATUS_RECORD, id, status.name());
+    }
+
+    /**
+     * @return the number of documents in the state
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private void write(byte type, String id, String value) throws IOException {
+        if (log == null) {
+            throw new IOException("crawl state has been closed");
+        }
+        log.writeByte(type);
+        writeString(id, log);
+        writeString(value, log);
+        records++;
+        dirty = true;
+    }
+
+    /**
+     * Bounds what is lost if the process dies; this isn't synced to disk, though.
+     */
+    private synchronized void flush() {
+        if (log == null || !dirty) {
+            return;
+        }
+        try {
+            log.flush();
+            dirty = false;
+        } catch (IOException e) {
+            LOG.warn("couldn't flush {}", logFile, e);
+        }
+    }
+
+    private static void writeString(String s, DataOutputStream os) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        int length = is.readInt();
+        if (length < 0) {
+            throw new EOFException("negative length " + length);
+        }
+        byte[] bytes = new byte[length];
+        is.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void load() throws IOException {
+        long validLength = 0;
+        try (CountingInputStream counting = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(logFile)));
+                DataInputStream is = new DataInputStream(counting)) {
+            while (true) {
+                int type = is.read();
+                if (type == -1) {
+                    break;
+                }
+                String id = readString(is);
+                String value = readString(is);
+                if (type == VERSION_RECORD) {
+                    entries.put(id, new Entry(value));
+                } else if (type == STATUS_RECORD) {
+                    Entry entry = entries.get(id);
+                    if (entry != null) {
+                        entry.status = parseStatus(value);
+                    }
+                } else {
+                    throw new IOException("unrecognized record type " + type + " at byte " +
+                            validLength + " in " + logFile);
+                }
+                records++;
+                validLength = counting.count;
+            }
+        } catch (EOFException e) {
+            LOG.warn("dropping partly written record at byte {} in {}", validLength, logFile);
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = logFile.resolveSibling(LOG_FILE_NAME + TMP_SUFFIX);
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW)))) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                os.writeByte(VERSION_RECORD);
+                writeString(e.getKey(), os);
+                writeString(e.getValue().version, os);
+                if (e.getValue().status != null) {
+                    os.writeByte(STATUS_RECORD);
+                    writeString(e.getKey(), os);
+                    writeString(e.getValue().status.name(), os);
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, logFile, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        LOG.debug("compacted {} records to {} documents in {}", records, entries.size(),
+                logFile);
+        records = entries.size();
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(logFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND), 64 * 1024));
+    }
+
+    private static PipesResult.STATUS parseStatus(String name) {
+        try {
+            return PipesResult.STATUS.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            //from another version of Tika; process the document again
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final String version;
+        private PipesResult.STATUS status;
+
+        private Entry(String version) {
+            this.version = version;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -77,7 +78,11 @@ public abstract class PipesIterator extends ConfigBase
     private int writeLimit = -1;
     private int maxEmbeddedResources = -1;
 
+    private Path crawlStateDirectory;
+    private CrawlState crawlState;
+
     private int added = 0;
+    private int unchanged = 0;
     private FutureTask<Integer> futureTask;
 
     public static PipesIterator build(Path tikaConfigFile) throws IOException,
@@ -166,9 +171,46 @@ public abstract class PipesIterator extends ConfigBase
         this.parseMode = parseMode;
     }
 
+    /**
+     * If this is set, the iterator keeps a {@link FileCrawlState} in this directory,
+     * and iterators that know the versions of their documents skip the ones that
+     * have not changed since they were last processed.
+     */
+    @Field
+    public void setCrawlStateDirectory(String crawlStateDirectory) {
+        this.crawlStateDirectory = Paths.get(crawlStateDirectory);
+    }
+
+    /**
+     * Use this to plug in a different {@link CrawlState}.  This overrides
+     * {@link #setCrawlStateDirectory(String)}.
+     */
+    public synchronized void setCrawlState(CrawlState crawlState) {
+        this.crawlState = crawlState;
+    }
+
+    /**
+     * Opens the crawl state if it hasn't been opened yet.  Whoever processes the
+     * tuples should report their results to it and close it when they're done;
+     * the {@link org.apache.tika.pipes.async.AsyncProcessor} does this when it is
+     * given the iterator.
+     *
+     * @return the crawl state or <code>null</code> if there isn't one
+     */
+    public synchronized CrawlState getCrawlState() throws IOException {
+        if (crawlState == null && crawlStateDirectory != null) {
+            crawlState = new FileCrawlState(crawlStateDirectory);
+        }
+        return crawlState;
+    }
+
     public Integer call() throws Exception {
         enqueue();
         tryToAdd(COMPLETED_SEMAPHORE);
+        if (unchanged > 0) {
+            LOGGER.info("skipped {} documents that were unchanged since the last run",
+                    unchanged);
+        }
         return added;
     }
 
@@ -180,6 +222,36 @@ public abstract class PipesIterator extends ConfigBase
 
     protected abstract void enqueue() throws IOException, TimeoutException, InterruptedException;
 
+    /**
+     * Iterators that know the version of a document, e.g. its ETag or its modified
+     * time and length, should call this before they add it.
+     *
+     * @param id      the id of the tuple that would be added
+     * @param version anything that changes when the document changes
+     * @return <code>false</code> if the crawl state shows that this version of the
+     * document has already been processed
+     */
+    protected boolean shouldProcess(String id, String version) throws IOException {
+        CrawlState state = getCrawlState();
+        if (state == null || state.shouldProcess(id, version)) {
+            return true;
+        }
+        unchanged++;
+        return false;
+    }
+
+    /**
+     * Iterators that know the length of a document should use this to add its
+     * tuple, so that large documents can be scheduled separately; see
+     * {@link FetchEmitTuple#setSize(long)}.
+     *
+     * @param size the length of the document in bytes
+     */
+    protected void tryToAdd(FetchEmitTuple p, long size) throws InterruptedException, TimeoutException {
+        p.setSize(size);
+        tryToAdd(p);
+    }
+
     protected void tryToAdd(FetchEmitTuple p) throws InterruptedException, TimeoutException {
         added++;
         boolean offered = queue.offer(p, maxWaitMs, TimeUnit.MILLISECONDS);
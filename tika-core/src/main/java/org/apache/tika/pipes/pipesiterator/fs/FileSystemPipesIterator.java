@@ -152,13 +152,16 @@ public class FileSystemPipesIterator extends PipesIterator
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
             String relPath = basePath.relativize(file).toString();
-
+            if (!shouldProcess(relPath,
+                    attrs.lastModifiedTime().toMillis() + ":" + attrs.size())) {
+                return FileVisitResult.CONTINUE;
+            }
             try {
                 ParseContext parseContext = new ParseContext();
                 parseContext.set(HandlerConfig.class, getHandlerConfig());
                 tryToAdd(new FetchEmitTuple(relPath, new FetchKey(fetcherName, relPath),
                         new EmitKey(emitterName, relPath), new Metadata(), parseContext,
-                        getOnParseException()));
+                        getOnParseException()), attrs.size());
             } catch (TimeoutException e) {
                 throw new IOException(e);
             } catch (InterruptedException e) {
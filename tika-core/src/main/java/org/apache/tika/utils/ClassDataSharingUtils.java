@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.utils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+
+/**
+ * Application Class Data Sharing (CDS) for the forked JVMs, i.e. the
+ * PipesServer and the tika-server's forked process.  Each of these loads and
+ * links thousands of parser classes and runs the service loaders from scratch
+ * every time it starts.  A CDS archive lets the JVM map those classes from a file
+ * instead, which cuts the time to the first parse after every restart.
+ * <p>
+ * Create the archive once, with the same java and the same class path as the
+ * forked processes will use:
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=tika.jsa -cp tika-server-standard.jar \
+ *   org.apache.tika.utils.ClassDataSharingUtils [tika-config.xml] [training documents...]
+ * </pre>
+ * and then point <code>classDataSharingArchive</code> in the pipes or server
+ * config at it.  The archive only holds the classes that the training run
+ * loaded, so pass a few typical documents to cover the parsers that the default
+ * configuration doesn't load up front.  An archive that is missing or that was
+ * made with another JVM or class path is ignored, and the JVM starts as usual.
+ */
+public class ClassDataSharingUtils {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassDataSharingUtils.class);
+
+    private static final String SHARED_ARCHIVE_FILE = "-XX:SharedArchiveFile=";
+
+    /**
+     * @param archive  the CDS archive, may be <code>null</code>
+     * @param jvmArgs  the JVM args that are already configured for the forked process
+     * @return the JVM args that make the forked process use the archive, or an empty
+     * list if there's no archive or if the configured args already control
+     * class data sharing
+     */
+    public static List<String> getJvmArgs(Path archive, List<String> jvmArgs) {
+        List<String> args = new ArrayList<>();
+        if (archive == null) {
+            return args;
+        }
+        for (String arg : jvmArgs) {
+            if (arg.startsWith(SHARED_ARCHIVE_FILE) || arg.startsWith("-Xshare") ||
+                    arg.startsWith("-XX:ArchiveClassesAtExit")) {
+                LOG.debug("not adding the class data sharing archive because of: {}", arg);
+                return args;
+            }
+        }
+        if (!Files.isRegularFile(archive)) {
+            LOG.warn("class data sharing archive doesn't exist; starting without it: {}",
+                    archive);
+            return args;
+        }
+        args.add(SHARED_ARCHIVE_FILE +
+                ProcessUtils.escapeCommandLine(archive.toAbsolutePath().toString()));
+        //fall back to starting without the archive if it doesn't match this JVM
+        //or class path; those warnings would otherwise go to stdout
+        args.add("-Xshare:auto");
+        args.add("-Xlog:cds=off,cds+dynamic=off");
+        return args;
+    }
+
+    /**
+     * The training run for the archive.  This loads the tika config, which
+     * instantiates the parsers, detectors and the rest of the service-loaded
+     * classes, and then parses each of the training documents.  Run it with
+     * <code>-XX:ArchiveClassesAtExit=&lt;archive&gt;</code>.
+     *
+     * @param args optional path to a tika-config file, followed by optional paths
+     *             to training documents
+     */
+    public static void main(String[] args) throws Exception {
+        int i = 0;
+        TikaConfig tikaConfig;
+        if (args.length > 0 && args[0].endsWith(".xml") && isTikaConfig(Paths.get(args[0]))) {
+            tikaConfig = new TikaConfig(Paths.get(args[0]));
+            i++;
+        } else {
+            tikaConfig = TikaConfig.getDefaultConfig();
+        }
+        Parser parser = new AutoDetectParser(tikaConfig);
+        parse(parser, TikaInputStream.get("training".getBytes(StandardCharsets.UTF_8)));
+        for (; i < args.length; i++) {
+            parse(parser, TikaInputStream.get(Paths.get(args[i])));
+        }
+    }
+
+    private static boolean isTikaConfig(Path p) throws Exception {
+        if (!Files.isRegularFile(p)) {
+            return false;
+        }
+        //a cheap check so that xml training documents aren't taken for the config
+        byte[] bytes = Files.readAllBytes(p);
+        return new String(bytes, StandardCharsets.UTF_8).contains("<properties");
+    }
+
+    private static void parse(Parser parser, InputStream is) {
+        try (InputStream stream = is) {
+            parser.parse(stream, new DefaultHandler(), new Metadata(), new ParseContext());
+        } catch (Exception e) {
+            //we only care about the classes that were loaded on the way
+            LOG.debug("training parse failed", e);
+        }
+    }
+}
@@ -19,6 +19,11 @@ package org.apache.tika.utils;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.tika.parser.ParseContext;
 
@@ -29,6 +34,11 @@ import org.apache.tika.parser.ParseContext;
  */
 public class ConcurrentUtils {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentUtils.class);
+
+    private static final boolean VIRTUAL_THREADS_SUPPORTED =
+            newVirtualThreadFactory("tika-virtual-check-") != null;
+
     /**
      * Execute a runnable using an ExecutorService from the ParseContext if possible.
      * Otherwise fallback to individual threads.
@@ -52,4 +62,52 @@ public class ConcurrentUtils {
 
         return future;
     }
+
+    /**
+     * @return whether this JVM supports virtual threads (Java 21 or later)
+     * @since Apache Tika 4.0.0
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREADS_SUPPORTED;
+    }
+
+    /**
+     * Returns a thread factory for threads that mostly wait on I/O, e.g. on a
+     * forked process, a fetcher or an emitter.  If <code>virtual</code> is
+     * <code>true</code> and the JVM supports them, this creates virtual threads,
+     * which are cheap enough to have thousands of; otherwise, it creates daemon
+     * platform threads.
+     *
+     * @param namePrefix prefix for the thread names, followed by a counter
+     * @param virtual    whether to create virtual threads if possible
+     * @since Apache Tika 4.0.0
+     */
+    public static ThreadFactory newIOThreadFactory(String namePrefix, boolean virtual) {
+        if (virtual) {
+            ThreadFactory factory = newVirtualThreadFactory(namePrefix);
+            if (factory != null) {
+                return factory;
+            }
+            LOG.warn("Virtual threads require Java 21 or later; using platform threads");
+        }
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread thread = new Thread(r, namePrefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    //Tika still compiles against Java 17, so the Java 21 API has to be called reflectively
+    private static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
 }
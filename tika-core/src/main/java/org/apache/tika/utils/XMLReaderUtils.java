@@ -25,11 +25,11 @@ import java.io.StringReader;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -115,25 +115,20 @@ public class XMLReaderUtils implements Serializable {
         }
     };
     private static final String JAXP_ENTITY_EXPANSION_LIMIT_KEY = "jdk.xml.entityExpansionLimit";
-    //TODO: figure out if the rw lock is any better than a simple lock
-    //these lock the pool arrayblocking queues so that there isn't a race condition
-    //of trying to acquire a parser while the pool is being resized
-    private static final ReentrantReadWriteLock SAX_POOL_LOCK = new ReentrantReadWriteLock();
-    private static final ReentrantReadWriteLock DOM_POOL_LOCK = new ReentrantReadWriteLock();
     private static final AtomicInteger POOL_GENERATION = new AtomicInteger();
     private static final EntityResolver IGNORING_SAX_ENTITY_RESOLVER =
             (publicId, systemId) -> new InputSource(new StringReader(""));
     /**
      * Parser pool size
      */
-    private static int POOL_SIZE = DEFAULT_POOL_SIZE;
+    private static volatile int POOL_SIZE = DEFAULT_POOL_SIZE;
     private static int MAX_NUM_REUSES = DEFAULT_NUM_REUSES;
     private static long LAST_LOG = -1;
     private static volatile int MAX_ENTITY_EXPANSIONS = determineMaxEntityExpansions();
-    private static ArrayBlockingQueue<PoolSAXParser> SAX_PARSERS =
-            new ArrayBlockingQueue<>(POOL_SIZE);
-    private static ArrayBlockingQueue<PoolDOMBuilder> DOM_BUILDERS =
-            new ArrayBlockingQueue<>(POOL_SIZE);
+    //these are swapped out as a whole by setPoolSize; parsers from an earlier
+    //generation are dropped when they are released
+    private static volatile Pool<PoolSAXParser> SAX_PARSERS = new Pool<>(0, 0);
+    private static volatile Pool<PoolDOMBuilder> DOM_BUILDERS = new Pool<>(0, 0);
 
     static {
         try {
@@ -650,31 +645,22 @@ public class XMLReaderUtils implements Serializable {
     }
 
     /**
-     * Acquire a DOMBuilder from the pool.  Make sure to
-     * {@link #releaseDOMBuilder(PoolDOMBuilder)} in
+     * Acquire a DOMBuilder from the pool, or build a new one if the pool is empty.
+     * Make sure to {@link #releaseDOMBuilder(PoolDOMBuilder)} in
      * a <code>finally</code> block every time you call this.
      *
-     * @return a DocumentBuilder or null if no DOMBuilders are available
+     * @return a DocumentBuilder
      * @throws TikaException
      */
     private static PoolDOMBuilder acquireDOMBuilder() throws TikaException {
-
-        PoolDOMBuilder builder = null;
-        DOM_POOL_LOCK
-                .readLock()
-                .lock();
-        try {
-            builder = DOM_BUILDERS.poll();
-        } finally {
-            DOM_POOL_LOCK
-                    .readLock()
-                    .unlock();
-        }
-        if (builder == null) {
-            LOG.warn("Contention waiting for a DOMBuilder. " +
-                    "Consider increasing the XMLReaderUtils.POOL_SIZE");
-
-        }
+        Pool<PoolDOMBuilder> pool = DOM_BUILDERS;
+        PoolDOMBuilder builder = pool.poll();
+        if (builder != null) {
+            return builder;
+        }
+        long start = System.nanoTime();
+        builder = new PoolDOMBuilder(pool.getGeneration(), getDocumentBuilder());
+        pool.recordMiss(System.nanoTime() - start);
         return builder;
     }
 
@@ -687,7 +673,10 @@ public class XMLReaderUtils implements Serializable {
         if (builder == null) {
             return;
         }
-        if (builder.getPoolGeneration() != POOL_GENERATION.get()) {
+        Pool<PoolDOMBuilder> pool = DOM_BUILDERS;
+        //if this is a different generation, don't put it back
+        //in the pool
+        if (builder.getPoolGeneration() != pool.getGeneration()) {
             return;
         }
         try {
@@ -695,60 +684,41 @@ public class XMLReaderUtils implements Serializable {
         } catch (UnsupportedOperationException e) {
             //ignore
         }
-        DOM_POOL_LOCK
-                .readLock().lock();
         builder.incrementUses();
         if (builder.numUses >= MAX_NUM_REUSES) {
             try {
-                builder = new PoolDOMBuilder(builder.getPoolGeneration(), getDocumentBuilderFactory().newDocumentBuilder());
+                builder = new PoolDOMBuilder(builder.getPoolGeneration(),
+                        getDocumentBuilderFactory().newDocumentBuilder());
             } catch (ParserConfigurationException e) {
                 LOG.warn("Exception trying to configure a new dom builder?!", e);
+                pool.release(null);
                 return;
             }
         }
-        try {
-            //if there are extra parsers (e.g. after a reset of the pool to a smaller size),
-            // this parser will not be added and will then be gc'd
-            boolean success = DOM_BUILDERS.offer(builder);
-            if (!success) {
-                LOG.warn(
-                        "DocumentBuilder not taken back into pool.  If you haven't resized the " +
-                                "pool, this could be a sign that there are more calls to " +
-                                "'acquire' than to 'release'");
-            }
-        } finally {
-            DOM_POOL_LOCK
-                    .readLock().unlock();
-        }
+        pool.release(builder);
     }
 
     /**
-     * Acquire a SAXParser from the pool.  Make sure to
-     * {@link #releaseParser(PoolSAXParser)} in
+     * Acquire a SAXParser from the pool, or build a new one if the pool is empty.
+     * Make sure to {@link #releaseParser(PoolSAXParser)} in
      * a <code>finally</code> block every time you call this.
      *
-     * @return a SAXParser or null if a parser is not available
+     * @return a SAXParser
      * @throws TikaException
      */
     private static PoolSAXParser acquireSAXParser() throws TikaException {
-        PoolSAXParser parser = null;
-
-        //this locks around the pool so that there's
-        //no race condition with it being resized
-        SAX_POOL_LOCK
-                .readLock()
-                .lock();
-        try {
-            parser = SAX_PARSERS.poll();
-        } finally {
-            SAX_POOL_LOCK
-                    .readLock()
-                    .unlock();
+        Pool<PoolSAXParser> pool = SAX_PARSERS;
+        PoolSAXParser parser = pool.poll();
+        if (parser != null) {
+            return parser;
         }
-        if (parser == null) {
-            LOG.warn("Contention waiting for a SAXParser. " +
-                    "Consider increasing the XMLReaderUtils.POOL_SIZE");
+        long start = System.nanoTime();
+        try {
+            parser = buildPoolParser(pool.getGeneration(), getSAXParserFactory().newSAXParser());
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new TikaException("problem creating sax parser", e);
         }
+        pool.recordMiss(System.nanoTime() - start);
         return parser;
     }
 
@@ -766,36 +736,24 @@ public class XMLReaderUtils implements Serializable {
         } catch (UnsupportedOperationException e) {
             //TIKA-3009 -- we really shouldn't have to do this... :(
         }
+        Pool<PoolSAXParser> pool = SAX_PARSERS;
         //if this is a different generation, don't put it back
         //in the pool
-        if (parser.getGeneration() != POOL_GENERATION.get()) {
+        if (parser.getGeneration() != pool.getGeneration()) {
             return;
         }
-        SAX_POOL_LOCK
-                .readLock().lock();
-        try {
-            parser.incrementUses();
-            if (parser.numUses >= MAX_NUM_REUSES) {
-                try {
-                    parser = buildPoolParser(parser.getGeneration(), getSAXParserFactory().newSAXParser());
-                } catch (SAXException | ParserConfigurationException e) {
-                    LOG.warn("Couldn't build new SAXParser after hitting max reuses", e);
-                    return;
-                }
-            }
-            //if there are extra parsers (e.g. after a reset of the pool to a smaller size),
-            // this parser will not be added and will then be gc'd
-            boolean success = SAX_PARSERS.offer(parser);
-            if (!success) {
-                LOG.warn(
-                        "SAXParser not taken back into pool.  If you haven't resized the pool " +
-                                "this could be a sign that there are more calls to 'acquire' " +
-                                "than to 'release'");
+        parser.incrementUses();
+        if (parser.numUses >= MAX_NUM_REUSES) {
+            try {
+                parser = buildPoolParser(parser.getGeneration(),
+                        getSAXParserFactory().newSAXParser());
+            } catch (SAXException | ParserConfigurationException e) {
+                LOG.warn("Couldn't build new SAXParser after hitting max reuses", e);
+                pool.release(null);
+                return;
             }
-        } finally {
-            SAX_POOL_LOCK
-                    .readLock().unlock();
         }
+        pool.release(parser);
     }
 
     private static void trySetXercesSecurityManager(DocumentBuilderFactory factory) {
@@ -920,66 +878,67 @@ public class XMLReaderUtils implements Serializable {
         return POOL_SIZE;
     }
 
+    /**
+     * @return counters for the pool of SAXParsers since it was last (re)built
+     * by {@link #setPoolSize(int)}
+     * @since Apache Tika 4.0.0
+     */
+    public static PoolMetrics getSAXParserPoolMetrics() {
+        return SAX_PARSERS.getMetrics();
+    }
+
+    /**
+     * @return counters for the pool of DocumentBuilders since it was last (re)built
+     * by {@link #setPoolSize(int)}
+     * @since Apache Tika 4.0.0
+     */
+    public static PoolMetrics getDOMBuilderPoolMetrics() {
+        return DOM_BUILDERS.getMetrics();
+    }
+
     /**
      * Set the pool size for cached XML parsers.  This has a side
-     * effect of locking the pool, and rebuilding the pool from
+     * effect of rebuilding the pool from
      * scratch with the most recent settings, such as {@link #MAX_ENTITY_EXPANSIONS}
-     *
+     * <p>
+     * The pool size is the number of parsers and builders that are built up front
+     * and always kept.  If more threads than that parse at the same time, the extra
+     * parsers are built on demand and kept as well, so the pool grows to the
+     * highest number of concurrent parses that it has seen.
+     * <p>
      * As of Tika 3.2.1, if a value of <code>0</code> is passed in, no SAXParsers or DOMBuilders
      * will be pooled, and a new parser/builder will be built for each parse.
      *
      * @param poolSize
      * @since Apache Tika 1.19
      */
-    public static void setPoolSize(int poolSize) throws TikaException {
+    public static synchronized void setPoolSize(int poolSize) throws TikaException {
         if (poolSize < 0) {
             throw new IllegalArgumentException("PoolSize must be >= 0");
         }
-        //stop the world with a write lock.
-        //parsers that are currently in use will be offered later (once the lock is released),
-        //but not accepted and will be gc'd.  We have to do this locking and
-        //the read locking in case one thread resizes the pool when the
-        //parsers have already started.  We could have an NPE on SAX_PARSERS
-        //if we didn't lock.
-        SAX_POOL_LOCK
-                .writeLock().lock();
-        try {
-            //free up any resources before emptying SAX_PARSERS
-            for (PoolSAXParser parser : SAX_PARSERS) {
-                parser.reset();
-            }
-            SAX_PARSERS.clear();
-            if (poolSize > 0) {
-                SAX_PARSERS = new ArrayBlockingQueue<>(poolSize);
-                int generation = POOL_GENERATION.incrementAndGet();
-                for (int i = 0; i < poolSize; i++) {
-                    try {
-                        SAX_PARSERS.offer(buildPoolParser(generation, getSAXParserFactory().newSAXParser()));
-                    } catch (SAXException | ParserConfigurationException e) {
-                        throw new TikaException("problem creating sax parser", e);
-                    }
-                }
+        //parsers that are currently in use will be offered later,
+        //but they'll have the old generation and will be dropped
+        int generation = POOL_GENERATION.incrementAndGet();
+        Pool<PoolSAXParser> saxParsers = new Pool<>(generation, poolSize);
+        Pool<PoolDOMBuilder> domBuilders = new Pool<>(generation, poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            try {
+                saxParsers.add(buildPoolParser(generation, getSAXParserFactory().newSAXParser()));
+            } catch (SAXException | ParserConfigurationException e) {
+                throw new TikaException("problem creating sax parser", e);
             }
-        } finally {
-            SAX_POOL_LOCK
-                    .writeLock().unlock();
-        }
-
-        DOM_POOL_LOCK
-                .writeLock().lock();
-        try {
-            DOM_BUILDERS.clear();
-            if (poolSize > 0) {
-                DOM_BUILDERS = new ArrayBlockingQueue<>(poolSize);
-                for (int i = 0; i < poolSize; i++) {
-                    DOM_BUILDERS.offer(new PoolDOMBuilder(POOL_GENERATION.get(), getDocumentBuilder()));
-                }
-            }
-        } finally {
-            DOM_POOL_LOCK
-                    .writeLock().unlock();
+            domBuilders.add(new PoolDOMBuilder(generation, getDocumentBuilder()));
         }
+        Pool<PoolSAXParser> oldSaxParsers = SAX_PARSERS;
+        SAX_PARSERS = saxParsers;
+        DOM_BUILDERS = domBuilders;
         POOL_SIZE = poolSize;
+        //free up any resources held by the old parsers
+        PoolSAXParser parser = oldSaxParsers.poll();
+        while (parser != null) {
+            parser.reset();
+            parser = oldSaxParsers.poll();
+        }
     }
 
     public static int getMaxEntityExpansions() {
@@ -1091,6 +1050,195 @@ public class XMLReaderUtils implements Serializable {
         reader.setErrorHandler(IGNORING_ERROR_HANDLER);
     }
 
+    /**
+     * Counters for one of the parser pools.
+     *
+     * @since Apache Tika 4.0.0
+     */
+    public static class PoolMetrics {
+        private final long hits;
+        private final long misses;
+        private final long waitNanos;
+        private final int idle;
+        private final int inUse;
+        private final int peakInUse;
+
+        PoolMetrics(long hits, long misses, long waitNanos, int idle, int inUse, int peakInUse) {
+            this.hits = hits;
+            this.misses = misses;
+            this.waitNanos = waitNanos;
+            this.idle = idle;
+            this.inUse = inUse;
+            this.peakInUse = peakInUse;
+        }
+
+        /**
+         * @return number of times a pooled parser was reused
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return number of times the pool was empty and a new parser had to be built
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return total time callers spent waiting for new parsers to be built on misses
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * @return number of parsers currently in the pool
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return number of parsers currently in use
+         */
+        public int getInUse() {
+            return inUse;
+        }
+
+        /**
+         * @return highest number of parsers in use at the same time; the pool
+         * keeps up to this many parsers, or the pool size if that is larger
+         */
+        public int getPeakInUse() {
+            return peakInUse;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolMetrics{hits=" + hits + ", misses=" + misses + ", waitNanos=" +
+                    waitNanos + ", idle=" + idle + ", inUse=" + inUse + ", peakInUse=" +
+                    peakInUse + '}';
+        }
+    }
+
+    /**
+     * Pool of parsers that callers take from and return to without locking.
+     * <p>
+     * Idle parsers are spread over several stripes, and each thread starts
+     * with its own stripe, so that threads don't all contend on the head of a single
+     * queue.  A thread that finds its stripe empty takes from the others before
+     * reporting a miss; the caller then builds a new parser.  When parsers are returned,
+     * the pool keeps as many as were ever in use at the same time (but at least the
+     * configured pool size), so it grows to the actual parse concurrency.
+     */
+    private static final class Pool<T> {
+        private static final int NUM_STRIPES = stripes();
+
+        private final int generation;
+        private final int minSize;
+        private final ConcurrentLinkedQueue<T>[] stripes;
+        private final AtomicInteger idle = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger peakInUse = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        @SuppressWarnings("unchecked")
+        Pool(int generation, int minSize) {
+            this.generation = generation;
+            this.minSize = minSize;
+            this.stripes = new ConcurrentLinkedQueue[NUM_STRIPES];
+            for (int i = 0; i < NUM_STRIPES; i++) {
+                stripes[i] = new ConcurrentLinkedQueue<>();
+            }
+        }
+
+        private static int stripes() {
+            //power of two, so that a thread's stripe is a mask of its id
+            int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+            return Math.min(n, 64);
+        }
+
+        int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Adds a new parser to the pool, without counting it as in use.
+         */
+        void add(T item) {
+            stripe().offer(item);
+            idle.incrementAndGet();
+        }
+
+        /**
+         * @return an idle parser or <code>null</code> if there are none; the caller then
+         * builds a new one and reports it with {@link #recordMiss(long)}
+         */
+        T poll() {
+            int home = stripeIndex();
+            for (int i = 0; i < NUM_STRIPES; i++) {
+                T item = stripes[(home + i) & (NUM_STRIPES - 1)].poll();
+                if (item != null) {
+                    idle.decrementAndGet();
+                    hits.increment();
+                    borrowed();
+                    return item;
+                }
+            }
+            return null;
+        }
+
+        void recordMiss(long nanos) {
+            misses.increment();
+            waitNanos.add(nanos);
+            borrowed();
+        }
+
+        /**
+         * Returns a parser.
+         *
+         * @param item the parser, or <code>null</code> if the borrowed parser was discarded
+         */
+        void release(T item) {
+            inUse.decrementAndGet();
+            if (item == null) {
+                return;
+            }
+            int max = Math.max(minSize, peakInUse.get());
+            if (idle.incrementAndGet() > max) {
+                //more than we'll ever need at once; let this one be gc'd
+                idle.decrementAndGet();
+                return;
+            }
+            stripe().offer(item);
+        }
+
+        PoolMetrics getMetrics() {
+            return new PoolMetrics(hits.sum(), misses.sum(), waitNanos.sum(), idle.get(),
+                    inUse.get(), peakInUse.get());
+        }
+
+        private void borrowed() {
+            int current = inUse.incrementAndGet();
+            int peak = peakInUse.get();
+            while (current > peak && !peakInUse.compareAndSet(peak, current)) {
+                peak = peakInUse.get();
+            }
+        }
+
+        private ConcurrentLinkedQueue<T> stripe() {
+            return stripes[stripeIndex()];
+        }
+
+        private static int stripeIndex() {
+            return (int) Thread.currentThread().getId() & (NUM_STRIPES - 1);
+        }
+    }
+
     private static class PoolDOMBuilder {
         private final int poolGeneration;
         private final DocumentBuilder documentBuilder;
@@ -1116,7 +1264,7 @@ public class XMLReaderUtils implements Serializable {
         }
 
         void incrementUses() {
-            numUses = 0;
+            numUses++;
         }
     }
 
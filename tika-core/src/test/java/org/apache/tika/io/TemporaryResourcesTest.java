@@ -16,6 +16,7 @@
  */
 package org.apache.tika.io;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
@@ -37,4 +38,28 @@ public class TemporaryResourcesTest {
                 "Temp file should not exist after TempResources is closed");
     }
 
+    @Test
+    public void testTempFileUsage() throws Exception {
+        TempFileUsage usage = TempFileUsage.start();
+        try (TemporaryResources tempResources = new TemporaryResources()) {
+            Files.write(tempResources.createTempFile(), new byte[10]);
+            Files.write(tempResources.createTempFile(), new byte[20]);
+        }
+        try (TemporaryResources tempResources = new TemporaryResources()) {
+            Files.write(tempResources.createTempFile(), new byte[5]);
+            //files created on other threads aren't counted against this one
+            Thread t = new Thread(() -> {
+                try (TemporaryResources other = new TemporaryResources()) {
+                    Files.write(other.createTempFile(), new byte[100]);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            t.start();
+            t.join();
+        }
+        //the peak, not the total
+        assertEquals(30, usage.stop());
+    }
+
 }
@@ -65,6 +65,27 @@ public class TikaInputStreamTest {
 
     }
 
+    @Test
+    public void testMapped() throws IOException {
+        Path path = createTempFile("Hello, World!");
+        Metadata metadata = new Metadata();
+        try (TikaInputStream stream = TikaInputStream.getMapped(path, metadata)) {
+            assertTrue(stream.hasFile());
+            assertEquals(path, stream.getPath());
+            assertEquals(13, stream.getLength());
+            assertEquals("13", metadata.get(Metadata.CONTENT_LENGTH));
+
+            stream.mark(100);
+            byte[] bytes = new byte[5];
+            assertEquals(5, stream.read(bytes));
+            assertEquals("Hello", new String(bytes, UTF_8));
+            stream.reset();
+            assertEquals(7, stream.skip(7));
+            assertEquals("World!", readStream(stream));
+            assertEquals(-1, stream.read());
+        }
+    }
+
     @Test
     public void testStreamBased() throws IOException {
         InputStream input = IOUtils.toInputStream("Hello, World!", UTF_8);
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.writefilter.StandardWriteFilterFactory;
+
+public class CompactMetadataMapTest {
+
+    @Test
+    public void testSameAsHashMap() {
+        Map<String, String[]> expected = new HashMap<>();
+        CompactMetadataMap actual = new CompactMetadataMap();
+        Random random = new Random(12345);
+        for (int i = 0; i < 20000; i++) {
+            String key = "key-" + random.nextInt(100);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                String value = "v" + i;
+                String[] vals = expected.get(key);
+                if (vals == null) {
+                    expected.put(key, new String[]{value});
+                } else {
+                    String[] newVals = new String[vals.length + 1];
+                    System.arraycopy(vals, 0, newVals, 0, vals.length);
+                    newVals[vals.length] = value;
+                    expected.put(key, newVals);
+                }
+                actual.append(key, value);
+            } else if (op < 7) {
+                expected.put(key, new String[]{"set" + i});
+                actual.put(key, new String[]{"set" + i});
+            } else if (op < 9) {
+                String[] e = expected.remove(key);
+                String[] a = actual.remove(key);
+                assertArrayEquals(e, a);
+            } else {
+                assertArrayEquals(expected.get(key), actual.get(key));
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, String[]> e : actual.entrySet()) {
+            assertArrayEquals(expected.get(e.getKey()), e.getValue());
+        }
+    }
+
+    @Test
+    public void testIteratorRemoveAndOrder() {
+        CompactMetadataMap map = new CompactMetadataMap();
+        for (int i = 0; i < 10; i++) {
+            map.put("k" + i, new String[]{"v" + i});
+        }
+        Iterator<Map.Entry<String, String[]>> it = map.entrySet().iterator();
+        int i = 0;
+        while (it.hasNext()) {
+            Map.Entry<String, String[]> e = it.next();
+            //insertion order
+            assertEquals("k" + i, e.getKey());
+            if (i % 2 == 0) {
+                it.remove();
+            }
+            i++;
+        }
+        assertEquals(5, map.size());
+        assertNull(map.get("k0"));
+        assertArrayEquals(new String[]{"v1"}, map.get("k1"));
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testInternedNames() {
+        CompactMetadataMap map = new CompactMetadataMap();
+        map.put(new String(TikaCoreProperties.TITLE.getName()), new String[]{"title"});
+        assertSame(TikaCoreProperties.TITLE.getName(), map.keySet().iterator().next());
+    }
+
+    @Test
+    public void testMetadataApi() throws Exception {
+        Metadata compact = new Metadata(true);
+        Metadata standard = new Metadata(false);
+        for (Metadata m : new Metadata[]{compact, standard}) {
+            m.add("multi", "a");
+            m.add("multi", "b");
+            m.add("multi", (String) null);
+            m.set(TikaCoreProperties.TITLE, "title");
+            m.set(Metadata.CONTENT_LENGTH, "10");
+            m.add("removed", "x");
+            m.remove("removed");
+        }
+        assertEquals(standard, compact);
+        assertArrayEquals(new String[]{"a", "b"}, compact.getValues("multi"));
+        assertEquals(3, compact.size());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(compact);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray()))) {
+            Metadata deserialized = (Metadata) ois.readObject();
+            assertEquals(compact, deserialized);
+            deserialized.add("multi", "c");
+            assertArrayEquals(new String[]{"a", "b", "c"}, deserialized.getValues("multi"));
+        }
+    }
+
+    @Test
+    public void testWriteFilter() {
+        Metadata metadata = new Metadata(true);
+        metadata.add("existing", "value");
+        metadata.setMetadataWriteFilter(new StandardWriteFilterFactory().newInstance());
+        metadata.add("another", "value");
+        assertEquals("value", metadata.get("existing"));
+        assertEquals("value", metadata.get("another"));
+    }
+}
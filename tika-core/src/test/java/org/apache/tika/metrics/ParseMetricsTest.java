@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.PipesResult;
+import org.apache.tika.pipes.ResourceUsage;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+
+public class ParseMetricsTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        ParseMetrics metrics = new ParseMetrics();
+        Metadata metadata = new Metadata();
+        metadata.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.DefaultParser");
+        metadata.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.mock.MockParser");
+        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        metrics.recordParse(metadata, TimeUnit.MILLISECONDS.toNanos(20), 100, 42);
+        metrics.recordParse(metadata, TimeUnit.SECONDS.toNanos(2), 100, -1);
+        metrics.recordParse(new Metadata(), TimeUnit.SECONDS.toNanos(1000), -1, -1);
+        metrics.addTimeouts(1);
+
+        String parser = "parser=\"org.apache.tika.parser.mock.MockParser\"";
+        String out = write(metrics);
+        assertContains("# TYPE tika_parser_duration_seconds histogram", out);
+        assertContains("tika_parser_duration_seconds_bucket{" + parser + ",le=\"0.01\"} 0\n", out);
+        assertContains("tika_parser_duration_seconds_bucket{" + parser + ",le=\"0.025\"} 1\n", out);
+        assertContains("tika_parser_duration_seconds_bucket{" + parser + ",le=\"2.5\"} 2\n", out);
+        assertContains("tika_parser_duration_seconds_bucket{" + parser + ",le=\"+Inf\"} 2\n", out);
+        assertContains("tika_parser_duration_seconds_sum{" + parser + "} 2.02\n", out);
+        assertContains("tika_parser_duration_seconds_count{" + parser + "} 2\n", out);
+        assertContains("tika_parser_duration_seconds_bucket{parser=\"unknown\",le=\"300.0\"} 0\n", out);
+        assertContains("tika_parser_duration_seconds_bucket{parser=\"unknown\",le=\"+Inf\"} 1\n", out);
+        assertContains("tika_mime_type_duration_seconds_count{mime_type=\"text/plain\"} 2\n", out);
+        assertContains("tika_parser_bytes_in_total{" + parser + "} 200\n", out);
+        assertContains("tika_parser_characters_out_total{" + parser + "} 42\n", out);
+        assertContains("tika_timeouts_total 1\n", out);
+        assertContains("tika_ooms_total 0\n", out);
+        assertContains("tika_xml_pool_in_use{pool=\"sax\"} ", out);
+    }
+
+    @Test
+    public void testMaxLabelValues() throws Exception {
+        ParseMetrics metrics = new ParseMetrics();
+        for (int i = 0; i < ParseMetrics.MAX_LABEL_VALUES + 10; i++) {
+            metrics.recordParse("parser" + i, "mime", 1, -1, -1);
+        }
+        String out = write(metrics);
+        assertContains("tika_parser_duration_seconds_count{parser=\"other\"} 10\n", out);
+        assertEquals("a\\\"b\\\\c\\n", ParseMetrics.escape("a\"b\\c\n"));
+    }
+
+    @Test
+    public void testPipesReporter() throws Exception {
+        ParseMetrics metrics = new ParseMetrics();
+        MetricsPipesReporter reporter = new MetricsPipesReporter(metrics);
+        reporter.report(null, PipesResult.OOM, 10);
+        reporter.report(null, PipesResult.TIMEOUT, 10);
+        reporter.report(null, PipesResult.EMIT_SUCCESS, 10);
+
+        Metadata metadata = new Metadata();
+        metadata.add(TikaCoreProperties.TIKA_PARSED_BY, "org.apache.tika.parser.mock.MockParser");
+        metadata.set(Metadata.CONTENT_LENGTH, "123");
+        metadata.set(TikaCoreProperties.TIKA_CONTENT, "hello");
+        Metadata embedded = new Metadata();
+        embedded.set(TikaCoreProperties.TIKA_CONTENT, "world!");
+        reporter.report(null, new PipesResult(new EmitData(new EmitKey("e", "k"), List.of(metadata, embedded))), 10);
+
+        String out = write(metrics);
+        assertContains("tika_ooms_total 1\n", out);
+        assertContains("tika_timeouts_total 1\n", out);
+        assertContains("tika_restarts_total 2\n", out);
+        assertContains("tika_parser_duration_seconds_count{parser=\"unknown\"} 1\n", out);
+        String parser = "parser=\"org.apache.tika.parser.mock.MockParser\"";
+        assertContains("tika_parser_duration_seconds_count{" + parser + "} 1\n", out);
+        assertContains("tika_parser_bytes_in_total{" + parser + "} 123\n", out);
+        assertContains("tika_parser_characters_out_total{" + parser + "} 11\n", out);
+    }
+
+    @Test
+    public void testPipesReporterResourceUsage() throws Exception {
+        ParseMetrics metrics = new ParseMetrics();
+        MetricsPipesReporter reporter = new MetricsPipesReporter(metrics);
+        //emitted by the server, so no metadata comes back, and the elapsed time includes the emit
+        reporter.report(null, PipesResult.EMIT_SUCCESS.withResourceUsage(new ResourceUsage(1, 1, 0, 0,
+                "org.apache.tika.parser.mock.MockParser", "text/plain", 123, TimeUnit.MILLISECONDS.toNanos(20))), 60_000);
+        //a cache hit isn't a parse
+        reporter.report(null, PipesResult.EMIT_SUCCESS.withResourceUsage(new ResourceUsage(1, 1, 0, 0)), 10);
+
+        String out = write(metrics);
+        String parser = "parser=\"org.apache.tika.parser.mock.MockParser\"";
+        assertContains("tika_parser_duration_seconds_count{" + parser + "} 1\n", out);
+        assertContains("tika_parser_duration_seconds_sum{" + parser + "} 0.02\n", out);
+        assertContains("tika_parser_bytes_in_total{" + parser + "} 123\n", out);
+        assertContains("tika_mime_type_duration_seconds_count{mime_type=\"text/plain\"} 1\n", out);
+        assertTrue(!out.contains("parser=\"unknown\""), out);
+    }
+
+    private static String write(ParseMetrics metrics) throws Exception {
+        StringWriter writer = new StringWriter();
+        metrics.write(writer);
+        return writer.toString();
+    }
+
+    private static void assertContains(String needle, String haystack) {
+        assertTrue(haystack.contains(needle), needle + " not in:\n" + haystack);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.mime;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class MagicMatcherTest {
+
+    private final MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
+
+    @Test
+    public void testCandidatesIncludeAllMatches() throws Exception {
+        Path dir = Paths.get(MagicMatcherTest.class.getResource("/org/apache/tika/mime").toURI());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    byte[] header;
+                    try (InputStream is = Files.newInputStream(file)) {
+                        header = IOUtils.toByteArray(is, Math.min(Files.size(file),
+                                mimeTypes.getMinLength()));
+                    }
+                    assertCandidates(header, file.toString());
+                }
+            }
+        }
+        for (String s : new String[]{"%PDF-1.4", "PK\u0003\u0004", "<?xml version=\"1.0\"?><a/>",
+                "<!DOCTYPE html><html></html>", "<HTML><BODY>", "GIF89a", "{\\rtf1", "#!/bin/sh",
+                "\u0000", "B", "MZ"}) {
+            assertCandidates(s.getBytes(US_ASCII), s);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[1 + random.nextInt(i < 100 ? 16 : 4096)];
+            random.nextBytes(data);
+            assertCandidates(data, "random " + i);
+        }
+    }
+
+    @Test
+    public void testCandidatesArePruned() {
+        MagicMatcher matcher = mimeTypes.getMagicMatcher();
+        BitSet candidates = matcher.candidates("%PDF-1.4".getBytes(US_ASCII));
+        assertTrue(candidates.cardinality() < matcher.size() / 2,
+                candidates.cardinality() + " of " + matcher.size());
+    }
+
+    private void assertCandidates(byte[] data, String name) {
+        MagicMatcher matcher = mimeTypes.getMagicMatcher();
+        BitSet candidates = matcher.candidates(data);
+        for (int i = 0; i < matcher.size(); i++) {
+            if (matcher.get(i).eval(data)) {
+                assertTrue(candidates.get(i), matcher.get(i) + " matches " + name +
+                        " but was not a candidate");
+            }
+        }
+    }
+}
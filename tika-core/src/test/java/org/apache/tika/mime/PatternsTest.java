@@ -17,6 +17,7 @@
 package org.apache.tika.mime;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -97,4 +98,30 @@ public class PatternsTest {
         assertTrue(extensions.contains(".jpeg"));
     }
 
+    @Test
+    public void testGlobs() throws MimeTypeException {
+        MimeType html = types.forName("text/html");
+        MimeType xml = types.forName("application/xml");
+        MimeType rdf = types.forName("application/rdf+xml");
+        patterns.add("a_*.txt", html);
+        patterns.add("a_*_long.txt", xml);
+        patterns.add("ab?d*", text);
+        patterns.add("^rdf$", true, rdf);
+
+        // longest glob first
+        assertEquals(xml, patterns.matches("a_foo_long.txt"));
+        assertEquals(html, patterns.matches("a_foo.txt"));
+        // globs without a literal suffix
+        assertEquals(text, patterns.matches("abcdef"));
+        assertEquals(rdf, patterns.matches("rdf"));
+        assertNull(patterns.matches("b_foo.txt"));
+        assertNull(patterns.matches("a_foo.txt.bak"));
+        assertNull(patterns.matches(".txt"));
+
+        // globs added after matching has started
+        MimeType ogg = types.forName("audio/ogg");
+        patterns.add("b_*.txt", ogg);
+        assertEquals(ogg, patterns.matches("b_foo.txt"));
+    }
+
 }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.extractor.DocumentSelector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.extractor.EmbeddedDocumentBytesConfig;
+import org.apache.tika.sax.BasicContentHandlerFactory;
+
+public class ParseResultCacheTest {
+
+    @Test
+    public void testKeys(@TempDir Path dir) throws Exception {
+        ParseResultCache cache = newCache(dir, "<properties/>", 100000);
+        assertNull(ParseResultCache.getDigestKey(new Metadata()));
+        String key = ParseResultCache.getDigestKey(digested("abc"));
+        cache.put(key, HandlerConfig.DEFAULT_HANDLER_CONFIG, metadataList("content"));
+
+        List<Metadata> cached = cache.get(key, HandlerConfig.DEFAULT_HANDLER_CONFIG);
+        assertEquals("content", cached.get(0).get(TikaCoreProperties.TIKA_CONTENT));
+        assertNull(cache.get(ParseResultCache.getDigestKey(digested("abd")),
+                HandlerConfig.DEFAULT_HANDLER_CONFIG));
+        //other handler settings miss
+        assertNull(cache.get(key, new HandlerConfig(BasicContentHandlerFactory.HANDLER_TYPE.XML,
+                HandlerConfig.PARSE_MODE.RMETA, -1, -1, true)));
+        //so does another config
+        assertNull(newCache(dir, "<properties></properties>", 100000)
+                .get(key, HandlerConfig.DEFAULT_HANDLER_CONFIG));
+        assertNotNull(newCache(dir, "<properties/>", 100000)
+                .get(key, HandlerConfig.DEFAULT_HANDLER_CONFIG));
+    }
+
+    @Test
+    public void testEviction(@TempDir Path dir) throws Exception {
+        String content = "x".repeat(1000);
+        ParseResultCache cache = newCache(dir, "<properties/>", Long.MAX_VALUE);
+        put(cache, "0", content);
+        long entryBytes = cache.evict(Long.MAX_VALUE);
+        //room for four entries
+        cache.setMaxBytes(4 * entryBytes + entryBytes / 2);
+        for (int i = 1; i < 4; i++) {
+            Thread.sleep(20);
+            put(cache, Integer.toString(i), content);
+        }
+        Thread.sleep(20);
+        //using 0 makes it the most recently used
+        assertNotNull(get(cache, "0"));
+        Thread.sleep(20);
+        put(cache, "4", content);
+
+        assertNull(get(cache, "1"));
+        assertNotNull(get(cache, "0"));
+        assertNotNull(get(cache, "2"));
+        assertNotNull(get(cache, "4"));
+        assertTrue(cache.evict(Long.MAX_VALUE) <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void testParseOutput(@TempDir Path dir) throws Exception {
+        ParseResultCache cache = newCache(dir, "<properties/>", 100000);
+        Metadata preParse = digested("abc");
+        preParse.set(TikaCoreProperties.RESOURCE_NAME_KEY, "first.txt");
+        preParse.set(Metadata.CONTENT_TYPE, "text/plain");
+        Metadata parsed = digested("abc");
+        parsed.set(TikaCoreProperties.RESOURCE_NAME_KEY, "first.txt");
+        parsed.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        parsed.set(TikaCoreProperties.TIKA_CONTENT, "content");
+        String key = ParseResultCache.getDigestKey(parsed);
+        cache.put(key, HandlerConfig.DEFAULT_HANDLER_CONFIG, List.of(parsed), preParse);
+
+        //only what the parse added or changed
+        Metadata cached = cache.get(key, HandlerConfig.DEFAULT_HANDLER_CONFIG).get(0);
+        assertEquals(2, cached.size());
+        assertEquals("content", cached.get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals("text/plain; charset=UTF-8", cached.get(Metadata.CONTENT_TYPE));
+        assertNull(cached.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+    }
+
+    @Test
+    public void testIsCacheable() throws Exception {
+        ParseContext parseContext = new ParseContext();
+        assertTrue(ParseResultCache.isCacheable(parseContext));
+        parseContext.set(HandlerConfig.class, HandlerConfig.DEFAULT_HANDLER_CONFIG);
+        parseContext.set(EmbeddedDocumentBytesConfig.class, EmbeddedDocumentBytesConfig.SKIP);
+        assertTrue(ParseResultCache.isCacheable(parseContext));
+
+        ParseContext perRequest = new ParseContext();
+        perRequest.set(DocumentSelector.class, metadata -> false);
+        assertFalse(ParseResultCache.isCacheable(perRequest));
+
+        ParseContext extracting = new ParseContext();
+        extracting.set(EmbeddedDocumentBytesConfig.class, new EmbeddedDocumentBytesConfig(true));
+        assertFalse(ParseResultCache.isCacheable(extracting));
+    }
+
+    private static void put(ParseResultCache cache, String digest, String content) {
+        cache.put(ParseResultCache.getDigestKey(digested(digest)),
+                HandlerConfig.DEFAULT_HANDLER_CONFIG, metadataList(content));
+    }
+
+    private static List<Metadata> get(ParseResultCache cache, String digest) {
+        return cache.get(ParseResultCache.getDigestKey(digested(digest)),
+                HandlerConfig.DEFAULT_HANDLER_CONFIG);
+    }
+
+    private static ParseResultCache newCache(Path dir, String config, long maxBytes) {
+        ParseResultCache cache = new ParseResultCache();
+        cache.setDirectory(dir);
+        cache.setMaxBytes(maxBytes);
+        cache.setConfigFingerprint(config.getBytes(StandardCharsets.UTF_8));
+        return cache;
+    }
+
+    private static Metadata digested(String digest) {
+        Metadata metadata = new Metadata();
+        metadata.set("X-TIKA:digest:SHA-256", digest);
+        return metadata;
+    }
+
+    private static List<Metadata> metadataList(String content) {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.TIKA_CONTENT, content);
+        return Collections.singletonList(metadata);
+    }
+}
@@ -17,14 +17,19 @@
 package org.apache.tika.pipes;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
 import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.xml.sax.SAXException;
 
 import org.apache.tika.exception.TikaConfigException;
@@ -39,8 +44,11 @@ import org.apache.tika.metadata.listfilter.MetadataListFilter;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher;
+import org.apache.tika.pipes.fetcher.shm.SharedMemoryRegion;
 
 public class PipesClientTest {
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>";
     String fetcherName = "fs";
     String testPdfFile = "testOverlappingText.pdf";
 
@@ -94,4 +102,215 @@ public class PipesClientTest {
         Metadata metadata = pipesResult.getEmitData().getMetadataList().get(0);
         Assertions.assertEquals(4, Integer.parseInt(metadata.get("X-TIKA:attachment_count")));
     }
+
+    @Test
+    public void testResourceUsage() throws IOException, InterruptedException {
+        PipesResult pipesResult = pipesClient.process(
+                new FetchEmitTuple("mock/embedded.xml", new FetchKey(fetcherName, "mock/embedded.xml"),
+                        new EmitKey(), new Metadata(), new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+        ResourceUsage usage = pipesResult.getResourceUsage();
+        Assertions.assertNotNull(usage);
+        Assertions.assertEquals(4, usage.getEmbeddedCount());
+        Assertions.assertTrue(usage.getCpuTimeNanos() > 0);
+        Assertions.assertTrue(usage.getAllocatedBytes() > 0);
+        Assertions.assertTrue(usage.getTempFileBytes() >= 0);
+        Assertions.assertEquals("org.apache.tika.parser.mock.MockParser", usage.getParser());
+        Assertions.assertEquals("application/mock+xml", usage.getMimeType());
+        Assertions.assertTrue(usage.getBytesIn() > 0);
+        Assertions.assertTrue(usage.getParseNanos() > 0);
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        Path tikaConfigPath =
+                Paths.get("src", "test", "resources", "org", "apache", "tika", "pipes",
+                        "tika-sample-config.xml");
+        PipesConfig pipesConfig = PipesConfig.load(tikaConfigPath);
+        pipesConfig.setMaxInFlightPerClient(3);
+        List<String> files = List.of("testOverlappingText.pdf", "example.xml",
+                "basic_embedded.xml", "mock_times.xml", "testOverlappingText.pdf");
+        List<FetchEmitTuple> tuples = new ArrayList<>();
+        for (String f : files) {
+            tuples.add(new FetchEmitTuple(f, new FetchKey(fetcherName, f), new EmitKey(),
+                    new Metadata(), new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+        }
+        try (PipesClient pipelinedClient = new PipesClient(pipesConfig)) {
+            List<FetchEmitTuple> reported = new ArrayList<>();
+            List<Long> elapsed = new ArrayList<>();
+            long start = System.currentTimeMillis();
+            List<PipesResult> results = pipelinedClient.process(tuples, (t, result, millis) -> {
+                reported.add(t);
+                elapsed.add(millis);
+            });
+            long total = System.currentTimeMillis() - start;
+            Assertions.assertEquals(files.size(), results.size());
+            Assertions.assertEquals(tuples, reported);
+            //each document gets its own time, not the time for the whole batch
+            long sum = 0;
+            for (long millis : elapsed) {
+                Assertions.assertTrue(millis >= 0);
+                sum += millis;
+            }
+            Assertions.assertTrue(sum <= total, sum + " > " + total);
+            for (int i = 0; i < files.size(); i++) {
+                Metadata metadata = results.get(i).getEmitData().getMetadataList().get(0);
+                Assertions.assertEquals(files.get(i),
+                        metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+            }
+        }
+    }
+
+    @Test
+    public void testWarmStandby() throws Exception {
+        Path tikaConfigPath =
+                Paths.get("src", "test", "resources", "org", "apache", "tika", "pipes",
+                        "tika-sample-config.xml");
+        PipesConfig pipesConfig = PipesConfig.load(tikaConfigPath);
+        pipesConfig.setWarmStandby(true);
+        //restart after every file so that each one after the first goes to a standby
+        pipesConfig.setMaxFilesProcessedPerProcess(1);
+        List<String> files = List.of("testOverlappingText.pdf", "example.xml",
+                "basic_embedded.xml", "mock_times.xml");
+        try (PipesClient standbyClient = new PipesClient(pipesConfig)) {
+            for (String f : files) {
+                PipesResult result = standbyClient.process(new FetchEmitTuple(f,
+                        new FetchKey(fetcherName, f), new EmitKey(), new Metadata(),
+                        new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+                Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, result.getStatus());
+                Metadata metadata = result.getEmitData().getMetadataList().get(0);
+                Assertions.assertEquals(f, metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+            }
+        }
+    }
+
+    @Test
+    public void testWarmStandbyKeepAlive() throws Exception {
+        Path tikaConfigPath =
+                Paths.get("src", "test", "resources", "org", "apache", "tika", "pipes",
+                        "tika-sample-config.xml");
+        PipesConfig pipesConfig = PipesConfig.load(tikaConfigPath);
+        pipesConfig.setWarmStandby(true);
+        pipesConfig.setMaxFilesProcessedPerProcess(1);
+        pipesConfig.setShutdownClientAfterMillis(2000);
+        String f = "example.xml";
+        try (PipesClient standbyClient = new PipesClient(pipesConfig)) {
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, standbyClient.process(
+                    new FetchEmitTuple(f, new FetchKey(fetcherName, f), new EmitKey(),
+                            new Metadata(), new ParseContext(),
+                            FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP)).getStatus());
+            //without the pings, the idle spare would have shut itself down by now
+            Thread.sleep(6000);
+            Assertions.assertTrue(standbyClient.hasLiveStandby());
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, standbyClient.process(
+                    new FetchEmitTuple(f, new FetchKey(fetcherName, f), new EmitKey(),
+                            new Metadata(), new ParseContext(),
+                            FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP)).getStatus());
+        }
+    }
+
+    @Test
+    public void testSharedMemory() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get("src", "test", "resources",
+                "test-documents", "example.xml"));
+        Metadata userMetadata = new Metadata();
+        userMetadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, "example.xml");
+        PipesConfig pipesConfig = PipesConfig.load(Paths.get("src", "test", "resources", "org",
+                "apache", "tika", "pipes", "tika-shared-memory-config.xml"));
+        Path regionPath;
+        try (PipesClient sharedMemoryClient = new PipesClient(pipesConfig);
+                SharedMemoryRegion region = SharedMemoryRegion.create(bytes)) {
+            regionPath = region.getPath();
+            if (Files.getFileStore(regionPath).supportsFileAttributeView("posix")) {
+                Assertions.assertEquals("rw-------", PosixFilePermissions.toString(
+                        Files.getPosixFilePermissions(regionPath)));
+            }
+            FetchEmitTuple t = new FetchEmitTuple("example.xml", region.getFetchKey(),
+                    new EmitKey(), userMetadata, new ParseContext(),
+                    FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP);
+            //the shared memory fetcher is off unless it is configured
+            Assertions.assertEquals(PipesResult.STATUS.NO_FETCHER_FOUND,
+                    pipesClient.process(t).getStatus());
+
+            PipesResult pipesResult = sharedMemoryClient.process(t);
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, pipesResult.getStatus());
+            Metadata metadata = pipesResult.getEmitData().getMetadataList().get(0);
+            Assertions.assertEquals("example.xml",
+                    metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+            Assertions.assertEquals(Integer.toString(bytes.length),
+                    metadata.get(Metadata.CONTENT_LENGTH));
+
+            //the shared memory fetcher only reads regions
+            pipesResult = sharedMemoryClient.process(new FetchEmitTuple("example.xml",
+                    new FetchKey(SharedMemoryFetcher.NAME, Paths.get("src", "test", "resources",
+                            "test-documents", "example.xml").toAbsolutePath().toString()),
+                    new EmitKey(), new Metadata(), new ParseContext(),
+                    FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+            Assertions.assertEquals(PipesResult.STATUS.FETCH_EXCEPTION, pipesResult.getStatus());
+        }
+        Assertions.assertFalse(Files.exists(regionPath));
+    }
+
+    @Test
+    public void testInProcess() throws Exception {
+        Path tikaConfigPath =
+                Paths.get("src", "test", "resources", "org", "apache", "tika", "pipes",
+                        "tika-sample-config.xml");
+        PipesConfig pipesConfig = PipesConfig.load(tikaConfigPath);
+        pipesConfig.setInProcess(true);
+        pipesConfig.setMaxFilesProcessedPerProcess(2);
+        List<String> files = List.of("testOverlappingText.pdf", "example.xml",
+                "basic_embedded.xml", "mock_times.xml");
+        try (PipesClient inProcessClient = new PipesClient(pipesConfig)) {
+            //goes through a restart after every two files
+            for (String f : files) {
+                PipesResult result = inProcessClient.process(new FetchEmitTuple(f,
+                        new FetchKey(fetcherName, f), new EmitKey(), new Metadata(),
+                        new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+                Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS, result.getStatus());
+                Assertions.assertEquals(f, result.getEmitData().getMetadataList().get(0)
+                        .get(TikaCoreProperties.RESOURCE_NAME_KEY));
+            }
+        }
+    }
+
+    @Test
+    public void testInProcessLimits(@TempDir Path tmp) throws Exception {
+        Path tikaConfigPath = tmp.resolve("tika-config.xml");
+        Files.writeString(tikaConfigPath, "<properties><fetchers>" +
+                "<fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "<name>fs</name><basePath>" + tmp.toAbsolutePath() + "</basePath>" +
+                "</fetcher></fetchers></properties>", StandardCharsets.UTF_8);
+        Files.writeString(tmp.resolve("hang.xml"),
+                XML_DECLARATION + "<mock><hang millis=\"60000\" heavy=\"false\" " +
+                        "interruptible=\"true\"/></mock>", StandardCharsets.UTF_8);
+        Files.writeString(tmp.resolve("allocate.xml"),
+                XML_DECLARATION + "<mock><write element=\"p\" times=\"20\">" +
+                        "abcdefghij".repeat(200_000) +
+                        "</write><hang millis=\"60000\" heavy=\"false\" " +
+                        "interruptible=\"true\"/></mock>", StandardCharsets.UTF_8);
+        Files.writeString(tmp.resolve("ok.xml"),
+                XML_DECLARATION + "<mock><write element=\"p\">ok</write></mock>",
+                StandardCharsets.UTF_8);
+
+        PipesConfig pipesConfig = PipesConfig.load(tikaConfigPath);
+        pipesConfig.setInProcess(true);
+        pipesConfig.setTimeoutMillis(3000);
+        pipesConfig.setMaxForEmitBatchBytes(-1);
+        pipesConfig.setInProcessAllocationBudgetBytes(50_000_000);
+        try (PipesClient inProcessClient = new PipesClient(pipesConfig)) {
+            Assertions.assertEquals(PipesResult.STATUS.TIMEOUT,
+                    inProcess(inProcessClient, "hang.xml").getStatus());
+            Assertions.assertEquals(PipesResult.STATUS.OOM,
+                    inProcess(inProcessClient, "allocate.xml").getStatus());
+            //the client recovers with a new server
+            Assertions.assertEquals(PipesResult.STATUS.PARSE_SUCCESS,
+                    inProcess(inProcessClient, "ok.xml").getStatus());
+        }
+    }
+
+    private PipesResult inProcess(PipesClient client, String file) throws Exception {
+        return client.process(new FetchEmitTuple(file, new FetchKey(fetcherName, file),
+                new EmitKey(), new Metadata(), new ParseContext(),
+                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP));
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+
+public class PipesMessageCodecTest {
+
+    @Test
+    public void testFetchEmitTupleRoundTrip() throws Exception {
+        Metadata userMetadata = new Metadata();
+        userMetadata.add("k1", "v1");
+        userMetadata.add("k1", "v2");
+        userMetadata.set("k2", "éè 😀");
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(HandlerConfig.class, HandlerConfig.DEFAULT_HANDLER_CONFIG);
+        FetchEmitTuple t = new FetchEmitTuple("id",
+                new FetchKey("fs", "path/to/file.pdf", 10, 100),
+                new EmitKey("emitter", "emit-key"), userMetadata, parseContext,
+                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP);
+
+        for (byte version = PipesMessageCodec.JAVA_SERIALIZATION;
+                version <= PipesMessageCodec.MAX_SUPPORTED_VERSION; version++) {
+            PipesMessageCodec codec = new PipesMessageCodec(version);
+            FetchEmitTuple deserialized = codec.deserializeFetchEmitTuple(codec.serialize(t));
+            assertEquals(t, deserialized);
+            assertEquals(HandlerConfig.DEFAULT_HANDLER_CONFIG,
+                    deserialized.getParseContext().get(HandlerConfig.class));
+        }
+    }
+
+    @Test
+    public void testSchedulingHintsAreNotSent() throws Exception {
+        FetchEmitTuple t = new FetchEmitTuple("id", new FetchKey("fs", "file"),
+                new EmitKey("emitter", "emit-key"));
+        t.setPriority(10);
+        t.setSize(1000);
+        for (byte version = PipesMessageCodec.JAVA_SERIALIZATION;
+                version <= PipesMessageCodec.MAX_SUPPORTED_VERSION; version++) {
+            PipesMessageCodec codec = new PipesMessageCodec(version);
+            FetchEmitTuple deserialized = codec.deserializeFetchEmitTuple(codec.serialize(t));
+            assertEquals(FetchEmitTuple.DEFAULT_PRIORITY, deserialized.getPriority());
+            assertEquals(FetchEmitTuple.UNKNOWN_SIZE, deserialized.getSize());
+        }
+    }
+
+    @Test
+    public void testNullKeys() throws Exception {
+        PipesMessageCodec codec = new PipesMessageCodec(PipesMessageCodec.BINARY_V1);
+        FetchEmitTuple t = new FetchEmitTuple("id", new FetchKey("fs", "file"),
+                EmitKey.NO_EMIT);
+        FetchEmitTuple deserialized = codec.deserializeFetchEmitTuple(codec.serialize(t));
+        assertNull(deserialized.getEmitKey().getEmitterName());
+        assertNull(deserialized.getEmitKey().getEmitKey());
+        assertTrue(deserialized.getParseContext().isEmpty());
+    }
+
+    @Test
+    public void testEmitDataRoundTrip() throws Exception {
+        List<Metadata> metadataList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.TIKA_CONTENT, "content " + i);
+            m.set(TikaCoreProperties.EMBEDDED_DEPTH, Integer.toString(i));
+            m.add("multi", "a");
+            m.add("multi", "b");
+            metadataList.add(m);
+        }
+        EmitData emitData = new EmitData(new EmitKey("emitter", "key"), metadataList, "stack");
+
+        PipesMessageCodec binary = new PipesMessageCodec(PipesMessageCodec.BINARY_V1);
+        byte[] bytes = binary.serialize(emitData);
+        EmitData deserialized = binary.deserializeEmitData(bytes);
+        assertEquals(emitData.getEmitKey(), deserialized.getEmitKey());
+        assertEquals("stack", deserialized.getContainerStackTrace());
+        assertEquals(metadataList, deserialized.getMetadataList());
+
+        PipesMessageCodec java = new PipesMessageCodec(PipesMessageCodec.JAVA_SERIALIZATION);
+        assertTrue(bytes.length < java.serialize(emitData).length);
+    }
+
+    @Test
+    public void testResourceUsageRoundTrip() throws Exception {
+        PipesMessageCodec codec = new PipesMessageCodec(PipesMessageCodec.JAVA_SERIALIZATION);
+        ResourceUsage usage = codec.deserializeResourceUsage(codec.serialize(
+                new ResourceUsage(1, 2, 3, 4, "org.apache.tika.parser.mock.MockParser",
+                        "text/plain", 5, 6)));
+        assertEquals(1, usage.getCpuTimeNanos());
+        assertEquals(2, usage.getAllocatedBytes());
+        assertEquals(3, usage.getTempFileBytes());
+        assertEquals(4, usage.getEmbeddedCount());
+        assertEquals("org.apache.tika.parser.mock.MockParser", usage.getParser());
+        assertEquals("text/plain", usage.getMimeType());
+        assertEquals(5, usage.getBytesIn());
+        assertEquals(6, usage.getParseNanos());
+
+        usage = codec.deserializeResourceUsage(codec.serialize(new ResourceUsage(1, 2, 3, 4)));
+        assertNull(usage.getParser());
+        assertNull(usage.getMimeType());
+        assertEquals(-1, usage.getBytesIn());
+        assertEquals(-1, usage.getParseNanos());
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals(PipesMessageCodec.JAVA_SERIALIZATION, PipesMessageCodec.negotiate(-1));
+        assertEquals(PipesMessageCodec.JAVA_SERIALIZATION, PipesMessageCodec.negotiate(0));
+        assertEquals(PipesMessageCodec.BINARY_V1, PipesMessageCodec.negotiate(1));
+        assertEquals(PipesMessageCodec.MAX_SUPPORTED_VERSION,
+                PipesMessageCodec.negotiate(Byte.MAX_VALUE));
+    }
+}
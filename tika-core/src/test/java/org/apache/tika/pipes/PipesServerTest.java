@@ -17,11 +17,17 @@
 package org.apache.tika.pipes;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -31,14 +37,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import org.apache.tika.TikaTest;
+import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.BasicEmbeddedDocumentBytesHandler;
+import org.apache.tika.extractor.DocumentSelector;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.async.MockEmitter;
+import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.extractor.EmbeddedDocumentBytesConfig;
 import org.apache.tika.pipes.fetcher.FetchKey;
 import org.apache.tika.pipes.fetcher.Fetcher;
 import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.sax.BasicContentHandlerFactory;
 
 public class PipesServerTest extends TikaTest {
 
@@ -189,4 +201,159 @@ public class PipesServerTest extends TikaTest {
         assertEquals("fdaa937c96d1ed010b8d307ccddf9d11c3b48db732a8771eaafe99d59e076d0a",
                 parseData.metadataList.get(0).get("X-TIKA:digest:SHA-256"));
     }
+
+    @Test
+    public void testStreamingEmit(@TempDir Path tmp) throws Exception {
+        Path tikaConfig = tmp.resolve("tika-config.xml");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?><properties>" +
+                "<emitters><emitter class=\"org.apache.tika.pipes.async.MockEmitter\">" +
+                "<name>mock</name></emitter></emitters>" +
+                "<fetchers><fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "<name>fs</name><basePath>" + tmp.toAbsolutePath() + "</basePath>" +
+                "</fetcher></fetchers></properties>";
+        Files.write(tikaConfig, xml.getBytes(StandardCharsets.UTF_8));
+
+        Files.copy(PipesServerTest.class.getResourceAsStream("/test-documents/basic_embedded.xml"),
+                tmp.resolve("streaming.xml"));
+
+        PipesServer pipesServer = new PipesServer(tikaConfig,
+                UnsynchronizedByteArrayInputStream.builder().setByteArray(new byte[0]).get(),
+                new PrintStream(UnsynchronizedByteArrayOutputStream.builder().get(), true,
+                        StandardCharsets.UTF_8.name()),
+                0, 30000, 30000);
+
+        pipesServer.initializeResources();
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(HandlerConfig.class,
+                new HandlerConfig(BasicContentHandlerFactory.HANDLER_TYPE.TEXT,
+                        HandlerConfig.PARSE_MODE.RMETA_STREAMING, -1, -1, true));
+        FetchEmitTuple fetchEmitTuple = new FetchEmitTuple("id",
+                new FetchKey("fs", "streaming.xml"),
+                new EmitKey("mock", "streaming-key"), new Metadata(), parseContext);
+        Fetcher fetcher = FetcherManager.load(tikaConfig).getFetcher();
+        PipesServer.MetadataListAndEmbeddedBytes
+                parseData = pipesServer.parseFromTuple(fetchEmitTuple, fetcher);
+
+        //only the container comes back; the embedded document has already been emitted
+        assertNull(parseData.getEmitException());
+        assertEquals(1, parseData.metadataList.size());
+        Metadata container = parseData.metadataList.get(0);
+        assertContains("main_content", container.get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals("1",
+                container.get(EmittingRecursiveParserWrapperHandler.EMITTED_EMBEDDED_COUNT));
+
+        List<EmitData> emitted = MockEmitter.getData().stream()
+                .filter(d -> d.getEmitKey().getEmitKey().startsWith("streaming-key"))
+                .collect(Collectors.toList());
+        assertEquals(1, emitted.size());
+        assertEquals("streaming-key-1", emitted.get(0).getEmitKey().getEmitKey());
+        Metadata embedded = emitted.get(0).getMetadataList().get(0);
+        assertEquals("embeddedAuthor", embedded.get("dc:creator"));
+        assertContains("some_embedded_content", embedded.get(TikaCoreProperties.TIKA_CONTENT));
+    }
+
+    @Test
+    public void testParseResultCache(@TempDir Path tmp) throws Exception {
+        Path tikaConfig = writeCacheConfig(tmp);
+        PipesServer pipesServer = newCachingServer(tikaConfig);
+        Fetcher fetcher = FetcherManager.load(tikaConfig).getFetcher();
+        //the first copy comes with metadata of its own
+        Fetcher firstFetcher = new Fetcher() {
+            @Override
+            public String getName() {
+                return fetcher.getName();
+            }
+
+            @Override
+            public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext)
+                    throws TikaException, IOException {
+                metadata.set("first-copy-only", "true");
+                return fetcher.fetch(fetchKey, metadata, parseContext);
+            }
+        };
+
+        Metadata first = pipesServer.parseFromTuple(new FetchEmitTuple("id1",
+                new FetchKey("fs", "mock1.xml"), new EmitKey("", "")), firstFetcher)
+                .metadataList.get(0);
+        assertEquals("true", first.get("first-copy-only"));
+        markCached(tikaConfig, first);
+
+        Metadata second = pipesServer.parseFromTuple(new FetchEmitTuple("id2",
+                new FetchKey("fs", "mock2.xml"), new EmitKey("", "")), fetcher)
+                .metadataList.get(0);
+        assertEquals("from the cache", second.get(TikaCoreProperties.TIKA_CONTENT));
+        //the parse output comes from the cache...
+        assertEquals(first.get(TikaCoreProperties.TIKA_PARSED_BY),
+                second.get(TikaCoreProperties.TIKA_PARSED_BY));
+        //...but what was fetched and digested comes from this copy
+        assertEquals(first.get("X-TIKA:digest:SHA-256"), second.get("X-TIKA:digest:SHA-256"));
+        assertEquals("mock2.xml", second.get(TikaCoreProperties.RESOURCE_NAME_KEY));
+        assertNull(second.get("first-copy-only"));
+    }
+
+    @Test
+    public void testParseResultCacheParseContext(@TempDir Path tmp) throws Exception {
+        Path tikaConfig = writeCacheConfig(tmp);
+        PipesServer pipesServer = newCachingServer(tikaConfig);
+        Fetcher fetcher = FetcherManager.load(tikaConfig).getFetcher();
+
+        Metadata first = pipesServer.parseFromTuple(new FetchEmitTuple("id1",
+                new FetchKey("fs", "mock1.xml"), new EmitKey("", "")), fetcher)
+                .metadataList.get(0);
+        markCached(tikaConfig, first);
+
+        //the same bytes with a per-request setting that the cache can't key on
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(DocumentSelector.class, metadata -> false);
+        Metadata second = pipesServer.parseFromTuple(new FetchEmitTuple("id2",
+                new FetchKey("fs", "mock2.xml"), new EmitKey("", ""), new Metadata(),
+                parseContext), fetcher).metadataList.get(0);
+        assertNotEquals("from the cache", second.get(TikaCoreProperties.TIKA_CONTENT));
+        assertEquals(first.get(TikaCoreProperties.TIKA_CONTENT),
+                second.get(TikaCoreProperties.TIKA_CONTENT));
+
+        //without it, the request gets the cached result
+        Metadata third = pipesServer.parseFromTuple(new FetchEmitTuple("id3",
+                new FetchKey("fs", "mock2.xml"), new EmitKey("", "")), fetcher)
+                .metadataList.get(0);
+        assertEquals("from the cache", third.get(TikaCoreProperties.TIKA_CONTENT));
+    }
+
+    private static Path writeCacheConfig(Path tmp) throws IOException {
+        Path tikaConfig = tmp.resolve("tika-config.xml");
+        Path cacheDir = tmp.resolve("cache");
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?><properties>" +
+                "<autoDetectParserConfig><digesterFactory " +
+                "class=\"org.apache.tika.pipes.async.MockDigesterFactory\"/>" +
+                "</autoDetectParserConfig>" +
+                "<parseResultCache><params><directory>" + cacheDir.toAbsolutePath() +
+                "</directory></params></parseResultCache>" +
+                "<fetchers><fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
+                "<name>fs</name><basePath>" + tmp.toAbsolutePath() + "</basePath>" +
+                "</fetcher></fetchers></properties>";
+        Files.write(tikaConfig, xml.getBytes(StandardCharsets.UTF_8));
+        Files.copy(PipesServerTest.class.getResourceAsStream("/test-documents/mock_times.xml"),
+                tmp.resolve("mock1.xml"));
+        Files.copy(tmp.resolve("mock1.xml"), tmp.resolve("mock2.xml"));
+        return tikaConfig;
+    }
+
+    private static PipesServer newCachingServer(Path tikaConfig) throws Exception {
+        PipesServer pipesServer = new PipesServer(tikaConfig,
+                UnsynchronizedByteArrayInputStream.builder().setByteArray(new byte[0]).get(),
+                new PrintStream(UnsynchronizedByteArrayOutputStream.builder().get(), true,
+                        StandardCharsets.UTF_8.name()),
+                -1, 30000, 30000);
+        pipesServer.initializeResources();
+        return pipesServer;
+    }
+
+    //swap a marker into the cached result to show when a copy isn't parsed
+    private static void markCached(Path tikaConfig, Metadata parsed) throws Exception {
+        ParseResultCache cache = ParseResultCache.load(tikaConfig);
+        String digestKey = ParseResultCache.getDigestKey(parsed);
+        List<Metadata> entry = cache.get(digestKey, HandlerConfig.DEFAULT_HANDLER_CONFIG);
+        entry.get(0).set(TikaCoreProperties.TIKA_CONTENT, "from the cache");
+        cache.put(digestKey, HandlerConfig.DEFAULT_HANDLER_CONFIG, entry);
+    }
 }
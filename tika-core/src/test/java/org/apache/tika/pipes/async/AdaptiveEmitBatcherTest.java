@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.emitter.TikaEmitterRejectedException;
+
+public class AdaptiveEmitBatcherTest {
+
+    @Test
+    public void testNotAdaptive() throws Exception {
+        AdaptiveEmitBatcher batcher = new AdaptiveEmitBatcher(-1, 10000, 100000, 1, 1);
+        List<Integer> requestSizes = new ArrayList<>();
+        batcher.emit("mock", batch(100, 1000), r -> requestSizes.add(r.size()));
+        assertEquals(List.of(100), requestSizes);
+        assertEquals(10000, batcher.getMaxCacheBytes(10000));
+
+        EmitBatchStatistics stats = batcher.getStatistics().get("mock");
+        assertEquals(1, stats.getRequests());
+        assertEquals(-1, stats.getTargetBatchBytes());
+        //100 documents is in [64, 128)
+        assertEquals(1, stats.getDocumentsHistogram()[7]);
+    }
+
+    @Test
+    public void testSplitAndGrow() throws Exception {
+        AdaptiveEmitBatcher batcher = new AdaptiveEmitBatcher(1000, 10000, 100000, 1, 1);
+        List<EmitData> batch = batch(100, 1000);
+        long docBytes = batch.get(0).getEstimatedSizeBytes();
+        List<Integer> requestSizes = new ArrayList<>();
+        batcher.emit("mock", batch, r -> requestSizes.add(r.size()));
+
+        assertEquals((int) (10000 / docBytes), requestSizes.get(0));
+        assertEquals(100, requestSizes.stream().mapToInt(Integer::intValue).sum());
+        //fast requests: the target grows, but at most twice per request
+        assertTrue(requestSizes.get(1) > requestSizes.get(0));
+        assertTrue(requestSizes.get(1) <= 2 * requestSizes.get(0));
+
+        for (int i = 0; i < 10; i++) {
+            batcher.emit("mock", batch, r -> {
+            });
+        }
+        assertEquals(100000, batcher.getStatistics().get("mock").getTargetBatchBytes());
+        assertEquals(100000, batcher.getMaxCacheBytes(10000));
+    }
+
+    @Test
+    public void testShrinkWhenSlow() throws Exception {
+        AdaptiveEmitBatcher batcher = new AdaptiveEmitBatcher(20, 100000, 100000, 1, 1);
+        batcher.emit("slow", batch(100, 1000), r -> sleep(80));
+        long target = batcher.getStatistics().get("slow").getTargetBatchBytes();
+        assertTrue(target < 100000, "target: " + target);
+        assertTrue(target >= AdaptiveEmitBatcher.MIN_TARGET_BYTES);
+        //other emitters are sized on their own
+        batcher.emit("fast", batch(10, 1000), r -> {
+        });
+        assertEquals(100000, batcher.getStatistics().get("fast").getTargetBatchBytes());
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        AdaptiveEmitBatcher batcher = new AdaptiveEmitBatcher(1000, 100000, 100000, 1, 10);
+        AtomicInteger rejections = new AtomicInteger();
+        List<Integer> requestSizes = new ArrayList<>();
+        batcher.emit("mock", batch(20, 1000), r -> {
+            if (rejections.getAndIncrement() < 2) {
+                throw new TikaEmitterRejectedException("429");
+            }
+            requestSizes.add(r.size());
+        });
+        //each rejection halves the target; everything is still sent
+        assertEquals(20, requestSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(requestSizes.get(0) <= 5, "sizes: " + requestSizes);
+        EmitBatchStatistics stats = batcher.getStatistics().get("mock");
+        assertEquals(2, stats.getRejections());
+        assertEquals(2, stats.getFailures());
+
+        //a sink that never recovers eventually fails the batch
+        assertThrows(TikaEmitterRejectedException.class, () -> batcher.emit("down",
+                batch(1, 10), r -> {
+                    throw new TikaEmitterRejectedException("429");
+                }));
+        assertEquals(AdaptiveEmitBatcher.MAX_REJECTED_RETRIES + 1,
+                batcher.getStatistics().get("down").getRejections());
+    }
+
+    private static List<EmitData> batch(int docs, int contentLength) {
+        List<EmitData> batch = new ArrayList<>();
+        String content = "x".repeat(contentLength);
+        for (int i = 0; i < docs; i++) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.TIKA_CONTENT, content);
+            batch.add(new EmitData(new EmitKey("mock", Integer.toString(i)), List.of(m)));
+        }
+        return batch;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
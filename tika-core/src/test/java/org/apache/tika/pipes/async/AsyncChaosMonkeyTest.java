@@ -17,15 +17,20 @@
 package org.apache.tika.pipes.async;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -37,6 +42,7 @@ import org.apache.tika.pipes.PipesResult;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.EmitKey;
 import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.pipesiterator.FileCrawlState;
 import org.apache.tika.pipes.pipesiterator.PipesIterator;
 import org.apache.tika.utils.ProcessUtils;
 
@@ -74,6 +80,11 @@ public class AsyncChaosMonkeyTest {
 
 
     public Path setUp(boolean emitIntermediateResults) throws SQLException, IOException {
+        return setUp(emitIntermediateResults, -1);
+    }
+
+    public Path setUp(boolean emitIntermediateResults, int maxConcurrentFetches)
+            throws SQLException, IOException {
         ok = 0;
         oom = 0;
         timeouts = 0;
@@ -87,7 +98,9 @@ public class AsyncChaosMonkeyTest {
                 "    <fetcher class=\"org.apache.tika.pipes.fetcher.fs.FileSystemFetcher\">" +
                 "      <name>mock</name>\n" + "      <basePath>" +
                 ProcessUtils.escapeCommandLine(inputDir.toAbsolutePath().toString()) +
-                "</basePath>\n" + "    </fetcher>" + "  </fetchers>" +
+                "</basePath>\n" + "    </fetcher>" +
+                "    <fetcher class=\"org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher\"/>" +
+                "  </fetchers>" +
                 " <autoDetectParserConfig>\n" +
                         "    <digesterFactory\n" +
                         "        class=\"org.apache.tika.pipes.async.MockDigesterFactory\"/>\n" +
@@ -100,7 +113,9 @@ public class AsyncChaosMonkeyTest {
                         "</tikaConfig><forkedJvmArgs><arg>-Xmx512m</arg" +
                         "></forkedJvmArgs><maxForEmitBatchBytes>1000000</maxForEmitBatchBytes>" +
                         "<timeoutMillis>5000</timeoutMillis>" +
-                        "<numClients>4</numClients></async>" +
+                        "<numClients>4</numClients>" +
+                        "<maxConcurrentFetches>" + maxConcurrentFetches +
+                        "</maxConcurrentFetches></async>" +
                         "</properties>";
         Files.write(tikaConfigPath, xml.getBytes(StandardCharsets.UTF_8));
         Random r = new Random();
@@ -199,4 +214,64 @@ public class AsyncChaosMonkeyTest {
         assertEquals(totalFiles, emitKeys.size());
         assertEquals(oom, observedOOM);
     }
+
+    @Test
+    public void testFetchAhead() throws Exception {
+        AsyncProcessor processor = new AsyncProcessor(setUp(false, 20));
+        List<FetchEmitTuple> tuples = new ArrayList<>();
+        for (int i = 0; i < totalFiles; i++) {
+            tuples.add(new FetchEmitTuple("myId-" + i, new FetchKey("mock", i + ".xml"),
+                    new EmitKey("mock", "emit-" + i), new Metadata()));
+        }
+        assertTrue(processor.offer(tuples, 1000));
+        processor.finished();
+        assertTrue(processor.awaitCompletion(5, TimeUnit.MINUTES));
+        processor.close();
+        Set<String> emitKeys = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitKeys.add(d.getEmitKey().getEmitKey());
+            Metadata metadata = d.getMetadataList().get(0);
+            //the fetcher's metadata is passed along with the bytes
+            String i = d.getEmitKey().getEmitKey().substring("emit-".length());
+            assertEquals(i + ".xml", metadata.get(TikaCoreProperties.SOURCE_PATH));
+            assertEquals("application/mock+xml", metadata.get(Metadata.CONTENT_TYPE));
+        }
+        assertEquals(ok, emitKeys.size());
+        assertEquals(totalFiles, MockReporter.RESULTS.size());
+    }
+
+    @Test
+    public void testCrawlState(@TempDir Path stateDir) throws Exception {
+        PipesIterator pipesIterator = new PipesIterator() {
+            @Override
+            protected void enqueue() {
+            }
+        };
+        FileCrawlState crawlState = new FileCrawlState(stateDir);
+        pipesIterator.setCrawlState(crawlState);
+        AsyncProcessor processor = new AsyncProcessor(setUp(false), pipesIterator);
+        List<FetchEmitTuple> tuples = new ArrayList<>();
+        for (int i = 0; i < totalFiles; i++) {
+            crawlState.shouldProcess("myId-" + i, "v1");
+            //the emit key differs from the id
+            tuples.add(new FetchEmitTuple("myId-" + i, new FetchKey("mock", i + ".xml"),
+                    new EmitKey("mock", "emit-" + i), new Metadata()));
+        }
+        assertTrue(processor.offer(tuples, 1000));
+        processor.finished();
+        assertTrue(processor.awaitCompletion(5, TimeUnit.MINUTES));
+        //this closes the crawl state
+        processor.close();
+
+        Set<String> emitted = new HashSet<>();
+        for (EmitData d : MockEmitter.EMIT_DATA) {
+            emitted.add(d.getFetchEmitTupleId());
+        }
+        assertEquals(ok, emitted.size());
+        try (FileCrawlState reopened = new FileCrawlState(stateDir)) {
+            for (String id : emitted) {
+                assertFalse(reopened.shouldProcess(id, "v1"), id);
+            }
+        }
+    }
 }
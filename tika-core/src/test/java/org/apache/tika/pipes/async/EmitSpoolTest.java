@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.EmitKey;
+
+public class EmitSpoolTest {
+
+    @Test
+    public void testWriteAndSucceed(@TempDir Path dir) throws Exception {
+        EmitSpool spool = new EmitSpool(dir, 1000, 10000);
+        EmitSpool.Batch batch = spool.write("mock", batch("a", "b"));
+        assertEquals(1, countSegments(dir));
+        assertEquals(0, spool.getPendingCount());
+        spool.succeeded(batch);
+        assertEquals(0, countSegments(dir));
+        assertNull(spool.claim(true));
+    }
+
+    @Test
+    public void testBackoff(@TempDir Path dir) throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        EmitSpool spool = new EmitSpool(dir, 200, 400, now::get);
+        EmitSpool.Batch batch = spool.write("mock", batch("a"));
+        spool.failed(batch);
+        assertEquals(1, spool.getPendingCount());
+        //not due yet
+        now.addAndGet(199);
+        assertNull(spool.claim(false));
+        now.addAndGet(1);
+        batch = spool.claim(false);
+        assertNotNull(batch);
+        assertEquals(1, batch.getAttempts());
+
+        spool.failed(batch);
+        spool.failed(spool.claim(true));
+        //capped at the max backoff
+        now.addAndGet(399);
+        assertNull(spool.claim(false));
+        now.addAndGet(1);
+        batch = spool.claim(false);
+        assertEquals(3, batch.getAttempts());
+        spool.succeeded(batch);
+        assertEquals(0, spool.getPendingCount());
+        assertEquals(0, countSegments(dir));
+    }
+
+    @Test
+    public void testFailedBatchIsReadBack(@TempDir Path dir) throws Exception {
+        EmitSpool spool = new EmitSpool(dir, 1000, 10000);
+        EmitSpool.Batch batch = spool.write("mock", batch("a", "b"));
+        spool.failed(batch);
+        //not held in memory while it waits
+        assertNull(batch.getEmitData());
+        batch = spool.claim(true);
+        assertEquals("mock", batch.getEmitterName());
+        assertEquals(2, batch.getEmitData().size());
+        assertEquals("b", batch.getEmitData().get(1).getEmitKey().getEmitKey());
+    }
+
+    @Test
+    public void testQuarantine(@TempDir Path dir) throws Exception {
+        EmitSpool spool = new EmitSpool(dir, 1000, 10000);
+        EmitSpool.Batch batch = spool.write("no-such-emitter", batch("a"));
+        spool.failed(batch);
+        batch = spool.claim(true);
+        spool.quarantine(batch);
+        assertEquals(0, spool.getPendingCount());
+        assertEquals(0, countSegments(dir));
+        assertTrue(Files.exists(dir.resolve("00000000000000000000" +
+                EmitSpool.SEGMENT_SUFFIX + ".failed")));
+        //and it isn't picked up again
+        assertEquals(0, new EmitSpool(dir, 1000, 10000).getPendingCount());
+    }
+
+    @Test
+    public void testRecovery(@TempDir Path dir) throws Exception {
+        EmitSpool spool = new EmitSpool(dir, 1000, 10000);
+        spool.write("mock", batch("a", "b"));
+        EmitSpool.Batch failed = spool.write("mock2", batch("c"));
+        spool.failed(failed);
+        //a write that didn't complete
+        Files.write(dir.resolve("00000000000000000002" + EmitSpool.SEGMENT_SUFFIX + ".tmp"),
+                new byte[]{1, 2, 3});
+
+        //e.g. the processor crashed; everything left in the spool is due right away
+        EmitSpool reopened = new EmitSpool(dir, 1000, 10000);
+        assertEquals(2, reopened.getPendingCount());
+        List<String> ids = new ArrayList<>();
+        for (EmitSpool.Batch batch = reopened.claim(false); batch != null;
+                batch = reopened.claim(false)) {
+            for (EmitData d : batch.getEmitData()) {
+                ids.add(batch.getEmitterName() + ":" + d.getEmitKey().getEmitKey() + ":" +
+                        d.getMetadataList().get(0).get(TikaCoreProperties.RESOURCE_NAME_KEY));
+            }
+            reopened.succeeded(batch);
+        }
+        assertEquals(List.of("mock:a:a.txt", "mock:b:b.txt", "mock2:c:c.txt"), ids);
+        assertEquals(0, countSegments(dir));
+
+        //new batches don't reuse the sequence numbers of recovered ones
+        reopened.write("mock", batch("d"));
+        assertTrue(Files.exists(dir.resolve("00000000000000000002" +
+                EmitSpool.SEGMENT_SUFFIX)));
+    }
+
+    @Test
+    public void testUnreadableSegment(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("00000000000000000000" + EmitSpool.SEGMENT_SUFFIX),
+                new byte[]{1, 2, 3});
+        EmitSpool spool = new EmitSpool(dir, 1000, 10000);
+        assertEquals(1, spool.getPendingCount());
+        assertNull(spool.claim(true));
+        assertEquals(0, spool.getPendingCount());
+        assertFalse(Files.exists(dir.resolve("00000000000000000000" +
+                EmitSpool.SEGMENT_SUFFIX)));
+        assertTrue(Files.exists(dir.resolve("00000000000000000000" +
+                EmitSpool.SEGMENT_SUFFIX + ".failed")));
+
+        //the batches behind an unreadable one are still handed out
+        spool.write("mock", batch("a"));
+        Files.write(dir.resolve("00000000000000000000" + EmitSpool.SEGMENT_SUFFIX),
+                new byte[]{1, 2, 3});
+        EmitSpool reopened = new EmitSpool(dir, 1000, 10000);
+        assertEquals(2, reopened.getPendingCount());
+        EmitSpool.Batch batch = reopened.claim(false);
+        assertNotNull(batch);
+        assertEquals("a", batch.getEmitData().get(0).getEmitKey().getEmitKey());
+        assertEquals(0, reopened.getPendingCount());
+    }
+
+    private static List<EmitData> batch(String... ids) {
+        List<EmitData> batch = new ArrayList<>();
+        for (String id : ids) {
+            Metadata m = new Metadata();
+            m.set(TikaCoreProperties.RESOURCE_NAME_KEY, id + ".txt");
+            batch.add(new EmitData(new EmitKey("mock", id), List.of(m)));
+        }
+        return batch;
+    }
+
+    private static long countSegments(Path dir) throws Exception {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.toString().endsWith(EmitSpool.SEGMENT_SUFFIX)).count();
+        }
+    }
+}
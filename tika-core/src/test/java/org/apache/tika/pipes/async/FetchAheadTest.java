@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.exception.TikaConfigException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.fetcher.Fetcher;
+import org.apache.tika.pipes.fetcher.FetcherManager;
+import org.apache.tika.pipes.fetcher.shm.SharedMemoryFetcher;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+public class FetchAheadTest {
+
+    @Test
+    public void testFetchAhead() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setMaxConcurrentFetches(2);
+        FetchEmitTupleScheduler tuples = new FetchEmitTupleScheduler(10, -1);
+        FetcherManager fetcherManager =
+                new FetcherManager(List.of(new MockFetcher(), new SharedMemoryFetcher()));
+        try (FetchAhead fetchAhead = new FetchAhead(asyncConfig, tuples, fetcherManager)) {
+            List<FetchEmitTuple> offered = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                offered.add(new FetchEmitTuple("id-" + i, new FetchKey("mock", i + ".xml"),
+                        new EmitKey("mock", ""), new Metadata(), new ParseContext(),
+                        FetchEmitTuple.ON_PARSE_EXCEPTION.EMIT));
+            }
+            offered.add(new FetchEmitTuple("unknown", new FetchKey("unknown", "x"),
+                    new EmitKey("mock", "x")));
+            assertTrue(tuples.offerAll(offered));
+            tuples.finish();
+            Thread feeder = new Thread(() -> {
+                try {
+                    fetchAhead.feed();
+                } catch (InterruptedException e) {
+                    //test will fail
+                }
+            });
+            feeder.start();
+
+            FetchEmitTupleScheduler fetched = fetchAhead.getFetched();
+            FetchEmitTuple first = fetched.poll(false, 10, TimeUnit.SECONDS);
+            FetchEmitTuple second = fetched.poll(false, 10, TimeUnit.SECONDS);
+            //only two are fetched until one is released
+            assertNull(fetched.poll(false, 200, TimeUnit.MILLISECONDS));
+
+            assertEquals(SharedMemoryFetcher.NAME, first.getFetchKey().getFetcherName());
+            Path region = Paths.get(first.getFetchKey().getFetchKey());
+            try (InputStream is = new MockFetcher().fetch("", new Metadata(), new ParseContext())) {
+                assertEquals(new String(is.readAllBytes(), UTF_8),
+                        new String(Files.readAllBytes(region), UTF_8));
+            }
+            //the two fetches may finish in either order
+            int i = Integer.parseInt(first.getId().substring("id-".length()));
+            //the emit key falls back to the original fetch key, not the region
+            assertEquals(i + ".xml", first.getEmitKey().getEmitKey());
+            assertSame(offered.get(i), fetchAhead.release(first));
+            assertFalse(Files.exists(region));
+            //releasing again is a no-op
+            assertSame(first, fetchAhead.release(first));
+
+            FetchEmitTuple third = fetched.poll(false, 10, TimeUnit.SECONDS);
+            assertEquals("id-2", third.getId());
+            fetchAhead.release(second);
+            fetchAhead.release(third);
+            //a tuple whose fetcher isn't known here goes through as it is
+            assertSame(offered.get(3), fetched.poll(false, 10, TimeUnit.SECONDS));
+            fetchAhead.release(offered.get(3));
+            assertSame(PipesIterator.COMPLETED_SEMAPHORE,
+                    fetched.poll(false, 10, TimeUnit.SECONDS));
+            feeder.join();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setMaxConcurrentFetches(1);
+        asyncConfig.setTimeoutMillis(200);
+        Fetcher hanging = new Fetcher() {
+            @Override
+            public String getName() {
+                return "hanging";
+            }
+
+            @Override
+            public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext) throws IOException {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        };
+        //the hanging fetch has to give its permit back for the second tuple to be fetched
+        List<FetchEmitTuple> offered = List.of(new FetchEmitTuple("hangs", new FetchKey("hanging", "x"), new EmitKey("mock", "x")),
+                new FetchEmitTuple("hangs-too", new FetchKey("hanging", "y"), new EmitKey("mock", "y")));
+        assertPassedOn(asyncConfig, new FetcherManager(List.of(hanging, new SharedMemoryFetcher())), offered);
+    }
+
+    @Test
+    public void testMaxFetchAheadBytes() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setMaxConcurrentFetches(2);
+        asyncConfig.setMaxFetchAheadBytes(10);
+        FetchEmitTuple sizeHint = new FetchEmitTuple("size-hint", new FetchKey("mock", "x"), new EmitKey("mock", "x"));
+        sizeHint.setSize(11);
+        //the mock fetcher's bytes are over the cap, so this is copied until it goes over
+        FetchEmitTuple noSizeHint = new FetchEmitTuple("no-size-hint", new FetchKey("mock", "y"), new EmitKey("mock", "y"));
+        List<FetchEmitTuple> offered = List.of(sizeHint, noSizeHint);
+        assertPassedOn(asyncConfig, new FetcherManager(List.of(new MockFetcher(), new SharedMemoryFetcher())), offered);
+    }
+
+    /**
+     * Feeds the tuples through a FetchAhead and checks that each of them is handed
+     * out as it is, for the PipesServer to fetch.
+     */
+    private static void assertPassedOn(AsyncConfig asyncConfig, FetcherManager fetcherManager, List<FetchEmitTuple> offered) throws Exception {
+        FetchEmitTupleScheduler tuples = new FetchEmitTupleScheduler(10, -1);
+        try (FetchAhead fetchAhead = new FetchAhead(asyncConfig, tuples, fetcherManager)) {
+            assertTrue(tuples.offerAll(offered));
+            tuples.finish();
+            Thread feeder = new Thread(() -> {
+                try {
+                    fetchAhead.feed();
+                } catch (InterruptedException e) {
+                    //test will fail
+                }
+            });
+            feeder.start();
+            for (int i = 0; i < offered.size(); i++) {
+                FetchEmitTuple t = fetchAhead.getFetched().poll(false, 10, TimeUnit.SECONDS);
+                //the fetches may finish in either order
+                assertTrue(offered.stream().anyMatch(o -> o == t), String.valueOf(t));
+                fetchAhead.release(t);
+            }
+            assertSame(PipesIterator.COMPLETED_SEMAPHORE, fetchAhead.getFetched().poll(false, 10, TimeUnit.SECONDS));
+            feeder.join();
+        }
+    }
+
+    @Test
+    public void testRequiresSharedMemoryFetcher() throws Exception {
+        AsyncConfig asyncConfig = new AsyncConfig();
+        asyncConfig.setMaxConcurrentFetches(2);
+        assertThrows(TikaConfigException.class, () -> new FetchAhead(asyncConfig,
+                new FetchEmitTupleScheduler(10, -1),
+                new FetcherManager(List.of(new MockFetcher()))));
+    }
+}
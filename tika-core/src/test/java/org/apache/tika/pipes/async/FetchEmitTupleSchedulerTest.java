@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.async;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.emitter.EmitKey;
+import org.apache.tika.pipes.fetcher.FetchKey;
+import org.apache.tika.pipes.pipesiterator.PipesIterator;
+
+public class FetchEmitTupleSchedulerTest {
+
+    @Test
+    public void testPriority() throws Exception {
+        FetchEmitTupleScheduler scheduler = new FetchEmitTupleScheduler(10, -1);
+        scheduler.offer(tuple("bulk1", 0, -1), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("bulk2", 0, -1), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("interactive", 10, -1), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("background", -5, -1), 1, TimeUnit.SECONDS);
+
+        assertEquals("interactive", poll(scheduler, false));
+        assertEquals("bulk1", poll(scheduler, false));
+        assertEquals("bulk2", poll(scheduler, false));
+        assertEquals("background", poll(scheduler, false));
+        assertNull(scheduler.poll(false, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLanes() throws Exception {
+        FetchEmitTupleScheduler scheduler = new FetchEmitTupleScheduler(10, 1000);
+        scheduler.offer(tuple("large1", 0, 5000), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("small1", 0, 10), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("large2", 0, 1000), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("unknown", 0, -1), 1, TimeUnit.SECONDS);
+        assertEquals(2, scheduler.getQueueSizes().get(FetchEmitTupleScheduler.DEFAULT_LANE));
+        assertEquals(2, scheduler.getQueueSizes().get(FetchEmitTupleScheduler.LARGE_LANE));
+
+        //the default clients never get large documents
+        assertEquals("small1", poll(scheduler, false));
+        assertEquals("unknown", poll(scheduler, false));
+        assertNull(scheduler.poll(false, 10, TimeUnit.MILLISECONDS));
+
+        assertEquals("large1", poll(scheduler, true));
+        scheduler.offer(tuple("small2", 0, 10), 1, TimeUnit.SECONDS);
+        assertEquals("large2", poll(scheduler, true));
+        //the large clients take small documents when there are no large ones
+        assertEquals("small2", poll(scheduler, true));
+
+        scheduler.offer(tuple("large3", 0, 5000), 1, TimeUnit.SECONDS);
+        scheduler.finish();
+        assertSame(PipesIterator.COMPLETED_SEMAPHORE,
+                scheduler.poll(false, 10, TimeUnit.MILLISECONDS));
+        assertEquals("large3", poll(scheduler, true));
+        assertSame(PipesIterator.COMPLETED_SEMAPHORE,
+                scheduler.poll(true, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        FetchEmitTupleScheduler scheduler = new FetchEmitTupleScheduler(3, 1000);
+        assertTrue(scheduler.offerAll(List.of(tuple("a", 0, 5000), tuple("b", 0, 10))));
+        assertEquals(1, scheduler.remainingCapacity());
+        assertFalse(scheduler.offerAll(List.of(tuple("c", 0, 10), tuple("d", 0, 10))));
+        assertEquals(1, scheduler.remainingCapacity());
+        assertTrue(scheduler.offer(tuple("c", 0, 10), 10, TimeUnit.MILLISECONDS));
+        assertFalse(scheduler.offer(tuple("d", 0, 10), 10, TimeUnit.MILLISECONDS));
+        poll(scheduler, true);
+        assertTrue(scheduler.offer(tuple("d", 0, 10), 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPollAny() throws Exception {
+        FetchEmitTupleScheduler scheduler = new FetchEmitTupleScheduler(10, 1000);
+        scheduler.offer(tuple("small1", 0, 10), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("large1", 5, 5000), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("large2", 0, 5000), 1, TimeUnit.SECONDS);
+        scheduler.offer(tuple("small2", 0, 10), 1, TimeUnit.SECONDS);
+        scheduler.finish();
+        //priority first, then the order they were added, across both lanes
+        assertEquals("large1", scheduler.pollAny(1, TimeUnit.SECONDS).getId());
+        assertEquals("small1", scheduler.pollAny(1, TimeUnit.SECONDS).getId());
+        assertEquals("large2", scheduler.pollAny(1, TimeUnit.SECONDS).getId());
+        assertEquals("small2", scheduler.pollAny(1, TimeUnit.SECONDS).getId());
+        assertSame(PipesIterator.COMPLETED_SEMAPHORE,
+                scheduler.pollAny(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testOfferAllWaits() throws Exception {
+        FetchEmitTupleScheduler scheduler = new FetchEmitTupleScheduler(2, -1);
+        assertTrue(scheduler.offerAll(List.of(tuple("a", 0, -1), tuple("b", 0, -1))));
+        assertFalse(scheduler.offerAll(List.of(tuple("c", 0, -1)), 10, TimeUnit.MILLISECONDS));
+        Thread poller = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                scheduler.poll(false, 1, TimeUnit.SECONDS);
+                scheduler.poll(false, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                //the offer below will fail
+            }
+        });
+        poller.start();
+        assertTrue(scheduler.offerAll(List.of(tuple("c", 0, -1), tuple("d", 0, -1)),
+                10, TimeUnit.SECONDS));
+        poller.join();
+        assertEquals("c", poll(scheduler, false));
+    }
+
+    private static String poll(FetchEmitTupleScheduler scheduler, boolean large)
+            throws InterruptedException {
+        return scheduler.poll(large, 1, TimeUnit.SECONDS).getId();
+    }
+
+    private static FetchEmitTuple tuple(String id, int priority, long size) {
+        FetchEmitTuple t = new FetchEmitTuple(id, new FetchKey("fs", id), new EmitKey("fs", id),
+                new Metadata(), new ParseContext(), FetchEmitTuple.ON_PARSE_EXCEPTION.EMIT);
+        t.setPriority(priority);
+        t.setSize(size);
+        return t;
+    }
+}
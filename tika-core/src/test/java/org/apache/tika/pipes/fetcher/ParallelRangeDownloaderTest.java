@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.fetcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelRangeDownloaderTest {
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testDownload(@TempDir Path dir) throws Exception {
+        byte[] data = new byte[100003];
+        new Random(42).nextBytes(data);
+        AtomicInteger opened = new AtomicInteger();
+        ParallelRangeDownloader downloader =
+                new ParallelRangeDownloader(executorService, 10000, null, e -> true);
+        Path target = Files.createFile(dir.resolve("target"));
+        downloader.download((start, end) -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, data.length, target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals(11, opened.get());
+    }
+
+    @Test
+    public void testRetryPart(@TempDir Path dir) throws Exception {
+        byte[] data = new byte[50000];
+        new Random(42).nextBytes(data);
+        Set<Long> failed = ConcurrentHashMap.newKeySet();
+        AtomicInteger opened = new AtomicInteger();
+        ParallelRangeDownloader downloader =
+                new ParallelRangeDownloader(executorService, 10000, new long[]{10}, e -> true);
+        Path target = Files.createFile(dir.resolve("target"));
+        downloader.download((start, end) -> {
+            opened.incrementAndGet();
+            //the third part fails the first time, after sending some of its bytes
+            if (start == 20000 && failed.add(start)) {
+                return new ByteArrayInputStream(data, (int) start, 500);
+            }
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, data.length, target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        //only the failed part is fetched again
+        assertEquals(6, opened.get());
+    }
+
+    @Test
+    public void testNoRetry(@TempDir Path dir) throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        ParallelRangeDownloader downloader = new ParallelRangeDownloader(executorService,
+                10000, new long[]{10, 10}, e -> !(e instanceof FileNotFoundException));
+        Path target = Files.createFile(dir.resolve("target"));
+        assertThrows(FileNotFoundException.class, () -> downloader.download((start, end) -> {
+            opened.incrementAndGet();
+            throw new FileNotFoundException("gone");
+        }, 5000, target));
+        assertEquals(1, opened.get());
+
+        opened.set(0);
+        assertThrows(IOException.class, () -> downloader.download((start, end) -> {
+            opened.incrementAndGet();
+            throw new IOException("flaky");
+        }, 5000, target));
+        assertEquals(3, opened.get());
+    }
+}
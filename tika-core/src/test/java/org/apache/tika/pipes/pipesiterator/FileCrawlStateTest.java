@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.pipes.pipesiterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.apache.tika.pipes.PipesResult;
+
+public class FileCrawlStateTest {
+
+    @Test
+    public void testSkipUnchanged(@TempDir Path dir) throws Exception {
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertTrue(state.shouldProcess("a", "v1"));
+            assertTrue(state.shouldProcess("b", "v1"));
+            assertTrue(state.shouldProcess("c", "v1"));
+            state.report("a", PipesResult.STATUS.EMIT_SUCCESS);
+            state.report("b", PipesResult.STATUS.FETCH_EXCEPTION);
+            //c is still in flight
+        }
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertEquals(3, state.size());
+            assertFalse(state.shouldProcess("a", "v1"));
+            //worth retrying
+            assertTrue(state.shouldProcess("b", "v1"));
+            //never finished
+            assertTrue(state.shouldProcess("c", "v1"));
+            //changed
+            assertTrue(state.shouldProcess("a", "v2"));
+            assertTrue(state.shouldProcess("d", "v1"));
+            state.report("a", PipesResult.STATUS.PARSE_EXCEPTION_NO_EMIT);
+        }
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertFalse(state.shouldProcess("a", "v2"));
+            assertTrue(state.shouldProcess("a", "v1"));
+        }
+    }
+
+    @Test
+    public void testPartialRecord(@TempDir Path dir) throws Exception {
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            state.shouldProcess("a", "v1");
+            state.report("a", PipesResult.STATUS.EMIT_SUCCESS);
+            state.shouldProcess("b", "v1");
+            state.report("b", PipesResult.STATUS.EMIT_SUCCESS);
+        }
+        Path log = dir.resolve(FileCrawlState.LOG_FILE_NAME);
+        //cut the last status record short, as if the process died while writing it
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 3);
+        }
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertFalse(state.shouldProcess("a", "v1"));
+            assertTrue(state.shouldProcess("b", "v1"));
+            state.report("b", PipesResult.STATUS.EMIT_SUCCESS);
+        }
+        //the records that were appended after the cut are readable
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertFalse(state.shouldProcess("b", "v1"));
+        }
+    }
+
+    @Test
+    public void testCompact(@TempDir Path dir) throws Exception {
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            for (int i = 0; i < 1000; i++) {
+                state.shouldProcess("a", Integer.toString(i));
+                state.report("a", PipesResult.STATUS.EMIT_SUCCESS);
+            }
+        }
+        Path log = dir.resolve(FileCrawlState.LOG_FILE_NAME);
+        long size = Files.size(log);
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertEquals(1, state.size());
+            assertTrue(Files.size(log) < size / 100);
+            assertFalse(state.shouldProcess("a", "999"));
+        }
+    }
+
+    @Test
+    public void testLongId(@TempDir Path dir) throws Exception {
+        //over the 65535 bytes that DataOutputStream#writeUTF can write
+        String id = "\u00e9".repeat(40000);
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertTrue(state.shouldProcess(id, "v1"));
+            state.report(id, PipesResult.STATUS.EMIT_SUCCESS);
+        }
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            assertFalse(state.shouldProcess(id, "v1"));
+        }
+    }
+
+    @Test
+    public void testFlushWithoutWrites(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve(FileCrawlState.LOG_FILE_NAME);
+        try (FileCrawlState state = new FileCrawlState(dir)) {
+            state.shouldProcess("a", "v1");
+            state.report("a", PipesResult.STATUS.EMIT_SUCCESS);
+            //the last records of a crawl are written out without another write
+            long deadline = System.currentTimeMillis() + 10 * FileCrawlState.FLUSH_INTERVAL_MILLIS;
+            while (Files.size(log) == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(Files.size(log) > 0);
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.tika.pipes.pipesiterator;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
@@ -23,6 +24,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -31,8 +33,10 @@ import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.apache.tika.pipes.FetchEmitTuple;
+import org.apache.tika.pipes.PipesResult;
 import org.apache.tika.pipes.pipesiterator.fs.FileSystemPipesIterator;
 
 
@@ -78,4 +82,41 @@ public class FileSystemPipesIteratorTest {
             assertTrue(truthSet.contains(i), "missing in truth set " + i);
         }
     }
+
+    @Test
+    @Timeout(30000)
+    public void testCrawlState(@TempDir Path dir) throws Exception {
+        Path root = Files.createDirectories(dir.resolve("root"));
+        for (int i = 0; i < 5; i++) {
+            Files.write(root.resolve(i + ".txt"), new byte[i]);
+        }
+        Path stateDir = dir.resolve("state");
+        assertEquals(5, crawl(root, stateDir, PipesResult.STATUS.EMIT_SUCCESS).size());
+        assertEquals(0, crawl(root, stateDir, PipesResult.STATUS.EMIT_SUCCESS).size());
+
+        Files.write(root.resolve("1.txt"), new byte[10]);
+        Files.setLastModifiedTime(root.resolve("2.txt"), FileTime.fromMillis(0));
+        Files.write(root.resolve("5.txt"), new byte[5]);
+        assertEquals(Set.of("1.txt", "2.txt", "5.txt"),
+                crawl(root, stateDir, PipesResult.STATUS.FETCH_EXCEPTION));
+        //these failed, so they're tried again
+        assertEquals(Set.of("1.txt", "2.txt", "5.txt"),
+                crawl(root, stateDir, PipesResult.STATUS.EMIT_SUCCESS));
+        assertEquals(0, crawl(root, stateDir, PipesResult.STATUS.EMIT_SUCCESS).size());
+    }
+
+    private static Set<String> crawl(Path root, Path stateDir, PipesResult.STATUS status)
+            throws Exception {
+        FileSystemPipesIterator it = new FileSystemPipesIterator(root);
+        it.setFetcherName("fs");
+        it.setCrawlStateDirectory(stateDir.toString());
+        Set<String> ids = new HashSet<>();
+        try (CrawlState state = it.getCrawlState()) {
+            for (FetchEmitTuple t : it) {
+                ids.add(t.getId());
+                state.report(t.getId(), status);
+            }
+        }
+        return ids;
+    }
 }
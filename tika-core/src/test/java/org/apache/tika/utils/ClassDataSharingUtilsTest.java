@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ClassDataSharingUtilsTest {
+
+    @Test
+    public void testJvmArgs(@TempDir Path dir) throws Exception {
+        Path archive = dir.resolve("tika.jsa");
+        assertTrue(ClassDataSharingUtils.getJvmArgs(null, List.of()).isEmpty());
+        //missing archive
+        assertTrue(ClassDataSharingUtils.getJvmArgs(archive, List.of()).isEmpty());
+
+        Files.write(archive, new byte[10]);
+        List<String> args = ClassDataSharingUtils.getJvmArgs(archive, List.of("-Xmx1g"));
+        assertEquals("-XX:SharedArchiveFile=" + archive.toAbsolutePath(), args.get(0));
+        assertTrue(args.contains("-Xshare:auto"));
+
+        //the configured jvm args win
+        assertTrue(ClassDataSharingUtils.getJvmArgs(archive, List.of("-Xshare:off")).isEmpty());
+        assertTrue(ClassDataSharingUtils.getJvmArgs(archive,
+                List.of("-XX:SharedArchiveFile=other.jsa")).isEmpty());
+    }
+}
@@ -16,10 +16,13 @@
  */
 package org.apache.tika.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.junit.jupiter.api.Test;
 
@@ -52,4 +55,24 @@ public class ConcurrentUtilsTest {
         assertNull(result.get());
     }
 
+    @Test
+    public void testIOThreadFactory() throws Exception {
+        ThreadFactory platform = ConcurrentUtils.newIOThreadFactory("io-", false);
+        Thread t = platform.newThread(() -> {
+        });
+        assertEquals("io-0", t.getName());
+        assertTrue(t.isDaemon());
+        assertEquals("io-1", platform.newThread(() -> {
+        }).getName());
+
+        //falls back to platform threads before Java 21
+        ThreadFactory virtual = ConcurrentUtils.newIOThreadFactory("vio-", true);
+        Thread v = virtual.newThread(() -> {
+        });
+        assertEquals("vio-0", v.getName());
+        assertTrue(v.isDaemon());
+        if (ConcurrentUtils.isVirtualThreadSupported()) {
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(v));
+        }
+    }
 }
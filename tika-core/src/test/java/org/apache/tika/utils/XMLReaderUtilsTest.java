@@ -16,14 +16,25 @@
  */
 package org.apache.tika.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
 import java.net.ConnectException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
+import org.apache.tika.exception.TikaException;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.sax.ToTextContentHandler;
 
@@ -66,4 +77,79 @@ public class XMLReaderUtilsTest {
             fail("Parser tried to access the external DTD:" + e);
         }
     }
+
+    @Test
+    public void testPoolGrowsToConcurrency() throws Exception {
+        int numThreads = XMLReaderUtils.DEFAULT_POOL_SIZE * 2;
+        XMLReaderUtils.setPoolSize(XMLReaderUtils.DEFAULT_POOL_SIZE);
+        try {
+            byte[] xml = "<foo>bar</foo>".getBytes(StandardCharsets.UTF_8);
+            CyclicBarrier barrier = new CyclicBarrier(numThreads);
+            ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executorService.submit(() -> {
+                    //hold on to a parser until all threads have one
+                    XMLReaderUtils.parseSAX(new ByteArrayInputStream(xml),
+                            new DefaultHandler() {
+                                @Override
+                                public void startDocument() throws SAXException {
+                                    try {
+                                        barrier.await(1, TimeUnit.MINUTES);
+                                    } catch (Exception e) {
+                                        throw new SAXException(e);
+                                    }
+                                }
+                            }, new ParseContext());
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            executorService.shutdownNow();
+
+            XMLReaderUtils.PoolMetrics metrics = XMLReaderUtils.getSAXParserPoolMetrics();
+            assertEquals(XMLReaderUtils.DEFAULT_POOL_SIZE, metrics.getHits());
+            assertEquals(numThreads - XMLReaderUtils.DEFAULT_POOL_SIZE, metrics.getMisses());
+            assertEquals(numThreads, metrics.getPeakInUse());
+            assertEquals(0, metrics.getInUse());
+            //the parsers that were built on demand were kept
+            assertEquals(numThreads, metrics.getIdle());
+
+            for (int i = 0; i < numThreads; i++) {
+                XMLReaderUtils.parseSAX(new ByteArrayInputStream(xml), new DefaultHandler(),
+                        new ParseContext());
+            }
+            metrics = XMLReaderUtils.getSAXParserPoolMetrics();
+            assertEquals(numThreads - XMLReaderUtils.DEFAULT_POOL_SIZE, metrics.getMisses());
+        } finally {
+            XMLReaderUtils.setPoolSize(XMLReaderUtils.DEFAULT_POOL_SIZE);
+        }
+    }
+
+    @Test
+    public void testResizeDropsOldParsers() throws Exception {
+        XMLReaderUtils.setPoolSize(2);
+        try {
+            byte[] xml = "<foo>bar</foo>".getBytes(StandardCharsets.UTF_8);
+            XMLReaderUtils.parseSAX(new ByteArrayInputStream(xml), new DefaultHandler() {
+                @Override
+                public void startDocument() throws SAXException {
+                    //resize while this parser is in use
+                    try {
+                        XMLReaderUtils.setPoolSize(1);
+                    } catch (TikaException e) {
+                        throw new SAXException(e);
+                    }
+                }
+            }, new ParseContext());
+            XMLReaderUtils.PoolMetrics metrics = XMLReaderUtils.getSAXParserPoolMetrics();
+            assertEquals(1, metrics.getIdle());
+            assertEquals(0, metrics.getInUse());
+            assertEquals(0, metrics.getHits());
+        } finally {
+            XMLReaderUtils.setPoolSize(XMLReaderUtils.DEFAULT_POOL_SIZE);
+        }
+    }
 }
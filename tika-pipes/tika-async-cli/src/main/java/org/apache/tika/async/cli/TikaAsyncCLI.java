@@ -19,6 +19,7 @@ package org.apache.tika.async.cli;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.cli.CommandLine;
@@ -135,12 +136,8 @@ public class TikaAsyncCLI {
                 }
             }
             processor.finished();
-            while (true) {
-                if (processor.checkActive()) {
-                    Thread.sleep(500);
-                } else {
-                    break;
-                }
+            while (!processor.awaitCompletion(1, TimeUnit.MINUTES)) {
+                LOG.debug("still processing; {} files so far", processor.getTotalProcessed());
             }
             long elapsed = System.currentTimeMillis() - start;
             LOG.info("Successfully finished processing {} files in {} ms", processor.getTotalProcessed(), elapsed);
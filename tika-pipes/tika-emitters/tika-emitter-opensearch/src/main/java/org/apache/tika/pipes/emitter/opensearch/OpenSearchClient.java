@@ -41,12 +41,16 @@ import org.slf4j.LoggerFactory;
 import org.apache.tika.client.TikaClientException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.pipes.emitter.EmitData;
+import org.apache.tika.pipes.emitter.TikaEmitterRejectedException;
 import org.apache.tika.utils.StringUtils;
 
 public class OpenSearchClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(OpenSearchEmitter.class);
 
+    //the cluster is overloaded, e.g. its write queue is full
+    private static final int TOO_MANY_REQUESTS = 429;
+
     //this includes the full url and the index, should not end in /
     //e.g. https://localhost:9200/my-index
     protected final String openSearchUrl;
@@ -68,7 +72,8 @@ public class OpenSearchClient {
     }
 
 
-    public void emitDocuments(List<? extends EmitData> emitData) throws IOException, TikaClientException {
+    public void emitDocuments(List<? extends EmitData> emitData)
+            throws IOException, TikaClientException, TikaEmitterRejectedException {
         StringBuilder json = new StringBuilder();
         for (EmitData d : emitData) {
             appendDoc(d.getEmitKey().getEmitKey(), d.getMetadataList(), json);
@@ -76,24 +81,56 @@ public class OpenSearchClient {
         emitJson(json);
     }
 
-    private void emitJson(StringBuilder json) throws IOException, TikaClientException {
+    private void emitJson(StringBuilder json)
+            throws IOException, TikaClientException, TikaEmitterRejectedException {
         String requestUrl = openSearchUrl + "/_bulk";
         JsonResponse response = postJson(requestUrl, json.toString());
-        if (response.getStatus() != 200) {
+        if (response.getStatus() == TOO_MANY_REQUESTS) {
+            throw new TikaEmitterRejectedException(response.getMsg());
+        } else if (response.getStatus() != 200) {
             throw new TikaClientException(response.getMsg());
         } else {
             //if there's a single error, throw the full json.
             //this has not been thoroughly tested with versions of es < 7
             JsonNode errorNode = response.getJson().get("errors");
             if (errorNode.asText().equals("true")) {
+                if (allItemsRejected(response.getJson())) {
+                    throw new TikaEmitterRejectedException(response.getJson().toString());
+                }
                 throw new TikaClientException(response.getJson().toString());
             }
         }
     }
 
+    /**
+     * @return whether every item that failed in a bulk response failed because the
+     * cluster was overloaded, in which case the whole request can be sent again
+     */
+    private static boolean allItemsRejected(JsonNode bulkResponse) {
+        JsonNode items = bulkResponse.get("items");
+        if (items == null || !items.isArray()) {
+            return false;
+        }
+        boolean rejected = false;
+        for (JsonNode item : items) {
+            //each item has a single field named after the action, e.g. "index"
+            for (JsonNode action : item) {
+                if (action.get("error") == null) {
+                    continue;
+                }
+                JsonNode status = action.get("status");
+                if (status == null || status.asInt() != TOO_MANY_REQUESTS) {
+                    return false;
+                }
+                rejected = true;
+            }
+        }
+        return rejected;
+    }
+
 
     public void emitDocument(String emitKey, List<Metadata> metadataList) throws IOException,
-            TikaClientException {
+            TikaClientException, TikaEmitterRejectedException {
 
         StringBuilder json = new StringBuilder();
         appendDoc(emitKey, metadataList, json);
@@ -33,6 +33,7 @@ import org.apache.solr.client.solrj.impl.Http2SolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +49,7 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.emitter.AbstractEmitter;
 import org.apache.tika.pipes.emitter.EmitData;
 import org.apache.tika.pipes.emitter.TikaEmitterException;
+import org.apache.tika.pipes.emitter.TikaEmitterRejectedException;
 import org.apache.tika.utils.StringUtils;
 
 
@@ -161,6 +163,13 @@ public class SolrEmitter extends AbstractEmitter implements Initializable {
                 if (updateResponse.getStatus() != 0) {
                     throw new TikaEmitterException("Bad status: " + updateResponse);
                 }
+            } catch (SolrException e) {
+                //429 from Solr's rate limiters, 503 from an overloaded or recovering node
+                if (e.code() == 429 ||
+                        e.code() == SolrException.ErrorCode.SERVICE_UNAVAILABLE.code) {
+                    throw new TikaEmitterRejectedException("Solr is overloaded", e);
+                }
+                throw new TikaEmitterException("Could not add batch to solr", e);
             } catch (Exception e) {
                 throw new TikaEmitterException("Could not add batch to solr", e);
             }
@@ -27,6 +27,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.ClientConfiguration;
@@ -40,6 +42,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,8 +60,10 @@ import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.pipes.fetcher.AbstractFetcher;
+import org.apache.tika.pipes.fetcher.ParallelRangeDownloader;
 import org.apache.tika.pipes.fetcher.RangeFetcher;
 import org.apache.tika.pipes.fetcher.s3.config.S3FetcherConfig;
+import org.apache.tika.utils.ConcurrentUtils;
 import org.apache.tika.utils.StringUtils;
 
 /**
@@ -89,6 +94,10 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
 
         setExtractUserMetadata(s3FetcherConfig.isExtractUserMetadata());
         setPathStyleAccessEnabled(s3FetcherConfig.isPathStyleAccessEnabled());
+
+        setParallelDownloadThresholdBytes(s3FetcherConfig.getParallelDownloadThresholdBytes());
+        setParallelDownloadPartSizeBytes(s3FetcherConfig.getParallelDownloadPartSizeBytes());
+        setParallelDownloadThreads(s3FetcherConfig.getParallelDownloadThreads());
     }
 
     private static final Logger LOGGER = LoggerFactory.getLogger(S3Fetcher.class);
@@ -130,6 +139,12 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
     private long maxLength = -1;
     private boolean pathStyleAccessEnabled = false;
 
+    private long parallelDownloadThresholdBytes = -1;
+    private long parallelDownloadPartSizeBytes = 16 * 1024 * 1024;
+    private int parallelDownloadThreads = 4;
+    //lazily created for the first parallel download
+    private ExecutorService parallelDownloadExecutor;
+
     @Override
     public InputStream fetch(String fetchKey, Metadata metadata, ParseContext parseContext) throws TikaException, IOException {
         return fetch(fetchKey, -1, -1, metadata);
@@ -190,30 +205,38 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         TemporaryResources tmp = null;
         try {
             long start = System.currentTimeMillis();
+            boolean isRange = startRange != null && endRange != null
+                    && startRange > -1 && endRange > -1;
+            if (spoolToTemp && !isRange && parallelDownloadThresholdBytes > -1) {
+                ObjectMetadata objectMetadata;
+                synchronized (clientLock) {
+                    objectMetadata = s3Client.getObjectMetadata(bucket, fetchKey);
+                }
+                if (objectMetadata.getContentLength() > parallelDownloadThresholdBytes) {
+                    updateMetadata(objectMetadata, metadata);
+                    LOGGER.debug("took {} ms to fetch file's metadata",
+                            System.currentTimeMillis() - start);
+                    start = System.currentTimeMillis();
+                    tmp = new TemporaryResources();
+                    Path tmpPath = tmp.createTempFile(FilenameUtils.getSuffixFromPath(fetchKey));
+                    parallelDownload(fetchKey, objectMetadata.getContentLength(), tmpPath);
+                    TikaInputStream tis = TikaInputStream.get(tmpPath, metadata, tmp);
+                    LOGGER.debug("took {} ms to download in parallel to local tmp file",
+                            System.currentTimeMillis() - start);
+                    return tis;
+                }
+            }
             GetObjectRequest objectRequest = new GetObjectRequest(bucket, fetchKey);
-            if (startRange != null && endRange != null
-                    && startRange > -1 && endRange > -1) {
+            if (isRange) {
                 objectRequest.withRange(startRange, endRange);
             }
             S3Object s3Object = null;
             synchronized (clientLock) {
                 s3Object = s3Client.getObject(objectRequest);
             }
-            long length = s3Object.getObjectMetadata().getContentLength();
-            metadata.set(Metadata.CONTENT_LENGTH, Long.toString(length));
-            if (maxLength > -1) {
-                if (length > maxLength) {
-                    throw new FileTooLongException(length, maxLength);
-                }
-            }
+            updateMetadata(s3Object.getObjectMetadata(), metadata);
             LOGGER.debug("took {} ms to fetch file's metadata", System.currentTimeMillis() - start);
 
-            if (extractUserMetadata) {
-                for (Map.Entry<String, String> e : s3Object.getObjectMetadata().getUserMetadata()
-                        .entrySet()) {
-                    metadata.add(PREFIX + ":" + e.getKey(), e.getValue());
-                }
-            }
             if (!spoolToTemp) {
                 return TikaInputStream.get(s3Object.getObjectContent());
             } else {
@@ -235,6 +258,58 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
         }
     }
 
+    private void updateMetadata(ObjectMetadata objectMetadata, Metadata metadata)
+            throws FileTooLongException {
+        long length = objectMetadata.getContentLength();
+        metadata.set(Metadata.CONTENT_LENGTH, Long.toString(length));
+        if (maxLength > -1) {
+            if (length > maxLength) {
+                throw new FileTooLongException(length, maxLength);
+            }
+        }
+        if (extractUserMetadata) {
+            for (Map.Entry<String, String> e : objectMetadata.getUserMetadata().entrySet()) {
+                metadata.add(PREFIX + ":" + e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void parallelDownload(String fetchKey, long length, Path target) throws IOException {
+        //each part gets the same retries and throttling as a whole fetch
+        ParallelRangeDownloader downloader = new ParallelRangeDownloader(
+                getParallelDownloadExecutor(), parallelDownloadPartSizeBytes, throttleSeconds,
+                S3Fetcher::isRetryable);
+        downloader.download((start, end) -> {
+            GetObjectRequest objectRequest =
+                    new GetObjectRequest(bucket, fetchKey).withRange(start, end);
+            try {
+                S3Object s3Object;
+                synchronized (clientLock) {
+                    s3Object = s3Client.getObject(objectRequest);
+                }
+                return s3Object.getObjectContent();
+            } catch (AmazonClientException e) {
+                throw new IOException(e);
+            }
+        }, length, target);
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e.getCause() instanceof AmazonS3Exception) {
+            String errorCode = ((AmazonS3Exception) e.getCause()).getErrorCode();
+            return errorCode == null || !NO_RETRY_ERROR_CODES.contains(errorCode);
+        }
+        return true;
+    }
+
+    private synchronized ExecutorService getParallelDownloadExecutor() {
+        if (parallelDownloadExecutor == null) {
+            parallelDownloadExecutor = Executors.newFixedThreadPool(parallelDownloadThreads,
+                    ConcurrentUtils.newIOThreadFactory("s3-fetcher-download-", false));
+        }
+        return parallelDownloadExecutor;
+    }
+
     @Field
     public void setSpoolToTemp(boolean spoolToTemp) {
         this.spoolToTemp = spoolToTemp;
@@ -413,4 +488,42 @@ public class S3Fetcher extends AbstractFetcher implements Initializable, RangeFe
     public void setPathStyleAccessEnabled(boolean pathStyleAccessEnabled) {
         this.pathStyleAccessEnabled = pathStyleAccessEnabled;
     }
+
+    /**
+     * If this is <code>&gt; -1</code> and {@link #setSpoolToTemp(boolean)} is
+     * <code>true</code>, objects larger than this many bytes are downloaded as several
+     * byte ranges at the same time.  A range that fails is retried on its own, with
+     * the same {@link #setThrottleSeconds(String) throttling} as a whole fetch.
+     * This costs an extra request for the object's metadata before every fetch.
+     * The default, <code>-1</code>, downloads every object as a single stream.
+     *
+     * @param parallelDownloadThresholdBytes
+     */
+    @Field
+    public void setParallelDownloadThresholdBytes(long parallelDownloadThresholdBytes) {
+        this.parallelDownloadThresholdBytes = parallelDownloadThresholdBytes;
+    }
+
+    /**
+     * Size of the byte ranges for parallel downloads; see
+     * {@link #setParallelDownloadThresholdBytes(long)}.  The default is 16MB.
+     *
+     * @param parallelDownloadPartSizeBytes
+     */
+    @Field
+    public void setParallelDownloadPartSizeBytes(long parallelDownloadPartSizeBytes) {
+        this.parallelDownloadPartSizeBytes = parallelDownloadPartSizeBytes;
+    }
+
+    /**
+     * Number of byte ranges to download at the same time, across all parallel
+     * downloads by this fetcher.  This should not be more than
+     * {@link #setMaxConnections(int)}.  The default is 4.
+     *
+     * @param parallelDownloadThreads
+     */
+    @Field
+    public void setParallelDownloadThreads(int parallelDownloadThreads) {
+        this.parallelDownloadThreads = parallelDownloadThreads;
+    }
 }
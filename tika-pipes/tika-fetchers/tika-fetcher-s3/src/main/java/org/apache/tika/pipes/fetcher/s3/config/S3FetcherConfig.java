@@ -34,6 +34,9 @@ public class S3FetcherConfig extends AbstractConfig {
     private String endpointConfigurationService;
     private boolean pathStyleAccessEnabled;
     private long[] throttleSeconds;
+    private long parallelDownloadThresholdBytes = -1;
+    private long parallelDownloadPartSizeBytes = 16 * 1024 * 1024;
+    private int parallelDownloadThreads = 4;
 
     public boolean isSpoolToTemp() {
         return spoolToTemp;
@@ -169,4 +172,31 @@ public class S3FetcherConfig extends AbstractConfig {
         this.throttleSeconds = throttleSeconds;
         return this;
     }
+
+    public long getParallelDownloadThresholdBytes() {
+        return parallelDownloadThresholdBytes;
+    }
+
+    public S3FetcherConfig setParallelDownloadThresholdBytes(long parallelDownloadThresholdBytes) {
+        this.parallelDownloadThresholdBytes = parallelDownloadThresholdBytes;
+        return this;
+    }
+
+    public long getParallelDownloadPartSizeBytes() {
+        return parallelDownloadPartSizeBytes;
+    }
+
+    public S3FetcherConfig setParallelDownloadPartSizeBytes(long parallelDownloadPartSizeBytes) {
+        this.parallelDownloadPartSizeBytes = parallelDownloadPartSizeBytes;
+        return this;
+    }
+
+    public int getParallelDownloadThreads() {
+        return parallelDownloadThreads;
+    }
+
+    public S3FetcherConfig setParallelDownloadThreads(int parallelDownloadThreads) {
+        this.parallelDownloadThreads = parallelDownloadThreads;
+        return this;
+    }
 }
@@ -117,6 +117,10 @@ public class AZBlobPipesIterator extends PipesIterator implements Initializable
                     .getContentLength() == 0) {
                 continue;
             }
+            if (!shouldProcess(blob.getName(), blob.getProperties().getETag() + ":" +
+                    blob.getProperties().getContentLength())) {
+                continue;
+            }
             long elapsed = System.currentTimeMillis() - start;
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("adding ({}) {} in {} ms", count, blob.getName(), elapsed);
@@ -125,7 +129,7 @@ public class AZBlobPipesIterator extends PipesIterator implements Initializable
             ParseContext parseContext = new ParseContext();
             parseContext.set(HandlerConfig.class, handlerConfig);
             tryToAdd(new FetchEmitTuple(blob.getName(), new FetchKey(fetcherName, blob.getName()), new EmitKey(emitterName, blob.getName()), new Metadata(), parseContext,
-                    getOnParseException()));
+                    getOnParseException()), blob.getProperties().getContentLength());
             count++;
         }
         long elapsed = System.currentTimeMillis() - start;
@@ -111,13 +111,16 @@ public class GCSPipesIterator extends PipesIterator implements Initializable {
             if (blob.getSize() == 0) {
                 continue;
             }
+            if (!shouldProcess(blob.getName(), blob.getEtag() + ":" + blob.getSize())) {
+                continue;
+            }
             long elapsed = System.currentTimeMillis() - start;
             LOGGER.debug("adding ({}) {} in {} ms", count, blob.getName(), elapsed);
             //TODO -- allow user specified metadata as the "id"?
             ParseContext parseContext = new ParseContext();
             parseContext.set(HandlerConfig.class, handlerConfig);
             tryToAdd(new FetchEmitTuple(blob.getName(), new FetchKey(fetcherName, blob.getName()), new EmitKey(emitterName, blob.getName()), new Metadata(), parseContext,
-                    getOnParseException()));
+                    getOnParseException()), blob.getSize());
             count++;
         }
         long elapsed = System.currentTimeMillis() - start;
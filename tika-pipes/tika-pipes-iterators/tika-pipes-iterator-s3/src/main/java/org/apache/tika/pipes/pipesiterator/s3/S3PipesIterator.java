@@ -195,13 +195,16 @@ public class S3PipesIterator extends PipesIterator implements Initializable {
             if (fileNameMatcher != null && !accept(fileNameMatcher, summary.getKey())) {
                 continue;
             }
+            if (!shouldProcess(summary.getKey(), summary.getETag() + ":" + summary.getSize())) {
+                continue;
+            }
             long elapsed = System.currentTimeMillis() - start;
             LOGGER.debug("adding ({}) {} in {} ms", count, summary.getKey(), elapsed);
             //TODO -- allow user specified metadata as the "id"?
             ParseContext parseContext = new ParseContext();
             parseContext.set(HandlerConfig.class, handlerConfig);
             tryToAdd(new FetchEmitTuple(summary.getKey(), new FetchKey(fetcherName, summary.getKey()), new EmitKey(emitterName, summary.getKey()), new Metadata(), parseContext,
-                    getOnParseException()));
+                    getOnParseException()), summary.getSize());
             count++;
         }
         long elapsed = System.currentTimeMillis() - start;
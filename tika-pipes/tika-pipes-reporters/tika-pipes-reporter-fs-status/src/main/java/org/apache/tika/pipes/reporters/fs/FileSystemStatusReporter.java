@@ -192,6 +192,11 @@ public class FileSystemStatusReporter extends PipesReporter
         this.totalCountResult = totalCountResult;
     }
 
+    @Override
+    public void reportQueueSizes(Map<String, Integer> queueSizes) {
+        asyncStatus.updateQueueSizes(queueSizes);
+    }
+
     @Override
     public boolean supportsTotalCount() {
         return true;
@@ -40,25 +40,43 @@ public class JsonStreamingSerializer implements AutoCloseable {
     }
 
     public void add(Metadata metadata) throws IOException {
-        if (!hasStartedArray) {
-            jsonGenerator = new JsonFactory()
-                    .setStreamReadConstraints(StreamReadConstraints
-                            .builder()
-                            .maxStringLength(TikaConfig.getMaxJsonStringFieldLength())
-                            .build())
-                    .createGenerator(writer);
-            jsonGenerator.writeStartArray();
-            hasStartedArray = true;
-        }
+        startArray();
         String[] names = metadata.names();
         Arrays.sort(names);
         JsonMetadata.writeMetadataObject(metadata, jsonGenerator, false);
     }
 
+    /**
+     * Writes what has been added so far through to the underlying writer and
+     * flushes it, e.g. so that a client sees each metadata object as soon as
+     * it's added.
+     */
+    public void flush() throws IOException {
+        if (jsonGenerator != null) {
+            jsonGenerator.flush();
+        }
+    }
+
     @Override
     public void close() throws IOException {
+        //write an empty array if nothing was added
+        startArray();
         jsonGenerator.writeEndArray();
         jsonGenerator.flush();
         jsonGenerator.close();
     }
+
+    private void startArray() throws IOException {
+        if (hasStartedArray) {
+            return;
+        }
+        jsonGenerator = new JsonFactory()
+                .setStreamReadConstraints(StreamReadConstraints
+                        .builder()
+                        .maxStringLength(TikaConfig.getMaxJsonStringFieldLength())
+                        .build())
+                .createGenerator(writer);
+        jsonGenerator.writeStartArray();
+        hasStartedArray = true;
+    }
 }
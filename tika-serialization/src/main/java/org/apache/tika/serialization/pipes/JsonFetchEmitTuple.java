@@ -51,6 +51,8 @@ public class JsonFetchEmitTuple {
     public static final String EMITKEY = "emitKey";
     public static final String METADATAKEY = "metadata";
     public static final String ON_PARSE_EXCEPTION = "onParseException";
+    public static final String PRIORITY = "priority";
+    public static final String SIZE = "size";
 
     public static FetchEmitTuple fromJson(Reader reader) throws IOException {
         JsonNode root = new ObjectMapper().readTree(reader);
@@ -71,8 +73,11 @@ public class JsonFetchEmitTuple {
         ParseContext parseContext = parseContextNode == null ? new ParseContext() : ParseContextDeserializer.readParseContext(parseContextNode);
         FetchEmitTuple.ON_PARSE_EXCEPTION onParseException = readOnParseException(root);
 
-        return new FetchEmitTuple(id, new FetchKey(fetcherName, fetchKey, fetchRangeStart, fetchRangeEnd), new EmitKey(emitterName, emitKey), metadata, parseContext,
+        FetchEmitTuple t = new FetchEmitTuple(id, new FetchKey(fetcherName, fetchKey, fetchRangeStart, fetchRangeEnd), new EmitKey(emitterName, emitKey), metadata, parseContext,
                 onParseException);
+        t.setPriority((int) readLong(PRIORITY, root, FetchEmitTuple.DEFAULT_PRIORITY, false));
+        t.setSize(readLong(SIZE, root, FetchEmitTuple.UNKNOWN_SIZE, false));
+        return t;
     }
 
     private static FetchEmitTuple.ON_PARSE_EXCEPTION readOnParseException(JsonNode root) throws IOException {
@@ -185,6 +190,12 @@ public class JsonFetchEmitTuple {
                 .getOnParseException()
                 .name()
                 .toLowerCase(Locale.US));
+        if (t.getPriority() != FetchEmitTuple.DEFAULT_PRIORITY) {
+            jsonGenerator.writeNumberField(PRIORITY, t.getPriority());
+        }
+        if (t.getSize() != FetchEmitTuple.UNKNOWN_SIZE) {
+            jsonGenerator.writeNumberField(SIZE, t.getSize());
+        }
         if (!t
                 .getParseContext()
                 .isEmpty()) {
@@ -65,11 +65,20 @@ public class JsonMetadataListTest {
         writer = new StringWriter();
         try (JsonStreamingSerializer streamingSerializer = new JsonStreamingSerializer(writer)) {
             streamingSerializer.add(m1);
+            streamingSerializer.flush();
+            //the first object is written through before the array is closed
+            assertTrue(writer.toString().startsWith("[{"));
             streamingSerializer.add(m2);
         }
         deserialized = JsonMetadataList.fromJson(new StringReader(writer.toString()));
         assertEquals(metadataList, deserialized);
 
+        writer = new StringWriter();
+        try (JsonStreamingSerializer streamingSerializer = new JsonStreamingSerializer(writer)) {
+            //nothing added
+        }
+        assertEquals(0, JsonMetadataList.fromJson(new StringReader(writer.toString())).size());
+
     }
 
     @Test
@@ -100,4 +100,19 @@ public class JsonFetchEmitTupleTest {
         assertEquals(t, deserialized);
 
     }
+
+    @Test
+    public void testPriority() throws Exception {
+        FetchEmitTuple t = new FetchEmitTuple("my_id", new FetchKey("my_fetcher", "fetchKey1"), new EmitKey("my_emitter", "emitKey1"), new Metadata(), new ParseContext(),
+                FetchEmitTuple.ON_PARSE_EXCEPTION.SKIP);
+        t.setPriority(10);
+        t.setSize(12345);
+        StringWriter writer = new StringWriter();
+        JsonFetchEmitTuple.toJson(t, writer);
+        Reader reader = new StringReader(writer.toString());
+        FetchEmitTuple deserialized = JsonFetchEmitTuple.fromJson(reader);
+        assertEquals(10, deserialized.getPriority());
+        assertEquals(12345, deserialized.getSize());
+        assertEquals(t, deserialized);
+    }
 }
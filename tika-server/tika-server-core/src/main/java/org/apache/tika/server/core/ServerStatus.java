@@ -17,13 +17,23 @@
 package org.apache.tika.server.core;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Tracks the tasks in progress in this server.  Every request starts and completes
+ * a task, so none of this takes a lock: the tasks are in a
+ * {@link ConcurrentHashMap}, whose size is kept in striped counters, and the
+ * status is volatile.  Readers such as the {@link ServerStatusWatcher} see the
+ * tasks through a weakly consistent view and never block the request threads.
+ */
 public class ServerStatus {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerStatus.class);
@@ -31,9 +41,9 @@ public class ServerStatus {
     private final int numRestarts;
 
     private final boolean isLegacy;
-    private AtomicLong counter = new AtomicLong(0);
-    private Map<Long, TaskStatus> tasks = new HashMap<>();
-    private STATUS status = STATUS.OPERATING;
+    private final AtomicLong counter = new AtomicLong(0);
+    private final Map<Long, TaskStatus> tasks = new ConcurrentHashMap<>();
+    private volatile STATUS status = STATUS.OPERATING;
     private volatile long lastStarted = Instant
             .now()
             .toEpochMilli();
@@ -48,7 +58,7 @@ public class ServerStatus {
         this.isLegacy = isLegacy;
     }
 
-    public synchronized long start(TASK task, String fileName, long timeoutMillis) {
+    public long start(TASK task, String fileName, long timeoutMillis) {
         long taskId = counter.incrementAndGet();
         Instant now = Instant.now();
         lastStarted = now.toEpochMilli();
@@ -62,26 +72,41 @@ public class ServerStatus {
      * @param taskId
      * @throws IllegalArgumentException if there is no task by that taskId in the collection
      */
-    public synchronized void complete(long taskId) throws IllegalArgumentException {
+    public void complete(long taskId) throws IllegalArgumentException {
         TaskStatus status = tasks.remove(taskId);
         if (status == null) {
             throw new IllegalArgumentException("TaskId is not in map:" + taskId);
         }
     }
 
-    public synchronized STATUS getStatus() {
+    public STATUS getStatus() {
         return status;
     }
 
-    public synchronized void setStatus(STATUS status) {
+    public void setStatus(STATUS status) {
         this.status = status;
     }
 
-    public synchronized Map<Long, TaskStatus> getTasks() {
+    /**
+     * @return a copy of the tasks in progress
+     */
+    public Map<Long, TaskStatus> getTasks() {
         return new HashMap<>(tasks);
     }
 
-    public synchronized long getFilesProcessed() {
+    /**
+     * @return an unmodifiable, weakly consistent view of the tasks in progress;
+     * unlike {@link #getTasks()}, this doesn't copy anything
+     */
+    public Collection<TaskStatus> getTaskStatuses() {
+        return Collections.unmodifiableCollection(tasks.values());
+    }
+
+    public int getNumTasks() {
+        return tasks.size();
+    }
+
+    public long getFilesProcessed() {
         return counter.get();
     }
 
@@ -94,7 +119,7 @@ public class ServerStatus {
     /**
      * @return true if this is legacy, otherwise whether or not status == OPERATING.
      */
-    public synchronized boolean isOperating() {
+    public boolean isOperating() {
         if (isLegacy) {
             return true;
         }
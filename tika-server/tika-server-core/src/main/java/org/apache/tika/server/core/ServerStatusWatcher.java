@@ -100,9 +100,7 @@ public class ServerStatusWatcher implements Runnable {
                         statusBuffer.putInt(8, serverStatus
                                 .getStatus()
                                 .getInt());
-                        statusBuffer.putInt(12, serverStatus
-                                .getTasks()
-                                .size());
+                        statusBuffer.putInt(12, serverStatus.getNumTasks());
                         channel.write(statusBuffer);
                         channel.force(true);
                         return;
@@ -133,9 +131,7 @@ public class ServerStatusWatcher implements Runnable {
 
     private void checkForTaskTimeouts() {
         Instant now = Instant.now();
-        for (TaskStatus status : serverStatus
-                .getTasks()
-                .values()) {
+        for (TaskStatus status : serverStatus.getTaskStatuses()) {
             long millisElapsed = Duration
                     .between(status.started, now)
                     .toMillis();
@@ -43,6 +43,7 @@ public class TikaServerCli {
      */
     public static String TIKA_SERVER_ID_ENV = "tika.server.id";
     private static List<TikaServerWatchDog> WATCHERS = new ArrayList<>();
+    private static TikaServerDispatcher DISPATCHER = null;
 
     private static boolean PREVENT_STOP = false;
 
@@ -107,6 +108,11 @@ public class TikaServerCli {
             WATCHERS.add(watcher);
         }
 
+        if (tikaServerConfig.getDispatcherPort() > -1) {
+            DISPATCHER = new TikaServerDispatcher(tikaServerConfig.getHost(), tikaServerConfig.getDispatcherPort(), WATCHERS);
+            DISPATCHER.start();
+        }
+
         int finished = 0;
         try {
             while (finished < portIdPairs.size()) {
@@ -124,6 +130,9 @@ public class TikaServerCli {
             }
             LOG.debug("thread interrupted", e);
         } finally {
+            if (DISPATCHER != null) {
+                DISPATCHER.close();
+            }
             //this is just asking nicely...there is no guarantee!
             executorService.shutdownNow();
         }
@@ -147,6 +156,9 @@ public class TikaServerCli {
             System.exit(-1);
         }
 
+        if (DISPATCHER != null) {
+            DISPATCHER.close();
+        }
         for (TikaServerWatchDog watcher : WATCHERS) {
             try {
                 watcher.close();
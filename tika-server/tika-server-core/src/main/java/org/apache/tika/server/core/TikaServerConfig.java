@@ -79,8 +79,8 @@ public class TikaServerConfig extends ConfigBase {
                     "drive or a webpage from your intranet and/or send malicious content to\n" + " your emitter endpoints.  See CVE-2015-3271.\n" +
                     "Please make sure you know what you are doing.";
     private static final List<String> ONLY_IN_FORK_MODE = Arrays.asList(
-            new String[]{"taskTimeoutMillis", "taskPulseMillis", "maxFiles", "javaPath", "maxRestarts", "numRestarts", "forkedStatusFile", "maxForkedStartupMillis",
-                    "tmpFilePrefix"});
+            new String[]{"taskTimeoutMillis", "taskPulseMillis", "maxFiles", "javaPath", "maxRestarts", "numRestarts", "numTimeouts", "numOoms", "forkedStatusFile", "maxForkedStartupMillis",
+                    "tmpFilePrefix", "classDataSharingArchive", "dispatcherPort"});
     private static Pattern SYS_PROPS = Pattern.compile("\\$\\{sys:([-_0-9A-Za-z]+)\\}");
     /*
 TODO: integrate these settings:
@@ -119,6 +119,8 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
     private int digestMarkLimit = DEFAULT_DIGEST_MARK_LIMIT;
     private String digest = "";
     private String javaPath = "java";
+    private Path classDataSharingArchive;
+    private int dispatcherPort = -1;
     //debug or info only
     private String logLevel = "";
     private Path configPath;
@@ -127,6 +129,8 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
     //and they are automatically set by the forking process
     private String forkedStatusFile;
     private int numRestarts = 0;
+    private int numTimeouts = 0;
+    private int numOoms = 0;
 
     private boolean preventStopMethod = false;
 
@@ -176,6 +180,16 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
             settings.add("numRestarts");
         }
 
+        if (commandLine.hasOption("numTimeouts")) {
+            config.setNumTimeouts(Integer.parseInt(commandLine.getOptionValue("numTimeouts")));
+            settings.add("numTimeouts");
+        }
+
+        if (commandLine.hasOption("numOoms")) {
+            config.setNumOoms(Integer.parseInt(commandLine.getOptionValue("numOoms")));
+            settings.add("numOoms");
+        }
+
         if (commandLine.hasOption("forkedStatusFile")) {
             config.setForkedStatusFile(commandLine.getOptionValue("forkedStatusFile"));
             settings.add("forkedStatusFile");
@@ -429,6 +443,40 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         this.forkedJvmArgs = new ArrayList<>(interpolateSysProps(forkedJvmArgs));
     }
 
+    public int getDispatcherPort() {
+        return dispatcherPort;
+    }
+
+    /**
+     * If set, the forking process listens on this port and hands each request to
+     * the forked server on {@link #getPorts()} with the fewest requests in progress.
+     * Clients can then use one endpoint for all of the forked servers, and a restart
+     * only affects the requests that were sent to that forked server.
+     * Not allowed with TLS or if noFork=true.  The default, -1, turns this off.
+     *
+     * @param dispatcherPort
+     */
+    public void setDispatcherPort(int dispatcherPort) {
+        this.dispatcherPort = dispatcherPort;
+    }
+
+    public Path getClassDataSharingArchive() {
+        return classDataSharingArchive;
+    }
+
+    /**
+     * Start the forked process with this Application Class Data Sharing archive
+     * to cut its startup time after every restart.  See
+     * {@link org.apache.tika.utils.ClassDataSharingUtils} for how to create it.
+     * If the archive is missing or doesn't match the JVM and class path, the
+     * forked process starts without it.
+     *
+     * @param classDataSharingArchive
+     */
+    public void setClassDataSharingArchive(String classDataSharingArchive) {
+        this.classDataSharingArchive = Paths.get(classDataSharingArchive);
+    }
+
     public String getTempFilePrefix() {
         return tempFilePrefix;
     }
@@ -450,6 +498,17 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
             setPort(port);
         }
 
+        if (dispatcherPort > -1) {
+            if (tlsConfig.isActive()) {
+                throw new TikaConfigException("Can't use a dispatcherPort with TLS");
+            }
+            for (int p : getPorts()) {
+                if (p == dispatcherPort) {
+                    throw new TikaConfigException("dispatcherPort must not be one of the forked servers' ports: " + dispatcherPort);
+                }
+            }
+        }
+
         if (isNoFork()) {
             for (String onlyFork : ONLY_IN_FORK_MODE) {
                 if (settings.contains(onlyFork)) {
@@ -597,6 +656,14 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         return numRestarts;
     }
 
+    public int getNumTimeouts() {
+        return numTimeouts;
+    }
+
+    public int getNumOoms() {
+        return numOoms;
+    }
+
     /******
      * these should only be used in the commandline for a forked process
      ******/
@@ -606,6 +673,14 @@ private long forkedProcessShutdownMillis = DEFAULT_FORKED_PROCESS_SHUTDOWN_MILLI
         this.numRestarts = numRestarts;
     }
 
+    private void setNumTimeouts(int numTimeouts) {
+        this.numTimeouts = numTimeouts;
+    }
+
+    private void setNumOoms(int numOoms) {
+        this.numOoms = numOoms;
+    }
+
     public String getForkedStatusFile() {
         return forkedStatusFile;
     }
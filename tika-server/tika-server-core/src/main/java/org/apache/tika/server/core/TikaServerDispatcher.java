@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tika.server.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single endpoint in front of the forked servers.  Each request is passed
+ * through to the forked server that has the fewest requests in progress and
+ * the response is streamed back, so clients don't need to know how many
+ * forked servers there are, and a restart only fails the requests that were
+ * in that forked server.
+ * <p>
+ * The load of a forked server is the larger of the number of requests this
+ * dispatcher has in flight to it and the number of tasks in its status file.
+ * The status file is only read every taskPulseMillis, so it mostly catches
+ * requests that were sent to the forked server's own port.  Forked servers
+ * that are starting up or shutting down are skipped.  If none is running,
+ * the client gets a 503.
+ */
+public class TikaServerDispatcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TikaServerDispatcher.class);
+
+    //these are set by the HttpClient/HttpServer or only apply to one hop
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of("connection", "content-length", "expect", "host", "keep-alive", "proxy-authenticate",
+            "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade");
+
+    private final List<Child> children;
+    private final AtomicInteger[] inFlight;
+    private final String childHost;
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final HttpClient httpClient;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param host     host to listen on; the forked servers are reached on the
+     *                 same host, or on localhost if this is 0.0.0.0
+     * @param port     port to listen on
+     * @param children the forked servers to dispatch to
+     */
+    public TikaServerDispatcher(String host, int port, List<? extends Child> children) throws IOException {
+        this.children = List.copyOf(children);
+        this.inFlight = new AtomicInteger[children.size()];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new AtomicInteger();
+        }
+        this.childHost = "0.0.0.0".equals(host) ? "localhost" : host;
+        this.executorService = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "tika-server-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient
+                .newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executorService)
+                .build();
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(executorService);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("dispatching requests on {}:{} to {} forked servers", server
+                .getAddress()
+                .getHostString(), getPort(), children.size());
+    }
+
+    public int getPort() {
+        return server
+                .getAddress()
+                .getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    /**
+     * @return the index of the running child with the lowest load, starting the
+     * search at a different child each time so that ties are spread around;
+     * -1 if no child is running
+     */
+    int select() {
+        int start = Math.floorMod(next.getAndIncrement(), children.size());
+        int best = -1;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < children.size(); i++) {
+            int c = (start + i) % children.size();
+            Child child = children.get(c);
+            if (!child.isRunning()) {
+                continue;
+            }
+            int load = Math.max(inFlight[c].get(), child.getNumTasks());
+            if (load < bestLoad) {
+                best = c;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int c = select();
+            if (c < 0) {
+                LOG.warn("no forked server is running; can't dispatch {}", exchange.getRequestURI());
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            AtomicInteger counter = inFlight[c];
+            counter.incrementAndGet();
+            try {
+                forward(exchange, children.get(c));
+            } finally {
+                counter.decrementAndGet();
+            }
+        }
+    }
+
+    private void forward(HttpExchange exchange, Child child) throws IOException {
+        URI uri = URI.create("http://" + childHost + ":" + child.getPort() + exchange
+                .getRequestURI()
+                .toString());
+        HttpRequest.Builder builder = HttpRequest
+                .newBuilder(uri)
+                .method(exchange.getRequestMethod(), getBodyPublisher(exchange));
+        for (Map.Entry<String, List<String>> e : exchange
+                .getRequestHeaders()
+                .entrySet()) {
+            if (HOP_BY_HOP_HEADERS.contains(e
+                    .getKey()
+                    .toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String v : e.getValue()) {
+                builder.header(e.getKey(), v);
+            }
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (ConnectException e) {
+            //most likely restarting between status checks
+            LOG.warn("couldn't connect to forked server on port {}", child.getPort(), e);
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        } catch (InterruptedException e) {
+            Thread
+                    .currentThread()
+                    .interrupt();
+            throw new IOException(e);
+        }
+
+        for (Map.Entry<String, List<String>> e : response
+                .headers()
+                .map()
+                .entrySet()) {
+            if (HOP_BY_HOP_HEADERS.contains(e
+                    .getKey()
+                    .toLowerCase(Locale.ROOT)) || e
+                    .getKey()
+                    .startsWith(":")) {
+                continue;
+            }
+            exchange
+                    .getResponseHeaders()
+                    .put(e.getKey(), e.getValue());
+        }
+        try (InputStream is = response.body()) {
+            OptionalLong contentLength = response
+                    .headers()
+                    .firstValueAsLong("Content-Length");
+            //for HttpServer, -1 means no body and 0 means chunked
+            long responseLength;
+            if ("HEAD".equals(exchange.getRequestMethod()) || response.statusCode() == 204 || response.statusCode() == 304) {
+                responseLength = -1;
+            } else if (contentLength.isPresent()) {
+                responseLength = contentLength.getAsLong() == 0 ? -1 : contentLength.getAsLong();
+            } else {
+                responseLength = 0;
+            }
+            exchange.sendResponseHeaders(response.statusCode(), responseLength);
+            if (responseLength < 0) {
+                return;
+            }
+            try (OutputStream os = exchange.getResponseBody()) {
+                is.transferTo(os);
+            }
+        }
+    }
+
+    private static HttpRequest.BodyPublisher getBodyPublisher(HttpExchange exchange) {
+        String contentLength = exchange
+                .getRequestHeaders()
+                .getFirst("Content-Length");
+        if (contentLength != null) {
+            long length = Long.parseLong(contentLength.trim());
+            if (length == 0) {
+                return HttpRequest.BodyPublishers.noBody();
+            }
+            return HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(exchange::getRequestBody), length);
+        }
+        if (exchange
+                .getRequestHeaders()
+                .containsKey("Transfer-Encoding")) {
+            return HttpRequest.BodyPublishers.ofInputStream(exchange::getRequestBody);
+        }
+        return HttpRequest.BodyPublishers.noBody();
+    }
+
+    /**
+     * A forked server that requests can be dispatched to.
+     */
+    public interface Child {
+
+        int getPort();
+
+        boolean isRunning();
+
+        int getNumTasks();
+    }
+}
@@ -61,6 +61,7 @@ import org.apache.tika.Tika;
 import org.apache.tika.config.ServiceLoader;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.metrics.ParseMetrics;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.digestutils.BouncyCastleDigester;
 import org.apache.tika.parser.digestutils.CommonsDigester;
@@ -70,6 +71,7 @@ import org.apache.tika.server.core.resource.AsyncResource;
 import org.apache.tika.server.core.resource.DetectorResource;
 import org.apache.tika.server.core.resource.LanguageResource;
 import org.apache.tika.server.core.resource.MetadataResource;
+import org.apache.tika.server.core.resource.MetricsResource;
 import org.apache.tika.server.core.resource.PipesResource;
 import org.apache.tika.server.core.resource.RecursiveMetadataResource;
 import org.apache.tika.server.core.resource.TikaDetectors;
@@ -111,6 +113,8 @@ public class TikaServerProcess {
                 "Not allowed in -noFork: temporary file used to communicate " + "with forking process -- do not use this! " + "Should only be invoked by forking process.");
         options.addOption("tmpFilePrefix", true, "Not allowed in -noFork: prefix for temp file - for debugging only");
         options.addOption("numRestarts", true, "Not allowed in -noFork: number of times that " + "the forked server has had to be restarted.");
+        options.addOption("numTimeouts", true, "Not allowed in -noFork: number of times that " + "the forked server has been restarted after a timeout.");
+        options.addOption("numOoms", true, "Not allowed in -noFork: number of times that " + "the forked server has been restarted after an OOM.");
         return options;
     }
 
@@ -223,6 +227,10 @@ public class TikaServerProcess {
             serverStatus = new ServerStatus(serverId, 0, true);
         } else {
             serverStatus = new ServerStatus(serverId, tikaServerConfig.getNumRestarts(), false);
+            ParseMetrics metrics = ParseMetrics.getDefault();
+            metrics.addRestarts(tikaServerConfig.getNumRestarts());
+            metrics.addTimeouts(tikaServerConfig.getNumTimeouts());
+            metrics.addOoms(tikaServerConfig.getNumOoms());
             System.setOut(System.err);
         }
         TikaResource.init(tika, tikaServerConfig, digester, inputStreamFactory, serverStatus);
@@ -374,6 +382,7 @@ public class TikaServerProcess {
                     addPipesResource = true;
                 }
                 resourceProviders.add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                resourceProviders.add(new SingletonResourceProvider(new MetricsResource(serverStatus)));
             }
         } else {
             for (String endPoint : tikaServerConfig.getEndpoints()) {
@@ -405,6 +414,8 @@ public class TikaServerProcess {
                     addAsyncResource = true;
                 } else if ("status".equals(endPoint)) {
                     resourceProviders.add(new SingletonResourceProvider(new TikaServerStatus(serverStatus)));
+                } else if ("metrics".equals(endPoint)) {
+                    resourceProviders.add(new SingletonResourceProvider(new MetricsResource(serverStatus)));
                 }
             }
         }
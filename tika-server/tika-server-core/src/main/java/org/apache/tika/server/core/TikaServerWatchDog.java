@@ -48,9 +48,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.utils.ClassDataSharingUtils;
 import org.apache.tika.utils.ProcessUtils;
 
-public class TikaServerWatchDog implements Callable<WatchDogResult> {
+public class TikaServerWatchDog implements Callable<WatchDogResult>, TikaServerDispatcher.Child {
 
     private static final Logger LOG = LoggerFactory.getLogger(TikaServerWatchDog.class);
     private static Set<Process> PROCESSES = ConcurrentHashMap.newKeySet();
@@ -82,8 +83,11 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
     private final Object[] forkedStatusLock = new Object[0];
     private volatile FORKED_STATUS forkedStatus = FORKED_STATUS.INITIALIZING;
     private volatile Instant lastPing = null;
+    private volatile int numTasks = 0;
     private ForkedProcess forkedProcess = null;
     private int restarts = 0;
+    private int timeouts = 0;
+    private int ooms = 0;
     private volatile boolean shutDown = false;
 
     TikaServerWatchDog(int port, String id, TikaServerConfig tikaServerConfig) {
@@ -145,6 +149,7 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
                 try {
                     if (mustRestart) {
+                        setForkedStatus(FORKED_STATUS.INITIALIZING);
                         forkedProcess = startForkedProcess(restarts++);
                         if (forkedProcess == null) {
                             if (!shutDown) {
@@ -158,11 +163,19 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                     }
                     boolean exited = forkedProcess.process.waitFor(tikaServerConfig.getTaskPulseMillis(), TimeUnit.MILLISECONDS);
                     if (exited) {
-                        LOG.info("forked process exited with exit value {}", forkedProcess.process.exitValue());
+                        int exitValue = forkedProcess.process.exitValue();
+                        LOG.info("forked process exited with exit value {}", exitValue);
+                        if (exitValue == ServerStatus.STATUS.TIMEOUT.getShutdownCode()) {
+                            timeouts++;
+                        } else if (exitValue == ServerStatus.STATUS.ERROR.getShutdownCode()) {
+                            //the forked process only sets ERROR on an OOM
+                            ooms++;
+                        }
                         closeForkedProcess(forkedProcess);
                         mustRestart = true;
                     } else {
                         ForkedStatus status = forkedProcess.readStatus();
+                        numTasks = Math.max(status.numTasks, 0);
                         if (status.status == FORKED_STATUS.FAILED_COMMUNICATION.ordinal()) {
                             LOG.info("failed to read from status file. Restarting now.");
                             closeForkedProcess(forkedProcess);
@@ -178,6 +191,7 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
                                     .toMillis();
                             if (elapsed > tikaServerConfig.getTaskTimeoutMillis()) {
                                 LOG.info("{} ms have elapsed since forked process " + "last updated status. " + "Shutting down and restarting.", elapsed);
+                                timeouts++;
                                 closeForkedProcess(forkedProcess);
                                 mustRestart = true;
                             }
@@ -235,6 +249,28 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
         shutDown = true;
     }
 
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return whether the forked process has started and is not shutting down
+     */
+    @Override
+    public boolean isRunning() {
+        return forkedStatus == FORKED_STATUS.RUNNING;
+    }
+
+    /**
+     * @return the number of tasks in the forked process as of the last time
+     * the status file was read, i.e. up to taskPulseMillis ago
+     */
+    @Override
+    public int getNumTasks() {
+        return numTasks;
+    }
+
     private void setForkedStatus(FORKED_STATUS status) {
         synchronized (forkedStatusLock) {
             forkedStatus = status;
@@ -402,6 +438,8 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
             //this is mostly for log4j 1.x so that different processes
             //can log to different log files
             jvmArgs.add("-Dtika.server.id=" + tikaServerConfig.getId());
+            jvmArgs.addAll(ClassDataSharingUtils.getJvmArgs(
+                    tikaServerConfig.getClassDataSharingArchive(), jvmArgs));
             argList.addAll(jvmArgs);
 
             argList.add("org.apache.tika.server.core.TikaServerProcess");
@@ -409,6 +447,11 @@ public class TikaServerWatchDog implements Callable<WatchDogResult> {
 
             argList.add("-numRestarts");
             argList.add(Integer.toString(numRestarts));
+            //so that the forked process's metrics include its predecessors'
+            argList.add("-numTimeouts");
+            argList.add(Integer.toString(timeouts));
+            argList.add("-numOoms");
+            argList.add(Integer.toString(ooms));
             LOG.debug("forked process commandline: " + argList.toString());
             builder.command(argList);
             //now overwrite with the specific server id
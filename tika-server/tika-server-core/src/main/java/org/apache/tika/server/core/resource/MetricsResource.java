@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import org.apache.tika.metrics.ParseMetrics;
+import org.apache.tika.server.core.ServerStatus;
+
+/**
+ * Prometheus endpoint for the {@link ParseMetrics} of this server, with the
+ * {@link ServerStatus} counts added.  Like <code>/status</code>, this reports
+ * on the forked process that answers, so with several forked servers, scrape
+ * each one's port.
+ */
+@Path("/metrics")
+public class MetricsResource {
+    private final ServerStatus serverStatus;
+
+    public MetricsResource(ServerStatus serverStatus) {
+        this.serverStatus = serverStatus;
+    }
+
+    @GET
+    @Produces(ParseMetrics.CONTENT_TYPE)
+    public StreamingOutput getMetrics() {
+        return outputStream -> {
+            Writer writer = new OutputStreamWriter(outputStream, UTF_8);
+            ParseMetrics
+                    .getDefault()
+                    .write(writer);
+            ParseMetrics.writeCounter(writer, "tika_server_files_processed_total", "Tasks started by this forked server.", serverStatus.getFilesProcessed());
+            ParseMetrics.writeGauge(writer, "tika_server_tasks", "Tasks in progress.", serverStatus.getNumTasks());
+            ParseMetrics.writeGauge(writer, "tika_server_millis_since_last_parse_started", "Milliseconds since the last parse started.",
+                    serverStatus.getMillisSinceLastParseStarted());
+            writer.flush();
+        };
+    }
+}
@@ -17,11 +17,13 @@
 
 package org.apache.tika.server.core.resource;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.tika.server.core.resource.TikaResource.fillMetadata;
 import static org.apache.tika.server.core.resource.TikaResource.fillParseContext;
 import static org.apache.tika.server.core.resource.TikaResource.getConfig;
 
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.util.List;
 
 import jakarta.ws.rs.Consumes;
@@ -35,6 +37,7 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
 import org.apache.cxf.jaxrs.ext.multipart.Attachment;
 import org.slf4j.Logger;
@@ -48,6 +51,7 @@ import org.apache.tika.parser.RecursiveParserWrapper;
 import org.apache.tika.pipes.HandlerConfig;
 import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.RecursiveParserWrapperHandler;
+import org.apache.tika.serialization.JsonStreamingSerializer;
 import org.apache.tika.server.core.MetadataList;
 import org.apache.tika.server.core.TikaServerParseException;
 
@@ -174,6 +178,73 @@ public class RecursiveMetadataResource {
                 .build();
     }
 
+    /**
+     * Same as {@link #getMetadata(InputStream, HttpHeaders, UriInfo, String)},
+     * except that each document's metadata is written to the response as soon as
+     * that document has been parsed, instead of after the whole container has
+     * been parsed.  The client gets the first results right away, and the server
+     * doesn't hold the metadata for the whole container in memory.
+     * <p>
+     * The response is the same json array of {@link Metadata} objects, but the
+     * embedded documents come first, in the order in which they finish, and the
+     * main document is last.  The configured
+     * {@link MetadataListFilter} is not applied, because the list is never
+     * complete on the server, and
+     * {@link org.apache.tika.metadata.TikaCoreProperties#FINAL_EMBEDDED_RESOURCE_PATH}
+     * is not calculated.
+     * <p>
+     * Specify the handler for the content (xml, html, text, ignore)
+     * in the path:<br/>
+     * /rmeta/stream (default: xml)<br/>
+     * /rmeta/stream/text (store the content as text)<br/>
+     *
+     * @param info uri info
+     * @return StreamingOutput with a json array of {@link Metadata} objects
+     */
+    @PUT
+    @Produces("application/json")
+    @Path("stream")
+    public StreamingOutput getMetadataStreaming(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) {
+        return getMetadataStreaming(is, httpHeaders, info, null);
+    }
+
+    /**
+     * @see #getMetadataStreaming(InputStream, HttpHeaders, UriInfo)
+     */
+    @PUT
+    @Produces("application/json")
+    @Path("stream/{" + HANDLER_TYPE_PARAM + " : \\w+}")
+    public StreamingOutput getMetadataStreaming(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info,
+                                                @PathParam(HANDLER_TYPE_PARAM) String handlerTypeName) {
+        Metadata metadata = new Metadata();
+        return streamMetadata(TikaResource.getInputStream(is, metadata, httpHeaders, info), metadata, httpHeaders.getRequestHeaders(),
+                buildHandlerConfig(httpHeaders.getRequestHeaders(), handlerTypeName, HandlerConfig.PARSE_MODE.RMETA));
+    }
+
+    private StreamingOutput streamMetadata(InputStream is, Metadata metadata, MultivaluedMap<String, String> httpHeaders, HandlerConfig handlerConfig) {
+        final ParseContext context = new ParseContext();
+        Parser parser = TikaResource.createParser();
+
+        RecursiveParserWrapper wrapper = new RecursiveParserWrapper(parser);
+        fillMetadata(parser, metadata, httpHeaders);
+        fillParseContext(httpHeaders, metadata, context);
+        TikaResource.logRequest(LOG, "/rmeta/stream", metadata);
+
+        return outputStream -> {
+            try (JsonStreamingSerializer serializer = new JsonStreamingSerializer(new OutputStreamWriter(outputStream, UTF_8))) {
+                StreamingRecursiveParserWrapperHandler handler = new StreamingRecursiveParserWrapperHandler(
+                        new BasicContentHandlerFactory(handlerConfig.getType(), handlerConfig.getWriteLimit(), handlerConfig.isThrowOnWriteLimitReached(), context),
+                        handlerConfig.getMaxEmbeddedResources(), getConfig().getMetadataFilter(), serializer);
+                try {
+                    TikaResource.parse(wrapper, LOG, "/rmeta/stream", is, handler, metadata, context);
+                } catch (TikaServerParseException e) {
+                    //the exception is recorded in the main document's metadata
+                    LOG.debug("server parse exception", e);
+                }
+            }
+        };
+    }
+
     private MetadataList parseMetadataToMetadataList(InputStream is, Metadata metadata, MultivaluedMap<String, String> httpHeaders, UriInfo info, HandlerConfig handlerConfig)
             throws Exception {
         return new MetadataList(parseMetadata(is, metadata, httpHeaders, info, handlerConfig));
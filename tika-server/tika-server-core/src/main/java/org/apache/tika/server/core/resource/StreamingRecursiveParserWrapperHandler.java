@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.resource;
+
+import java.io.IOException;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metadata.filter.MetadataFilter;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
+import org.apache.tika.sax.ContentHandlerFactory;
+import org.apache.tika.serialization.JsonStreamingSerializer;
+
+/**
+ * Recursive handler that writes each document's metadata to the
+ * {@link JsonStreamingSerializer} as soon as the document has been parsed,
+ * instead of collecting the metadata for the whole container in memory as the
+ * {@link org.apache.tika.sax.RecursiveParserWrapperHandler} does.
+ * <p>
+ * Embedded documents are written in the order in which they finish, and the
+ * container document is written last.  Their
+ * {@link TikaCoreProperties#FINAL_EMBEDDED_RESOURCE_PATH} is not calculated.
+ */
+class StreamingRecursiveParserWrapperHandler extends AbstractRecursiveParserWrapperHandler {
+
+    private final MetadataFilter metadataFilter;
+    private final JsonStreamingSerializer serializer;
+
+    StreamingRecursiveParserWrapperHandler(ContentHandlerFactory contentHandlerFactory,
+                                           int maxEmbeddedResources,
+                                           MetadataFilter metadataFilter,
+                                           JsonStreamingSerializer serializer) {
+        super(contentHandlerFactory, maxEmbeddedResources);
+        this.metadataFilter = metadataFilter;
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void endEmbeddedDocument(ContentHandler contentHandler, Metadata metadata)
+            throws SAXException {
+        super.endEmbeddedDocument(contentHandler, metadata);
+        write(contentHandler, metadata);
+    }
+
+    @Override
+    public void endDocument(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        super.endDocument(contentHandler, metadata);
+        write(contentHandler, metadata);
+    }
+
+    private void write(ContentHandler contentHandler, Metadata metadata) throws SAXException {
+        addContent(contentHandler, metadata);
+        try {
+            metadataFilter.filter(metadata);
+        } catch (TikaException e) {
+            throw new SAXException(e);
+        }
+        if (metadata.size() == 0) {
+            return;
+        }
+        try {
+            serializer.add(metadata);
+            serializer.flush();
+        } catch (IOException e) {
+            //the client has most likely gone away; stop the parse
+            throw new SAXException(e);
+        }
+    }
+
+    private static void addContent(ContentHandler handler, Metadata metadata) {
+        //see RecursiveParserWrapperHandler: DefaultHandler's toString() is not content
+        if (handler.getClass().equals(DefaultHandler.class)) {
+            return;
+        }
+        String content = handler.toString();
+        if (content != null && !content.isBlank()) {
+            metadata.add(TikaCoreProperties.TIKA_CONTENT, content);
+            metadata.add(TikaCoreProperties.TIKA_CONTENT_HANDLER,
+                    handler.getClass().getSimpleName());
+        }
+    }
+}
@@ -68,15 +68,19 @@ import org.apache.tika.config.TikaTaskTimeout;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.metrics.ParseMetrics;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.pipes.HandlerConfig;
+import org.apache.tika.sax.AbstractRecursiveParserWrapperHandler;
 import org.apache.tika.sax.BasicContentHandlerFactory;
 import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
 import org.apache.tika.sax.ExpandedTitleContentHandler;
 import org.apache.tika.sax.RichTextContentHandler;
 import org.apache.tika.sax.boilerpipe.BoilerpipeContentHandler;
@@ -361,8 +365,12 @@ public class TikaResource {
         long timeoutMillis = getTaskTimeout(parseContext);
 
         long taskId = SERVER_STATUS.start(ServerStatus.TASK.PARSE, fileName, timeoutMillis);
+        //the recursive parser wrapper needs its own handler, so its characters aren't counted
+        CharacterCountingHandler countingHandler = handler instanceof AbstractRecursiveParserWrapperHandler ? null : new CharacterCountingHandler(handler);
+        TikaInputStream tis = TikaInputStream.get(inputStream);
+        long started = System.nanoTime();
         try {
-            parser.parse(inputStream, handler, metadata, parseContext);
+            parser.parse(tis, countingHandler == null ? handler : countingHandler, metadata, parseContext);
         } catch (SAXException e) {
             throw new TikaServerParseException(e);
         } catch (EncryptedDocumentException e) {
@@ -375,11 +383,49 @@ public class TikaResource {
             throw new TikaServerParseException(e);
         } catch (OutOfMemoryError e) {
             logger.warn("{}: OOM ({})", path, fileName, e);
+            ParseMetrics
+                    .getDefault()
+                    .addOoms(1);
             SERVER_STATUS.setStatus(ServerStatus.STATUS.ERROR);
             throw e;
         } finally {
             SERVER_STATUS.complete(taskId);
-            inputStream.close();
+            ParseMetrics
+                    .getDefault()
+                    .recordParse(metadata, System.nanoTime() - started, getBytesIn(tis), countingHandler == null ? -1 : countingHandler.count);
+            tis.close();
+        }
+    }
+
+    private static long getBytesIn(TikaInputStream tis) {
+        //spooled to a file if a parser needed random access, otherwise read as a stream
+        try {
+            return tis.hasLength() ? tis.getLength() : tis.getPosition();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Counts the characters that the parser writes, for {@link ParseMetrics}.
+     */
+    private static class CharacterCountingHandler extends ContentHandlerDecorator {
+        private long count = 0;
+
+        CharacterCountingHandler(ContentHandler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            count += length;
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            count += length;
+            super.ignorableWhitespace(ch, start, length);
         }
     }
 
@@ -25,10 +25,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import jakarta.ws.rs.PUT;
@@ -37,7 +42,9 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -58,6 +65,7 @@ import org.apache.tika.extractor.DefaultEmbeddedStreamTranslator;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
 import org.apache.tika.extractor.EmbeddedStreamTranslator;
 import org.apache.tika.io.BoundedInputStream;
+import org.apache.tika.io.TemporaryResources;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
@@ -67,6 +75,7 @@ import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.RichTextContentHandler;
+import org.apache.tika.server.core.writer.StreamingArchiveWriter;
 
 @Path("/unpack")
 public class UnpackerResource {
@@ -107,33 +116,83 @@ public class UnpackerResource {
         return process(TikaResource.getInputStream(is, new Metadata(), httpHeaders, info), httpHeaders, info, true);
     }
 
-    private Map<String, byte[]> process(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info, boolean saveAll) throws Exception {
+    /**
+     * Same as {@link #unpack(InputStream, HttpHeaders, UriInfo)}, except that each
+     * embedded file is spooled to a temporary file and written to the archive on the
+     * response as soon as it has been extracted.  The server never holds more than
+     * one embedded file, and never holds it in memory, so <code>unpackMaxBytes</code>
+     * may be larger than 2GB.
+     * <p>
+     * Because the response has started before the parse finishes, a document without
+     * embedded files gets an empty archive rather than 204 No Content.
+     */
+    @Path("/stream{id:(/.*)?}")
+    @PUT
+    @Produces({StreamingArchiveWriter.ZIP, StreamingArchiveWriter.TAR})
+    public Response unpackStreaming(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) {
+        return processStreaming(TikaResource.getInputStream(is, new Metadata(), httpHeaders, info), httpHeaders, info, false);
+    }
+
+    /**
+     * @see #unpackStreaming(InputStream, HttpHeaders, UriInfo)
+     */
+    @Path("/stream/all{id:(/.*)?}")
+    @PUT
+    @Produces({StreamingArchiveWriter.ZIP, StreamingArchiveWriter.TAR})
+    public Response unpackAllStreaming(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info) {
+        return processStreaming(TikaResource.getInputStream(is, new Metadata(), httpHeaders, info), httpHeaders, info, true);
+    }
+
+    private Response processStreaming(InputStream is, HttpHeaders httpHeaders, UriInfo info, boolean saveAll) {
         Metadata metadata = new Metadata();
         ParseContext pc = new ParseContext();
-        long unpackMaxBytes = DEFAULT_MAX_ATTACHMENT_BYTES;
-        String unpackMaxBytesString = httpHeaders
-                .getRequestHeaders()
-                .getFirst(UNPACK_MAX_BYTES_KEY);
-        if (!StringUtils.isBlank(unpackMaxBytesString)) {
-            unpackMaxBytes = Long.parseLong(unpackMaxBytesString);
-            if (unpackMaxBytes > Integer.MAX_VALUE) {
-                throw new IllegalArgumentException("Can't request value > than Integer" + ".MAX_VALUE : " + unpackMaxBytes);
-            } else if (unpackMaxBytes < 0) {
-                throw new IllegalArgumentException("Can't request value < 0: " + unpackMaxBytes);
+        long unpackMaxBytes = getUnpackMaxBytes(httpHeaders, Long.MAX_VALUE);
+        Parser parser = createParser(httpHeaders, metadata, pc);
+        TikaResource.logRequest(LOG, "/unpack/stream", metadata);
+
+        String mediaType = getArchiveMediaType(httpHeaders);
+        StreamingOutput output = outputStream -> {
+            try (TemporaryResources tmp = new TemporaryResources();
+                    StreamingArchiveWriter archive = StreamingArchiveWriter.get(mediaType, outputStream)) {
+                java.nio.file.Path text = tmp.createTempFile();
+                ContentHandler ch;
+                Writer textWriter = null;
+                if (saveAll) {
+                    textWriter = Files.newBufferedWriter(text, UTF_8);
+                    ch = new BodyContentHandler(new RichTextContentHandler(textWriter));
+                } else {
+                    ch = new DefaultHandler();
+                }
+                pc.set(EmbeddedDocumentExtractor.class, new StreamingEmbeddedDocumentExtractor(archive, unpackMaxBytes));
+
+                try {
+                    TikaResource.parse(parser, LOG, info.getPath(), is, ch, metadata, pc);
+                } finally {
+                    if (textWriter != null) {
+                        textWriter.close();
+                    }
+                }
+
+                if (saveAll) {
+                    archive.write(TEXT_FILENAME, text);
+                    java.nio.file.Path meta = tmp.createTempFile();
+                    try (OutputStream metaStream = Files.newOutputStream(meta)) {
+                        metadataToCsv(metadata, metaStream);
+                    }
+                    archive.write(META_FILENAME, meta);
+                }
             }
-        }
-        Parser parser = TikaResource.createParser();
-        if (parser instanceof DigestingParser) {
-            //no need to digest for unwrapping
-            parser = ((DigestingParser) parser).getWrappedParser();
-        }
-        fillMetadata(parser, metadata, httpHeaders.getRequestHeaders());
-        fillParseContext(httpHeaders.getRequestHeaders(), metadata, pc);
+        };
+        return Response.ok(output, mediaType).build();
+    }
+
+    private Map<String, byte[]> process(InputStream is, @Context HttpHeaders httpHeaders, @Context UriInfo info, boolean saveAll) throws Exception {
+        Metadata metadata = new Metadata();
+        ParseContext pc = new ParseContext();
+        long unpackMaxBytes = getUnpackMaxBytes(httpHeaders, Integer.MAX_VALUE);
+        Parser parser = createParser(httpHeaders, metadata, pc);
 
         TikaResource.logRequest(LOG, "/unpack", metadata);
-        //even though we aren't currently parsing embedded documents,
-        //we need to add this to allow for "inline" use of other parsers.
-        pc.set(Parser.class, parser);
         ContentHandler ch;
         UnsynchronizedByteArrayOutputStream text = UnsynchronizedByteArrayOutputStream
                 .builder()
@@ -170,6 +229,103 @@ public class UnpackerResource {
         return files;
     }
 
+    private static long getUnpackMaxBytes(HttpHeaders httpHeaders, long limit) {
+        long unpackMaxBytes = DEFAULT_MAX_ATTACHMENT_BYTES;
+        String unpackMaxBytesString = httpHeaders
+                .getRequestHeaders()
+                .getFirst(UNPACK_MAX_BYTES_KEY);
+        if (!StringUtils.isBlank(unpackMaxBytesString)) {
+            unpackMaxBytes = Long.parseLong(unpackMaxBytesString);
+            if (unpackMaxBytes > limit) {
+                throw new IllegalArgumentException("Can't request value > than " + limit + " : " + unpackMaxBytes);
+            } else if (unpackMaxBytes < 0) {
+                throw new IllegalArgumentException("Can't request value < 0: " + unpackMaxBytes);
+            }
+        }
+        return unpackMaxBytes;
+    }
+
+    private static Parser createParser(HttpHeaders httpHeaders, Metadata metadata, ParseContext pc) {
+        Parser parser = TikaResource.createParser();
+        if (parser instanceof DigestingParser) {
+            //no need to digest for unwrapping
+            parser = ((DigestingParser) parser).getWrappedParser();
+        }
+        fillMetadata(parser, metadata, httpHeaders.getRequestHeaders());
+        fillParseContext(httpHeaders.getRequestHeaders(), metadata, pc);
+        //even though we aren't currently parsing embedded documents,
+        //we need to add this to allow for "inline" use of other parsers.
+        pc.set(Parser.class, parser);
+        return parser;
+    }
+
+    private static String getArchiveMediaType(HttpHeaders httpHeaders) {
+        for (MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+            if (mediaType.isCompatible(MediaType.valueOf(StreamingArchiveWriter.ZIP))) {
+                return StreamingArchiveWriter.ZIP;
+            } else if (mediaType.isCompatible(MediaType.valueOf(StreamingArchiveWriter.TAR))) {
+                return StreamingArchiveWriter.TAR;
+            }
+        }
+        return StreamingArchiveWriter.ZIP;
+    }
+
+    private static String getName(Metadata metadata, MutableInt count) {
+        String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+        String contentType = metadata.get(org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE);
+
+        if (name == null) {
+            name = Integer.toString(count.intValue());
+        }
+
+        if (!name.contains(".") && contentType != null) {
+            try {
+                String ext = TikaResource
+                        .getConfig()
+                        .getMimeRepository()
+                        .forName(contentType)
+                        .getExtension();
+
+                if (ext != null) {
+                    name += ext;
+                }
+            } catch (MimeTypeException e) {
+                LOG.warn("Unexpected MimeTypeException", e);
+            }
+        }
+        return name;
+    }
+
+    private static String getFinalName(String name, Set<String> names, MutableInt count) {
+        name = name.replaceAll("\u0000", " ");
+        String normalizedName = FilenameUtils.normalize(name);
+
+        if (normalizedName == null) {
+            normalizedName = FilenameUtils.getName(name);
+        }
+
+        if (normalizedName == null) {
+            normalizedName = count.toString();
+        }
+        //strip off initial C:/ or ~/ or /
+        int prefixLength = FilenameUtils.getPrefixLength(normalizedName);
+        if (prefixLength > -1) {
+            normalizedName = normalizedName.substring(prefixLength);
+        }
+        if (names.contains(normalizedName)) {
+            return UUID
+                    .randomUUID()
+                    .toString() + "-" + normalizedName;
+        }
+        return normalizedName;
+    }
+
+    private static IOException tooLong(long unpackMaxBytes, String hint) {
+        return new IOException(new TikaMemoryLimitException(
+                "An attachment is longer than " + "'unpackMaxBytes' (default=100MB, actual=" + unpackMaxBytes + "). " + "If you need to increase this " +
+                        "limit, add a header to your request, such as: unpackMaxBytes: " + "1073741824." + hint));
+    }
+
     private static class MyEmbeddedDocumentExtractor implements EmbeddedDocumentExtractor {
         private final MutableInt count;
         private final Map<String, byte[]> zout;
@@ -196,34 +352,11 @@ public class UnpackerResource {
             BoundedInputStream bis = new BoundedInputStream(unpackMaxBytes, tis);
             IOUtils.copy(bis, bos);
             if (bis.hasHitBound()) {
-                throw new IOException(new TikaMemoryLimitException(
-                        "An attachment is longer than " + "'unpackMaxBytes' (default=100MB, actual=" + unpackMaxBytes + "). " + "If you need to increase this " +
-                                "limit, add a header to your request, such as: unpackMaxBytes: " + "1073741824.  There is a hard limit of 2GB."));
+                throw tooLong(unpackMaxBytes, "  There is a hard limit of 2GB; use /unpack/stream for larger attachments.");
             }
             byte[] data = bos.toByteArray();
 
-            String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
-            String contentType = metadata.get(org.apache.tika.metadata.HttpHeaders.CONTENT_TYPE);
-
-            if (name == null) {
-                name = Integer.toString(count.intValue());
-            }
-
-            if (!name.contains(".") && contentType != null) {
-                try {
-                    String ext = TikaResource
-                            .getConfig()
-                            .getMimeRepository()
-                            .forName(contentType)
-                            .getExtension();
-
-                    if (ext != null) {
-                        name += ext;
-                    }
-                } catch (MimeTypeException e) {
-                    LOG.warn("Unexpected MimeTypeException", e);
-                }
-            }
+            String name = getName(metadata, count);
             try (TikaInputStream is = TikaInputStream.get(data)) {
                 if (embeddedStreamTranslator.shouldTranslate(is, metadata)) {
                     InputStream translated = embeddedStreamTranslator.translate(UnsynchronizedByteArrayInputStream.builder().setByteArray(data).get(), metadata);
@@ -235,7 +368,7 @@ public class UnpackerResource {
                 }
             }
 
-            final String finalName = getFinalName(name, zout);
+            final String finalName = getFinalName(name, zout.keySet(), count);
 
             if (data.length > 0) {
                 zout.put(finalName, data);
@@ -243,30 +376,6 @@ public class UnpackerResource {
             }
         }
 
-        private String getFinalName(String name, Map<String, byte[]> zout) {
-            name = name.replaceAll("\u0000", " ");
-            String normalizedName = FilenameUtils.normalize(name);
-
-            if (normalizedName == null) {
-                normalizedName = FilenameUtils.getName(name);
-            }
-
-            if (normalizedName == null) {
-                normalizedName = count.toString();
-            }
-            //strip off initial C:/ or ~/ or /
-            int prefixLength = FilenameUtils.getPrefixLength(normalizedName);
-            if (prefixLength > -1) {
-                normalizedName = normalizedName.substring(prefixLength);
-            }
-            if (zout.containsKey(normalizedName)) {
-                return UUID
-                        .randomUUID()
-                        .toString() + "-" + normalizedName;
-            }
-            return normalizedName;
-        }
-
 /*        protected void copy(DirectoryEntry sourceDir, DirectoryEntry destDir)
                 throws IOException {
             for (Entry entry : sourceDir) {
@@ -283,4 +392,59 @@ public class UnpackerResource {
             }
         }*/
     }
+
+    /**
+     * Spools each embedded file to a temporary file and adds it to the archive, so
+     * that no more than one embedded file is held at a time, and only on disk.
+     */
+    private static class StreamingEmbeddedDocumentExtractor implements EmbeddedDocumentExtractor {
+        private final MutableInt count = new MutableInt();
+        private final Set<String> names = new HashSet<>();
+        private final StreamingArchiveWriter archive;
+
+        private final long unpackMaxBytes;
+        private final EmbeddedStreamTranslator embeddedStreamTranslator = new DefaultEmbeddedStreamTranslator();
+
+        StreamingEmbeddedDocumentExtractor(StreamingArchiveWriter archive, long unpackMaxBytes) {
+            this.archive = archive;
+            this.unpackMaxBytes = unpackMaxBytes;
+        }
+
+        public boolean shouldParseEmbedded(Metadata metadata) {
+            return true;
+        }
+
+        @Override
+        public void parseEmbedded(TikaInputStream tis, ContentHandler contentHandler, Metadata metadata, boolean b) throws SAXException, IOException {
+            try (TemporaryResources tmp = new TemporaryResources()) {
+                java.nio.file.Path spool = tmp.createTempFile();
+                BoundedInputStream bis = new BoundedInputStream(unpackMaxBytes, tis);
+                Files.copy(bis, spool, StandardCopyOption.REPLACE_EXISTING);
+                if (bis.hasHitBound()) {
+                    throw tooLong(unpackMaxBytes, "");
+                }
+
+                String name = getName(metadata, count);
+                boolean shouldTranslate;
+                try (TikaInputStream is = TikaInputStream.get(spool)) {
+                    shouldTranslate = embeddedStreamTranslator.shouldTranslate(is, metadata);
+                }
+                if (shouldTranslate) {
+                    java.nio.file.Path translated = tmp.createTempFile();
+                    try (InputStream is = embeddedStreamTranslator.translate(Files.newInputStream(spool), metadata)) {
+                        Files.copy(is, translated, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    spool = translated;
+                }
+
+                final String finalName = getFinalName(name, names, count);
+
+                if (Files.size(spool) > 0) {
+                    archive.write(finalName, spool);
+                    names.add(finalName);
+                    count.increment();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes files into a zip or tar archive on the response as they are added,
+ * rather than collecting them in memory first as the {@link ZipWriter} and
+ * {@link TarWriter} do.  Both formats need an entry's size (and zip its CRC)
+ * before its bytes, so each file is added from a spooled file.
+ */
+public abstract class StreamingArchiveWriter implements Closeable {
+
+    public static final String ZIP = "application/zip";
+
+    public static final String TAR = "application/x-tar";
+
+    /**
+     * @param mediaType {@link #ZIP} or {@link #TAR}
+     */
+    public static StreamingArchiveWriter get(String mediaType, OutputStream os) {
+        if (TAR.equals(mediaType)) {
+            return new Tar(os);
+        }
+        return new Zip(os);
+    }
+
+    /**
+     * Adds the file to the archive under the name.
+     */
+    public abstract void write(String name, Path file) throws IOException;
+
+    private static class Zip extends StreamingArchiveWriter {
+        private final ZipArchiveOutputStream zip;
+
+        private Zip(OutputStream os) {
+            zip = new ZipArchiveOutputStream(os);
+            zip.setMethod(ZipArchiveOutputStream.STORED);
+        }
+
+        @Override
+        public void write(String name, Path file) throws IOException {
+            CRC32 crc32 = new CRC32();
+            try (InputStream is = new CheckedInputStream(Files.newInputStream(file), crc32)) {
+                IOUtils.consume(is);
+            }
+            write(name != null ? name : UUID.randomUUID().toString(), file, crc32.getValue());
+        }
+
+        private void write(String name, Path file, long crc) throws IOException {
+            ZipArchiveEntry entry = new ZipArchiveEntry(name);
+            entry.setMethod(ZipArchiveOutputStream.STORED);
+            entry.setSize(Files.size(file));
+            entry.setCrc(crc);
+            try {
+                zip.putArchiveEntry(entry);
+            } catch (ZipException ex) {
+                //see ZipWriter
+                write("x-" + name, file, crc);
+                return;
+            }
+            Files.copy(file, zip);
+            zip.closeArchiveEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+
+    private static class Tar extends StreamingArchiveWriter {
+        private final TarArchiveOutputStream tar;
+
+        private Tar(OutputStream os) {
+            tar = new TarArchiveOutputStream(os);
+            //entries may be larger than 8GB, and names longer than 100 characters
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        }
+
+        @Override
+        public void write(String name, Path file) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(Files.size(file));
+            tar.putArchiveEntry(entry);
+            Files.copy(file, tar);
+            tar.closeArchiveEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            tar.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import java.io.InputStream;
+
+import jakarta.ws.rs.core.Response;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.junit.jupiter.api.Test;
+
+import org.apache.tika.metrics.ParseMetrics;
+import org.apache.tika.server.core.resource.MetricsResource;
+
+public class MetricsResourceTest extends CXFTestBase {
+
+    private final static String METRICS_PATH = "/metrics";
+
+    @Override
+    protected void setUpResources(JAXRSServerFactoryBean sf) {
+        sf.setResourceClasses(MetricsResource.class);
+        sf.setResourceProvider(MetricsResource.class, new SingletonResourceProvider(new MetricsResource(new ServerStatus("", 0))));
+    }
+
+    @Override
+    protected void setUpProviders(JAXRSServerFactoryBean sf) {
+    }
+
+    @Test
+    public void testBasic() throws Exception {
+        ParseMetrics
+                .getDefault()
+                .recordParse("org.apache.tika.parser.mock.MockParser", "text/plain", 1000, 10, 5);
+        Response response = WebClient
+                .create(endPoint + METRICS_PATH)
+                .get();
+        String metrics = getStringFromInputStream((InputStream) response.getEntity());
+        assertContains("tika_parser_duration_seconds_bucket{parser=\"org.apache.tika.parser.mock.MockParser\",le=\"0.005\"}", metrics);
+        assertContains("tika_mime_type_duration_seconds_count{mime_type=\"text/plain\"}", metrics);
+        assertContains("tika_xml_pool_hits_total{pool=\"sax\"}", metrics);
+        assertContains("tika_server_tasks 0", metrics);
+    }
+}
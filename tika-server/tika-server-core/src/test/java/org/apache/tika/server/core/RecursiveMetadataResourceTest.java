@@ -72,6 +72,24 @@ public class RecursiveMetadataResourceTest extends CXFTestBase {
         assertContains("null pointer message", metadata.get(TikaCoreProperties.CONTAINER_EXCEPTION));
 
     }
+    @Test
+    public void testStreaming() throws Exception {
+        Response response = WebClient
+                .create(endPoint + META_PATH + "/stream/text")
+                .accept("application/json")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_NULL_POINTER));
+
+        Reader reader = new InputStreamReader((InputStream) response.getEntity(), UTF_8);
+        List<Metadata> metadataList = JsonMetadataList.fromJson(reader);
+        assertEquals(1, metadataList.size());
+        Metadata metadata = metadataList.get(0);
+        assertEquals("Nikolai Lobachevsky", metadata.get("author"));
+        assertEquals("application/mock+xml", metadata.get(Metadata.CONTENT_TYPE));
+        assertEquals("ToTextContentHandler", metadata.get(TikaCoreProperties.TIKA_CONTENT_HANDLER));
+        assertContains("some content", metadata.get(TikaCoreProperties.TIKA_CONTENT));
+        assertContains("null pointer message", metadata.get(TikaCoreProperties.CONTAINER_EXCEPTION));
+    }
+
     /*
     @Test
     public void testWriteLimitInAll() throws Exception {
@@ -41,6 +41,32 @@ public class ServerStatusTest {
         });
     }
 
+    @Test
+    public void testTaskStatuses() throws Exception {
+        ServerStatus status = new ServerStatus("", 0);
+        long first = status.start(ServerStatus.TASK.PARSE, "first", 1000);
+        long second = status.start(ServerStatus.TASK.DETECT, null, 1000);
+        assertEquals(2, status.getNumTasks());
+        assertEquals(2, status
+                .getTaskStatuses()
+                .size());
+        status.complete(first);
+        assertEquals(1, status.getNumTasks());
+        assertEquals(ServerStatus.TASK.DETECT, status
+                .getTaskStatuses()
+                .iterator()
+                .next().task);
+        //the view is live, but the map returned by getTasks is a copy
+        Map<Long, TaskStatus> tasks = status.getTasks();
+        status.complete(second);
+        assertEquals(0, status.getNumTasks());
+        assertEquals(0, status
+                .getTaskStatuses()
+                .size());
+        assertEquals(1, tasks.size());
+        assertEquals(2, status.getFilesProcessed());
+    }
+
     @Test
     @Timeout(60000)
     public void testBasicMultiThreading() throws Exception {
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tika.server.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TikaServerDispatcherTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testDispatch() throws Exception {
+        //each child echoes its name and the request body
+        MockChild a = startChild("a");
+        MockChild b = startChild("b");
+        try (TikaServerDispatcher dispatcher = new TikaServerDispatcher("localhost", 0, List.of(a, b))) {
+            dispatcher.start();
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://localhost:" + dispatcher.getPort() + "/tika");
+
+            //b is busy
+            b.numTasks = 5;
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<String> response = client.send(HttpRequest
+                        .newBuilder(uri)
+                        .PUT(HttpRequest.BodyPublishers.ofString("hello"))
+                        .header("Accept", "text/plain")
+                        .build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, response.statusCode());
+                assertEquals("a:text/plain:hello", response.body());
+            }
+
+            //a is restarting
+            a.running = false;
+            b.numTasks = 0;
+            HttpResponse<String> response = client.send(HttpRequest
+                    .newBuilder(uri)
+                    .GET()
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals("b:null:", response.body());
+
+            b.running = false;
+            response = client.send(HttpRequest
+                    .newBuilder(uri)
+                    .GET()
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, response.statusCode());
+        }
+    }
+
+    private MockChild startChild(String name) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/tika", exchange -> {
+            byte[] body = exchange
+                    .getRequestBody()
+                    .readAllBytes();
+            byte[] response = (name + ":" + exchange
+                    .getRequestHeaders()
+                    .getFirst("Accept") + ":" + new String(body, UTF_8)).getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return new MockChild(server
+                .getAddress()
+                .getPort());
+    }
+
+    private static class MockChild implements TikaServerDispatcher.Child {
+        private final int port;
+        private volatile boolean running = true;
+        private volatile int numTasks = 0;
+
+        MockChild(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public int getNumTasks() {
+            return numTasks;
+        }
+    }
+}
@@ -52,6 +52,8 @@ public class UnpackerResourceTest extends CXFTestBase {
     private static final String BASE_PATH = "/unpack";
     private static final String UNPACKER_PATH = BASE_PATH + "";
     private static final String ALL_PATH = BASE_PATH + "/all";
+    private static final String STREAM_PATH = BASE_PATH + "/stream";
+    private static final String STREAM_ALL_PATH = BASE_PATH + "/stream/all";
 
     private static final String TEST_DOC_WAV = "test-documents/Doc1_ole.doc";
     private static final String WAV1_MD5 = "bdd0a78a54968e362445364f95d8dc96";
@@ -120,6 +122,31 @@ public class UnpackerResourceTest extends CXFTestBase {
         assertTrue(data.containsKey(UnpackerResource.TEXT_FILENAME));
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        Response response = WebClient
+                .create(CXFTestBase.endPoint + STREAM_ALL_PATH)
+                .type(APPLICATION_MSWORD)
+                .accept("application/zip")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_DOC_WAV));
+
+        Map<String, String> data = readZipArchive((InputStream) response.getEntity());
+        assertEquals(WAV1_MD5, data.get(WAV1_NAME));
+        assertEquals(WAV2_MD5, data.get(WAV2_NAME));
+        assertTrue(data.containsKey(UnpackerResource.TEXT_FILENAME));
+        assertTrue(data.containsKey(UnpackerResource.META_FILENAME));
+
+        response = WebClient
+                .create(CXFTestBase.endPoint + STREAM_PATH)
+                .type(APPLICATION_MSWORD)
+                .accept("application/x-tar")
+                .put(ClassLoader.getSystemResourceAsStream(TEST_DOC_WAV));
+
+        data = readArchiveFromStream(new TarArchiveInputStream((InputStream) response.getEntity()));
+        assertEquals(JPG_MD5, data.get(JPG_NAME));
+        assertFalse(data.containsKey(UnpackerResource.TEXT_FILENAME));
+    }
+
     @Test
     public void testDocPicture() throws Exception {
         Response response = WebClient